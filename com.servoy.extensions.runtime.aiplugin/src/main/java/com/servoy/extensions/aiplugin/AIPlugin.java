@@ -30,6 +30,9 @@ public class AIPlugin implements IClientPlugin {
 
 	@Override
 	public void unload() throws PluginException {
+		if (impl != null) {
+			impl.unload();
+		}
 	}
 
 	@Override
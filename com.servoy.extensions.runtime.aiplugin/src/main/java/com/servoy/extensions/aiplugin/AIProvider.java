@@ -3,6 +3,8 @@ package com.servoy.extensions.aiplugin;
 import static com.servoy.extensions.aiplugin.AIPlugin.PLUGIN_NAME;
 import static com.servoy.extensions.aiplugin.AiPluginService.AIPLUGIN_SERVICE;
 
+import java.util.ArrayList;
+import java.util.List;
 import java.util.concurrent.Callable;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -21,9 +23,12 @@ import com.servoy.extensions.aiplugin.chat.ToolBuilder;
 import com.servoy.extensions.aiplugin.embedding.EmbeddingModel;
 import com.servoy.extensions.aiplugin.embedding.EmbeddingStore;
 import com.servoy.extensions.aiplugin.embedding.GeminiEmbeddingModelBuilder;
+import com.servoy.extensions.aiplugin.embedding.LocalEmbeddingModelBuilder;
 import com.servoy.extensions.aiplugin.embedding.OpenAiEmbeddingModelBuilder;
 import com.servoy.extensions.aiplugin.embedding.SearchResult;
 import com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreBuilder;
+import com.servoy.extensions.aiplugin.embedding.SharedEmbeddingStores;
+import com.servoy.extensions.aiplugin.embedding.SharedVectorStore;
 import com.servoy.j2db.IApplication;
 import com.servoy.j2db.dataprocessing.IDatabaseManager;
 import com.servoy.j2db.documentation.ServoyDocumented;
@@ -45,6 +50,14 @@ public class AIProvider implements IReturnedTypesProvider, IScriptable
 {
 	private final IClientPluginAccess access;
 	private AiPluginService aiPluginService;
+	/**
+	 * Shared embedding stores used by this client, once per use.
+	 */
+	private final List<SharedVectorStore> sharedStores = new ArrayList<>();
+	/**
+	 * Releases of other shared resources used by this client, see releaseOnUnload.
+	 */
+	private final List<Runnable> unloadReleases = new ArrayList<>();
 
 	/**
 	 * Executor for running embedding operations asynchronously using virtual
@@ -105,7 +118,7 @@ public class AIProvider implements IReturnedTypesProvider, IScriptable
 	@Override
 	public Class< ? >[] getAllReturnedTypes()
 	{
-		return new Class[] { ChatClient.class, GeminiChatBuilder.class, OpenAiChatBuilder.class, AnthropicChatBuilder.class, BedrockChatBuilder.class, GeminiEmbeddingModelBuilder.class, OpenAiEmbeddingModelBuilder.class, ServoyEmbeddingStoreBuilder.class, EmbeddingStore.class, EmbeddingModel.class, ChatResponse.class, SearchResult.class, ToolBuilder.class, MCPClientBuilder.class };
+		return new Class[] { ChatClient.class, GeminiChatBuilder.class, OpenAiChatBuilder.class, AnthropicChatBuilder.class, BedrockChatBuilder.class, GeminiEmbeddingModelBuilder.class, OpenAiEmbeddingModelBuilder.class, LocalEmbeddingModelBuilder.class, ServoyEmbeddingStoreBuilder.class, EmbeddingStore.class, EmbeddingModel.class, ChatResponse.class, SearchResult.class, ToolBuilder.class, MCPClientBuilder.class };
 	}
 
 	/**
@@ -130,6 +143,18 @@ public class AIProvider implements IReturnedTypesProvider, IScriptable
 		return new OpenAiEmbeddingModelBuilder(this);
 	}
 
+	/**
+	 * Creates a builder for an embedding model that runs in process on the CPU,
+	 * without network calls. Needs the local provider package.
+	 *
+	 * @return LocalEmbeddingModelBuilder instance.
+	 */
+	@JSFunction
+	public LocalEmbeddingModelBuilder createLocalEmbeddingModelBuilder()
+	{
+		return new LocalEmbeddingModelBuilder(this);
+	}
+
 	/**
 	 * Creates a builder for Gemini chat models.
 	 *
@@ -257,6 +282,82 @@ public class AIProvider implements IReturnedTypesProvider, IScriptable
 		return deferred.getPromise();
 	}
 
+	/**
+	 * Returns the shared in-memory embedding store of the solution with the name,
+	 * the client holds a reference to it until it is closed.
+	 *
+	 * @param model identifies the embedding model of the store.
+	 */
+	public SharedVectorStore acquireSharedStore(String name, String model, int dimension) throws Exception
+	{
+		SharedVectorStore store = getAiPluginService().sharedEmbeddingStores().acquire(access.getSolutionName(), name, model,
+			dimension);
+		synchronized (sharedStores)
+		{
+			sharedStores.add(store);
+		}
+		return store;
+	}
+
+	/**
+	 * Runs the release when this client is closed, for resources that are shared
+	 * by the clients of the server.
+	 */
+	public void releaseOnUnload(Runnable release)
+	{
+		synchronized (unloadReleases)
+		{
+			unloadReleases.add(release);
+		}
+	}
+
+	/**
+	 * Releases the references of this client to shared embedding stores and
+	 * other shared resources.
+	 */
+	void unload()
+	{
+		releaseSharedStores();
+		List<Runnable> releases;
+		synchronized (unloadReleases)
+		{
+			releases = new ArrayList<>(unloadReleases);
+			unloadReleases.clear();
+		}
+		for (Runnable release : releases)
+		{
+			try
+			{
+				release.run();
+			}
+			catch (RuntimeException e)
+			{
+				Debug.error(e);
+			}
+		}
+	}
+
+	private void releaseSharedStores()
+	{
+		synchronized (sharedStores)
+		{
+			if (sharedStores.isEmpty())
+			{
+				return;
+			}
+			try
+			{
+				SharedEmbeddingStores sharedEmbeddingStores = getAiPluginService().sharedEmbeddingStores();
+				sharedStores.forEach(store -> sharedEmbeddingStores.release(store.solution(), store.name()));
+			}
+			catch (Exception e)
+			{
+				Debug.error(e);
+			}
+			sharedStores.clear();
+		}
+	}
+
 	/**
 	 * Encode a JSON string to TOON format.
 	 *
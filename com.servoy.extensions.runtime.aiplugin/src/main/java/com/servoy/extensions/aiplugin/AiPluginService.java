@@ -2,10 +2,35 @@ package com.servoy.extensions.aiplugin;
 
 import java.rmi.Remote;
 
+import com.servoy.extensions.aiplugin.embedding.EmbeddingLruCache;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingRequestCoalescer;
 import com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreFactory;
+import com.servoy.extensions.aiplugin.embedding.SharedEmbeddingStores;
 
 public interface AiPluginService extends Remote {
 	String AIPLUGIN_SERVICE = "servoy.aiPluginService";
 
 	ServoyEmbeddingStoreFactory servoyEmbeddingStoreFactory();
+
+	/**
+	 * In-memory cache of embeddings by content hash, shared by all clients.
+	 */
+	EmbeddingLruCache<String, float[]> embeddingCache();
+
+	/**
+	 * In-memory cache of search query embeddings by model and normalized query
+	 * text, shared by all clients.
+	 */
+	EmbeddingLruCache<String, float[]> queryEmbeddingCache();
+
+	/**
+	 * Combines query embedding requests of concurrent asynchronous searches,
+	 * shared by all clients.
+	 */
+	EmbeddingRequestCoalescer queryEmbeddingCoalescer();
+
+	/**
+	 * Named in-memory embedding stores, shared by all clients.
+	 */
+	SharedEmbeddingStores sharedEmbeddingStores();
 }
@@ -6,10 +6,17 @@ import static com.servoy.extensions.aiplugin.database.DatabaseHandler.DatabasedP
 import java.sql.Connection;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
+import java.util.List;
+import java.util.Map;
 
 import com.servoy.base.query.TypeInfo;
+import com.servoy.extensions.aiplugin.database.postgres.PostgresDeleteHandler;
 import com.servoy.extensions.aiplugin.database.postgres.PostgresIndexHandler;
+import com.servoy.extensions.aiplugin.database.postgres.PostgresMergeHandler;
 import com.servoy.extensions.aiplugin.database.postgres.PostgresPreparedStatementParameterHandler;
+import com.servoy.extensions.aiplugin.database.postgres.PostgresSearchHandler;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingIndexOptions;
+import com.servoy.extensions.aiplugin.embedding.VectorSearchParameters;
 import com.servoy.j2db.persistence.Column;
 import com.servoy.j2db.persistence.ITable;
 import com.servoy.j2db.server.extensions.PreparedStatementParameterHandler;
@@ -42,10 +49,167 @@ public class DatabaseHandler implements PreparedStatementParameterHandler {
 		return false;
 	}
 
-	public boolean createEmbeddingIndex(Connection connection, ITable table, String indexName, Column column,
-			int embeddingListSize) throws SQLException {
+	public boolean supportsEmbeddingIndex(Connection connection) throws SQLException {
+		return detectDatabaseProduct(connection) == PostgreSQL;
+	}
+
+	/**
+	 * Builds the native vector index, on the quantized column when the vector
+	 * column has one, returns false when the database is not supported or the
+	 * table is empty.
+	 *
+	 * @param embeddingListSize number of ivfflat lists, 0 to derive it from the
+	 *                          number of rows.
+	 * @param predicate         condition of a partial index, null to index all
+	 *                          rows.
+	 */
+	public boolean buildEmbeddingIndex(Connection connection, ITable table, String indexName,
+			VectorColumn vectorColumn, EmbeddingIndexOptions indexOptions, int embeddingListSize, String predicate,
+			boolean rebuild) throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			return PostgresIndexHandler.buildEmbeddingIndex(connection, table, indexName, vectorColumn, indexOptions,
+					embeddingListSize, predicate, rebuild);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Values of the column that occur in at least minRows rows, with their number
+	 * of rows, returns null when the database is not supported.
+	 */
+	public Map<Object, Long> countRowsByValue(Connection connection, ITable table, Column column, long minRows)
+			throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			return PostgresIndexHandler.countRowsByValue(connection, table, column, minRows);
+		}
+
+		return null;
+	}
+
+	/**
+	 * Adds a binary quantized copy of the vector column that the database keeps up
+	 * to date, when it does not exist yet. Returns false when the database is not
+	 * supported.
+	 */
+	public boolean addQuantizedColumn(Connection connection, ITable table, Column column, String quantizedName,
+			int dimension) throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			PostgresIndexHandler.addQuantizedColumn(connection, table, column, quantizedName, dimension);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Adds a full text search column on the text column that the database keeps
+	 * up to date, with its index, when it does not exist yet. Returns false when
+	 * the database is not supported.
+	 */
+	public boolean addTextSearchColumn(Connection connection, ITable table, Column textColumn,
+			String textSearchName, String indexName, String textSearchConfig) throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			PostgresIndexHandler.addTextSearchColumn(connection, table, textColumn, textSearchName, indexName,
+					textSearchConfig);
+			return true;
+		}
+
+		return false;
+	}
+
+	/**
+	 * Changes the vector column of an empty table to 16-bit floats, returns false
+	 * when the database is not supported.
+	 */
+	public boolean useHalfPrecision(Connection connection, ITable table, Column column, int dimension)
+			throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			PostgresIndexHandler.useHalfPrecision(connection, table, column, dimension);
+			return true;
+		}
+
+		return false;
+	}
+
+	public boolean isHalfPrecision(Connection connection, ITable table, Column column) throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			return PostgresIndexHandler.isHalfPrecision(connection, table, column);
+		}
+
+		return false;
+	}
+
+	/**
+	 * Nearest neighbour search with per-search index settings directly on the
+	 * connection, returns null when the database is not supported.
+	 */
+	public List<Object[]> searchEmbeddings(Connection connection, ITable table, VectorColumn vectorColumn,
+			List<String> resultColumns, float[] vector, double minScore, int maxResults, String where,
+			List<Object> whereParameters, VectorSearchParameters parameters) throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			return PostgresSearchHandler.search(connection, table, vectorColumn, resultColumns, vector, minScore,
+					maxResults, where, whereParameters, parameters.efSearch(), parameters.probes());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Nearest neighbour search for many query vectors in one round trip per batch
+	 * of query vectors, returns null when the database is not supported. Each row
+	 * starts with the index of its query vector.
+	 */
+	public List<Object[]> searchAllEmbeddings(Connection connection, ITable table, VectorColumn vectorColumn,
+			List<String> resultColumns, List<float[]> vectors, double minScore, int maxResults, String where,
+			List<Object> whereParameters, VectorSearchParameters parameters) throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			return PostgresSearchHandler.searchAll(connection, table, vectorColumn, resultColumns, vectors, minScore,
+					maxResults, where, whereParameters, parameters.efSearch(), parameters.probes());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Hybrid vector and full text search fused with reciprocal rank fusion,
+	 * returns null when the database is not supported.
+	 */
+	public List<Object[]> hybridSearchEmbeddings(Connection connection, ITable table, VectorColumn vectorColumn,
+			String idColumn, String textSearchColumn, String textSearchConfig, List<String> resultColumns,
+			float[] vector, String queryText, int maxResults, String where, List<Object> whereParameters,
+			VectorSearchParameters parameters) throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			return PostgresSearchHandler.hybridSearch(connection, table, vectorColumn, idColumn, textSearchColumn,
+					textSearchConfig, resultColumns, vector, queryText, maxResults, where, whereParameters,
+					parameters.efSearch(), parameters.probes());
+		}
+
+		return null;
+	}
+
+	/**
+	 * Deletes rows in batches directly on the connection, returns -1 when the
+	 * database is not supported.
+	 */
+	public int deleteRows(Connection connection, ITable table, String where, List<Object> parameters, int batchSize)
+			throws SQLException {
+		if (detectDatabaseProduct(connection) == PostgreSQL) {
+			return PostgresDeleteHandler.deleteRows(connection, table, where, parameters, batchSize);
+		}
+
+		return -1;
+	}
+
+	/**
+	 * Replaces the rows with the same key values and inserts the new rows directly
+	 * on the connection, returns false when the database is not supported.
+	 */
+	public boolean mergeRows(Connection connection, ITable table, List<String> columnNames, List<Object[]> rows,
+			List<String> keyColumnNames, boolean bulkLoad) throws SQLException {
 		if (detectDatabaseProduct(connection) == PostgreSQL) {
-			return PostgresIndexHandler.createEmbeddingIndex(connection, table, indexName, column, embeddingListSize);
+			PostgresMergeHandler.mergeRows(connection, table, columnNames, rows, keyColumnNames, bulkLoad);
+			return true;
 		}
 
 		return false;
@@ -0,0 +1,22 @@
+package com.servoy.extensions.aiplugin.database;
+
+import com.servoy.extensions.aiplugin.embedding.EmbeddingMetric;
+
+/**
+ * How embeddings are stored and compared in an embeddings table.
+ *
+ * @param name             sql name of the vector column.
+ * @param metric           distance metric.
+ * @param halfPrecision    the vector column holds 16-bit floats.
+ * @param quantizedName    sql name of the binary quantized column, null when
+ *                         there is none.
+ * @param oversampling     number of candidates per result taken from the
+ *                         quantized column before reranking.
+ */
+public record VectorColumn(String name, EmbeddingMetric metric, boolean halfPrecision, String quantizedName,
+		int oversampling) {
+
+	public boolean rerank() {
+		return quantizedName != null && oversampling > 0;
+	}
+}
@@ -0,0 +1,208 @@
+package com.servoy.extensions.aiplugin.database.postgres;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.List;
+import java.util.UUID;
+
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+
+/**
+ * Streams rows into a table with COPY in binary format, vectors are written in
+ * the pgvector binary representation.
+ */
+public class PostgresCopyLoader {
+
+	private static final byte[] SIGNATURE = { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte) 0xff, '\r', '\n', 0 };
+	private static final int FLUSH_SIZE = 1 << 16;
+
+	private enum Encoding {
+		UUID, TEXT, INT2, INT4, INT8, FLOAT4, FLOAT8, BOOL, VECTOR, HALFVEC;
+
+		static Encoding forType(String typeName) {
+			return switch (typeName) {
+			case "uuid" -> UUID;
+			case "text", "varchar", "bpchar" -> TEXT;
+			case "int2" -> INT2;
+			case "int4" -> INT4;
+			case "int8" -> INT8;
+			case "float4" -> FLOAT4;
+			case "float8" -> FLOAT8;
+			case "bool" -> BOOL;
+			case "vector" -> VECTOR;
+			case "halfvec" -> HALFVEC;
+			default -> null;
+			};
+		}
+	}
+
+	/**
+	 * Copies the rows into the table.
+	 *
+	 * @param tableName   qualified and quoted table name.
+	 * @param columnNames sql names of the columns of the rows.
+	 * @param rows        rows to copy, vectors as float[].
+	 * @return false when a column type or a value is not supported by the binary
+	 *         encoding, nothing is copied then.
+	 */
+	static boolean copyRows(Connection connection, String tableName, List<String> columnNames, List<Object[]> rows)
+			throws SQLException {
+		String columns = String.join(", ", columnNames.stream().map(PostgresMergeHandler::quote).toList());
+		Encoding[] encodings = encodings(connection, tableName, columns, columnNames.size());
+		if (encodings == null || !rows.stream().allMatch(row -> supported(encodings, row))) {
+			return false;
+		}
+
+		PGConnection pgConnection;
+		try {
+			pgConnection = connection.unwrap(PGConnection.class);
+		} catch (SQLException e) {
+			// pooled connection that cannot be unwrapped
+			return false;
+		}
+
+		CopyIn copyIn = pgConnection.getCopyAPI()
+				.copyIn("COPY " + tableName + " (" + columns + ") FROM STDIN (FORMAT BINARY)");
+		try {
+			var buffer = new ByteArrayOutputStream(FLUSH_SIZE * 2);
+			var out = new DataOutputStream(buffer);
+			out.write(SIGNATURE);
+			out.writeInt(0); // flags
+			out.writeInt(0); // header extension length
+			for (Object[] row : rows) {
+				out.writeShort(row.length);
+				for (int i = 0; i < row.length; i++) {
+					writeValue(out, encodings[i], row[i]);
+				}
+				if (buffer.size() >= FLUSH_SIZE) {
+					copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+					buffer.reset();
+				}
+			}
+			out.writeShort(-1); // trailer
+			copyIn.writeToCopy(buffer.toByteArray(), 0, buffer.size());
+			copyIn.endCopy();
+		} catch (IOException e) {
+			throw new SQLException(e);
+		} finally {
+			if (copyIn.isActive()) {
+				copyIn.cancelCopy();
+			}
+		}
+		return true;
+	}
+
+	private static Encoding[] encodings(Connection connection, String tableName, String columns, int columnCount)
+			throws SQLException {
+		var encodings = new Encoding[columnCount];
+		try (Statement statement = connection.createStatement();
+				var resultSet = statement.executeQuery("SELECT " + columns + " FROM " + tableName + " LIMIT 0")) {
+			ResultSetMetaData metaData = resultSet.getMetaData();
+			for (int i = 0; i < columnCount; i++) {
+				encodings[i] = Encoding.forType(metaData.getColumnTypeName(i + 1));
+				if (encodings[i] == null) {
+					return null;
+				}
+			}
+		}
+		return encodings;
+	}
+
+	private static boolean supported(Encoding[] encodings, Object[] row) {
+		for (int i = 0; i < row.length; i++) {
+			Object value = row[i];
+			boolean supported = value == null || switch (encodings[i]) {
+			case UUID -> value instanceof UUID || value instanceof String string && isUUID(string);
+			case TEXT -> value instanceof String;
+			case INT2, INT4, INT8, FLOAT4, FLOAT8 -> value instanceof Number;
+			case BOOL -> value instanceof Boolean;
+			case VECTOR, HALFVEC -> value instanceof float[];
+			};
+			if (!supported) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private static boolean isUUID(String value) {
+		try {
+			UUID.fromString(value);
+			return true;
+		} catch (IllegalArgumentException e) {
+			return false;
+		}
+	}
+
+	private static void writeValue(DataOutputStream out, Encoding encoding, Object value) throws IOException {
+		if (value == null) {
+			out.writeInt(-1);
+			return;
+		}
+		switch (encoding) {
+		case UUID -> {
+			UUID uuid = value instanceof UUID u ? u : UUID.fromString((String) value);
+			out.writeInt(16);
+			out.writeLong(uuid.getMostSignificantBits());
+			out.writeLong(uuid.getLeastSignificantBits());
+		}
+		case TEXT -> {
+			byte[] bytes = ((String) value).getBytes(UTF_8);
+			out.writeInt(bytes.length);
+			out.write(bytes);
+		}
+		case INT2 -> {
+			out.writeInt(2);
+			out.writeShort(((Number) value).shortValue());
+		}
+		case INT4 -> {
+			out.writeInt(4);
+			out.writeInt(((Number) value).intValue());
+		}
+		case INT8 -> {
+			out.writeInt(8);
+			out.writeLong(((Number) value).longValue());
+		}
+		case FLOAT4 -> {
+			out.writeInt(4);
+			out.writeFloat(((Number) value).floatValue());
+		}
+		case FLOAT8 -> {
+			out.writeInt(8);
+			out.writeDouble(((Number) value).doubleValue());
+		}
+		case BOOL -> {
+			out.writeInt(1);
+			out.writeByte(((Boolean) value).booleanValue() ? 1 : 0);
+		}
+		case VECTOR -> {
+			// pgvector binary format: dimension, unused, float4 values
+			float[] floats = (float[]) value;
+			out.writeInt(4 + 4 * floats.length);
+			out.writeShort(floats.length);
+			out.writeShort(0);
+			for (float f : floats) {
+				out.writeFloat(f);
+			}
+		}
+		case HALFVEC -> {
+			// same layout as vector, with float2 values
+			float[] floats = (float[]) value;
+			out.writeInt(4 + 2 * floats.length);
+			out.writeShort(floats.length);
+			out.writeShort(0);
+			for (float f : floats) {
+				out.writeShort(Float.floatToFloat16(f));
+			}
+		}
+		}
+	}
+}
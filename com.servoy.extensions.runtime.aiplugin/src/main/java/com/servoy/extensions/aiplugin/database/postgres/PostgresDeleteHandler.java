@@ -0,0 +1,39 @@
+package com.servoy.extensions.aiplugin.database.postgres;
+
+import static com.servoy.extensions.aiplugin.database.postgres.PostgresIndexHandler.qualifiedName;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+import com.servoy.j2db.persistence.ITable;
+
+public class PostgresDeleteHandler {
+
+	/**
+	 * Deletes the rows matching the where clause in batches, each batch is
+	 * committed so locks and undo space stay bounded.
+	 */
+	public static int deleteRows(Connection connection, ITable table, String where, List<Object> parameters,
+			int batchSize) throws SQLException {
+		String tableName = qualifiedName(table);
+		String sql = "DELETE FROM " + tableName + " WHERE ctid = ANY(ARRAY(SELECT ctid FROM " + tableName
+				+ (where == null ? "" : " WHERE " + where) + " LIMIT " + batchSize + "))";
+		int deleted = 0;
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			for (int i = 0; i < parameters.size(); i++) {
+				statement.setObject(i + 1, parameters.get(i));
+			}
+			int count;
+			do {
+				count = statement.executeUpdate();
+				if (!connection.getAutoCommit()) {
+					connection.commit();
+				}
+				deleted += count;
+			} while (count == batchSize);
+		}
+		return deleted;
+	}
+}
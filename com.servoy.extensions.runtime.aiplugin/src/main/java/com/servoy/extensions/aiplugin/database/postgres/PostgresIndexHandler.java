@@ -1,34 +1,319 @@
 package com.servoy.extensions.aiplugin.database.postgres;
 
+import static com.servoy.extensions.aiplugin.database.postgres.PostgresMergeHandler.quote;
+import static com.servoy.extensions.aiplugin.database.postgres.PostgresMergeHandler.quoteLiteral;
+
 import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
 import java.sql.SQLException;
 import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.Map;
 
+import com.servoy.extensions.aiplugin.database.VectorColumn;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingIndexOptions;
 import com.servoy.j2db.persistence.Column;
 import com.servoy.j2db.persistence.ITable;
+import com.servoy.j2db.util.Debug;
 
 public class PostgresIndexHandler {
 
-	public static boolean createEmbeddingIndex(Connection connection, ITable table, String indexName, Column column,
-			int embeddingListSize) throws SQLException {
+	/**
+	 * State of an index that is built under the temporary name.
+	 */
+	private enum BuildState {
+		ABSENT, BUILDING, INVALID, VALID
+	}
+
+	/**
+	 * Duplicate relation name, another client created the index first.
+	 */
+	private static final String DUPLICATE_TABLE = "42P07";
+	/**
+	 * Missing relation, another client renamed the index first.
+	 */
+	private static final String UNDEFINED_TABLE = "42P01";
 
-		try (Statement statement = connection.createStatement()) {
-			statement.execute("CREATE INDEX IF NOT EXISTS \"" + indexName + "\"" + " ON  " + qualifiedName(table)
-					+ " USING ivfflat (\"" + column.getSQLName() + "\" vector_cosine_ops)" + " WITH (lists = "
-					+ embeddingListSize + ")");
+	/**
+	 * Builds the index without blocking writes to the table. The index is always
+	 * built under a temporary name and then renamed in, an existing index is kept
+	 * and used until then. Clients building the same index concurrently leave each
+	 * other's builds alone, only an invalid index of a failed build is dropped.
+	 *
+	 * @param predicate condition of a partial index, null to index all rows.
+	 */
+	public static boolean buildEmbeddingIndex(Connection connection, ITable table, String indexName,
+			VectorColumn vectorColumn, EmbeddingIndexOptions indexOptions, int embeddingListSize, String predicate,
+			boolean rebuild) throws SQLException {
+		String qualifiedIndexName = qualifiedName(table.getCatalog(), table.getSchema(), indexName);
+		boolean exists = indexExists(connection, qualifiedIndexName);
+		if (!rebuild && exists && (predicate == null || hasPredicate(connection, table, indexName, predicate))) {
+			return true;
+		}
+
+		String where = predicate == null ? "" : " WHERE " + predicate;
+		long rowCount;
+		try (Statement statement = connection.createStatement();
+				ResultSet resultSet = statement
+						.executeQuery("SELECT count(*) FROM " + qualifiedName(table) + where)) {
+			resultSet.next();
+			rowCount = resultSet.getLong(1);
+		}
+		if (rowCount == 0) {
+			// ivfflat computes the list centroids from the rows, both index types build faster after loading
+			return false;
+		}
+
+		String method;
+		var parameters = new ArrayList<String>();
+		if (indexOptions.hnsw()) {
+			method = "hnsw";
+			if (indexOptions.m() > 0) {
+				parameters.add("m = " + indexOptions.m());
+			}
+			if (indexOptions.efConstruction() > 0) {
+				parameters.add("ef_construction = " + indexOptions.efConstruction());
+			}
+		} else {
+			method = "ivfflat";
+			parameters.add("lists = " + (embeddingListSize > 0 ? embeddingListSize : listsFor(rowCount)));
+		}
+		// with a quantized column the candidates are searched on that column only
+		String indexColumn = vectorColumn.rerank()
+				? quote(vectorColumn.quantizedName()) + " bit_hamming_ops"
+				: quote(vectorColumn.name()) + " "
+						+ PostgresSearchHandler.operatorClass(vectorColumn.metric(), vectorColumn.halfPrecision());
+		String buildName = temporaryName(indexName);
+		String qualifiedBuildName = qualifiedName(table.getCatalog(), table.getSchema(), buildName);
+		boolean autoCommit = connection.getAutoCommit();
+		// concurrent index builds cannot run in a transaction
+		connection.setAutoCommit(true);
+		try {
+			switch (buildState(connection, qualifiedBuildName)) {
+			case BUILDING -> {
+				Debug.log("Index " + qualifiedBuildName + " is being built by another client");
+				return true;
+			}
+			case VALID -> {
+				// built by another client that has not renamed it in yet, or did not get to it
+				swapIndex(connection, qualifiedIndexName, qualifiedBuildName, indexName);
+				return true;
+			}
+			// an earlier build that failed leaves an invalid index
+			case INVALID -> dropInvalidIndex(connection, qualifiedBuildName);
+			case ABSENT -> {
+			}
+			}
+			try (Statement statement = connection.createStatement()) {
+				statement.execute("CREATE INDEX CONCURRENTLY " + quote(buildName) + " ON " + qualifiedName(table)
+						+ " USING " + method + " (" + indexColumn + ")"
+						+ (parameters.isEmpty() ? "" : " WITH (" + String.join(", ", parameters) + ")") + where);
+				if (predicate != null) {
+					// the predicate as written, pg_indexes only has the predicate as parsed
+					statement.execute("COMMENT ON INDEX " + qualifiedBuildName + " IS " + quoteLiteral(predicate));
+				}
+			} catch (SQLException e) {
+				if (DUPLICATE_TABLE.equals(e.getSQLState())) {
+					Debug.log("Index " + qualifiedBuildName + " is being built by another client");
+					return true;
+				}
+				dropInvalidIndex(connection, qualifiedBuildName);
+				throw e;
+			}
+			swapIndex(connection, qualifiedIndexName, qualifiedBuildName, indexName);
+		} finally {
+			connection.setAutoCommit(autoCommit);
 		}
 		return true;
 	}
 
-	private static String qualifiedName(ITable table) {
+	/**
+	 * Name to build a new index under next to the existing index, within the 63
+	 * byte limit of Postgres identifiers.
+	 */
+	static String temporaryName(String indexName) {
+		return (indexName.length() > 59 ? indexName.substring(0, 59) : indexName) + "_new";
+	}
+
+	/**
+	 * Replaces the old index, if any, with the new one in one short transaction, so
+	 * searches always have an index. When another client renamed the new index in
+	 * first, the transaction is rolled back and its index is kept.
+	 */
+	private static void swapIndex(Connection connection, String qualifiedIndexName, String qualifiedBuildName,
+			String indexName) throws SQLException {
+		connection.setAutoCommit(false);
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP INDEX IF EXISTS " + qualifiedIndexName);
+			statement.execute("ALTER INDEX " + qualifiedBuildName + " RENAME TO " + quote(indexName));
+			connection.commit();
+		} catch (SQLException e) {
+			connection.rollback();
+			if (!UNDEFINED_TABLE.equals(e.getSQLState())) {
+				throw e;
+			}
+		} catch (RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(true);
+		}
+	}
+
+	/**
+	 * State of the index built under the temporary name. A concurrent build is
+	 * invalid until it is done, it is told apart from a failed build by its entry
+	 * in pg_stat_progress_create_index.
+	 */
+	private static BuildState buildState(Connection connection, String qualifiedBuildName) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("SELECT i.indisvalid, EXISTS (SELECT 1 FROM"
+				+ " pg_stat_progress_create_index p WHERE p.index_relid = i.indexrelid) FROM pg_index i"
+				+ " WHERE i.indexrelid = to_regclass(?)")) {
+			statement.setString(1, qualifiedBuildName);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				if (!resultSet.next()) {
+					return BuildState.ABSENT;
+				}
+				if (resultSet.getBoolean(1)) {
+					return BuildState.VALID;
+				}
+				return resultSet.getBoolean(2) ? BuildState.BUILDING : BuildState.INVALID;
+			}
+		}
+	}
+
+	private static void dropInvalidIndex(Connection connection, String qualifiedBuildName) {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("DROP INDEX CONCURRENTLY IF EXISTS " + qualifiedBuildName);
+		} catch (SQLException e) {
+			Debug.error("Could not drop the invalid index " + qualifiedBuildName, e);
+		}
+	}
+
+	/**
+	 * Values of the column that occur in at least minRows rows, with their number
+	 * of rows.
+	 */
+	public static Map<Object, Long> countRowsByValue(Connection connection, ITable table, Column column,
+			long minRows) throws SQLException {
+		var counts = new LinkedHashMap<Object, Long>();
+		String columnName = quote(column.getSQLName());
+		try (PreparedStatement statement = connection.prepareStatement("SELECT " + columnName + ", count(*) FROM "
+				+ qualifiedName(table) + " WHERE " + columnName + " IS NOT NULL GROUP BY " + columnName
+				+ " HAVING count(*) >= ?")) {
+			statement.setLong(1, minRows);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				while (resultSet.next()) {
+					counts.put(resultSet.getObject(1), Long.valueOf(resultSet.getLong(2)));
+				}
+			}
+		}
+		return counts;
+	}
+
+	/**
+	 * Adds a stored generated column with the binary quantization of the vector
+	 * column (1 bit per dimension), so it is maintained on every insert and
+	 * update, also by COPY.
+	 */
+	public static void addQuantizedColumn(Connection connection, ITable table, Column column, String quantizedName,
+			int dimension) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("ALTER TABLE " + qualifiedName(table) + " ADD COLUMN IF NOT EXISTS "
+					+ quote(quantizedName) + " bit(" + dimension + ") GENERATED ALWAYS AS (binary_quantize("
+					+ quote(column.getSQLName()) + ")::bit(" + dimension + ")) STORED");
+		}
+	}
+
+	/**
+	 * Adds a stored generated tsvector column on the text column and a gin index
+	 * on it, so the full text representation is maintained on every write.
+	 */
+	public static void addTextSearchColumn(Connection connection, ITable table, Column textColumn,
+			String textSearchName, String indexName, String textSearchConfig) throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("ALTER TABLE " + qualifiedName(table) + " ADD COLUMN IF NOT EXISTS "
+					+ quote(textSearchName) + " tsvector GENERATED ALWAYS AS (to_tsvector('"
+					+ textSearchConfig.replace("'", "''") + "'::regconfig, coalesce(" + quote(textColumn.getSQLName())
+					+ ", ''))) STORED");
+			statement.execute("CREATE INDEX IF NOT EXISTS " + quote(indexName) + " ON " + qualifiedName(table)
+					+ " USING gin (" + quote(textSearchName) + ")");
+		}
+	}
+
+	public static void useHalfPrecision(Connection connection, ITable table, Column column, int dimension)
+			throws SQLException {
+		try (Statement statement = connection.createStatement()) {
+			statement.execute("ALTER TABLE " + qualifiedName(table) + " ALTER COLUMN " + quote(column.getSQLName())
+					+ " TYPE halfvec(" + dimension + ")");
+		}
+	}
+
+	public static boolean isHalfPrecision(Connection connection, ITable table, Column column) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT format_type(atttypid, NULL) FROM pg_attribute WHERE attrelid = to_regclass(?) AND attname = ?")) {
+			statement.setString(1, qualifiedName(table));
+			statement.setString(2, column.getSQLName());
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() && "halfvec".equals(resultSet.getString(1));
+			}
+		}
+	}
+
+	/**
+	 * Number of ivfflat lists as recommended by pgvector: rows / 1000 up to 1M
+	 * rows, sqrt(rows) above that.
+	 */
+	static int listsFor(long rowCount) {
+		if (rowCount <= 1_000_000) {
+			return (int) Math.max(1, rowCount / 1000);
+		}
+		return (int) Math.sqrt(rowCount);
+	}
+
+	private static boolean indexExists(Connection connection, String qualifiedIndexName) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement("SELECT to_regclass(?)")) {
+			statement.setString(1, qualifiedIndexName);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() && resultSet.getObject(1) != null;
+			}
+		}
+	}
+
+	/**
+	 * Whether the index is a partial index on the table with the predicate, an
+	 * index with another predicate is replaced.
+	 */
+	private static boolean hasPredicate(Connection connection, ITable table, String indexName, String predicate)
+			throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(
+				"SELECT obj_description(format('%I.%I', schemaname, indexname)::regclass, 'pg_class') FROM pg_indexes"
+						+ " WHERE schemaname = coalesce(?, current_schema()) AND tablename = ? AND indexname = ?")) {
+			String schema = table.getSchema();
+			statement.setString(1, schema == null || schema.isEmpty() ? null : schema);
+			statement.setString(2, table.getSQLName());
+			statement.setString(3, indexName);
+			try (ResultSet resultSet = statement.executeQuery()) {
+				return resultSet.next() && predicate.equals(resultSet.getString(1));
+			}
+		}
+	}
+
+	static String qualifiedName(ITable table) {
+		return qualifiedName(table.getCatalog(), table.getSchema(), table.getSQLName());
+	}
+
+	private static String qualifiedName(String catalog, String schema, String name) {
 		StringBuilder sb = new StringBuilder();
-		if (table.getCatalog() != null && !table.getCatalog().isEmpty()) {
-			sb.append('"').append(table.getCatalog()).append("\".");
+		if (catalog != null && !catalog.isEmpty()) {
+			sb.append('"').append(catalog).append("\".");
 		}
-		if (table.getSchema() != null && !table.getSchema().isEmpty()) {
-			sb.append('"').append(table.getSchema()).append("\".");
+		if (schema != null && !schema.isEmpty()) {
+			sb.append('"').append(schema).append("\".");
 		}
-		sb.append('"').append(table.getSQLName()).append('"');
+		sb.append('"').append(name).append('"');
 		return sb.toString();
 	}
 }
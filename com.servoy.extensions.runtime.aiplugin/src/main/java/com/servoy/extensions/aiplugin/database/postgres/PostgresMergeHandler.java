@@ -0,0 +1,118 @@
+package com.servoy.extensions.aiplugin.database.postgres;
+
+import static com.servoy.extensions.aiplugin.database.postgres.PostgresIndexHandler.qualifiedName;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.sql.Types;
+import java.util.List;
+
+import com.pgvector.PGvector;
+import com.servoy.j2db.persistence.ITable;
+
+public class PostgresMergeHandler {
+
+	private static final String STAGE_TABLE = "_sv_embedding_stage";
+	private static final int INSERT_BATCH_SIZE = 1000;
+
+	/**
+	 * Replaces the rows with the same key values as the new rows and inserts the
+	 * new rows in one transaction. The rows are loaded in a temporary staging
+	 * table first, so existing rows are removed with one join delete instead of a
+	 * delete per key.
+	 *
+	 * @param columnNames    sql names of the columns of the rows.
+	 * @param rows           new rows, vectors as float[].
+	 * @param keyColumnNames sql names of the key columns, rows in the table with
+	 *                       the same key values are replaced, when empty the rows
+	 *                       are inserted without staging.
+	 * @param bulkLoad       load the rows with binary COPY when the column types
+	 *                       allow it.
+	 */
+	public static void mergeRows(Connection connection, ITable table, List<String> columnNames, List<Object[]> rows,
+			List<String> keyColumnNames, boolean bulkLoad) throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			String tableName = qualifiedName(table);
+			boolean staged = !keyColumnNames.isEmpty();
+			String loadTable = staged ? STAGE_TABLE : tableName;
+			if (staged) {
+				try (Statement statement = connection.createStatement()) {
+					statement.execute("CREATE TEMP TABLE " + STAGE_TABLE + " (LIKE " + tableName
+							+ " INCLUDING DEFAULTS) ON COMMIT DROP");
+				}
+			}
+
+			String columns = String.join(", ", columnNames.stream().map(PostgresMergeHandler::quote).toList());
+			if (!bulkLoad || !PostgresCopyLoader.copyRows(connection, loadTable, columnNames, rows)) {
+				insertRows(connection, "INSERT INTO " + loadTable + " (" + columns + ") VALUES ("
+						+ String.join(", ", columnNames.stream().map(column -> "?").toList()) + ")", rows);
+			}
+
+			if (staged) {
+				try (Statement statement = connection.createStatement()) {
+					String keys = String.join(", ", keyColumnNames.stream().map(PostgresMergeHandler::quote).toList());
+					String join = String.join(" AND ", keyColumnNames.stream()
+							.map(key -> "t." + quote(key) + " = s." + quote(key)).toList());
+					statement.executeUpdate("DELETE FROM " + tableName + " t USING (SELECT DISTINCT " + keys + " FROM "
+							+ STAGE_TABLE + ") s WHERE " + join);
+					statement.executeUpdate("INSERT INTO " + tableName + " (" + columns + ") SELECT " + columns
+							+ " FROM " + STAGE_TABLE);
+				}
+			}
+			connection.commit();
+		} catch (SQLException | RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	private static void insertRows(Connection connection, String sql, List<Object[]> rows) throws SQLException {
+		try (PreparedStatement statement = connection.prepareStatement(sql)) {
+			int batched = 0;
+			for (Object[] row : rows) {
+				for (int i = 0; i < row.length; i++) {
+					setParameter(statement, i + 1, row[i]);
+				}
+				statement.addBatch();
+				if (++batched == INSERT_BATCH_SIZE) {
+					statement.executeBatch();
+					batched = 0;
+				}
+			}
+			if (batched > 0) {
+				statement.executeBatch();
+			}
+		}
+	}
+
+	private static void setParameter(PreparedStatement statement, int index, Object value) throws SQLException {
+		if (value == null) {
+			statement.setNull(index, Types.OTHER);
+		} else if (value instanceof float[] floats) {
+			statement.setObject(index, new PGvector(floats));
+		} else if (value instanceof String string) {
+			// let postgres convert to the column type, for uuid and timestamp columns
+			statement.setObject(index, string, Types.OTHER);
+		} else {
+			statement.setObject(index, value);
+		}
+	}
+
+	static String quote(String name) {
+		return '"' + name.replace("\"", "\"\"") + '"';
+	}
+
+	/**
+	 * String literal, backslashes are escaped in an E'' literal so it reads the
+	 * same regardless of standard_conforming_strings.
+	 */
+	static String quoteLiteral(String value) {
+		return "E'" + value.replace("\\", "\\\\").replace("'", "''") + '\'';
+	}
+}
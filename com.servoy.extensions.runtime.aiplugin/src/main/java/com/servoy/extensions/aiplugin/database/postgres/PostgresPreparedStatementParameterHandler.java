@@ -3,6 +3,7 @@ package com.servoy.extensions.aiplugin.database.postgres;
 import java.sql.PreparedStatement;
 import java.sql.SQLException;
 
+import com.pgvector.PGhalfvec;
 import com.pgvector.PGvector;
 import com.servoy.base.query.TypeInfo;
 
@@ -10,7 +11,8 @@ public class PostgresPreparedStatementParameterHandler {
 	static public boolean setParameter(PreparedStatement ps, int paramIndex, TypeInfo typeInfo, Object qd)
 			throws SQLException {
 
-		if ("vector".equalsIgnoreCase(typeInfo.getNativeTypename())) {
+		boolean halfvec = "halfvec".equalsIgnoreCase(typeInfo.getNativeTypename());
+		if (halfvec || "vector".equalsIgnoreCase(typeInfo.getNativeTypename())) {
 			// nulls are handled inside servoy itself
 			float[] floats = null;
 			if (qd instanceof float[] flarray) {
@@ -28,8 +30,7 @@ public class PostgresPreparedStatementParameterHandler {
 				floats = flarray;
 			}
 			if (floats != null) {
-				PGvector vector = new PGvector(floats);
-				ps.setObject(paramIndex, vector);
+				ps.setObject(paramIndex, halfvec ? new PGhalfvec(floats) : new PGvector(floats));
 				return true;
 			}
 		}
@@ -0,0 +1,358 @@
+package com.servoy.extensions.aiplugin.database.postgres;
+
+import static com.servoy.extensions.aiplugin.database.postgres.PostgresIndexHandler.qualifiedName;
+import static com.servoy.extensions.aiplugin.database.postgres.PostgresMergeHandler.quote;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import com.pgvector.PGhalfvec;
+import com.pgvector.PGvector;
+import com.servoy.extensions.aiplugin.database.VectorColumn;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingMetric;
+import com.servoy.j2db.persistence.ITable;
+
+public class PostgresSearchHandler {
+
+	/**
+	 * Maximum number of query vectors per statement of a batch search.
+	 */
+	private static final int MAX_BATCH_QUERIES = 100;
+
+	private static final String SCORE_ALIAS = "_sv_score";
+
+	/**
+	 * Rank constant of reciprocal rank fusion, the usual value from the original
+	 * paper.
+	 */
+	private static final int RRF_K = 60;
+
+	/**
+	 * Minimum number of rows taken from each ranking of a hybrid search.
+	 */
+	private static final int RRF_CANDIDATES = 40;
+
+	/**
+	 * Searches the nearest rows with index settings that only apply to this search
+	 * (SET LOCAL in a transaction of its own).
+	 * <p>
+	 * With a binary quantized column, the candidates are the nearest rows by
+	 * hamming distance on that column, oversampling times the number of results,
+	 * which are then ranked exactly on the full vectors.
+	 *
+	 * @param vectorColumn  the vector column, the metric must match the operator
+	 *                      class of the index for the index to be used.
+	 * @param resultColumns sql names of the columns to return, the score is added
+	 *                      as last value of each row.
+	 * @param where         extra condition with parameter markers, may be null.
+	 * @param efSearch      hnsw.ef_search, 0 for the default.
+	 * @param probes        ivfflat.probes, 0 for the default.
+	 */
+	public static List<Object[]> search(Connection connection, ITable table, VectorColumn vectorColumn,
+			List<String> resultColumns, float[] vector, double minScore, int maxResults, String where,
+			List<Object> whereParameters, int efSearch, int probes) throws SQLException {
+		var parameters = new ArrayList<Object>();
+		String sql = nearestRows(table, vectorColumn, resultColumns, queryVector(vectorColumn, vector),
+				Double.valueOf(minScore), maxResults, where, whereParameters, parameters);
+		return query(connection, sql, parameters, vectorColumn, resultColumns.indexOf(vectorColumn.name()),
+				resultColumns.size() + 1, efSearch(vectorColumn, maxResults, efSearch), probes);
+	}
+
+	/**
+	 * Searches the nearest rows for each of the query vectors, with one lateral
+	 * join over the query vectors per statement. Same as {@link #search}, each row
+	 * starts with the index of its query vector, rows are ordered by query vector
+	 * and score.
+	 */
+	public static List<Object[]> searchAll(Connection connection, ITable table, VectorColumn vectorColumn,
+			List<String> resultColumns, List<float[]> vectors, double minScore, int maxResults, String where,
+			List<Object> whereParameters, int efSearch, int probes) throws SQLException {
+		String vectorType = vectorColumn.halfPrecision() ? "halfvec" : "vector";
+		int vectorIndex = resultColumns.indexOf(vectorColumn.name());
+		var rows = new ArrayList<Object[]>();
+		for (int start = 0; start < vectors.size(); start += MAX_BATCH_QUERIES) {
+			var parameters = new ArrayList<Object>();
+			var sql = new StringBuilder("SELECT q.i, r.* FROM (VALUES ");
+			int end = Math.min(start + MAX_BATCH_QUERIES, vectors.size());
+			for (int i = start; i < end; i++) {
+				sql.append(i == start ? "(" : ", (").append(i).append(", CAST(? AS ").append(vectorType).append("))");
+				parameters.add(queryVector(vectorColumn, vectors.get(i)));
+			}
+			sql.append(") q(i, v) CROSS JOIN LATERAL (")
+					.append(nearestRows(table, vectorColumn, resultColumns, null, Double.valueOf(minScore),
+							maxResults, where, whereParameters, parameters))
+					.append(") r ORDER BY q.i, r.").append(quote(SCORE_ALIAS)).append(" DESC");
+			rows.addAll(query(connection, sql.toString(), parameters, vectorColumn,
+					vectorIndex < 0 ? -1 : vectorIndex + 1, resultColumns.size() + 2,
+					efSearch(vectorColumn, maxResults, efSearch), probes));
+		}
+		return rows;
+	}
+
+	/**
+	 * Hybrid search: the nearest rows by vector and the best rows by full text
+	 * match are fused with reciprocal rank fusion in one statement. The score of a
+	 * row is the sum of 1 / (60 + rank) over both rankings, so there is no minimum
+	 * score.
+	 *
+	 * @param idColumn         sql name of the primary key column.
+	 * @param textSearchColumn sql name of the tsvector column.
+	 * @param textSearchConfig text search configuration of the tsvector column.
+	 * @param queryText        text for the full text ranking, in web search
+	 *                         syntax.
+	 */
+	public static List<Object[]> hybridSearch(Connection connection, ITable table, VectorColumn vectorColumn,
+			String idColumn, String textSearchColumn, String textSearchConfig, List<String> resultColumns,
+			float[] vector, String queryText, int maxResults, String where, List<Object> whereParameters,
+			int efSearch, int probes) throws SQLException {
+		int candidates = Math.max(maxResults * 4, RRF_CANDIDATES);
+		String id = quote(idColumn);
+		String tsv = quote(textSearchColumn);
+		String textRank = "ts_rank_cd(" + tsv + ", _sv_tsquery)";
+
+		var parameters = new ArrayList<Object>();
+		var sql = new StringBuilder();
+		sql.append("WITH vector_ranked AS (SELECT v.").append(id).append(" AS _sv_id, row_number() OVER (ORDER BY v.")
+				.append(quote(SCORE_ALIAS)).append(" DESC) AS _sv_rank FROM (")
+				.append(nearestRows(table, vectorColumn, List.of(idColumn), queryVector(vectorColumn, vector), null,
+						candidates, where, whereParameters, parameters))
+				.append(") v)");
+		sql.append(", text_ranked AS (SELECT ").append(id).append(" AS _sv_id, row_number() OVER (ORDER BY ")
+				.append(textRank).append(" DESC) AS _sv_rank FROM ").append(qualifiedName(table))
+				.append(", websearch_to_tsquery(CAST(? AS regconfig), ?) _sv_tsquery WHERE ").append(tsv)
+				.append(" @@ _sv_tsquery");
+		parameters.add(textSearchConfig);
+		parameters.add(queryText);
+		if (where != null) {
+			sql.append(" AND ").append(where);
+			parameters.addAll(whereParameters);
+		}
+		sql.append(" ORDER BY ").append(textRank).append(" DESC LIMIT ").append(candidates).append(")");
+		sql.append(", fused AS (SELECT coalesce(v._sv_id, l._sv_id) AS _sv_id, coalesce(1.0 / (")
+				.append(RRF_K).append(" + v._sv_rank), 0) + coalesce(1.0 / (").append(RRF_K)
+				.append(" + l._sv_rank), 0) AS _sv_fused FROM vector_ranked v FULL OUTER JOIN text_ranked l")
+				.append(" ON v._sv_id = l._sv_id)");
+		sql.append(" SELECT ").append(selectList(vectorColumn, resultColumns)).append(", f._sv_fused FROM ")
+				.append(qualifiedName(table)).append(" t JOIN fused f ON t.").append(id)
+				.append(" = f._sv_id ORDER BY f._sv_fused DESC LIMIT ").append(maxResults);
+
+		return query(connection, sql.toString(), parameters, vectorColumn, resultColumns.indexOf(vectorColumn.name()),
+				resultColumns.size() + 1, efSearch(vectorColumn, candidates, efSearch), probes);
+	}
+
+	private static Object queryVector(VectorColumn vectorColumn, float[] vector) {
+		return vectorColumn.halfPrecision() ? new PGhalfvec(vector) : new PGvector(vector);
+	}
+
+	/**
+	 * Candidates taken from the hnsw index, which returns at most ef_search rows
+	 * (default 40).
+	 */
+	private static int efSearch(VectorColumn vectorColumn, int maxResults, int efSearch) {
+		if (efSearch > 0) {
+			return efSearch;
+		}
+		int candidates = vectorColumn.rerank() ? maxResults * vectorColumn.oversampling() : maxResults;
+		return candidates > 40 ? Math.min(candidates, 1000) : 0;
+	}
+
+	/**
+	 * Select of the nearest rows to the query vector.
+	 *
+	 * @param queryVector the query vector as parameter, null to use the column v
+	 *                    of the lateral query vectors.
+	 * @param minScore    minimum score, null for no minimum.
+	 * @param parameters  receives the parameters in the order of their markers.
+	 */
+	private static String nearestRows(ITable table, VectorColumn vectorColumn, List<String> resultColumns,
+			Object queryVector, Double minScore, int maxResults, String where, List<Object> whereParameters,
+			List<Object> parameters) {
+		String columns = String.join(", ", resultColumns.stream().map(PostgresMergeHandler::quote).toList());
+		String resultColumnList = selectList(vectorColumn, resultColumns);
+		String vector = queryVector == null ? "q.v" : "?";
+		String distance = quote(vectorColumn.name()) + " " + operator(vectorColumn.metric()) + " " + vector;
+		String score = score(vectorColumn.metric(), distance);
+
+		var sql = new StringBuilder();
+		sql.append("SELECT ").append(resultColumnList).append(", ").append(score).append(" AS ")
+				.append(quote(SCORE_ALIAS));
+		addParameter(parameters, queryVector);
+		if (vectorColumn.rerank()) {
+			sql.append(" FROM (SELECT ").append(columns);
+			if (!resultColumns.contains(vectorColumn.name())) {
+				sql.append(", ").append(quote(vectorColumn.name()));
+			}
+			sql.append(" FROM ").append(qualifiedName(table));
+			if (where != null) {
+				sql.append(" WHERE ").append(where);
+				parameters.addAll(whereParameters);
+			}
+			sql.append(" ORDER BY ").append(quote(vectorColumn.quantizedName())).append(" <~> binary_quantize(")
+					.append(vector).append(") LIMIT ").append(maxResults * vectorColumn.oversampling())
+					.append(") candidates");
+			addParameter(parameters, queryVector);
+			if (minScore != null) {
+				sql.append(" WHERE ").append(score).append(" >= ?");
+				addParameter(parameters, queryVector);
+				parameters.add(minScore);
+			}
+		} else {
+			sql.append(" FROM ").append(qualifiedName(table));
+			String conditionKeyword = " WHERE ";
+			if (minScore != null) {
+				sql.append(conditionKeyword).append(score).append(" >= ?");
+				addParameter(parameters, queryVector);
+				parameters.add(minScore);
+				conditionKeyword = " AND ";
+			}
+			if (where != null) {
+				sql.append(conditionKeyword).append(where);
+				parameters.addAll(whereParameters);
+			}
+		}
+		sql.append(" ORDER BY ").append(distance).append(" LIMIT ").append(maxResults);
+		addParameter(parameters, queryVector);
+		return sql.toString();
+	}
+
+	/**
+	 * The result columns, vectors are returned in the binary send format instead
+	 * of as text.
+	 */
+	private static String selectList(VectorColumn vectorColumn, List<String> resultColumns) {
+		return String.join(", ",
+				resultColumns.stream().map(column -> column.equals(vectorColumn.name())
+						? (vectorColumn.halfPrecision() ? "halfvec_send(" : "vector_send(") + quote(column) + ")"
+						: quote(column)).toList());
+	}
+
+	private static void addParameter(List<Object> parameters, Object queryVector) {
+		if (queryVector != null) {
+			parameters.add(queryVector);
+		}
+	}
+
+	/**
+	 * Runs the search in a transaction of its own, for the SET LOCAL settings.
+	 *
+	 * @param vectorIndex index of the vector column in the rows, -1 when not
+	 *                    selected.
+	 */
+	private static List<Object[]> query(Connection connection, String sql, List<Object> parameters,
+			VectorColumn vectorColumn, int vectorIndex, int columnCount, int efSearch, int probes)
+			throws SQLException {
+		boolean autoCommit = connection.getAutoCommit();
+		connection.setAutoCommit(false);
+		try {
+			try (Statement statement = connection.createStatement()) {
+				if (efSearch > 0) {
+					statement.execute("SET LOCAL hnsw.ef_search = " + efSearch);
+				}
+				if (probes > 0) {
+					statement.execute("SET LOCAL ivfflat.probes = " + probes);
+				}
+			}
+
+			var rows = new ArrayList<Object[]>();
+			try (PreparedStatement statement = connection.prepareStatement(sql)) {
+				for (int i = 0; i < parameters.size(); i++) {
+					statement.setObject(i + 1, parameters.get(i));
+				}
+
+				try (ResultSet resultSet = statement.executeQuery()) {
+					while (resultSet.next()) {
+						var row = new Object[columnCount];
+						for (int i = 0; i < row.length; i++) {
+							row[i] = i == vectorIndex
+									? fromSendFormat(resultSet.getBytes(i + 1), vectorColumn.halfPrecision())
+									: toValue(resultSet.getObject(i + 1));
+						}
+						rows.add(row);
+					}
+				}
+			}
+			connection.commit();
+			return rows;
+		} catch (SQLException | RuntimeException e) {
+			connection.rollback();
+			throw e;
+		} finally {
+			connection.setAutoCommit(autoCommit);
+		}
+	}
+
+	static String operator(EmbeddingMetric metric) {
+		return switch (metric) {
+		case COSINE -> "<=>";
+		case INNER_PRODUCT -> "<#>";
+		case L2 -> "<->";
+		};
+	}
+
+	static String operatorClass(EmbeddingMetric metric, boolean halfPrecision) {
+		String type = halfPrecision ? "halfvec" : "vector";
+		return switch (metric) {
+		case COSINE -> type + "_cosine_ops";
+		case INNER_PRODUCT -> type + "_ip_ops";
+		case L2 -> type + "_l2_ops";
+		};
+	}
+
+	/**
+	 * Score of a distance expression, higher is more similar: cosine similarity,
+	 * inner product (pgvector returns the negative inner product) or 1 / (1 + l2
+	 * distance).
+	 */
+	private static String score(EmbeddingMetric metric, String distance) {
+		return switch (metric) {
+		case COSINE -> "(1 - (" + distance + "))";
+		case INNER_PRODUCT -> "(-(" + distance + "))";
+		case L2 -> "(1 / (1 + (" + distance + ")))";
+		};
+	}
+
+	/**
+	 * Decodes the binary send format of vector and halfvec: dimension (int16),
+	 * unused (int16) and the values as big endian float4 or float2.
+	 */
+	static float[] fromSendFormat(byte[] bytes, boolean halfPrecision) {
+		if (bytes == null) {
+			return null;
+		}
+		var buffer = ByteBuffer.wrap(bytes);
+		int dimension = buffer.getShort() & 0xffff;
+		buffer.getShort();
+		float[] floats = new float[dimension];
+		for (int i = 0; i < dimension; i++) {
+			floats[i] = halfPrecision ? Float.float16ToFloat(buffer.getShort()) : buffer.getFloat();
+		}
+		return floats;
+	}
+
+	/**
+	 * Converts jdbc values to the types used for embeddings and meta data.
+	 */
+	private static Object toValue(Object value) {
+		if (value instanceof PGvector pgVector) {
+			return pgVector.toArray();
+		}
+		if (value instanceof PGhalfvec pgHalfvec) {
+			return pgHalfvec.toArray();
+		}
+		if (value instanceof BigDecimal bigDecimal) {
+			return Double.valueOf(bigDecimal.doubleValue());
+		}
+		if (value instanceof Date date) {
+			return date.toString();
+		}
+		return value;
+	}
+}
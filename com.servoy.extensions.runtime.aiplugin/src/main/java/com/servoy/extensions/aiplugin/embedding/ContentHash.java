@@ -0,0 +1,37 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.HexFormat;
+
+/**
+ * Hashing of text content, used for cache keys and source row fingerprints.
+ */
+public final class ContentHash {
+
+	private ContentHash() {
+	}
+
+	/**
+	 * Hex encoded sha-256 hash of the parts, null parts are hashed differently
+	 * from empty strings.
+	 */
+	public static String sha256(String... parts) {
+		try {
+			MessageDigest digest = MessageDigest.getInstance("SHA-256");
+			for (String part : parts) {
+				if (part == null) {
+					digest.update((byte) 1);
+				} else {
+					digest.update(part.getBytes(UTF_8));
+				}
+				digest.update((byte) 0);
+			}
+			return HexFormat.of().formatHex(digest.digest());
+		} catch (NoSuchAlgorithmException e) {
+			throw new IllegalStateException(e);
+		}
+	}
+}
@@ -0,0 +1,196 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static java.util.regex.Pattern.CASE_INSENSITIVE;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+import com.servoy.j2db.util.Debug;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.InvalidRequestException;
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+
+/**
+ * Splits segments into embedding requests that fit the limits of the provider.
+ * <p>
+ * Segments are packed by item count and by an estimated token count. When the
+ * provider still rejects a request as too large, the request is split in half
+ * and retried. The number of items per request adapts to the measured latency:
+ * fast requests grow the batch size, slow requests shrink it.
+ */
+class EmbeddingBatcher {
+
+	/**
+	 * Request limits of an embedding provider.
+	 *
+	 * @param maxItems  maximum number of segments per request.
+	 * @param maxTokens maximum number of (estimated) tokens per request.
+	 */
+	record Limits(int maxItems, int maxTokens) {
+	}
+
+	static final Limits OPENAI_LIMITS = new Limits(2048, 300_000);
+	static final Limits GEMINI_LIMITS = new Limits(100, 100 * 2048);
+	// in process, the segments of a request are embedded in parallel by the model
+	static final Limits LOCAL_LIMITS = new Limits(1024, 1024 * 512);
+	static final Limits DEFAULT_LIMITS = new Limits(96, 100_000);
+
+	/**
+	 * Requests taking longer than this shrink the batch size, requests taking less
+	 * than half of it grow the batch size.
+	 */
+	static final long TARGET_LATENCY_MILLIS = 5_000;
+
+	private static final int INITIAL_BATCH_SIZE = 100;
+
+	/**
+	 * Error messages of the providers when a request has too many inputs or tokens.
+	 */
+	private static final Pattern SIZE_LIMIT_MESSAGE = Pattern.compile(
+			"too many|too large|too long|maximum|exceed|at most|token limit|input limit", CASE_INSENSITIVE);
+
+	private final DimensionAwareEmbeddingModel model;
+	private final Limits limits;
+	private final long targetLatencyMillis;
+
+	private volatile int batchSize;
+
+	EmbeddingBatcher(DimensionAwareEmbeddingModel model) {
+		this(model, limitsFor(model), TARGET_LATENCY_MILLIS);
+	}
+
+	EmbeddingBatcher(DimensionAwareEmbeddingModel model, Limits limits, long targetLatencyMillis) {
+		this.model = model;
+		this.limits = limits;
+		this.targetLatencyMillis = targetLatencyMillis;
+		this.batchSize = Math.min(INITIAL_BATCH_SIZE, limits.maxItems());
+	}
+
+	/**
+	 * Limits for the provider of the model, the provider classes are matched by
+	 * name because the provider jars are optional.
+	 */
+	static Limits limitsFor(DimensionAwareEmbeddingModel model) {
+		String className = model.getClass().getName();
+		if (className.startsWith("dev.langchain4j.model.openai")) {
+			return OPENAI_LIMITS;
+		}
+		if (className.startsWith("dev.langchain4j.model.googleai")) {
+			return GEMINI_LIMITS;
+		}
+		if (className.startsWith("dev.langchain4j.model.embedding.onnx")) {
+			return LOCAL_LIMITS;
+		}
+		return DEFAULT_LIMITS;
+	}
+
+	/**
+	 * Rough token estimate, about 4 characters per token for most tokenizers.
+	 */
+	static int estimateTokens(TextSegment segment) {
+		return segment.text().length() / 4 + 1;
+	}
+
+	Limits limits() {
+		return limits;
+	}
+
+	int batchSize() {
+		return batchSize;
+	}
+
+	/**
+	 * Embeds all segments, using as many requests as needed.
+	 *
+	 * @param segments segments to embed.
+	 * @return embeddings, in the same order as the segments.
+	 */
+	List<Embedding> embedAll(List<TextSegment> segments) {
+		var embeddings = new ArrayList<Embedding>(segments.size());
+		int start = 0;
+		while (start < segments.size()) {
+			int end = nextBatchEnd(segments, start);
+			embeddings.addAll(embedBatch(segments.subList(start, end)));
+			start = end;
+		}
+		return embeddings;
+	}
+
+	private int nextBatchEnd(List<TextSegment> segments, int start) {
+		int maxItems = batchSize;
+		int tokens = 0;
+		int end = start;
+		while (end < segments.size() && end - start < maxItems) {
+			int segmentTokens = estimateTokens(segments.get(end));
+			if (end > start && tokens + segmentTokens > limits.maxTokens()) {
+				break;
+			}
+			tokens += segmentTokens;
+			end++;
+		}
+		return end;
+	}
+
+	private List<Embedding> embedBatch(List<TextSegment> batch) {
+		long start = System.currentTimeMillis();
+		try {
+			List<Embedding> embeddings = model.embedAll(batch).content();
+			adjustBatchSize(batch.size(), System.currentTimeMillis() - start);
+			return embeddings;
+		} catch (RuntimeException e) {
+			if (batch.size() == 1 || !isBatchTooLarge(e)) {
+				throw e;
+			}
+			Debug.log("Embedding request of " + batch.size() + " segments rejected, retrying as 2 smaller requests");
+			shrinkBatchSize(batch.size() / 2);
+			int half = batch.size() / 2;
+			var embeddings = new ArrayList<Embedding>(batch.size());
+			embeddings.addAll(embedBatch(batch.subList(0, half)));
+			embeddings.addAll(embedBatch(batch.subList(half, batch.size())));
+			return embeddings;
+		}
+	}
+
+	private synchronized void adjustBatchSize(int requestSize, long latencyMillis) {
+		if (latencyMillis > targetLatencyMillis) {
+			batchSize = Math.max(1, Math.min(batchSize, requestSize) / 2);
+		} else if (latencyMillis < targetLatencyMillis / 2 && requestSize >= batchSize) {
+			// only grow when the request was actually full
+			batchSize = Math.min(limits.maxItems(), batchSize + Math.max(1, batchSize / 2));
+		}
+	}
+
+	private synchronized void shrinkBatchSize(int size) {
+		batchSize = Math.max(1, Math.min(batchSize, size));
+	}
+
+	/**
+	 * Whether the provider rejected the request because of its size. Only 413 and
+	 * 400 or invalid request errors that mention a size or token limit count,
+	 * other bad requests (authentication, content policy, invalid input) are not
+	 * fixed by smaller requests.
+	 */
+	static boolean isBatchTooLarge(Throwable e) {
+		for (Throwable t = e; t != null; t = t.getCause()) {
+			if (t instanceof HttpException httpException) {
+				if (httpException.statusCode() == 413) {
+					return true;
+				}
+				if (httpException.statusCode() == 400 && isSizeLimitMessage(t.getMessage())) {
+					return true;
+				}
+			} else if (t instanceof InvalidRequestException && isSizeLimitMessage(t.getMessage())) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private static boolean isSizeLimitMessage(String message) {
+		return message != null && SIZE_LIMIT_MESSAGE.matcher(message).find();
+	}
+}
@@ -0,0 +1,127 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+
+import com.servoy.j2db.util.Debug;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * Cache of embeddings keyed by a hash of the text and the model configuration,
+ * see {@link ModelIdentity}. Unchanged texts are not sent to the embedding model again.
+ * <p>
+ * The first tier is an in-memory LRU cache shared by all clients, the optional
+ * second tier is persistent (a table next to the embeddings table).
+ */
+public class EmbeddingCache {
+
+	/**
+	 * Persistent cache tier.
+	 */
+	interface Tier {
+		Map<String, float[]> load(Collection<String> keys);
+
+		void store(Map<String, float[]> embeddings);
+	}
+
+	private final EmbeddingLruCache<String, float[]> memoryTier;
+	private final Tier persistentTier;
+	private final String modelKey;
+
+	/**
+	 * Creates an embedding cache for a model.
+	 *
+	 * @param memoryTier     shared in-memory cache.
+	 * @param persistentTier persistent cache, may be null.
+	 * @param identity       configuration of the model to cache the embeddings
+	 *                       for.
+	 */
+	EmbeddingCache(EmbeddingLruCache<String, float[]> memoryTier, Tier persistentTier, ModelIdentity identity) {
+		this.memoryTier = memoryTier;
+		this.persistentTier = persistentTier;
+		this.modelKey = identity.key();
+	}
+
+	/**
+	 * Returns the embeddings for the segments, only segments not found in the
+	 * cache are passed to the embedder.
+	 *
+	 * @param segments segments to embed.
+	 * @param embedder calls the embedding model for the segments not in the cache.
+	 * @return embeddings, in the same order as the segments.
+	 */
+	List<Embedding> embedAll(List<TextSegment> segments, Function<List<TextSegment>, List<Embedding>> embedder) {
+		var keys = new ArrayList<String>(segments.size());
+		var found = new LinkedHashMap<String, float[]>();
+		var missingKeys = new LinkedHashSet<String>();
+		for (TextSegment segment : segments) {
+			String key = key(segment.text());
+			keys.add(key);
+			if (!found.containsKey(key)) {
+				float[] vector = memoryTier.get(key);
+				if (vector != null) {
+					found.put(key, vector);
+				} else {
+					missingKeys.add(key);
+				}
+			}
+		}
+
+		if (persistentTier != null && !missingKeys.isEmpty()) {
+			try {
+				persistentTier.load(missingKeys).forEach((key, vector) -> {
+					found.put(key, vector);
+					memoryTier.put(key, vector);
+					missingKeys.remove(key);
+				});
+			} catch (RuntimeException e) {
+				Debug.log("Could not read persistent embedding cache, continuing without it", e);
+			}
+		}
+
+		if (!missingKeys.isEmpty()) {
+			var missingSegments = new ArrayList<TextSegment>(missingKeys.size());
+			var missingSegmentKeys = new ArrayList<String>(missingKeys.size());
+			for (int i = 0; i < segments.size(); i++) {
+				String key = keys.get(i);
+				if (missingKeys.remove(key)) {
+					missingSegments.add(segments.get(i));
+					missingSegmentKeys.add(key);
+				}
+			}
+
+			List<Embedding> embeddings = embedder.apply(missingSegments);
+			var embedded = new LinkedHashMap<String, float[]>();
+			for (int i = 0; i < missingSegmentKeys.size(); i++) {
+				float[] vector = embeddings.get(i).vector();
+				embedded.put(missingSegmentKeys.get(i), vector);
+				memoryTier.put(missingSegmentKeys.get(i), vector);
+			}
+			found.putAll(embedded);
+
+			if (persistentTier != null) {
+				try {
+					persistentTier.store(embedded);
+				} catch (RuntimeException e) {
+					Debug.log("Could not write persistent embedding cache, continuing without it", e);
+				}
+			}
+		}
+
+		return keys.stream().map(key -> Embedding.from(found.get(key))).toList();
+	}
+
+	/**
+	 * Cache key, hex encoded sha-256 hash of the model configuration and text.
+	 */
+	String key(String text) {
+		return ContentHash.sha256(modelKey, text);
+	}
+}
@@ -0,0 +1,22 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+/**
+ * Options of the native vector index of a Servoy embeddings table.
+ *
+ * @param type           index type, "ivfflat" or "hnsw".
+ * @param m              hnsw: maximum number of connections per layer, 0 for
+ *                       the database default.
+ * @param efConstruction hnsw: size of the candidate list while building, 0 for
+ *                       the database default.
+ */
+public record EmbeddingIndexOptions(String type, int m, int efConstruction) {
+
+	public static final String IVFFLAT = "ivfflat";
+	public static final String HNSW = "hnsw";
+
+	public static final EmbeddingIndexOptions DEFAULT = new EmbeddingIndexOptions(IVFFLAT, 0, 0);
+
+	public boolean hnsw() {
+		return HNSW.equals(type);
+	}
+}
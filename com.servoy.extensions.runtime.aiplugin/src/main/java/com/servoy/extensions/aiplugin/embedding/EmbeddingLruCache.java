@@ -0,0 +1,91 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Bounded least-recently-used cache with optional time-to-live, keeps hit and
+ * miss statistics. Instances are shared between clients, all methods are thread
+ * safe.
+ *
+ * @param <K> key type
+ * @param <V> value type
+ */
+public class EmbeddingLruCache<K, V> {
+
+	private record Entry<V>(V value, long expiresAt) {
+	}
+
+	private final int maxSize;
+	private final long ttlMillis;
+	private final LinkedHashMap<K, Entry<V>> entries;
+
+	private long hits;
+	private long misses;
+	private long evictions;
+
+	/**
+	 * Creates a cache.
+	 *
+	 * @param maxSize   maximum number of entries, least recently used entries are
+	 *                  evicted first.
+	 * @param ttlMillis time to live of an entry in milliseconds, 0 or less to keep
+	 *                  entries until they are evicted.
+	 */
+	public EmbeddingLruCache(int maxSize, long ttlMillis) {
+		this.maxSize = maxSize;
+		this.ttlMillis = ttlMillis;
+		this.entries = new LinkedHashMap<>(16, 0.75f, true) {
+			@Override
+			protected boolean removeEldestEntry(Map.Entry<K, Entry<V>> eldest) {
+				if (size() > EmbeddingLruCache.this.maxSize) {
+					evictions++;
+					return true;
+				}
+				return false;
+			}
+		};
+	}
+
+	public synchronized V get(K key) {
+		Entry<V> entry = entries.get(key);
+		if (entry != null && entry.expiresAt() < System.currentTimeMillis()) {
+			entries.remove(key);
+			evictions++;
+			entry = null;
+		}
+		if (entry == null) {
+			misses++;
+			return null;
+		}
+		hits++;
+		return entry.value();
+	}
+
+	public synchronized void put(K key, V value) {
+		if (maxSize > 0) {
+			entries.put(key, new Entry<>(value,
+					ttlMillis > 0 ? System.currentTimeMillis() + ttlMillis : Long.MAX_VALUE));
+		}
+	}
+
+	public synchronized void clear() {
+		entries.clear();
+	}
+
+	public synchronized int size() {
+		return entries.size();
+	}
+
+	public synchronized long hits() {
+		return hits;
+	}
+
+	public synchronized long misses() {
+		return misses;
+	}
+
+	public synchronized long evictions() {
+		return evictions;
+	}
+}
@@ -65,6 +65,12 @@ public class EmbeddingMetaDataColumnAdder {
 	/**
 	 * Sets a flag for the meta data column to add, for example
 	 * JSColumn.TENANT_COLUMN or JSColumn.UUID_COLUMN.
+	 * <p>
+	 * Searches and removes only match the embeddings of the tenant value of the
+	 * client (security.setTenantValue) in a tenant column. On PostgreSQL,
+	 * buildIndex also builds a vector index per tenant with at least
+	 * servoy.aiplugin.tenant_index_rows (default 10000) embeddings, so a search of
+	 * a large tenant does not scan the nearest neighbours of the other tenants.
 	 *
 	 * @param flag flag to set for the meta data column.
 	 * @return This adder instance.
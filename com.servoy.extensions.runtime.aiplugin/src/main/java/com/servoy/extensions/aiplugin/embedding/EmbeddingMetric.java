@@ -0,0 +1,32 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+/**
+ * Distance metric used to compare embeddings in a Servoy embeddings table.
+ */
+public enum EmbeddingMetric {
+	/**
+	 * Cosine similarity, works for any model.
+	 */
+	COSINE,
+	/**
+	 * Inner product, same ranking as cosine for unit-length vectors but cheaper
+	 * to compute.
+	 */
+	INNER_PRODUCT,
+	/**
+	 * Euclidean distance.
+	 */
+	L2;
+
+	/**
+	 * Parses the metric name used in scripting: "cosine", "innerProduct" or "l2".
+	 */
+	public static EmbeddingMetric fromName(String name) {
+		return switch (name) {
+		case "cosine" -> COSINE;
+		case "innerProduct" -> INNER_PRODUCT;
+		case "l2" -> L2;
+		default -> throw new IllegalArgumentException("metric must be cosine, innerProduct or l2");
+		};
+	}
+}
@@ -3,6 +3,7 @@ package com.servoy.extensions.aiplugin.embedding;
 import static java.util.Arrays.stream;
 import static java.util.stream.Collectors.toList;
 
+import java.nio.file.Path;
 import java.util.List;
 
 import org.mozilla.javascript.NativePromise;
@@ -11,12 +12,12 @@ import org.mozilla.javascript.annotations.JSFunction;
 import com.servoy.extensions.aiplugin.AIProvider;
 import com.servoy.j2db.documentation.ServoyDocumented;
 import com.servoy.j2db.scripting.IJavaScriptType;
+import com.servoy.j2db.util.Debug;
 
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
 import dev.langchain4j.model.output.Response;
-import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
 
 /**
  * EmbeddingModel provides methods to generate embeddings for text and manage
@@ -30,6 +31,14 @@ public class EmbeddingModel implements IJavaScriptType {
 	 * The embedding model used for generating embeddings.
 	 */
 	private final DimensionAwareEmbeddingModel model;
+	/**
+	 * Configuration of the model, embeddings are shared on it between clients.
+	 */
+	private final ModelIdentity identity;
+	/**
+	 * Splits embedding calls into requests that fit the provider limits.
+	 */
+	private final EmbeddingBatcher batcher;
 	/**
 	 * The client plugin access instance for Servoy scripting context.
 	 */
@@ -40,10 +49,13 @@ public class EmbeddingModel implements IJavaScriptType {
 	 * access.
 	 *
 	 * @param model    The embedding model to use.
+	 * @param identity The configuration of the model.
 	 * @param provider ai plugin remote service.
 	 */
-	public EmbeddingModel(DimensionAwareEmbeddingModel model, AIProvider provider) {
+	public EmbeddingModel(DimensionAwareEmbeddingModel model, ModelIdentity identity, AIProvider provider) {
 		this.model = model;
+		this.identity = identity;
+		this.batcher = new EmbeddingBatcher(model);
 		this.provider = provider;
 	}
 
@@ -87,20 +99,77 @@ public class EmbeddingModel implements IJavaScriptType {
 	public NativePromise embedding(String[] texts) {
 		return provider.async((texts == null || texts.length == 0) ? null : () -> {
 			List<TextSegment> segments = stream(texts).map(TextSegment::textSegment).collect(toList());
-			Response<List<Embedding>> embeddings = model.embedAll(segments);
-			List<Embedding> content = embeddings.content();
-			return content.stream().map(Embedding::vector).toArray(float[][]::new);
+			List<Embedding> embeddings = batcher.embedAll(segments);
+			return embeddings.stream().map(Embedding::vector).toArray(float[][]::new);
 		});
 	}
 
 	/**
 	 * Creates an in-memory embedding store for storing and retrieving embeddings.
+	 * Searches use all cores, stores with more than 100000 embeddings are
+	 * searched with an approximate nearest neighbour graph when no filter is
+	 * given.
 	 *
 	 * @return An EmbeddingStore backed by an in-memory store.
 	 */
 	@JSFunction
 	public EmbeddingStore createInMemoryStore() {
-		return new EmbeddingStore(provider, new InMemoryEmbeddingStore<>(), model);
+		return new EmbeddingStore(provider, new InMemoryVectorStore(model.dimension()), model, identity);
+	}
+
+	/**
+	 * Returns the in-memory embedding store with this name that is shared by all
+	 * clients of the solution on the server, created empty by the first client
+	 * that asks for it. All clients must use the same embedding model for the
+	 * store. The store is kept in memory while clients that asked for it are open,
+	 * so many clients can search the same embeddings with one copy in memory.
+	 * Searches do not wait for changes.
+	 *
+	 * @param name The name of the shared store.
+	 * @return An EmbeddingStore backed by the shared in-memory store, or null if
+	 *         it cannot be created.
+	 */
+	@JSFunction
+	public EmbeddingStore createSharedInMemoryStore(String name) {
+		try {
+			SharedVectorStore store = provider.acquireSharedStore(name, identity.modelKey(),
+					model.dimension());
+			return new EmbeddingStore(provider, store, model, identity);
+		} catch (Exception e) {
+			Debug.error(e);
+		}
+		return null;
+	}
+
+	/**
+	 * Asynchronously opens a file written by EmbeddingStore.save as a compressed
+	 * read mostly store, for indexes that are too large to keep in memory. Every
+	 * embedding is kept in memory as a product quantization code of
+	 * bytesPerVector bytes, the full vectors stay in the memory mapped file: a
+	 * quarter of the dimension uses 16 times less memory, an eighth 32 times.
+	 * With rerank the best candidates are scored again with their full vector,
+	 * which makes the results nearly exact.
+	 * <p>
+	 * The first open trains the codes, which can take a while for large files;
+	 * they are cached in a file next to it with the extension .pq. The file must
+	 * not be changed while the store uses it.
+	 *
+	 * @param path           The file path on the server.
+	 * @param bytesPerVector The size of a code, must divide the dimension.
+	 * @param rerank         Whether to rerank with the full vectors.
+	 * @return A Promise resolving to an EmbeddingStore backed by the compressed
+	 *         store.
+	 */
+	@JSFunction
+	public NativePromise loadQuantizedInMemoryStore(String path, int bytesPerVector, boolean rerank) {
+		return provider.async(() -> {
+			QuantizedVectorStore store = QuantizedVectorStore.open(Path.of(path), bytesPerVector, rerank);
+			if (store.dimension() != model.dimension()) {
+				throw new IllegalArgumentException("file dimension " + store.dimension()
+						+ " differs from model dimension " + model.dimension());
+			}
+			return new EmbeddingStore(provider, store, model, identity);
+		});
 	}
 
 	/**
@@ -110,7 +179,7 @@ public class EmbeddingModel implements IJavaScriptType {
 	 */
 	@JSFunction
 	public ServoyEmbeddingStoreBuilder createServoyEmbeddingStoreBuilder() {
-		return new ServoyEmbeddingStoreBuilder(provider, model);
+		return new ServoyEmbeddingStoreBuilder(provider, model, identity);
 	}
 
 }
\ No newline at end of file
@@ -0,0 +1,198 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+/**
+ * Staged embedding pipeline: the reader submits chunks of segments, a number of
+ * embedding workers call the model concurrently and a single writer stores the
+ * results in batches. The stages are connected by bounded queues, so a slow
+ * stage applies back pressure to the stages before it.
+ * <p>
+ * Each submitted chunk is written in one store call, segments of a chunk are
+ * never spread over multiple writes.
+ */
+class EmbeddingPipeline implements AutoCloseable {
+
+	/**
+	 * Number of segments the writer collects before storing them.
+	 */
+	static final int WRITE_BATCH_SIZE = 500;
+
+	private static final List<TextSegment> END_OF_INPUT = new ArrayList<>(0);
+	private static final Chunk END_OF_CHUNKS = new Chunk(List.of(), List.of());
+
+	private record Chunk(List<TextSegment> segments, List<Embedding> embeddings) {
+	}
+
+	private final Function<List<TextSegment>, List<Embedding>> embedder;
+	private final EmbeddingStore<TextSegment> embeddingStore;
+	private final int workers;
+
+	private final BlockingQueue<List<TextSegment>> embedQueue;
+	private final BlockingQueue<Chunk> writeQueue;
+	private final AtomicReference<Throwable> failure = new AtomicReference<>();
+	private final ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor();
+	private final List<Future<?>> workerFutures = new ArrayList<>();
+	private final Future<?> writerFuture;
+
+	private boolean closed = false;
+
+	/**
+	 * Starts the embedding workers and the writer.
+	 *
+	 * @param embedder       Called by the workers to embed a chunk of segments.
+	 * @param embeddingStore The store the writer adds the embeddings to.
+	 * @param workers        Number of concurrent embedding workers.
+	 */
+	EmbeddingPipeline(Function<List<TextSegment>, List<Embedding>> embedder,
+			EmbeddingStore<TextSegment> embeddingStore, int workers) {
+		this.embedder = embedder;
+		this.embeddingStore = embeddingStore;
+		this.workers = Math.max(1, workers);
+		this.embedQueue = new ArrayBlockingQueue<>(this.workers * 2);
+		this.writeQueue = new ArrayBlockingQueue<>(this.workers * 2);
+
+		for (int i = 0; i < this.workers; i++) {
+			workerFutures.add(executor.submit(this::embedLoop));
+		}
+		writerFuture = executor.submit(this::writeLoop);
+	}
+
+	/**
+	 * Hands a chunk of segments to the embedding workers, blocks while the
+	 * workers are busy.
+	 *
+	 * @param segments segments to embed and store.
+	 * @return false when the pipeline has failed and the reader should stop.
+	 */
+	boolean submit(List<TextSegment> segments) {
+		try {
+			while (failure.get() == null) {
+				if (segments.isEmpty() || embedQueue.offer(segments, 100, MILLISECONDS)) {
+					return true;
+				}
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			failure.compareAndSet(null, e);
+		}
+		return false;
+	}
+
+	/**
+	 * Waits until all submitted chunks are stored.
+	 *
+	 * @throws Exception the first error of any of the stages.
+	 */
+	void finish() throws Exception {
+		close();
+		Throwable error = failure.get();
+		if (error instanceof Exception exception) {
+			throw exception;
+		}
+		if (error != null) {
+			throw new RuntimeException(error);
+		}
+	}
+
+	@Override
+	public void close() throws InterruptedException {
+		if (closed) {
+			return;
+		}
+		closed = true;
+		try {
+			for (int i = 0; i < workers; i++) {
+				embedQueue.put(END_OF_INPUT);
+			}
+			awaitAll(workerFutures);
+			writeQueue.put(END_OF_CHUNKS);
+			awaitAll(List.of(writerFuture));
+		} finally {
+			executor.shutdownNow();
+		}
+	}
+
+	private void embedLoop() {
+		try {
+			List<TextSegment> segments;
+			while ((segments = embedQueue.take()) != END_OF_INPUT) {
+				if (failure.get() != null) {
+					// keep draining so the reader never blocks on a full queue
+					continue;
+				}
+				try {
+					List<Embedding> embeddings = embedder.apply(segments);
+					writeQueue.put(new Chunk(segments, embeddings));
+				} catch (InterruptedException e) {
+					throw e;
+				} catch (Exception e) {
+					failure.compareAndSet(null, e);
+				}
+			}
+		} catch (InterruptedException e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	private void writeLoop() {
+		var segments = new ArrayList<TextSegment>();
+		var embeddings = new ArrayList<Embedding>();
+		try {
+			Chunk chunk;
+			while ((chunk = writeQueue.take()) != END_OF_CHUNKS) {
+				if (failure.get() != null) {
+					continue;
+				}
+				segments.addAll(chunk.segments());
+				embeddings.addAll(chunk.embeddings());
+				if (segments.size() >= WRITE_BATCH_SIZE) {
+					write(segments, embeddings);
+				}
+			}
+			if (failure.get() == null) {
+				write(segments, embeddings);
+			}
+		} catch (InterruptedException e) {
+			failure.compareAndSet(null, e);
+		}
+	}
+
+	private void write(List<TextSegment> segments, List<Embedding> embeddings) {
+		if (segments.isEmpty()) {
+			return;
+		}
+		try {
+			embeddingStore.addAll(embeddings, segments);
+		} catch (Exception e) {
+			failure.compareAndSet(null, e);
+		}
+		segments.clear();
+		embeddings.clear();
+	}
+
+	private void awaitAll(List<Future<?>> futures) throws InterruptedException {
+		for (Future<?> future : futures) {
+			try {
+				future.get();
+			} catch (ExecutionException e) {
+				failure.compareAndSet(null, e.getCause());
+			}
+		}
+	}
+}
@@ -0,0 +1,118 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+
+/**
+ * Combines embedding requests for single texts that arrive within a short
+ * window into one embedAll call per model configuration. Every client builds its
+ * own model instance, requests are combined on the {@link ModelIdentity} so
+ * that models with the same provider, name, base url, dimension and API key
+ * share a call, while models that differ in any of those are never combined.
+ * Instances are shared between clients, all methods are thread safe.
+ */
+public class EmbeddingRequestCoalescer {
+
+	private static final ExecutorService virtualThreadExecutor = Executors.newVirtualThreadPerTaskExecutor();
+
+	private final class Batch {
+		private final ModelIdentity identity;
+		private final DimensionAwareEmbeddingModel model;
+		// identical texts share one embedding
+		private final Map<String, List<CompletableFuture<float[]>>> requests = new LinkedHashMap<>();
+
+		Batch(ModelIdentity identity, DimensionAwareEmbeddingModel model) {
+			this.identity = identity;
+			this.model = model;
+		}
+
+		void run() {
+			var texts = new ArrayList<>(requests.keySet());
+			try {
+				List<Embedding> embeddings = model.embedAll(texts.stream().map(TextSegment::from).toList()).content();
+				for (int i = 0; i < texts.size(); i++) {
+					float[] vector = embeddings.get(i).vector();
+					requests.get(texts.get(i)).forEach(future -> future.complete(vector));
+				}
+			} catch (Exception e) {
+				requests.values().forEach(futures -> futures.forEach(future -> future.completeExceptionally(e)));
+			}
+		}
+	}
+
+	private final long windowMillis;
+	private final int maxBatchSize;
+	private final Map<ModelIdentity, Batch> pending = new HashMap<>();
+
+	/**
+	 * Creates a coalescer.
+	 *
+	 * @param windowMillis how long the first request of a batch waits for other
+	 *                     requests.
+	 * @param maxBatchSize number of texts after which a batch is sent without
+	 *                     waiting for the window to end.
+	 */
+	public EmbeddingRequestCoalescer(long windowMillis, int maxBatchSize) {
+		this.windowMillis = windowMillis;
+		this.maxBatchSize = Math.max(1, maxBatchSize);
+	}
+
+	/**
+	 * Requests the embedding of a text, the returned future completes when the
+	 * batch the request was added to has been embedded.
+	 *
+	 * @param identity configuration of the model, requests for the same
+	 *                 configuration are combined.
+	 * @param model    model to embed with, a batch is embedded with the model of
+	 *                 its first request.
+	 * @param text     text to embed.
+	 * @return future for the embedding vector.
+	 */
+	public CompletableFuture<float[]> embed(ModelIdentity identity, DimensionAwareEmbeddingModel model, String text) {
+		var future = new CompletableFuture<float[]>();
+		Batch full = null;
+		synchronized (pending) {
+			Batch batch = pending.get(identity);
+			if (batch == null) {
+				Batch created = new Batch(identity, model);
+				batch = created;
+				pending.put(identity, created);
+				virtualThreadExecutor.submit(() -> {
+					Thread.sleep(windowMillis);
+					if (take(created)) {
+						created.run();
+					}
+					return null;
+				});
+			}
+			batch.requests.computeIfAbsent(text, t -> new ArrayList<>()).add(future);
+			if (batch.requests.size() >= maxBatchSize && take(batch)) {
+				full = batch;
+			}
+		}
+		if (full != null) {
+			virtualThreadExecutor.submit(full::run);
+		}
+		return future;
+	}
+
+	/**
+	 * Removes the batch from the pending batches, returns false when it was already
+	 * taken.
+	 */
+	private boolean take(Batch batch) {
+		synchronized (pending) {
+			return pending.remove(batch.identity, batch);
+		}
+	}
+}
@@ -1,9 +1,21 @@
 package com.servoy.extensions.aiplugin.embedding;
 
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.FINGERPRINT_COLUMN;
+
+import java.nio.file.Path;
+import java.text.Normalizer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.Semaphore;
+import java.util.function.Function;
 
 import org.mozilla.javascript.NativePromise;
 import org.mozilla.javascript.annotations.JSFunction;
@@ -16,6 +28,8 @@ import com.servoy.j2db.querybuilder.IQueryBuilder;
 import com.servoy.j2db.querybuilder.IQueryBuilderResult;
 import com.servoy.j2db.scripting.IJavaScriptType;
 import com.servoy.j2db.scripting.IScriptable;
+import com.servoy.j2db.scripting.JSMap;
+import com.servoy.j2db.util.Debug;
 
 import dev.langchain4j.data.document.Document;
 import dev.langchain4j.data.document.Metadata;
@@ -23,9 +37,11 @@ import dev.langchain4j.data.document.splitter.DocumentByParagraphSplitter;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
-import dev.langchain4j.model.output.Response;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
 
 /**
  * EmbeddingStore provides methods to embed text data and perform similarity
@@ -35,6 +51,16 @@ import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 @ServoyDocumented
 public class EmbeddingStore implements IScriptable, IJavaScriptType {
 
+	/**
+	 * Maximum number of source rows read per chunk by embedAll.
+	 */
+	private static final int MAX_READ_CHUNK_SIZE = 1000;
+
+	/**
+	 * Default number of concurrent embedding calls used by embedAll.
+	 */
+	private static final int DEFAULT_PARALLELISM = 4;
+
 	/**
 	 * The client plugin access instance for Servoy scripting context.
 	 */
@@ -48,6 +74,28 @@ public class EmbeddingStore implements IScriptable, IJavaScriptType {
 	 * The embedding model used for generating embeddings.
 	 */
 	private final DimensionAwareEmbeddingModel model;
+	/**
+	 * Configuration of the model, query embeddings are shared on it.
+	 */
+	private final ModelIdentity identity;
+	/**
+	 * Splits embedding calls into requests that fit the provider limits.
+	 */
+	private final EmbeddingBatcher batcher;
+	/**
+	 * Cache of embeddings by content hash, may be null.
+	 */
+	private final EmbeddingCache cache;
+
+	/**
+	 * Number of concurrent embedding calls used by embedAll.
+	 */
+	private int parallelism = DEFAULT_PARALLELISM;
+
+	/**
+	 * Only embed changed source rows in embedAll.
+	 */
+	private boolean incremental = false;
 
 	/**
 	 * Constructs an EmbeddingStore with the given embedding store, model, and
@@ -56,18 +104,75 @@ public class EmbeddingStore implements IScriptable, IJavaScriptType {
 	 * @param provider       The plugin store implementation to use.
 	 * @param embeddingStore The embedding store implementation to use.
 	 * @param model          The embedding model to use.
+	 * @param identity       The configuration of the model.
 	 */
 	public EmbeddingStore(AIProvider provider,
 			dev.langchain4j.store.embedding.EmbeddingStore<TextSegment> embeddingStore,
-			DimensionAwareEmbeddingModel model) {
+			DimensionAwareEmbeddingModel model, ModelIdentity identity) {
+		this(provider, embeddingStore, model, identity, null);
+	}
+
+	/**
+	 * Constructs an EmbeddingStore with the given embedding store, model, embedding
+	 * cache and plugin access.
+	 *
+	 * @param provider       The plugin store implementation to use.
+	 * @param embeddingStore The embedding store implementation to use.
+	 * @param model          The embedding model to use.
+	 * @param identity       The configuration of the model.
+	 * @param cache          The cache of embeddings by content hash, may be null.
+	 */
+	public EmbeddingStore(AIProvider provider,
+			dev.langchain4j.store.embedding.EmbeddingStore<TextSegment> embeddingStore,
+			DimensionAwareEmbeddingModel model, ModelIdentity identity, EmbeddingCache cache) {
 		this.provider = provider;
 		this.embeddingStore = embeddingStore;
 		this.model = model;
+		this.identity = identity;
+		this.batcher = new EmbeddingBatcher(model);
+		this.cache = cache;
+	}
+
+	/**
+	 * Sets the number of concurrent embedding calls used by embedAll (default 4).
+	 * While the embedding calls are running, the next source rows are read and
+	 * finished embeddings are written to the store. This is also the number of
+	 * concurrent searches of searchAll on stores without batch search.
+	 *
+	 * @param parallelism number of concurrent embedding calls.
+	 * @return This store instance.
+	 */
+	@JSFunction
+	public EmbeddingStore parallelism(int parallelism) {
+		this.parallelism = Math.max(1, parallelism);
+		return this;
+	}
+
+	/**
+	 * Sets the incremental option for embedAll. When set, only source rows whose
+	 * text has changed since the previous embedAll, or that were not embedded yet,
+	 * are embedded. Embeddings of source rows that are not in the foundSet anymore
+	 * are removed.
+	 * <p>
+	 * This requires a Servoy embedding store that was built with the fingerprint
+	 * option.
+	 *
+	 * @param incremental incremental option.
+	 * @return This store instance.
+	 */
+	@JSFunction
+	public EmbeddingStore incremental(boolean incremental) {
+		this.incremental = incremental;
+		return this;
 	}
 
 	/**
 	 * Generates embeddings for all records in the specified foundSet for the given
 	 * textColumns and stores them in the specified vector column.
+	 * <p>
+	 * Reading the source rows, calling the embedding model and writing to the store
+	 * run as a pipeline, see {@link #parallelism(int)}. With the incremental option
+	 * only changed rows are embedded, see {@link #incremental(boolean)}.
 	 *
 	 * @param foundSet    records in the foundSet are embedded
 	 * @param textColumns columns of the foundSet to embed
@@ -87,28 +192,79 @@ public class EmbeddingStore implements IScriptable, IJavaScriptType {
 				}
 				query.result().addPk();
 
-				provider.getDatabaseManager().loadDataSetsByQuery(query, 0, 100, (dataSet) -> {
-					var segments = new ArrayList<TextSegment>(dataSet.getRowCount() * textColumns.length);
-					dataSet.getRows().forEach((row) -> {
-						var metaData = new HashMap<String, Object>();
-						// pk column names
-						for (int i = textColumns.length; i < dataSet.getColumnCount(); i++) {
-							metaData.put(dataSet.getColumnNames()[i], row[i]);
-						}
+				ServoyEmbeddingStore servoyStore = embeddingStore instanceof ServoyEmbeddingStore store ? store : null;
+				boolean withFingerprint = servoyStore != null && servoyStore.hasFingerprint();
+				if (incremental && !withFingerprint) {
+					throw new IllegalStateException(
+							"Incremental embedAll requires a Servoy embedding store built with the fingerprint option");
+				}
+
+				// fingerprints of the rows embedded by earlier runs, source rows that are not found are removed
+				// afterwards; embeddings added otherwise have no fingerprint and are left alone
+				Map<SourceKey, Object[]> storedSourceKeys = new HashMap<>();
+				Map<SourceKey, String> storedFingerprints = incremental
+						? servoyStore.loadFingerprints(storedSourceKeys)
+						: Map.of();
+				List<Object[]> removedSourceKeys = new ArrayList<>();
 
-						// text columns
-						for (int i = 0; i < textColumns.length; i++) {
-							if (row[i] != null) {
-								segments.add(TextSegment.textSegment(row[i].toString(), Metadata.from(metaData)));
+				// read as many rows as fit in one embedding request, the batcher splits further when needed
+				int chunkSize = Math.min(MAX_READ_CHUNK_SIZE,
+						Math.max(1, batcher.limits().maxItems() / Math.max(1, textColumns.length)));
+				try (EmbeddingPipeline pipeline = new EmbeddingPipeline(this::embedSegments, embeddingStore, parallelism)) {
+					provider.getDatabaseManager().loadDataSetsByQuery(query, 0, chunkSize, (dataSet) -> {
+						var segments = new ArrayList<TextSegment>(dataSet.getRowCount() * textColumns.length);
+						dataSet.getRows().forEach((row) -> {
+							var metaData = new HashMap<String, Object>();
+							// pk column names
+							for (int i = textColumns.length; i < dataSet.getColumnCount(); i++) {
+								metaData.put(dataSet.getColumnNames()[i], row[i]);
 							}
-						}
+
+							if (withFingerprint) {
+								String fingerprint = fingerprint(row, textColumns.length);
+								if (incremental) {
+									Object[] keyValues = new Object[dataSet.getColumnCount() - textColumns.length];
+									System.arraycopy(row, textColumns.length, keyValues, 0, keyValues.length);
+									SourceKey sourceKey = SourceKey.of(keyValues);
+									Object[] stored = storedSourceKeys.remove(sourceKey);
+									if (fingerprint.equals(storedFingerprints.get(sourceKey))) {
+										// not changed since the previous run
+										return;
+									}
+									if (stored != null && !hasText(row, textColumns.length)) {
+										// text was cleared, nothing is added that replaces the old embeddings
+										removedSourceKeys.add(stored);
+										return;
+									}
+									// a changed row replaces all its embeddings when it is stored
+								}
+								metaData.put(FINGERPRINT_COLUMN, fingerprint);
+							}
+
+							// text columns
+							for (int i = 0; i < textColumns.length; i++) {
+								if (row[i] != null) {
+									segments.add(TextSegment.textSegment(row[i].toString(), Metadata.from(metaData)));
+								}
+							}
+						});
+
+						// embedding and storing is done by the pipeline, continue reading while it is busy
+						return pipeline.submit(segments);
 					});
+					pipeline.finish();
+				}
 
-					Response<List<Embedding>> embeddings = model.embedAll(segments);
-					embeddingStore.addAll(embeddings.content(), segments);
+				if (incremental) {
+					// source rows that were embedded before but are not in the foundSet anymore
+					removedSourceKeys.addAll(storedSourceKeys.values());
+					servoyStore.removeBySourceKeys(removedSourceKeys);
+				}
 
-					return true; // process all dataset chunks
-				});
+				if (servoyStore != null) {
+					// the vector index is built once the rows are loaded
+					servoyStore.buildIndex(false);
+				}
 			} finally {
 				foundSet.setSelectedIndexes(selectedIndexes);
 			}
@@ -116,6 +272,23 @@ public class EmbeddingStore implements IScriptable, IJavaScriptType {
 		});
 	}
 
+	private static String fingerprint(Object[] row, int textColumnCount) {
+		String[] texts = new String[textColumnCount];
+		for (int i = 0; i < textColumnCount; i++) {
+			texts[i] = row[i] == null ? null : row[i].toString();
+		}
+		return ContentHash.sha256(texts);
+	}
+
+	private static boolean hasText(Object[] row, int textColumnCount) {
+		for (int i = 0; i < textColumnCount; i++) {
+			if (row[i] != null) {
+				return true;
+			}
+		}
+		return false;
+	}
+
 	/**
 	 * Asynchronously embeds an array of text data with optional metadata and stores
 	 * the results.
@@ -139,9 +312,8 @@ public class EmbeddingStore implements IScriptable, IJavaScriptType {
 					}
 				}
 
-				Response<List<Embedding>> embeddings = model.embedAll(segments);
-				List<Embedding> content = embeddings.content();
-				embeddingStore.addAll(content, segments);
+				List<Embedding> embeddings = embedSegments(segments);
+				embeddingStore.addAll(embeddings, segments);
 			}
 			return this;
 		});
@@ -191,8 +363,8 @@ public class EmbeddingStore implements IScriptable, IJavaScriptType {
 			DocumentByParagraphSplitter splitter = new DocumentByParagraphSplitter(maxSegmentSizeInChars,
 					maxOverlapSizeInChars);
 			List<TextSegment> segments = splitter.split(document);
-			Response<List<Embedding>> embeddings = model.embedAll(segments);
-			embeddingStore.addAll(embeddings.content(), segments);
+			List<Embedding> embeddings = embedSegments(segments);
+			embeddingStore.addAll(embeddings, segments);
 			return this;
 		});
 	}
@@ -222,11 +394,390 @@ public class EmbeddingStore implements IScriptable, IJavaScriptType {
 		return doSearch(text, null);
 	}
 
+	/**
+	 * Performs a blocking similarity search for the given text with index settings
+	 * for this search only, to trade latency against recall. Supported keys are
+	 * "efSearch" (candidate list size of a hnsw index, higher gives better recall)
+	 * and "probes" (number of lists searched in an ivfflat index). These are only
+	 * used by Servoy embedding stores on PostgreSQL.
+	 *
+	 * @param text             The query text to search for.
+	 * @param maxResults       The maximum number of results to return.
+	 * @param searchParameters The index settings, for example { efSearch: 100 }.
+	 * @return An array of SearchResult objects representing the best matches.
+	 */
+	@JSFunction
+	public SearchResult[] search(String text, int maxResults, Map<String, Object> searchParameters) {
+		return doSearch(text, Integer.valueOf(maxResults), toSearchParameters(searchParameters));
+	}
+
+	/**
+	 * Performs a blocking hybrid search: the best matches by similarity and the
+	 * best matches by full text search on the stored text are combined with
+	 * reciprocal rank fusion, which finds exact product codes and names that a
+	 * similarity search alone can miss. Needs a Servoy embedding store on
+	 * PostgreSQL built with fullTextSearch, other stores do a normal similarity
+	 * search.
+	 * <p>
+	 * The score of a result is the fused score, a sum of 1 / (60 + rank) over both
+	 * rankings.
+	 *
+	 * @param text       The query text to search for.
+	 * @param maxResults The maximum number of results to return.
+	 * @return An array of SearchResult objects representing the best matches.
+	 */
+	@JSFunction
+	public SearchResult[] hybridSearch(String text, int maxResults) {
+		Embedding queryEmbedding = embedQuery(text, normalizedText -> model.embed(normalizedText).content().vector());
+		if (embeddingStore instanceof ServoyEmbeddingStore servoyStore) {
+			EmbeddingSearchResult<TextSegment> result = servoyStore.hybridSearch(EmbeddingSearchRequest.builder()
+					.queryEmbedding(queryEmbedding).maxResults(Integer.valueOf(maxResults)).build(), text, null);
+			if (result != null) {
+				return toSearchResults(result.matches());
+			}
+		}
+		Debug.log("Hybrid search not available for this store, using the similarity search");
+		return toSearchResults(searchMatches(queryEmbedding, Integer.valueOf(maxResults), null));
+	}
+
+	/**
+	 * Performs a blocking similarity search for each of the given texts, for
+	 * example to classify or deduplicate many texts. The query embeddings are
+	 * requested from the model in as few calls as possible and, for Servoy
+	 * embedding stores on PostgreSQL, all searches run in one database round
+	 * trip. Other stores run the searches in parallel, see
+	 * {@link #parallelism(int)}.
+	 *
+	 * @param texts      The query texts to search for.
+	 * @param maxResults The maximum number of results per text.
+	 * @return An array with an array of SearchResult objects per text, in the
+	 *         order of the texts.
+	 */
+	@JSFunction
+	public SearchResult[][] searchAll(String[] texts, int maxResults) {
+		if (texts == null || texts.length == 0) {
+			return new SearchResult[0][];
+		}
+
+		List<float[]> vectors = embedQueries(texts);
+		List<List<EmbeddingMatch<TextSegment>>> matches = null;
+		if (embeddingStore instanceof ServoyEmbeddingStore servoyStore) {
+			matches = servoyStore.searchAll(vectors, maxResults, 0, null, null);
+		}
+		if (matches == null) {
+			matches = searchInParallel(vectors, Integer.valueOf(maxResults));
+		}
+		return matches.stream().map(EmbeddingStore::toSearchResults).toArray(SearchResult[][]::new);
+	}
+
+	/**
+	 * Runs the searches on virtual threads, at most parallelism at a time, like
+	 * searchAsync the searches do not need the thread of the client.
+	 */
+	private List<List<EmbeddingMatch<TextSegment>>> searchInParallel(List<float[]> vectors, Integer maxResults) {
+		var permits = new Semaphore(parallelism);
+		try (ExecutorService executor = Executors.newVirtualThreadPerTaskExecutor()) {
+			List<Future<List<EmbeddingMatch<TextSegment>>>> futures = vectors.stream()
+					.map(vector -> executor.submit(() -> {
+						permits.acquire();
+						try {
+							return searchMatches(Embedding.from(vector), maxResults, null);
+						} finally {
+							permits.release();
+						}
+					})).toList();
+			var matches = new ArrayList<List<EmbeddingMatch<TextSegment>>>(futures.size());
+			for (var future : futures) {
+				matches.add(future.get());
+			}
+			return matches;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException re) {
+				throw re;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	private static VectorSearchParameters toSearchParameters(Map<String, Object> searchParameters) {
+		if (searchParameters == null || searchParameters.isEmpty()) {
+			return null;
+		}
+		return new VectorSearchParameters(intValue(searchParameters.get("efSearch")),
+				intValue(searchParameters.get("probes")));
+	}
+
+	private static int intValue(Object value) {
+		return value instanceof Number number ? number.intValue() : 0;
+	}
+
+	/**
+	 * Performs an asynchronous similarity search for the given text. Query
+	 * embeddings of searches that run at the same time are requested from the
+	 * model in one call.
+	 *
+	 * @param text       The query text to search for.
+	 * @param maxResults The maximum number of results to return.
+	 * @return A Promise resolving to an array of SearchResult objects.
+	 */
+	@JSFunction
+	public NativePromise searchAsync(String text, int maxResults) {
+		return provider.async(() -> doSearch(text, Integer.valueOf(maxResults), this::embedCoalesced));
+	}
+
+	/**
+	 * Performs an asynchronous similarity search for the given text, returning the
+	 * default 3 results. Query embeddings of searches that run at the same time
+	 * are requested from the model in one call.
+	 *
+	 * @param text The query text to search for.
+	 * @return A Promise resolving to an array of SearchResult objects.
+	 */
+	@JSFunction
+	public NativePromise searchAsync(String text) {
+		return provider.async(() -> doSearch(text, null, this::embedCoalesced));
+	}
+
+	private float[] embedCoalesced(String text) {
+		EmbeddingRequestCoalescer coalescer;
+		try {
+			coalescer = provider.getAiPluginService().queryEmbeddingCoalescer();
+		} catch (Exception e) {
+			Debug.log("Search query coalescer not available", e);
+			return model.embed(text).content().vector();
+		}
+		try {
+			return coalescer.embed(identity, model, text).get();
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new IllegalStateException(e);
+		} catch (ExecutionException e) {
+			if (e.getCause() instanceof RuntimeException re) {
+				throw re;
+			}
+			throw new IllegalStateException(e.getCause());
+		}
+	}
+
+	/**
+	 * Asynchronously (re)builds the vector index of a Servoy embedding store, sized
+	 * for the number of embeddings in the store. The index is built automatically
+	 * at the end of the first embedAll, call this after adding many embeddings
+	 * with embed or when the number of embeddings has grown a lot.
+	 *
+	 * @return A Promise resolving to the store
+	 */
+	@JSFunction
+	public NativePromise buildIndex() {
+		return provider.async(() -> {
+			if (embeddingStore instanceof ServoyEmbeddingStore servoyStore) {
+				servoyStore.buildIndex(true);
+			}
+			return this;
+		});
+	}
+
+	/**
+	 * Asynchronously removes the embeddings whose metadata has all the given
+	 * values, for example all embeddings of one source record or document. The
+	 * metadata keys must be metadata columns of the store.
+	 *
+	 * @param metaData The metadata values the embeddings to remove must have.
+	 * @return A Promise resolving to the store
+	 */
+	@JSFunction
+	public NativePromise remove(Map<String, Object> metaData) {
+		return provider.async(() -> {
+			Filter filter = metaData.entrySet().stream()
+					.<Filter>map(entry -> new IsEqualTo(entry.getKey(), entry.getValue()))
+					.reduce((left, right) -> left.and(right))
+					.orElseThrow(() -> new IllegalArgumentException("metaData is empty"));
+			embeddingStore.removeAll(filter);
+			return this;
+		});
+	}
+
+	/**
+	 * Asynchronously removes all embeddings from the store, the store can be used
+	 * for searching while this runs.
+	 *
+	 * @return A Promise resolving to the store
+	 */
+	@JSFunction
+	public NativePromise removeAll() {
+		return provider.async(() -> {
+			embeddingStore.removeAll();
+			return this;
+		});
+	}
+
+	/**
+	 * Asynchronously saves an in-memory store to a file on the server, so it can
+	 * be loaded again without embedding all texts again. The file is replaced when
+	 * it exists; on Windows a file that is loaded by a store is replaced the next
+	 * time it is loaded.
+	 *
+	 * @param path The file path on the server.
+	 * @return A Promise resolving to the store
+	 */
+	@JSFunction
+	public NativePromise save(String path) {
+		return provider.async(() -> {
+			savableStore().save(Path.of(path));
+			return this;
+		});
+	}
+
+	/**
+	 * Asynchronously replaces the content of an in-memory store with a file written
+	 * by save. The embedding vectors are memory mapped instead of read, so also
+	 * large stores open fast and do not use heap memory for their vectors. The
+	 * file must not be changed while the store uses it.
+	 *
+	 * @param path The file path on the server.
+	 * @return A Promise resolving to the store
+	 */
+	@JSFunction
+	public NativePromise load(String path) {
+		return provider.async(() -> {
+			savableStore().load(Path.of(path));
+			return this;
+		});
+	}
+
+	private SavableEmbeddingStore savableStore() {
+		if (embeddingStore instanceof SavableEmbeddingStore savableStore) {
+			return savableStore;
+		}
+		throw new IllegalStateException("save and load are only supported for in-memory stores");
+	}
+
+	private List<Embedding> embedSegments(List<TextSegment> segments) {
+		return cache == null ? batcher.embedAll(segments) : cache.embedAll(segments, batcher::embedAll);
+	}
+
+	/**
+	 * Returns the statistics of the search query embedding cache, which is shared
+	 * by all clients of the server. The result contains the number of hits,
+	 * misses, evictions and the current size.
+	 *
+	 * @return An object with the cache statistics.
+	 */
+	@JSFunction
+	public JSMap<String, Object> getQueryCacheStatistics() {
+		JSMap<String, Object> statistics = new JSMap<>();
+		EmbeddingLruCache<String, float[]> queryCache = getQueryCache();
+		if (queryCache != null) {
+			statistics.put("hits", Long.valueOf(queryCache.hits()));
+			statistics.put("misses", Long.valueOf(queryCache.misses()));
+			statistics.put("evictions", Long.valueOf(queryCache.evictions()));
+			statistics.put("size", Integer.valueOf(queryCache.size()));
+		}
+		return statistics;
+	}
+
+	private EmbeddingLruCache<String, float[]> getQueryCache() {
+		try {
+			return provider.getAiPluginService().queryEmbeddingCache();
+		} catch (Exception e) {
+			Debug.log("Search query embedding cache not available", e);
+			return null;
+		}
+	}
+
+	/**
+	 * Embeds a search query, repeated queries are served from the shared query
+	 * embedding cache.
+	 */
+	private Embedding embedQuery(String text, Function<String, float[]> embedder) {
+		String normalizedText = normalizeQuery(text);
+		EmbeddingLruCache<String, float[]> queryCache = getQueryCache();
+		if (queryCache == null) {
+			return Embedding.from(embedder.apply(normalizedText));
+		}
+
+		String key = queryCacheKey(normalizedText);
+		float[] vector = queryCache.get(key);
+		if (vector != null) {
+			return Embedding.from(vector);
+		}
+		vector = embedder.apply(normalizedText);
+		queryCache.put(key, vector);
+		return Embedding.from(vector);
+	}
+
+	/**
+	 * Embeds search queries, the ones not in the query embedding cache are
+	 * embedded together.
+	 */
+	private List<float[]> embedQueries(String[] texts) {
+		List<String> normalizedTexts = Arrays.stream(texts).map(EmbeddingStore::normalizeQuery).toList();
+		EmbeddingLruCache<String, float[]> queryCache = getQueryCache();
+		var vectors = new HashMap<String, float[]>();
+		var missing = new LinkedHashSet<String>();
+		for (String normalizedText : normalizedTexts) {
+			float[] vector = queryCache == null ? null : queryCache.get(queryCacheKey(normalizedText));
+			if (vector != null) {
+				vectors.put(normalizedText, vector);
+			} else {
+				missing.add(normalizedText);
+			}
+		}
+
+		if (!missing.isEmpty()) {
+			var missingTexts = new ArrayList<>(missing);
+			List<Embedding> embeddings = batcher.embedAll(missingTexts.stream().map(TextSegment::from).toList());
+			for (int i = 0; i < missingTexts.size(); i++) {
+				float[] vector = embeddings.get(i).vector();
+				vectors.put(missingTexts.get(i), vector);
+				if (queryCache != null) {
+					queryCache.put(queryCacheKey(missingTexts.get(i)), vector);
+				}
+			}
+		}
+		return normalizedTexts.stream().map(vectors::get).toList();
+	}
+
+	private String queryCacheKey(String normalizedText) {
+		return identity.key() + '\u0000' + normalizedText;
+	}
+
+	private static String normalizeQuery(String text) {
+		return Normalizer.normalize(text, Normalizer.Form.NFKC).strip().replaceAll("\\s+", " ");
+	}
+
 	private SearchResult[] doSearch(String text, Integer maxResults) {
-		Embedding queryEmbedding = model.embed(text).content();
+		return doSearch(text, maxResults, null);
+	}
+
+	private SearchResult[] doSearch(String text, Integer maxResults, VectorSearchParameters parameters) {
+		return doSearch(text, maxResults, normalizedText -> model.embed(normalizedText).content().vector(),
+				parameters);
+	}
+
+	private SearchResult[] doSearch(String text, Integer maxResults, Function<String, float[]> embedder) {
+		return doSearch(text, maxResults, embedder, null);
+	}
+
+	private SearchResult[] doSearch(String text, Integer maxResults, Function<String, float[]> embedder,
+			VectorSearchParameters parameters) {
+		return toSearchResults(searchMatches(embedQuery(text, embedder), maxResults, parameters));
+	}
+
+	private List<EmbeddingMatch<TextSegment>> searchMatches(Embedding queryEmbedding, Integer maxResults,
+			VectorSearchParameters parameters) {
 		EmbeddingSearchRequest embeddingSearchRequest = EmbeddingSearchRequest.builder().queryEmbedding(queryEmbedding)
 				.maxResults(maxResults).build();
-		List<EmbeddingMatch<TextSegment>> matches = embeddingStore.search(embeddingSearchRequest).matches();
+		// only score, text and meta data are used, the vectors are not read
+		return (embeddingStore instanceof ServoyEmbeddingStore servoyStore
+				? servoyStore.search(embeddingSearchRequest, parameters, false)
+				: embeddingStore.search(embeddingSearchRequest)).matches();
+	}
+
+	private static SearchResult[] toSearchResults(List<EmbeddingMatch<TextSegment>> matches) {
 		return matches.stream()
 				.map(match -> new SearchResult(match.score(), match.embedded().text(), match.embedded().metadata()))
 				.toArray(SearchResult[]::new);
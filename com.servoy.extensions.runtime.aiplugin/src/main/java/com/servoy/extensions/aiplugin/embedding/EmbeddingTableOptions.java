@@ -0,0 +1,42 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+/**
+ * Options of a Servoy embeddings table, set on the ServoyEmbeddingStoreBuilder.
+ *
+ * @param addText         store the original text in the table.
+ * @param cacheEmbeddings keep a cache table of embeddings by content hash next
+ *                        to the embeddings table.
+ * @param fingerprint     store a fingerprint of the source text per embedding,
+ *                        used by incremental embedAll.
+ * @param bulkLoad        write embeddings with binary COPY where the database
+ *                        supports it.
+ * @param index           options of the native vector index.
+ * @param metric          distance metric for the index and searches.
+ * @param normalize       scale embeddings to unit length before storing them.
+ * @param halfPrecision   store embeddings as 16-bit floats (pgvector halfvec).
+ * @param oversampling    keep a binary quantized copy of the embeddings and
+ *                        search it for this many candidates per result, which
+ *                        are then reranked on the full embeddings, 0 to search
+ *                        the full embeddings directly.
+ * @param textSearchConfig text search configuration of a full text search
+ *                         column on the text, null for no full text search.
+ */
+public record EmbeddingTableOptions(boolean addText, boolean cacheEmbeddings, boolean fingerprint,
+		boolean bulkLoad, EmbeddingIndexOptions index, EmbeddingMetric metric, boolean normalize,
+		boolean halfPrecision, int oversampling, String textSearchConfig) {
+
+	public EmbeddingTableOptions withHalfPrecision(boolean halfPrecision) {
+		return new EmbeddingTableOptions(addText, cacheEmbeddings, fingerprint, bulkLoad, index, metric, normalize,
+				halfPrecision, oversampling, textSearchConfig);
+	}
+
+	public EmbeddingTableOptions withOversampling(int oversampling) {
+		return new EmbeddingTableOptions(addText, cacheEmbeddings, fingerprint, bulkLoad, index, metric, normalize,
+				halfPrecision, oversampling, textSearchConfig);
+	}
+
+	public EmbeddingTableOptions withTextSearchConfig(String textSearchConfig) {
+		return new EmbeddingTableOptions(addText, cacheEmbeddings, fingerprint, bulkLoad, index, metric, normalize,
+				halfPrecision, oversampling, textSearchConfig);
+	}
+}
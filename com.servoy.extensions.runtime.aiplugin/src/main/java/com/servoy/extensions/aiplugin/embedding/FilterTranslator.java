@@ -0,0 +1,129 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.util.Collection;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsGreaterThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThan;
+import dev.langchain4j.store.embedding.filter.comparison.IsLessThanOrEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsNotIn;
+import dev.langchain4j.store.embedding.filter.logical.And;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+import dev.langchain4j.store.embedding.filter.logical.Or;
+
+/**
+ * Translates langchain4j metadata filters into conditions on the meta data
+ * columns of an embeddings table, used for the query builder conditions on the
+ * client and the SQL where clauses on the server.
+ * <p>
+ * The conditions match the same rows as {@link Filter#test(Object)}: a missing
+ * (null) meta data value never matches a comparison, but does match its
+ * negation. Negations are pushed down to the comparisons (De Morgan), so
+ * subclasses only create comparisons, negated or not.
+ *
+ * @param <C> type of the conditions.
+ */
+public abstract class FilterTranslator<C> {
+
+	public enum Operator {
+		EQ("="), GT(">"), GE(">="), LT("<"), LE("<=");
+
+		private final String symbol;
+
+		Operator(String symbol) {
+			this.symbol = symbol;
+		}
+
+		/**
+		 * The SQL comparison operator.
+		 */
+		public String symbol() {
+			return symbol;
+		}
+	}
+
+	/**
+	 * Translates the complete filter.
+	 *
+	 * @return the condition, or null when a part of the filter cannot be
+	 *         translated.
+	 */
+	public C translate(Filter filter) {
+		return condition(filter, false);
+	}
+
+	private C condition(Filter filter, boolean negated) {
+		if (filter instanceof Not not) {
+			return condition(not.expression(), !negated);
+		}
+		if (filter instanceof And and) {
+			return logical(and.left(), and.right(), negated, !negated);
+		}
+		if (filter instanceof Or or) {
+			return logical(or.left(), or.right(), negated, negated);
+		}
+		if (filter instanceof IsEqualTo isEqualTo) {
+			return comparison(isEqualTo.key(), Operator.EQ, isEqualTo.comparisonValue(), negated);
+		}
+		if (filter instanceof IsNotEqualTo isNotEqualTo) {
+			return comparison(isNotEqualTo.key(), Operator.EQ, isNotEqualTo.comparisonValue(), !negated);
+		}
+		if (filter instanceof IsGreaterThan isGreaterThan) {
+			return comparison(isGreaterThan.key(), Operator.GT, isGreaterThan.comparisonValue(), negated);
+		}
+		if (filter instanceof IsGreaterThanOrEqualTo isGreaterThanOrEqualTo) {
+			return comparison(isGreaterThanOrEqualTo.key(), Operator.GE, isGreaterThanOrEqualTo.comparisonValue(),
+					negated);
+		}
+		if (filter instanceof IsLessThan isLessThan) {
+			return comparison(isLessThan.key(), Operator.LT, isLessThan.comparisonValue(), negated);
+		}
+		if (filter instanceof IsLessThanOrEqualTo isLessThanOrEqualTo) {
+			return comparison(isLessThanOrEqualTo.key(), Operator.LE, isLessThanOrEqualTo.comparisonValue(),
+					negated);
+		}
+		if (filter instanceof IsIn isIn) {
+			return isIn.comparisonValues().isEmpty() ? null : in(isIn.key(), isIn.comparisonValues(), negated);
+		}
+		if (filter instanceof IsNotIn isNotIn) {
+			return isNotIn.comparisonValues().isEmpty() ? null
+					: in(isNotIn.key(), isNotIn.comparisonValues(), !negated);
+		}
+		return null;
+	}
+
+	/**
+	 * And or Or of both sides, with the negation applied to both sides.
+	 */
+	private C logical(Filter left, Filter right, boolean negated, boolean conjunction) {
+		C leftCondition = condition(left, negated);
+		C rightCondition = leftCondition == null ? null : condition(right, negated);
+		if (rightCondition == null) {
+			return null;
+		}
+		return conjunction ? and(leftCondition, rightCondition) : or(leftCondition, rightCondition);
+	}
+
+	protected abstract C and(C left, C right);
+
+	protected abstract C or(C left, C right);
+
+	/**
+	 * Comparison of a meta data column with a value.
+	 *
+	 * @param negated when true the condition must match when the comparison does
+	 *                not, or when the value of the column is null.
+	 * @return the condition, or null when the key or value cannot be translated.
+	 */
+	protected abstract C comparison(String key, Operator operator, Object value, boolean negated);
+
+	/**
+	 * Comparison of a meta data column with a non-empty collection of values, see
+	 * {@link #comparison(String, Operator, Object, boolean)}.
+	 */
+	protected abstract C in(String key, Collection<?> values, boolean negated);
+}
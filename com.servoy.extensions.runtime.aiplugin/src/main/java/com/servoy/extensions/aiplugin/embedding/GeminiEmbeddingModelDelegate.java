@@ -10,6 +10,7 @@ class GeminiEmbeddingModelDelegate {
 		GoogleAiEmbeddingModel.GoogleAiEmbeddingModelBuilder builder = GoogleAiEmbeddingModel.builder();
 		if (apiKey != null) builder.apiKey(apiKey);
 		if (modelName != null) builder.modelName(modelName);
-		return new EmbeddingModel(builder.build(), provider);
+		var model = builder.build();
+		return new EmbeddingModel(model, ModelIdentity.of(model, null, apiKey), provider);
 	}
 }
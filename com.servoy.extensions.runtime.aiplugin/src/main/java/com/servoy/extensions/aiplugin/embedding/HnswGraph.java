@@ -0,0 +1,244 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Hierarchical navigable small world graph over the slots of a vector store,
+ * for approximate nearest neighbour search in logarithmic instead of linear
+ * time. Scores are similarities, higher is nearer.
+ * <p>
+ * Nodes are only added; removed slots stay in the graph to keep it connected
+ * and are skipped by the caller. Not thread safe, inserts must not run
+ * concurrently with other calls.
+ */
+final class HnswGraph {
+
+	/**
+	 * Similarity of two nodes.
+	 */
+	interface Similarity {
+		float between(int a, int b);
+	}
+
+	/**
+	 * Similarity of a node to the query.
+	 */
+	interface Scorer {
+		float score(int node);
+	}
+
+	private static final int M = 16;
+	private static final int EF_CONSTRUCTION = 100;
+	private static final double LEVEL_FACTOR = 1 / Math.log(M);
+
+	private final Similarity similarity;
+	private final SplittableRandom random = new SplittableRandom(42);
+
+	// neighbours per node per level, the first element is the number of neighbours
+	private int[][][] neighbours = new int[1024][][];
+	private int capacity;
+	private int entryPoint = -1;
+	private int topLevel = -1;
+
+	HnswGraph(Similarity similarity) {
+		this.similarity = similarity;
+	}
+
+	void insert(int node) {
+		int level = (int) (-Math.log(1 - random.nextDouble()) * LEVEL_FACTOR);
+		if (node >= neighbours.length) {
+			neighbours = Arrays.copyOf(neighbours, Math.max(node + 1, neighbours.length * 2));
+		}
+		capacity = Math.max(capacity, node + 1);
+		neighbours[node] = new int[level + 1][];
+		for (int l = 0; l <= level; l++) {
+			neighbours[node][l] = new int[maxNeighbours(l) + 1];
+		}
+		if (entryPoint < 0) {
+			entryPoint = node;
+			topLevel = level;
+			return;
+		}
+
+		Scorer scorer = other -> similarity.between(node, other);
+		int current = entryPoint;
+		for (int l = topLevel; l > level; l--) {
+			current = greedy(scorer, current, l);
+		}
+		for (int l = Math.min(level, topLevel); l >= 0; l--) {
+			NodeHeap nearest = searchLayer(scorer, current, EF_CONSTRUCTION, l);
+			int[] nodes = new int[nearest.size()];
+			nearest.drain(nodes, new float[nodes.length]);
+			for (int i = 0; i < Math.min(M, nodes.length); i++) {
+				connect(node, nodes[i], l);
+				connect(nodes[i], node, l);
+			}
+			current = nodes[0];
+		}
+		if (level > topLevel) {
+			entryPoint = node;
+			topLevel = level;
+		}
+	}
+
+	/**
+	 * Searches the nearest nodes to the query.
+	 *
+	 * @param ef size of the dynamic candidate list, at least the number of
+	 *           results needed.
+	 * @return min heap of the ef nearest nodes.
+	 */
+	NodeHeap search(Scorer scorer, int ef) {
+		if (entryPoint < 0) {
+			return new NodeHeap(1, false);
+		}
+		int current = entryPoint;
+		for (int l = topLevel; l > 0; l--) {
+			current = greedy(scorer, current, l);
+		}
+		return searchLayer(scorer, current, ef, 0);
+	}
+
+	/**
+	 * Deep copy, for nodes with the same vectors in the store of the similarity.
+	 */
+	HnswGraph copy(Similarity copySimilarity) {
+		var copy = new HnswGraph(copySimilarity);
+		copy.neighbours = new int[neighbours.length][][];
+		for (int node = 0; node < capacity; node++) {
+			if (neighbours[node] != null) {
+				copy.neighbours[node] = new int[neighbours[node].length][];
+				for (int l = 0; l < neighbours[node].length; l++) {
+					copy.neighbours[node][l] = neighbours[node][l].clone();
+				}
+			}
+		}
+		copy.capacity = capacity;
+		copy.entryPoint = entryPoint;
+		copy.topLevel = topLevel;
+		return copy;
+	}
+
+	/**
+	 * Writes the graph, see {@link #read(DataInput, Similarity)}.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(entryPoint);
+		out.writeInt(topLevel);
+		out.writeInt(capacity);
+		for (int node = 0; node < capacity; node++) {
+			int[][] levels = neighbours[node];
+			out.writeInt(levels == null ? 0 : levels.length);
+			for (int l = 0; levels != null && l < levels.length; l++) {
+				int[] links = levels[l];
+				for (int i = 0; i <= links[0]; i++) {
+					out.writeInt(links[i]);
+				}
+			}
+		}
+	}
+
+	static HnswGraph read(DataInput in, Similarity similarity) throws IOException {
+		var graph = new HnswGraph(similarity);
+		graph.entryPoint = in.readInt();
+		graph.topLevel = in.readInt();
+		graph.capacity = in.readInt();
+		graph.neighbours = new int[Math.max(graph.capacity, graph.neighbours.length)][][];
+		for (int node = 0; node < graph.capacity; node++) {
+			int levelCount = in.readInt();
+			if (levelCount > 0) {
+				int[][] levels = new int[levelCount][];
+				for (int l = 0; l < levelCount; l++) {
+					levels[l] = new int[maxNeighbours(l) + 1];
+					levels[l][0] = in.readInt();
+					for (int i = 1; i <= levels[l][0]; i++) {
+						levels[l][i] = in.readInt();
+					}
+				}
+				graph.neighbours[node] = levels;
+			}
+		}
+		return graph;
+	}
+
+	private static int maxNeighbours(int level) {
+		return level == 0 ? 2 * M : M;
+	}
+
+	private int greedy(Scorer scorer, int current, int level) {
+		float best = scorer.score(current);
+		boolean changed = true;
+		while (changed) {
+			changed = false;
+			int[] links = neighbours[current][level];
+			for (int i = 1; i <= links[0]; i++) {
+				float score = scorer.score(links[i]);
+				if (score > best) {
+					best = score;
+					current = links[i];
+					changed = true;
+				}
+			}
+		}
+		return current;
+	}
+
+	private NodeHeap searchLayer(Scorer scorer, int entry, int ef, int level) {
+		var visited = new BitSet(capacity);
+		var candidates = new NodeHeap(ef, true);
+		var nearest = new NodeHeap(ef, false);
+		float entryScore = scorer.score(entry);
+		visited.set(entry);
+		candidates.push(entry, entryScore);
+		nearest.push(entry, entryScore);
+		while (!candidates.isEmpty()) {
+			if (nearest.size() >= ef && candidates.topScore() < nearest.topScore()) {
+				break;
+			}
+			int[] links = neighbours[candidates.pop()][level];
+			for (int i = 1; i <= links[0]; i++) {
+				int neighbour = links[i];
+				if (visited.get(neighbour)) {
+					continue;
+				}
+				visited.set(neighbour);
+				float score = scorer.score(neighbour);
+				if (nearest.offer(neighbour, score, ef)) {
+					candidates.push(neighbour, score);
+				}
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Adds the link, when the node has the maximum number of neighbours the
+	 * farthest neighbour is replaced if it is farther than the new one.
+	 */
+	private void connect(int node, int neighbour, int level) {
+		int[] links = neighbours[node][level];
+		int count = links[0];
+		if (count < links.length - 1) {
+			links[count + 1] = neighbour;
+			links[0] = count + 1;
+			return;
+		}
+		int farthest = 1;
+		float farthestScore = similarity.between(node, links[1]);
+		for (int i = 2; i <= count; i++) {
+			float score = similarity.between(node, links[i]);
+			if (score < farthestScore) {
+				farthest = i;
+				farthestScore = score;
+			}
+		}
+		if (similarity.between(node, neighbour) > farthestScore) {
+			links[farthest] = neighbour;
+		}
+	}
+}
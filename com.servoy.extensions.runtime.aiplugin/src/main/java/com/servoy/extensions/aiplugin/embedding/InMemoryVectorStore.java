@@ -0,0 +1,594 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotBlank;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotEmpty;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+/**
+ * In-memory embedding store with the vectors packed in one float array,
+ * searched with cosine similarity like the langchain4j in-memory store.
+ * <p>
+ * Searches scan the vectors in parallel chunks, each keeping its own top k.
+ * Above the graph threshold searches without a filter use an HNSW graph
+ * instead, which is approximate. Searches run concurrently, changes take an
+ * exclusive lock.
+ * <p>
+ * A store can be saved to a file and loaded again, see {@link #save(Path)}. The
+ * vectors of a loaded store stay in the memory mapped file, embeddings added
+ * later are kept on the heap.
+ */
+public class InMemoryVectorStore implements EmbeddingStore<TextSegment>, SavableEmbeddingStore {
+
+	/**
+	 * Number of entries above which an HNSW graph is used.
+	 */
+	static final int DEFAULT_GRAPH_THRESHOLD = 100_000;
+
+	private static final int CHUNK_SIZE = 8192;
+	private static final int EF_SEARCH = 100;
+
+	private final int dimension;
+	private final int graphThreshold;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+	// used by graph inserts, under the write lock
+	private final float[] similarityVector;
+	private final float[] similarityScratch;
+
+	// vectors of the first slots, when loaded from a file
+	private MappedVectors mapped;
+	private int mappedCount;
+	// vectors of the slots after the mapped slots
+	private float[] vectors = new float[0];
+	private float[] inverseNorms = new float[0];
+	private String[] ids = new String[0];
+	private TextSegment[] segments = new TextSegment[0];
+	// slots in use, including removed slots
+	private int slotCount;
+	private final BitSet removed = new BitSet();
+	private final Map<String, Integer> slots = new HashMap<>();
+	private HnswGraph graph;
+
+	public InMemoryVectorStore(int dimension) {
+		this(dimension, DEFAULT_GRAPH_THRESHOLD);
+	}
+
+	/**
+	 * @param graphThreshold number of entries above which an HNSW graph is used,
+	 *                       {@link Integer#MAX_VALUE} to always search exact.
+	 */
+	public InMemoryVectorStore(int dimension, int graphThreshold) {
+		this.dimension = dimension;
+		this.graphThreshold = graphThreshold;
+		this.similarityVector = new float[dimension];
+		this.similarityScratch = new float[dimension];
+	}
+
+	public int dimension() {
+		return dimension;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return slots.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Copy of the store to change while this store is being searched, the vectors
+	 * of a loaded store remain shared with the copy.
+	 */
+	InMemoryVectorStore copy() {
+		lock.readLock().lock();
+		try {
+			var copy = new InMemoryVectorStore(dimension, graphThreshold);
+			copy.mapped = mapped;
+			copy.mappedCount = mappedCount;
+			copy.vectors = vectors.clone();
+			copy.inverseNorms = inverseNorms.clone();
+			copy.ids = ids.clone();
+			copy.segments = segments.clone();
+			copy.slotCount = slotCount;
+			copy.removed.or(removed);
+			copy.slots.putAll(slots);
+			copy.graph = graph == null ? null : graph.copy(copy::similarity);
+			return copy;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Adds the embeddings of the other store, which must not be changed
+	 * meanwhile.
+	 */
+	void addAll(InMemoryVectorStore other) {
+		var otherIds = new ArrayList<String>(other.slots.size());
+		var embeddings = new ArrayList<Embedding>(other.slots.size());
+		var embedded = new ArrayList<TextSegment>(other.slots.size());
+		for (int slot = 0; slot < other.slotCount; slot++) {
+			if (!other.removed.get(slot)) {
+				otherIds.add(other.ids[slot]);
+				embeddings.add(new Embedding(other.copyVector(slot, new float[dimension], 0)));
+				embedded.add(other.segments[slot]);
+			}
+		}
+		if (!otherIds.isEmpty()) {
+			addAll(otherIds, embeddings, embedded);
+		}
+	}
+
+	boolean contains(String id) {
+		lock.readLock().lock();
+		try {
+			return slots.containsKey(id);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Whether an embedding would be removed by {@link #removeAll(Filter)}.
+	 */
+	boolean matchesAny(Filter filter) {
+		lock.readLock().lock();
+		try {
+			for (int slot = 0; slot < slotCount; slot++) {
+				if (!removed.get(slot) && segments[slot] != null && filter.test(segments[slot].metadata())) {
+					return true;
+				}
+			}
+			return false;
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public String add(Embedding embedding) {
+		return addSingle(randomUUID(), embedding, null);
+	}
+
+	@Override
+	public void add(String id, Embedding embedding) {
+		addSingle(id, embedding, null);
+	}
+
+	@Override
+	public String add(Embedding embedding, TextSegment textSegment) {
+		return addSingle(randomUUID(), embedding, textSegment);
+	}
+
+	private String addSingle(String id, Embedding embedding, TextSegment textSegment) {
+		addAll(List.of(id), List.of(embedding), textSegment == null ? null : List.of(textSegment));
+		return id;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings) {
+		List<String> ids = generateIds(embeddings.size());
+		addAll(ids, embeddings, null);
+		return ids;
+	}
+
+	/**
+	 * Adds the embeddings, an embedding with the id of an existing one replaces
+	 * it.
+	 */
+	@Override
+	public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+		ensureTrue(ids.size() == embeddings.size(), "ids and embeddings differ in size");
+		ensureTrue(embedded == null || ids.size() == embedded.size(), "ids and embedded differ in size");
+		for (Embedding embedding : embeddings) {
+			ensureTrue(embedding.dimension() == dimension,
+					"embedding dimension " + embedding.dimension() + " differs from store dimension " + dimension);
+		}
+
+		lock.writeLock().lock();
+		try {
+			ensureCapacity(slotCount + ids.size());
+			for (int i = 0; i < ids.size(); i++) {
+				Integer existing = slots.get(ids.get(i));
+				if (existing != null) {
+					removed.set(existing.intValue());
+				}
+				int slot = slotCount++;
+				float[] vector = embeddings.get(i).vector();
+				System.arraycopy(vector, 0, vectors, (slot - mappedCount) * dimension, dimension);
+				float norm = (float) Math.sqrt(dot(vector, 0, vector, 0, dimension));
+				inverseNorms[slot] = norm == 0 ? 0 : 1 / norm;
+				this.ids[slot] = ids.get(i);
+				segments[slot] = embedded == null ? null : embedded.get(i);
+				slots.put(ids.get(i), Integer.valueOf(slot));
+				if (graph != null) {
+					graph.insert(slot);
+				}
+			}
+			updateLayout();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(String id) {
+		removeAll(List.of(ensureNotBlank(id, "id")));
+	}
+
+	@Override
+	public void removeAll(Collection<String> ids) {
+		ensureNotEmpty(ids, "ids");
+		lock.writeLock().lock();
+		try {
+			for (String id : ids) {
+				Integer slot = slots.remove(id);
+				if (slot != null) {
+					removed.set(slot.intValue());
+				}
+			}
+			updateLayout();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll(Filter filter) {
+		ensureNotNull(filter, "filter");
+		lock.writeLock().lock();
+		try {
+			for (int slot = 0; slot < slotCount; slot++) {
+				// like the langchain4j in-memory store, entries without a text segment are kept
+				if (!removed.get(slot) && segments[slot] != null && filter.test(segments[slot].metadata())) {
+					removed.set(slot);
+					slots.remove(ids[slot]);
+				}
+			}
+			updateLayout();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll() {
+		lock.writeLock().lock();
+		try {
+			mapped = null;
+			mappedCount = 0;
+			vectors = new float[0];
+			inverseNorms = new float[0];
+			ids = new String[0];
+			segments = new TextSegment[0];
+			slotCount = 0;
+			removed.clear();
+			slots.clear();
+			graph = null;
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Saves the store to a file, which is written next to the target first and
+	 * then moved in place. When the target is memory mapped on Windows, the file
+	 * replaces it the next time it is loaded, see
+	 * {@link VectorStoreFile#replace(Path, Path)}.
+	 * <p>
+	 * Layout, big endian: a header (magic, version, dimension, number of slots,
+	 * offset of the graph or 0), the vectors of all slots as float32, their
+	 * inverse norms, the id, text and metadata per slot and the HNSW graph when
+	 * the store has one. Removed slots are kept with a null id, so the graph stays
+	 * valid.
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		Path temp = path.resolveSibling(path.getFileName() + ".tmp");
+		lock.readLock().lock();
+		try (FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+			var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			out.writeInt(VectorStoreFile.MAGIC);
+			out.writeInt(VectorStoreFile.VERSION);
+			out.writeInt(dimension);
+			out.writeInt(slotCount);
+			out.writeLong(0); // graph offset, set when the graph is written
+			var vector = new float[dimension];
+			for (int slot = 0; slot < slotCount; slot++) {
+				copyVector(slot, vector, 0);
+				for (float value : vector) {
+					out.writeFloat(value);
+				}
+			}
+			for (int slot = 0; slot < slotCount; slot++) {
+				out.writeFloat(inverseNorms[slot]);
+			}
+			for (int slot = 0; slot < slotCount; slot++) {
+				boolean live = !removed.get(slot);
+				VectorStoreFile.writeString(out, live ? ids[slot] : null);
+				if (live) {
+					VectorStoreFile.writeSegment(out, segments[slot]);
+				}
+			}
+			out.flush();
+			if (graph != null) {
+				long graphOffset = channel.position();
+				graph.write(out);
+				out.flush();
+				channel.write(ByteBuffer.allocate(8).putLong(0, graphOffset), 16);
+			}
+		} finally {
+			lock.readLock().unlock();
+		}
+		VectorStoreFile.replace(temp, path);
+	}
+
+	/**
+	 * Replaces the content of the store with a file written by
+	 * {@link #save(Path)}. The vectors are not read but memory mapped, the ids,
+	 * texts, metadata and graph are read into memory. The file must not be changed
+	 * while the store uses it.
+	 */
+	@Override
+	public void load(Path path) throws IOException {
+		VectorStoreFile file = VectorStoreFile.read(path, this::similarity);
+		ensureTrue(file.dimension() == dimension,
+				"file dimension " + file.dimension() + " differs from store dimension " + dimension);
+		lock.writeLock().lock();
+		try {
+			mapped = file.vectors();
+			mappedCount = file.count();
+			vectors = new float[0];
+			inverseNorms = file.inverseNorms();
+			ids = file.ids();
+			segments = file.segments();
+			slotCount = file.count();
+			removed.clear();
+			removed.or(file.removed());
+			slots.clear();
+			slots.putAll(file.slots());
+			graph = file.graph();
+			updateLayout();
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+		lock.readLock().lock();
+		try {
+			return searchUnlocked(request);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Searches without taking the lock, for stores that are not changed anymore,
+	 * see {@link SharedVectorStore}.
+	 */
+	EmbeddingSearchResult<TextSegment> searchUnlocked(EmbeddingSearchRequest request) {
+		float[] query = request.queryEmbedding().vector();
+		ensureTrue(query.length == dimension,
+				"query dimension " + query.length + " differs from store dimension " + dimension);
+		float queryNorm = (float) Math.sqrt(dot(query, 0, query, 0, dimension));
+		float queryInverseNorm = queryNorm == 0 ? 0 : 1 / queryNorm;
+		// relevance score is (cosine + 1) / 2
+		float minCosine = (float) (2 * request.minScore() - 1);
+		int maxResults = request.maxResults();
+
+		NodeHeap nearest = graph != null && request.filter() == null
+				? searchGraph(query, queryInverseNorm, maxResults, minCosine)
+				: scan(query, queryInverseNorm, maxResults, minCosine, request.filter());
+
+		int[] nodes = new int[nearest.size()];
+		float[] cosines = new float[nodes.length];
+		nearest.drain(nodes, cosines);
+		var matches = new ArrayList<EmbeddingMatch<TextSegment>>(nodes.length);
+		for (int i = 0; i < nodes.length; i++) {
+			matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(cosines[i]), ids[nodes[i]],
+					new Embedding(copyVector(nodes[i], new float[dimension], 0)), segments[nodes[i]]));
+		}
+		return new EmbeddingSearchResult<>(matches);
+	}
+
+	/**
+	 * Exact search, in parallel chunks for larger stores.
+	 */
+	private NodeHeap scan(float[] query, float queryInverseNorm, int maxResults, float minCosine, Filter filter) {
+		int count = slotCount;
+		if (count <= CHUNK_SIZE) {
+			return scan(0, count, query, queryInverseNorm, maxResults, minCosine, filter);
+		}
+		return IntStream.range(0, (count + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel()
+				.mapToObj(chunk -> scan(chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE), query,
+						queryInverseNorm, maxResults, minCosine, filter))
+				.reduce((a, b) -> {
+					a.offerAll(b, maxResults);
+					return a;
+				}).orElseThrow();
+	}
+
+	private NodeHeap scan(int from, int to, float[] query, float queryInverseNorm, int maxResults, float minCosine,
+			Filter filter) {
+		var nearest = new NodeHeap(maxResults, false);
+		var scratch = new float[dimension];
+		for (int slot = from; slot < to; slot++) {
+			if (removed.get(slot) || filter != null && !matches(filter, segments[slot])) {
+				continue;
+			}
+			float cosine = dot(query, slot, scratch) * inverseNorms[slot] * queryInverseNorm;
+			if (cosine >= minCosine) {
+				nearest.offer(slot, cosine, maxResults);
+			}
+		}
+		return nearest;
+	}
+
+	private NodeHeap searchGraph(float[] query, float queryInverseNorm, int maxResults, float minCosine) {
+		var scratch = new float[dimension];
+		NodeHeap candidates = graph.search(slot -> dot(query, slot, scratch) * inverseNorms[slot] * queryInverseNorm,
+				Math.max(EF_SEARCH, 2 * maxResults));
+		var nearest = new NodeHeap(maxResults, false);
+		while (!candidates.isEmpty()) {
+			float cosine = candidates.topScore();
+			int slot = candidates.pop();
+			if (!removed.get(slot) && cosine >= minCosine) {
+				nearest.offer(slot, cosine, maxResults);
+			}
+		}
+		return nearest;
+	}
+
+	/**
+	 * Matches like the langchain4j in-memory store: entries without a text segment
+	 * are not filtered.
+	 */
+	static boolean matches(Filter filter, TextSegment segment) {
+		return segment == null || filter.test(segment.metadata());
+	}
+
+	/**
+	 * Dot product, unrolled with independent sums so the multiplications can run
+	 * in parallel.
+	 */
+	static float dot(float[] a, int offsetA, float[] b, int offsetB, int length) {
+		float sum0 = 0;
+		float sum1 = 0;
+		float sum2 = 0;
+		float sum3 = 0;
+		int i = 0;
+		for (int upper = length & ~3; i < upper; i += 4) {
+			sum0 += a[offsetA + i] * b[offsetB + i];
+			sum1 += a[offsetA + i + 1] * b[offsetB + i + 1];
+			sum2 += a[offsetA + i + 2] * b[offsetB + i + 2];
+			sum3 += a[offsetA + i + 3] * b[offsetB + i + 3];
+		}
+		for (; i < length; i++) {
+			sum0 += a[offsetA + i] * b[offsetB + i];
+		}
+		return (sum0 + sum1) + (sum2 + sum3);
+	}
+
+	/**
+	 * Dot product of the vector with the vector in the slot, vectors of mapped
+	 * slots are copied to the scratch array first.
+	 */
+	private float dot(float[] vector, int slot, float[] scratch) {
+		if (slot < mappedCount) {
+			mapped.get(slot, scratch, 0);
+			return dot(vector, 0, scratch, 0, dimension);
+		}
+		return dot(vector, 0, vectors, (slot - mappedCount) * dimension, dimension);
+	}
+
+	private float[] copyVector(int slot, float[] target, int offset) {
+		if (slot < mappedCount) {
+			mapped.get(slot, target, offset);
+		} else {
+			System.arraycopy(vectors, (slot - mappedCount) * dimension, target, offset, dimension);
+		}
+		return target;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > ids.length) {
+			int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1) + 16);
+			vectors = Arrays.copyOf(vectors, (newCapacity - mappedCount) * dimension);
+			inverseNorms = Arrays.copyOf(inverseNorms, newCapacity);
+			ids = Arrays.copyOf(ids, newCapacity);
+			segments = Arrays.copyOf(segments, newCapacity);
+		}
+	}
+
+	/**
+	 * After changes: compacts the slots when more than half are removed and
+	 * builds the graph when the store has grown above the threshold.
+	 */
+	private void updateLayout() {
+		int removedCount = slotCount - slots.size();
+		if (removedCount > 0 && removedCount * 2 >= slotCount) {
+			compact();
+		}
+		if (graph == null && slots.size() > graphThreshold) {
+			graph = new HnswGraph(this::similarity);
+			for (int slot = 0; slot < slotCount; slot++) {
+				if (!removed.get(slot)) {
+					graph.insert(slot);
+				}
+			}
+		}
+	}
+
+	/**
+	 * Moves the remaining slots to the front, the vectors of mapped slots are
+	 * moved to the heap.
+	 */
+	private void compact() {
+		float[] compacted = mappedCount == 0 ? vectors : new float[ids.length * dimension];
+		int live = 0;
+		for (int slot = 0; slot < slotCount; slot++) {
+			if (removed.get(slot)) {
+				continue;
+			}
+			if (slot != live || compacted != vectors) {
+				copyVector(slot, compacted, live * dimension);
+				inverseNorms[live] = inverseNorms[slot];
+				ids[live] = ids[slot];
+				segments[live] = segments[slot];
+				slots.put(ids[live], Integer.valueOf(live));
+			}
+			live++;
+		}
+		Arrays.fill(ids, live, slotCount, null);
+		Arrays.fill(segments, live, slotCount, null);
+		vectors = compacted;
+		mapped = null;
+		mappedCount = 0;
+		slotCount = live;
+		removed.clear();
+		// slots moved, the graph is rebuilt when still needed
+		graph = null;
+	}
+
+	private float similarity(int a, int b) {
+		float dot = a >= mappedCount && b >= mappedCount
+				? dot(vectors, (a - mappedCount) * dimension, vectors, (b - mappedCount) * dimension, dimension)
+				: dot(copyVector(a, similarityVector, 0), b, similarityScratch);
+		return dot * inverseNorms[a] * inverseNorms[b];
+	}
+}
@@ -0,0 +1,60 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import org.mozilla.javascript.annotations.JSFunction;
+
+import com.servoy.extensions.aiplugin.AIProvider;
+import com.servoy.extensions.aiplugin.ProviderLoader;
+import com.servoy.j2db.documentation.ServoyDocumented;
+import com.servoy.j2db.scripting.IJavaScriptType;
+
+/**
+ * LocalEmbeddingModelBuilder is a builder for an embedding model that runs in
+ * the server process on the CPU, without network calls or an API key. It uses
+ * the all-MiniLM-L6-v2 sentence embedding model (384 dimensions) that is
+ * bundled in the local provider package.
+ */
+@ServoyDocumented
+public class LocalEmbeddingModelBuilder implements IJavaScriptType {
+
+	private final AIProvider provider;
+	private int threads;
+
+	/**
+	 * Constructs a LocalEmbeddingModelBuilder with the given plugin access.
+	 *
+	 * @param provider ai provider plugin.
+	 */
+	public LocalEmbeddingModelBuilder(AIProvider provider) {
+		this.provider = provider;
+	}
+
+	/**
+	 * Sets the number of threads that embed the texts of one call in parallel.
+	 * Defaults to the number of processors. Models with the same number of threads
+	 * share one loaded model and thread pool.
+	 *
+	 * @param threads The number of threads.
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public LocalEmbeddingModelBuilder threads(int threads) {
+		this.threads = threads;
+		return this;
+	}
+
+	/**
+	 * Builds and returns an EmbeddingModel that embeds in process with the
+	 * bundled model.
+	 *
+	 * @return A configured EmbeddingModel instance.
+	 */
+	@JSFunction
+	public EmbeddingModel build() {
+		ProviderLoader.ensureAvailable(
+			"dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel",
+			"Local embedding",
+			"local");
+		return LocalEmbeddingModelDelegate.build(threads > 0 ? threads : Runtime.getRuntime().availableProcessors(),
+				provider);
+	}
+}
@@ -0,0 +1,74 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import com.servoy.extensions.aiplugin.AIProvider;
+
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+
+class LocalEmbeddingModelDelegate {
+
+	private static final class Entry {
+		private final AllMiniLmL6V2EmbeddingModel model;
+		private final ExecutorService executor;
+		private int references;
+
+		private Entry(AllMiniLmL6V2EmbeddingModel model, ExecutorService executor) {
+			this.model = model;
+			this.executor = executor;
+		}
+	}
+
+	// loading the model takes a while and it is thread safe, so it is loaded once per thread count and kept
+	// with its thread pool while clients use it
+	private static final Map<Integer, Entry> MODELS = new HashMap<>();
+
+	static EmbeddingModel build(int threads, AIProvider provider) {
+		AllMiniLmL6V2EmbeddingModel model = acquire(threads);
+		if (provider != null) {
+			provider.releaseOnUnload(() -> release(threads));
+		}
+		return new EmbeddingModel(model, ModelIdentity.of(model), provider);
+	}
+
+	/**
+	 * Returns the model with the number of threads, loaded when no client uses it.
+	 * Every call must be paired with a {@link #release(int)}.
+	 */
+	static synchronized AllMiniLmL6V2EmbeddingModel acquire(int threads) {
+		Entry entry = MODELS.computeIfAbsent(Integer.valueOf(threads), LocalEmbeddingModelDelegate::load);
+		entry.references++;
+		return entry.model;
+	}
+
+	/**
+	 * Shuts the thread pool of the model down when the last client released it.
+	 */
+	static synchronized void release(int threads) {
+		Entry entry = MODELS.get(Integer.valueOf(threads));
+		if (entry != null && --entry.references <= 0) {
+			MODELS.remove(Integer.valueOf(threads));
+			entry.executor.shutdown();
+		}
+	}
+
+	static synchronized int references(int threads) {
+		Entry entry = MODELS.get(Integer.valueOf(threads));
+		return entry == null ? 0 : entry.references;
+	}
+
+	private static Entry load(Integer threads) {
+		var counter = new AtomicInteger();
+		// inference is CPU bound, so platform threads; daemon threads don't block a server shutdown
+		ExecutorService executor = Executors.newFixedThreadPool(threads.intValue(), runnable -> {
+			var thread = new Thread(runnable, "ai-local-embedding-" + counter.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		return new Entry(new AllMiniLmL6V2EmbeddingModel(executor), executor);
+	}
+}
@@ -0,0 +1,57 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static java.nio.channels.FileChannel.MapMode.READ_ONLY;
+
+import java.io.IOException;
+import java.nio.FloatBuffer;
+import java.nio.channels.FileChannel;
+
+/**
+ * Vectors memory mapped from a file. One mapping is limited to 2 GB, so the
+ * vectors are mapped in chunks of whole vectors.
+ */
+final class MappedVectors {
+
+	/**
+	 * Largest number of bytes mapped in one chunk.
+	 */
+	static final long MAX_CHUNK_BYTES = 1L << 30;
+
+	private final int dimension;
+	private final int vectorsPerChunk;
+	private final FloatBuffer[] chunks;
+
+	private MappedVectors(int dimension, int vectorsPerChunk, FloatBuffer[] chunks) {
+		this.dimension = dimension;
+		this.vectorsPerChunk = vectorsPerChunk;
+		this.chunks = chunks;
+	}
+
+	/**
+	 * Maps the vectors stored from the position in the file, as float32 in the
+	 * byte order of the file.
+	 *
+	 * @param chunkBytes largest number of bytes mapped in one chunk, at least one
+	 *                   vector is mapped per chunk.
+	 */
+	static MappedVectors map(FileChannel channel, long position, int dimension, int count, long chunkBytes)
+			throws IOException {
+		long vectorBytes = (long) dimension * Float.BYTES;
+		int vectorsPerChunk = (int) Math.max(1, Math.min(Integer.MAX_VALUE, chunkBytes / Math.max(1, vectorBytes)));
+		var chunks = new FloatBuffer[(int) ((count + (long) vectorsPerChunk - 1) / vectorsPerChunk)];
+		for (int chunk = 0; chunk < chunks.length; chunk++) {
+			long first = (long) chunk * vectorsPerChunk;
+			long vectors = Math.min(vectorsPerChunk, count - first);
+			chunks[chunk] = channel.map(READ_ONLY, position + first * vectorBytes, vectors * vectorBytes)
+					.asFloatBuffer();
+		}
+		return new MappedVectors(dimension, vectorsPerChunk, chunks);
+	}
+
+	/**
+	 * Copies the vector of the slot to the target.
+	 */
+	void get(int slot, float[] target, int offset) {
+		chunks[slot / vectorsPerChunk].get((slot % vectorsPerChunk) * dimension, target, offset, dimension);
+	}
+}
@@ -0,0 +1,79 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+
+/**
+ * Identifies the configuration of an embedding model: the provider class, the
+ * model name, the base url, the dimension and a hash of the API key. Separately
+ * built models with the same configuration produce the same embeddings, so
+ * cached embeddings and batched requests are shared on this identity instead of
+ * the model instance.
+ */
+public final class ModelIdentity {
+
+	private final DimensionAwareEmbeddingModel model;
+	private final String baseUrl;
+	private final String apiKeyHash;
+	private volatile String key;
+
+	private ModelIdentity(DimensionAwareEmbeddingModel model, String baseUrl, String apiKeyHash) {
+		this.model = model;
+		this.baseUrl = baseUrl;
+		this.apiKeyHash = apiKeyHash;
+	}
+
+	/**
+	 * Identity of a model that is configured by its class and model name only,
+	 * like the local model.
+	 */
+	public static ModelIdentity of(DimensionAwareEmbeddingModel model) {
+		return of(model, null, null);
+	}
+
+	/**
+	 * Identity of a model built for an endpoint.
+	 *
+	 * @param baseUrl base url of the endpoint, null for the provider default.
+	 * @param apiKey  API key, only a hash of it is kept.
+	 */
+	public static ModelIdentity of(DimensionAwareEmbeddingModel model, String baseUrl, String apiKey) {
+		return new ModelIdentity(model, baseUrl, apiKey == null ? null : ContentHash.sha256(apiKey));
+	}
+
+	/**
+	 * Key of the configuration, the dimension is resolved on the first call as
+	 * that can call the model.
+	 */
+	public String key() {
+		String result = key;
+		if (result == null) {
+			result = modelKey() + '/' + (apiKeyHash == null ? "" : apiKeyHash);
+			key = result;
+		}
+		return result;
+	}
+
+	/**
+	 * Key of the configuration without the API key, models with the same model
+	 * key return the same embeddings whatever key they are called with.
+	 */
+	public String modelKey() {
+		return model.getClass().getName() + '/' + model.modelName() + '/' + (baseUrl == null ? "" : baseUrl) + '/'
+				+ model.dimension();
+	}
+
+	@Override
+	public boolean equals(Object obj) {
+		return this == obj || obj instanceof ModelIdentity other && key().equals(other.key());
+	}
+
+	@Override
+	public int hashCode() {
+		return key().hashCode();
+	}
+
+	@Override
+	public String toString() {
+		return key();
+	}
+}
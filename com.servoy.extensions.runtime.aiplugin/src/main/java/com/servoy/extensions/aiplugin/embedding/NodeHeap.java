@@ -0,0 +1,141 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.util.Arrays;
+
+/**
+ * Binary heap of nodes (slots of a vector store) with their score, on primitive
+ * arrays. The top is the lowest score of a min heap and the highest score of a
+ * max heap.
+ */
+final class NodeHeap {
+
+	private final boolean max;
+	private int[] nodes;
+	private float[] scores;
+	private int size;
+
+	NodeHeap(int capacity, boolean max) {
+		this.max = max;
+		this.nodes = new int[Math.max(capacity, 1)];
+		this.scores = new float[nodes.length];
+	}
+
+	int size() {
+		return size;
+	}
+
+	boolean isEmpty() {
+		return size == 0;
+	}
+
+	int topNode() {
+		return nodes[0];
+	}
+
+	float topScore() {
+		return scores[0];
+	}
+
+	void push(int node, float score) {
+		if (size == nodes.length) {
+			nodes = Arrays.copyOf(nodes, size * 2);
+			scores = Arrays.copyOf(scores, size * 2);
+		}
+		nodes[size] = node;
+		scores[size] = score;
+		siftUp(size++);
+	}
+
+	/**
+	 * Removes the top.
+	 *
+	 * @return the node at the top.
+	 */
+	int pop() {
+		int node = nodes[0];
+		size--;
+		nodes[0] = nodes[size];
+		scores[0] = scores[size];
+		siftDown(0);
+		return node;
+	}
+
+	/**
+	 * Adds the node to a min heap that keeps the limit highest scores.
+	 *
+	 * @return whether the node was added.
+	 */
+	boolean offer(int node, float score, int limit) {
+		if (size < limit) {
+			push(node, score);
+			return true;
+		}
+		if (score <= scores[0]) {
+			return false;
+		}
+		nodes[0] = node;
+		scores[0] = score;
+		siftDown(0);
+		return true;
+	}
+
+	/**
+	 * Adds the nodes of the other min heap, keeping the limit highest scores.
+	 */
+	void offerAll(NodeHeap other, int limit) {
+		for (int i = 0; i < other.size; i++) {
+			offer(other.nodes[i], other.scores[i], limit);
+		}
+	}
+
+	/**
+	 * Empties a min heap into the arrays, which have the size of the heap, highest
+	 * score first.
+	 */
+	void drain(int[] drainedNodes, float[] drainedScores) {
+		for (int i = size - 1; i >= 0; i--) {
+			drainedScores[i] = scores[0];
+			drainedNodes[i] = pop();
+		}
+	}
+
+	private boolean before(float a, float b) {
+		return max ? a > b : a < b;
+	}
+
+	private void siftUp(int index) {
+		int node = nodes[index];
+		float score = scores[index];
+		while (index > 0) {
+			int parent = (index - 1) >>> 1;
+			if (!before(score, scores[parent])) {
+				break;
+			}
+			nodes[index] = nodes[parent];
+			scores[index] = scores[parent];
+			index = parent;
+		}
+		nodes[index] = node;
+		scores[index] = score;
+	}
+
+	private void siftDown(int index) {
+		int node = nodes[index];
+		float score = scores[index];
+		int half = size >>> 1;
+		while (index < half) {
+			int child = 2 * index + 1;
+			if (child + 1 < size && before(scores[child + 1], scores[child])) {
+				child++;
+			}
+			if (!before(scores[child], score)) {
+				break;
+			}
+			nodes[index] = nodes[child];
+			scores[index] = scores[child];
+			index = child;
+		}
+		nodes[index] = node;
+		scores[index] = score;
+	}
+}
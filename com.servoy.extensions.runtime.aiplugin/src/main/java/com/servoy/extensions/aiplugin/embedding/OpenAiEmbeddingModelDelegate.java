@@ -11,6 +11,7 @@ class OpenAiEmbeddingModelDelegate {
 		if (apiKey != null) builder.apiKey(apiKey);
 		if (modelName != null) builder.modelName(modelName);
 		if (baseUrl != null) builder.baseUrl(baseUrl);
-		return new EmbeddingModel(builder.build(), provider);
+		var model = builder.build();
+		return new EmbeddingModel(model, ModelIdentity.of(model, baseUrl, apiKey), provider);
 	}
 }
@@ -0,0 +1,190 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+
+import java.io.DataInput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
+import java.util.SplittableRandom;
+import java.util.stream.IntStream;
+
+/**
+ * Product quantizer for unit vectors: a vector is split in subspaces and every
+ * subspace is encoded as the index of the nearest of at most 256 centroids, so
+ * a vector takes one byte per subspace.
+ * <p>
+ * Dot products with a query are estimated with a table of the dot products of
+ * the query with all centroids, see {@link #table(float[])}, scoring a code is
+ * then one table lookup per subspace.
+ */
+final class ProductQuantizer {
+
+	static final int MAX_CENTROIDS = 256;
+
+	private static final int ITERATIONS = 10;
+
+	private final int dimension;
+	private final int subspaces;
+	private final int subDimension;
+	private final int centroidCount;
+	// per subspace per centroid the subDimension values
+	private final float[] centroids;
+
+	private ProductQuantizer(int dimension, int subspaces, int centroidCount, float[] centroids) {
+		this.dimension = dimension;
+		this.subspaces = subspaces;
+		this.subDimension = dimension / subspaces;
+		this.centroidCount = centroidCount;
+		this.centroids = centroids;
+	}
+
+	/**
+	 * Trains the centroids with k-means on a sample of the vectors, the subspaces
+	 * are trained in parallel.
+	 *
+	 * @param sample the vectors to train on, normalized.
+	 */
+	static ProductQuantizer train(int dimension, int subspaces, float[][] sample) {
+		ensureTrue(subspaces > 0 && dimension % subspaces == 0,
+				"the number of subspaces must divide the dimension " + dimension);
+		ensureTrue(sample.length > 0, "no vectors to train on");
+		int centroidCount = Math.min(MAX_CENTROIDS, sample.length);
+		int subDimension = dimension / subspaces;
+		var centroids = new float[subspaces * centroidCount * subDimension];
+		IntStream.range(0, subspaces).parallel()
+				.forEach(subspace -> kMeans(sample, subspace * subDimension, subDimension, centroids,
+						subspace * centroidCount * subDimension, centroidCount, new SplittableRandom(subspace)));
+		return new ProductQuantizer(dimension, subspaces, centroidCount, centroids);
+	}
+
+	private static void kMeans(float[][] sample, int from, int length, float[] centroids, int offset, int count,
+			SplittableRandom random) {
+		// initial centroids are distinct sample vectors
+		int[] order = IntStream.range(0, sample.length).toArray();
+		for (int c = 0; c < count; c++) {
+			int pick = c + random.nextInt(sample.length - c);
+			int swap = order[c];
+			order[c] = order[pick];
+			order[pick] = swap;
+			System.arraycopy(sample[order[c]], from, centroids, offset + c * length, length);
+		}
+		var assignment = new int[sample.length];
+		var sums = new float[count * length];
+		var sizes = new int[count];
+		for (int iteration = 0; iteration < ITERATIONS; iteration++) {
+			for (int i = 0; i < sample.length; i++) {
+				assignment[i] = nearest(sample[i], from, length, centroids, offset, count);
+			}
+			Arrays.fill(sums, 0);
+			Arrays.fill(sizes, 0);
+			for (int i = 0; i < sample.length; i++) {
+				int c = assignment[i];
+				sizes[c]++;
+				for (int d = 0; d < length; d++) {
+					sums[c * length + d] += sample[i][from + d];
+				}
+			}
+			for (int c = 0; c < count; c++) {
+				if (sizes[c] == 0) {
+					// empty cluster, restart it at a random sample vector
+					System.arraycopy(sample[random.nextInt(sample.length)], from, centroids, offset + c * length, length);
+					continue;
+				}
+				for (int d = 0; d < length; d++) {
+					centroids[offset + c * length + d] = sums[c * length + d] / sizes[c];
+				}
+			}
+		}
+	}
+
+	/**
+	 * Index of the centroid nearest to the part of the vector, by euclidean
+	 * distance.
+	 */
+	private static int nearest(float[] vector, int from, int length, float[] centroids, int offset, int count) {
+		int best = 0;
+		float bestDistance = Float.MAX_VALUE;
+		for (int c = 0; c < count; c++) {
+			float distance = 0;
+			int centroid = offset + c * length;
+			for (int d = 0; d < length; d++) {
+				float difference = vector[from + d] - centroids[centroid + d];
+				distance += difference * difference;
+			}
+			if (distance < bestDistance) {
+				best = c;
+				bestDistance = distance;
+			}
+		}
+		return best;
+	}
+
+	int dimension() {
+		return dimension;
+	}
+
+	int subspaces() {
+		return subspaces;
+	}
+
+	/**
+	 * Writes the code of the normalized vector at the offset.
+	 */
+	void encode(float[] vector, byte[] codes, int offset) {
+		for (int subspace = 0; subspace < subspaces; subspace++) {
+			codes[offset + subspace] = (byte) nearest(vector, subspace * subDimension, subDimension, centroids,
+					subspace * centroidCount * subDimension, centroidCount);
+		}
+	}
+
+	/**
+	 * Dot products of the parts of the query with the centroids of their
+	 * subspace, per subspace {@link #MAX_CENTROIDS} entries.
+	 */
+	float[] table(float[] query) {
+		var table = new float[subspaces * MAX_CENTROIDS];
+		for (int subspace = 0; subspace < subspaces; subspace++) {
+			for (int c = 0; c < centroidCount; c++) {
+				table[subspace * MAX_CENTROIDS + c] = InMemoryVectorStore.dot(query, subspace * subDimension, centroids,
+						(subspace * centroidCount + c) * subDimension, subDimension);
+			}
+		}
+		return table;
+	}
+
+	/**
+	 * Estimated dot product of the query of the table with the code at the
+	 * offset.
+	 */
+	float score(float[] table, byte[] codes, int offset) {
+		float score = 0;
+		for (int subspace = 0, entry = 0; subspace < subspaces; subspace++, entry += MAX_CENTROIDS) {
+			score += table[entry + (codes[offset + subspace] & 0xFF)];
+		}
+		return score;
+	}
+
+	/**
+	 * Writes the centroids, see {@link #read(DataInput)}.
+	 */
+	void write(DataOutputStream out) throws IOException {
+		out.writeInt(dimension);
+		out.writeInt(subspaces);
+		out.writeInt(centroidCount);
+		for (float value : centroids) {
+			out.writeFloat(value);
+		}
+	}
+
+	static ProductQuantizer read(DataInput in) throws IOException {
+		int dimension = in.readInt();
+		int subspaces = in.readInt();
+		int centroidCount = in.readInt();
+		var centroids = new float[dimension * centroidCount];
+		for (int i = 0; i < centroids.length; i++) {
+			centroids[i] = in.readFloat();
+		}
+		return new ProductQuantizer(dimension, subspaces, centroidCount, centroids);
+	}
+}
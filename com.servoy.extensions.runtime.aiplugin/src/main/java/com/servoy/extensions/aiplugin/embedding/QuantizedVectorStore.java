@@ -0,0 +1,463 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotBlank;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotEmpty;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.CREATE;
+import static java.nio.file.StandardOpenOption.READ;
+import static java.nio.file.StandardOpenOption.TRUNCATE_EXISTING;
+import static java.nio.file.StandardOpenOption.WRITE;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.SplittableRandom;
+import java.util.concurrent.locks.ReadWriteLock;
+import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.stream.IntStream;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.RelevanceScore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+/**
+ * Embedding store for large indexes with little memory, opened from a file
+ * written by {@link InMemoryVectorStore#save(Path)}. Every vector is kept in
+ * memory as a product quantization code of one byte per subspace instead of 4
+ * bytes per dimension; the full vectors stay in the memory mapped file, so the
+ * operating system only keeps the pages that are read in memory.
+ * <p>
+ * Searches scan the codes in parallel chunks. With rerank the best candidates
+ * of the scan are scored again with their full vectors, which makes the results
+ * nearly exact; without rerank the scores are estimates.
+ * <p>
+ * The codebooks are trained on a sample of the vectors when the store is
+ * opened. They and the codes are cached in a file next to the store file
+ * (ending with .pq), which is used instead of training again as long as it is
+ * newer than the store file. The codes are read into memory in chunks, neither
+ * file is limited to the 2 GB of a single mapping. Embeddings added later are kept on the heap with
+ * their full vector, add large numbers of embeddings to an
+ * {@link InMemoryVectorStore}, save it and open it again.
+ */
+public class QuantizedVectorStore implements EmbeddingStore<TextSegment> {
+
+	/**
+	 * Number of candidates per result that are reranked.
+	 */
+	static final int RERANK_FACTOR = 10;
+
+	private static final int TRAINING_SAMPLE = 10_000;
+	private static final int CHUNK_SIZE = 8192;
+
+	private static final int CODES_MAGIC = 0x53565051;
+	private static final int CODES_VERSION = 1;
+
+	private final int dimension;
+	private final ProductQuantizer quantizer;
+	private final boolean rerank;
+	private final ReadWriteLock lock = new ReentrantReadWriteLock();
+
+	// vectors of the slots of the file
+	private final MappedVectors mapped;
+	private final int mappedCount;
+	// vectors of the slots added after opening
+	private float[] vectors = new float[0];
+	private float[] inverseNorms;
+	// codes per chunk of CHUNK_SIZE slots
+	private byte[][] codes;
+	private String[] ids;
+	private TextSegment[] segments;
+	private int slotCount;
+	private final BitSet removed;
+	private final Map<String, Integer> slots;
+
+	private QuantizedVectorStore(VectorStoreFile file, ProductQuantizer quantizer, byte[][] codes, boolean rerank) {
+		this.dimension = file.dimension();
+		this.quantizer = quantizer;
+		this.rerank = rerank;
+		this.mapped = file.vectors();
+		this.mappedCount = file.count();
+		this.inverseNorms = file.inverseNorms();
+		this.codes = codes;
+		this.ids = file.ids();
+		this.segments = file.segments();
+		this.slotCount = file.count();
+		this.removed = file.removed();
+		this.slots = file.slots();
+	}
+
+	/**
+	 * Opens a file written by {@link InMemoryVectorStore#save(Path)}. The file
+	 * must not be changed while the store uses it.
+	 *
+	 * @param subspaces number of subspaces, the bytes per vector, must divide the
+	 *                  dimension. A quarter of the dimension uses 16 times less
+	 *                  memory than the full vectors, an eighth 32 times.
+	 * @param rerank    whether the best candidates are scored again with their
+	 *                  full vectors.
+	 */
+	public static QuantizedVectorStore open(Path path, int subspaces, boolean rerank) throws IOException {
+		VectorStoreFile file = VectorStoreFile.read(path, null);
+		ensureTrue(subspaces > 0 && file.dimension() % subspaces == 0,
+				"the number of subspaces must divide the dimension " + file.dimension());
+		Path codesPath = file.path().resolveSibling(file.path().getFileName() + ".pq");
+		if (Files.exists(codesPath)
+				&& Files.getLastModifiedTime(codesPath).compareTo(Files.getLastModifiedTime(file.path())) >= 0) {
+			QuantizedVectorStore store = readCodes(codesPath, file, subspaces, rerank);
+			if (store != null) {
+				return store;
+			}
+		}
+		ProductQuantizer quantizer = ProductQuantizer.train(file.dimension(), subspaces, sample(file));
+		byte[][] codes = codeChunks(file.count(), subspaces);
+		IntStream.range(0, file.count()).parallel().forEach(slot -> {
+			if (!file.removed().get(slot)) {
+				quantizer.encode(normalized(file.vectors(), slot, file.dimension(), file.inverseNorms()[slot]),
+						codes[slot / CHUNK_SIZE], (slot % CHUNK_SIZE) * subspaces);
+			}
+		});
+		writeCodes(codesPath, quantizer, codes, file.count());
+		return new QuantizedVectorStore(file, quantizer, codes, rerank);
+	}
+
+	/**
+	 * Normalized vectors of a random sample of the live slots.
+	 */
+	private static float[][] sample(VectorStoreFile file) {
+		int[] live = IntStream.range(0, file.count()).filter(slot -> !file.removed().get(slot)).toArray();
+		ensureTrue(live.length > 0, "Embedding store file has no embeddings to train on");
+		var random = new SplittableRandom(42);
+		for (int i = live.length - 1; i > 0; i--) {
+			int pick = random.nextInt(i + 1);
+			int swap = live[i];
+			live[i] = live[pick];
+			live[pick] = swap;
+		}
+		return Arrays.stream(live, 0, Math.min(TRAINING_SAMPLE, live.length))
+				.mapToObj(slot -> normalized(file.vectors(), slot, file.dimension(), file.inverseNorms()[slot]))
+				.toArray(float[][]::new);
+	}
+
+	/**
+	 * Arrays for the codes of the slots, one per chunk of CHUNK_SIZE slots.
+	 */
+	private static byte[][] codeChunks(int count, int subspaces) {
+		var codes = new byte[(count + CHUNK_SIZE - 1) / CHUNK_SIZE][];
+		for (int chunk = 0; chunk < codes.length; chunk++) {
+			codes[chunk] = new byte[CHUNK_SIZE * subspaces];
+		}
+		return codes;
+	}
+
+	private static float[] normalized(MappedVectors vectors, int slot, int dimension, float inverseNorm) {
+		var vector = new float[dimension];
+		vectors.get(slot, vector, 0);
+		for (int d = 0; d < dimension; d++) {
+			vector[d] *= inverseNorm;
+		}
+		return vector;
+	}
+
+	/**
+	 * Reads the cached codes, null when they are not for this file.
+	 */
+	private static QuantizedVectorStore readCodes(Path codesPath, VectorStoreFile file, int subspaces,
+			boolean rerank) throws IOException {
+		// read, not mapped, so the file can be replaced while the store is open
+		try (FileChannel channel = FileChannel.open(codesPath, READ)) {
+			var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+			if (in.readInt() != CODES_MAGIC || in.readInt() != CODES_VERSION || in.readInt() != file.count()) {
+				return null;
+			}
+			ProductQuantizer quantizer = ProductQuantizer.read(in);
+			if (quantizer.subspaces() != subspaces || quantizer.dimension() != file.dimension()) {
+				return null;
+			}
+			byte[][] codes = codeChunks(file.count(), subspaces);
+			for (int chunk = 0; chunk < codes.length; chunk++) {
+				in.readFully(codes[chunk], 0, Math.min(CHUNK_SIZE, file.count() - chunk * CHUNK_SIZE) * subspaces);
+			}
+			return new QuantizedVectorStore(file, quantizer, codes, rerank);
+		}
+	}
+
+	/**
+	 * Writes the codebooks and codes: magic, version, slot count, the quantizer
+	 * and the codes per slot.
+	 */
+	private static void writeCodes(Path codesPath, ProductQuantizer quantizer, byte[][] codes, int count)
+			throws IOException {
+		Path temp = codesPath.resolveSibling(codesPath.getFileName() + ".tmp");
+		try (FileChannel channel = FileChannel.open(temp, CREATE, WRITE, TRUNCATE_EXISTING)) {
+			var out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel), 1 << 16));
+			out.writeInt(CODES_MAGIC);
+			out.writeInt(CODES_VERSION);
+			out.writeInt(count);
+			quantizer.write(out);
+			for (int chunk = 0; chunk < codes.length; chunk++) {
+				out.write(codes[chunk], 0, Math.min(CHUNK_SIZE, count - chunk * CHUNK_SIZE) * quantizer.subspaces());
+			}
+			out.flush();
+		}
+		Files.move(temp, codesPath, REPLACE_EXISTING, ATOMIC_MOVE);
+	}
+
+	public int dimension() {
+		return dimension;
+	}
+
+	public int size() {
+		lock.readLock().lock();
+		try {
+			return slots.size();
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	@Override
+	public String add(Embedding embedding) {
+		return addSingle(randomUUID(), embedding, null);
+	}
+
+	@Override
+	public void add(String id, Embedding embedding) {
+		addSingle(id, embedding, null);
+	}
+
+	@Override
+	public String add(Embedding embedding, TextSegment textSegment) {
+		return addSingle(randomUUID(), embedding, textSegment);
+	}
+
+	private String addSingle(String id, Embedding embedding, TextSegment textSegment) {
+		addAll(List.of(id), List.of(embedding), textSegment == null ? null : List.of(textSegment));
+		return id;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings) {
+		List<String> newIds = generateIds(embeddings.size());
+		addAll(newIds, embeddings, null);
+		return newIds;
+	}
+
+	/**
+	 * Adds the embeddings, an embedding with the id of an existing one replaces
+	 * it.
+	 */
+	@Override
+	public void addAll(List<String> newIds, List<Embedding> embeddings, List<TextSegment> embedded) {
+		ensureTrue(newIds.size() == embeddings.size(), "ids and embeddings differ in size");
+		ensureTrue(embedded == null || newIds.size() == embedded.size(), "ids and embedded differ in size");
+		for (Embedding embedding : embeddings) {
+			ensureTrue(embedding.dimension() == dimension,
+					"embedding dimension " + embedding.dimension() + " differs from store dimension " + dimension);
+		}
+		lock.writeLock().lock();
+		try {
+			ensureCapacity(slotCount + newIds.size());
+			for (int i = 0; i < newIds.size(); i++) {
+				Integer existing = slots.get(newIds.get(i));
+				if (existing != null) {
+					removed.set(existing.intValue());
+				}
+				int slot = slotCount++;
+				float[] vector = embeddings.get(i).vector();
+				System.arraycopy(vector, 0, vectors, (slot - mappedCount) * dimension, dimension);
+				float norm = (float) Math.sqrt(InMemoryVectorStore.dot(vector, 0, vector, 0, dimension));
+				inverseNorms[slot] = norm == 0 ? 0 : 1 / norm;
+				var unit = new float[dimension];
+				for (int d = 0; d < dimension; d++) {
+					unit[d] = vector[d] * inverseNorms[slot];
+				}
+				quantizer.encode(unit, codes[slot / CHUNK_SIZE], (slot % CHUNK_SIZE) * quantizer.subspaces());
+				ids[slot] = newIds.get(i);
+				segments[slot] = embedded == null ? null : embedded.get(i);
+				slots.put(newIds.get(i), Integer.valueOf(slot));
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void remove(String id) {
+		removeAll(List.of(ensureNotBlank(id, "id")));
+	}
+
+	@Override
+	public void removeAll(Collection<String> removedIds) {
+		ensureNotEmpty(removedIds, "ids");
+		lock.writeLock().lock();
+		try {
+			for (String id : removedIds) {
+				Integer slot = slots.remove(id);
+				if (slot != null) {
+					removed.set(slot.intValue());
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public void removeAll(Filter filter) {
+		ensureNotNull(filter, "filter");
+		lock.writeLock().lock();
+		try {
+			for (int slot = 0; slot < slotCount; slot++) {
+				if (!removed.get(slot) && segments[slot] != null && filter.test(segments[slot].metadata())) {
+					slots.remove(ids[slot]);
+					removed.set(slot);
+				}
+			}
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	/**
+	 * Removes all embeddings, the memory of the removed slots is kept until the
+	 * store is opened again.
+	 */
+	@Override
+	public void removeAll() {
+		lock.writeLock().lock();
+		try {
+			slots.clear();
+			removed.set(0, slotCount);
+		} finally {
+			lock.writeLock().unlock();
+		}
+	}
+
+	@Override
+	public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+		float[] query = request.queryEmbedding().vector();
+		ensureTrue(query.length == dimension,
+				"query dimension " + query.length + " differs from store dimension " + dimension);
+		float queryNorm = (float) Math.sqrt(InMemoryVectorStore.dot(query, 0, query, 0, dimension));
+		float queryInverseNorm = queryNorm == 0 ? 0 : 1 / queryNorm;
+		var unitQuery = new float[dimension];
+		for (int d = 0; d < dimension; d++) {
+			unitQuery[d] = query[d] * queryInverseNorm;
+		}
+		// relevance score is (cosine + 1) / 2
+		float minCosine = (float) (2 * request.minScore() - 1);
+		int maxResults = request.maxResults();
+
+		lock.readLock().lock();
+		try {
+			float[] table = quantizer.table(unitQuery);
+			NodeHeap nearest;
+			if (rerank) {
+				NodeHeap candidates = scan(table, maxResults * RERANK_FACTOR, -Float.MAX_VALUE, request.filter());
+				nearest = new NodeHeap(maxResults, false);
+				var scratch = new float[dimension];
+				while (!candidates.isEmpty()) {
+					int slot = candidates.pop();
+					float cosine = InMemoryVectorStore.dot(unitQuery, 0, vector(slot, scratch), 0, dimension)
+							* inverseNorms[slot];
+					if (cosine >= minCosine) {
+						nearest.offer(slot, cosine, maxResults);
+					}
+				}
+			} else {
+				nearest = scan(table, maxResults, minCosine, request.filter());
+			}
+
+			int[] nodes = new int[nearest.size()];
+			float[] cosines = new float[nodes.length];
+			nearest.drain(nodes, cosines);
+			var matches = new ArrayList<EmbeddingMatch<TextSegment>>(nodes.length);
+			for (int i = 0; i < nodes.length; i++) {
+				matches.add(new EmbeddingMatch<>(RelevanceScore.fromCosineSimilarity(cosines[i]), ids[nodes[i]],
+						new Embedding(vector(nodes[i], new float[dimension])), segments[nodes[i]]));
+			}
+			return new EmbeddingSearchResult<>(matches);
+		} finally {
+			lock.readLock().unlock();
+		}
+	}
+
+	/**
+	 * Scores the codes with the table, in parallel chunks for larger stores.
+	 */
+	private NodeHeap scan(float[] table, int limit, float minCosine, Filter filter) {
+		int count = slotCount;
+		if (count <= CHUNK_SIZE) {
+			return scan(0, count, table, limit, minCosine, filter);
+		}
+		return IntStream.range(0, (count + CHUNK_SIZE - 1) / CHUNK_SIZE).parallel()
+				.mapToObj(chunk -> scan(chunk * CHUNK_SIZE, Math.min(count, (chunk + 1) * CHUNK_SIZE), table, limit,
+						minCosine, filter))
+				.reduce((a, b) -> {
+					a.offerAll(b, limit);
+					return a;
+				}).orElseThrow();
+	}
+
+	private NodeHeap scan(int from, int to, float[] table, int limit, float minCosine, Filter filter) {
+		var nearest = new NodeHeap(limit, false);
+		int subspaces = quantizer.subspaces();
+		// chunks of the scan are chunks of the codes
+		byte[] chunkCodes = codes[from / CHUNK_SIZE];
+		for (int slot = from; slot < to; slot++) {
+			if (removed.get(slot) || filter != null && !InMemoryVectorStore.matches(filter, segments[slot])) {
+				continue;
+			}
+			float cosine = quantizer.score(table, chunkCodes, (slot - from) * subspaces);
+			if (cosine >= minCosine) {
+				nearest.offer(slot, cosine, limit);
+			}
+		}
+		return nearest;
+	}
+
+	private float[] vector(int slot, float[] target) {
+		if (slot < mappedCount) {
+			mapped.get(slot, target, 0);
+		} else {
+			System.arraycopy(vectors, (slot - mappedCount) * dimension, target, 0, dimension);
+		}
+		return target;
+	}
+
+	private void ensureCapacity(int capacity) {
+		if (capacity > ids.length) {
+			int newCapacity = Math.max(capacity, ids.length + (ids.length >> 1) + 16);
+			vectors = Arrays.copyOf(vectors, (newCapacity - mappedCount) * dimension);
+			inverseNorms = Arrays.copyOf(inverseNorms, newCapacity);
+			int chunks = codes.length;
+			codes = Arrays.copyOf(codes, (newCapacity + CHUNK_SIZE - 1) / CHUNK_SIZE);
+			for (int chunk = chunks; chunk < codes.length; chunk++) {
+				codes[chunk] = new byte[CHUNK_SIZE * quantizer.subspaces()];
+			}
+			ids = Arrays.copyOf(ids, newCapacity);
+			segments = Arrays.copyOf(segments, newCapacity);
+		}
+	}
+}
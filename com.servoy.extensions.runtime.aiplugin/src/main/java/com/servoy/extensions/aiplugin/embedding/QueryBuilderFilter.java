@@ -0,0 +1,101 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.util.Collection;
+import java.util.Set;
+
+import com.servoy.j2db.querybuilder.IQueryBuilder;
+import com.servoy.j2db.querybuilder.IQueryBuilderColumn;
+import com.servoy.j2db.querybuilder.IQueryBuilderCondition;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.logical.And;
+
+/**
+ * Translates langchain4j metadata filters into query builder conditions on the
+ * meta data columns of an embeddings table, see {@link FilterTranslator}.
+ */
+final class QueryBuilderFilter extends FilterTranslator<IQueryBuilderCondition> {
+
+	private final IQueryBuilder query;
+	private final Set<String> columnNames;
+
+	private QueryBuilderFilter(IQueryBuilder query, Set<String> columnNames) {
+		this.query = query;
+		this.columnNames = columnNames;
+	}
+
+	/**
+	 * Translates the complete filter.
+	 *
+	 * @param query       query to create the condition for.
+	 * @param filter      filter to translate.
+	 * @param columnNames names of the meta data columns.
+	 * @return the condition, or null when the filter uses keys that are not meta
+	 *         data columns or filter types that cannot be translated.
+	 */
+	static IQueryBuilderCondition translate(IQueryBuilder query, Filter filter, Set<String> columnNames) {
+		return new QueryBuilderFilter(query, columnNames).translate(filter);
+	}
+
+	/**
+	 * Translates the parts of a top-level {@link And} that can be translated. The
+	 * result matches a superset of the filter, so the filter still has to be
+	 * tested on the results.
+	 *
+	 * @return the condition, or null when no part can be translated.
+	 */
+	static IQueryBuilderCondition translatePartially(IQueryBuilder query, Filter filter, Set<String> columnNames) {
+		IQueryBuilderCondition condition = translate(query, filter, columnNames);
+		if (condition != null || !(filter instanceof And and)) {
+			return condition;
+		}
+		IQueryBuilderCondition left = translatePartially(query, and.left(), columnNames);
+		IQueryBuilderCondition right = translatePartially(query, and.right(), columnNames);
+		if (left == null || right == null) {
+			return left == null ? right : left;
+		}
+		return query.and().add(left).add(right);
+	}
+
+	@Override
+	protected IQueryBuilderCondition and(IQueryBuilderCondition left, IQueryBuilderCondition right) {
+		return query.and().add(left).add(right);
+	}
+
+	@Override
+	protected IQueryBuilderCondition or(IQueryBuilderCondition left, IQueryBuilderCondition right) {
+		return query.or().add(left).add(right);
+	}
+
+	@Override
+	protected IQueryBuilderCondition comparison(String key, Operator operator, Object value, boolean negated) {
+		return condition(key, negated, column -> switch (operator) {
+		case EQ -> column.eq(value);
+		case GT -> column.gt(value);
+		case GE -> column.ge(value);
+		case LT -> column.lt(value);
+		case LE -> column.le(value);
+		});
+	}
+
+	@Override
+	protected IQueryBuilderCondition in(String key, Collection<?> values, boolean negated) {
+		return condition(key, negated, column -> column.isin(values.toArray()));
+	}
+
+	private interface Comparison {
+		IQueryBuilderCondition apply(IQueryBuilderColumn column);
+	}
+
+	private IQueryBuilderCondition condition(String key, boolean negated, Comparison comparison) {
+		if (!columnNames.contains(key)) {
+			return null;
+		}
+		IQueryBuilderColumn column = query.getColumn(key);
+		if (!negated) {
+			return comparison.apply(column);
+		}
+		// a missing value matches the negated comparison
+		return query.or().add(comparison.apply(column.not())).add(column.isNull());
+	}
+}
@@ -0,0 +1,18 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.io.IOException;
+import java.nio.file.Path;
+
+/**
+ * An in-memory embedding store that can be saved to a file and loaded again.
+ */
+interface SavableEmbeddingStore {
+
+	void save(Path path) throws IOException;
+
+	/**
+	 * Replaces the content of the store with a file written by
+	 * {@link #save(Path)}.
+	 */
+	void load(Path path) throws IOException;
+}
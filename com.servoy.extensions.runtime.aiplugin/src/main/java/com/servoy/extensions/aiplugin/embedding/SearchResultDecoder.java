@@ -0,0 +1,151 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_ID_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.FINGERPRINT_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.QUANTIZED_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.QUERY_INDEX_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.SCORE_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.TEXT_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.TEXT_SEARCH_COLUMN;
+import static java.util.Arrays.asList;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.servoy.j2db.dataprocessing.IDataSet;
+import com.servoy.j2db.persistence.Column;
+import com.servoy.j2db.persistence.ITable;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+
+/**
+ * Schema of an embeddings table as needed to read search results, built once
+ * per table instead of per search. A decoder is kept while the table instance
+ * and the schema version of the data source are the same, see
+ * {@link ServoyEmbeddingStore#schemaChanged(String)}; the columns are not
+ * compared per search.
+ * <p>
+ * The column positions of a result are resolved once per data set, rows are
+ * then decoded by position.
+ */
+final class SearchResultDecoder {
+
+	private final ITable table;
+	private final int schemaVersion;
+	private final List<String> metaDataColumnNames;
+	private final boolean hasText;
+
+	private SearchResultDecoder(ITable table, int schemaVersion, List<String> metaDataColumnNames, boolean hasText) {
+		this.table = table;
+		this.schemaVersion = schemaVersion;
+		this.metaDataColumnNames = metaDataColumnNames;
+		this.hasText = hasText;
+	}
+
+	static SearchResultDecoder forTable(ITable table, int schemaVersion) {
+		var metaDataColumnNames = new ArrayList<String>();
+		boolean hasText = false;
+		for (Column column : table.getColumns()) {
+			switch (column.getName()) {
+			case EMBEDDING_ID_COLUMN:
+			case EMBEDDING_COLUMN:
+			case FINGERPRINT_COLUMN:
+			case QUANTIZED_COLUMN:
+			case TEXT_SEARCH_COLUMN:
+				break;
+
+			case TEXT_COLUMN:
+				hasText = true;
+				break;
+
+			default:
+				metaDataColumnNames.add(column.getName());
+			}
+		}
+		return new SearchResultDecoder(table, schemaVersion, List.copyOf(metaDataColumnNames), hasText);
+	}
+
+	/**
+	 * Whether the decoder still matches the table, false when the table was
+	 * reloaded or recreated as another instance, or its schema was changed.
+	 */
+	boolean isFor(ITable current, int currentSchemaVersion) {
+		return table == current && schemaVersion == currentSchemaVersion;
+	}
+
+	List<String> metaDataColumnNames() {
+		return metaDataColumnNames;
+	}
+
+	Set<String> metaDataColumnNameSet() {
+		return Set.copyOf(metaDataColumnNames);
+	}
+
+	boolean hasText() {
+		return hasText;
+	}
+
+	/**
+	 * Column positions in one data set, -1 for columns not in the data set.
+	 */
+	final class Positions {
+		private final int queryIndex;
+		private final int id;
+		private final int embedding;
+		private final int text;
+		private final int score;
+		private final int[] metaData;
+
+		private Positions(IDataSet dataSet) {
+			List<String> columnNames = asList(dataSet.getColumnNames());
+			queryIndex = columnNames.indexOf(QUERY_INDEX_COLUMN);
+			id = columnNames.indexOf(EMBEDDING_ID_COLUMN);
+			embedding = columnNames.indexOf(EMBEDDING_COLUMN);
+			text = hasText ? columnNames.indexOf(TEXT_COLUMN) : -1;
+			score = columnNames.indexOf(SCORE_COLUMN);
+			metaData = new int[metaDataColumnNames.size()];
+			for (int i = 0; i < metaData.length; i++) {
+				metaData[i] = columnNames.indexOf(metaDataColumnNames.get(i));
+			}
+		}
+
+		/**
+		 * Index of the query vector of a batch search result row.
+		 */
+		int queryIndex(Object[] row) {
+			return ((Number) row[queryIndex]).intValue();
+		}
+
+		String id(Object[] row) {
+			return (String) row[id];
+		}
+
+		TextSegment embedded(Object[] row) {
+			String segmentText = text < 0 ? "text not stored" : (String) row[text];
+			var metaData = new HashMap<String, Object>(this.metaData.length * 2);
+			for (int i = 0; i < this.metaData.length; i++) {
+				Object value = this.metaData[i] < 0 ? null : row[this.metaData[i]];
+				if (value != null) {
+					metaData.put(metaDataColumnNames.get(i), value);
+				}
+			}
+			return TextSegment.from(segmentText, Metadata.from(metaData));
+		}
+
+		EmbeddingMatch<TextSegment> match(Object[] row, TextSegment embedded) {
+			Embedding vector = embedding < 0 ? null
+					: new Embedding(ServoyEmbeddingStore.toFloatArray(row[embedding]));
+			return new EmbeddingMatch<>((Double) row[score], id(row), vector, embedded);
+		}
+	}
+
+	Positions positions(IDataSet dataSet) {
+		return new Positions(dataSet);
+	}
+}
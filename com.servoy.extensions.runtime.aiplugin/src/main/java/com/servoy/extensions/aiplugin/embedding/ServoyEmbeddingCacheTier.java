@@ -0,0 +1,70 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStore.toFloatArray;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.CACHE_KEY_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_COLUMN;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import com.servoy.extensions.aiplugin.AIProvider;
+import com.servoy.j2db.util.ServoyException;
+
+/**
+ * Persistent embedding cache tier, stored in the cache table next to the
+ * embeddings table.
+ */
+class ServoyEmbeddingCacheTier implements EmbeddingCache.Tier {
+
+	private static final int LOAD_CHUNK_SIZE = 500;
+
+	private final AIProvider provider;
+	private final String cacheDataSource;
+	private final ServoyEmbeddingStoreServer servoyEmbeddingStoreServer;
+
+	ServoyEmbeddingCacheTier(AIProvider provider, String cacheDataSource,
+			ServoyEmbeddingStoreServer servoyEmbeddingStoreServer) {
+		this.provider = provider;
+		this.cacheDataSource = cacheDataSource;
+		this.servoyEmbeddingStoreServer = servoyEmbeddingStoreServer;
+	}
+
+	@Override
+	public Map<String, float[]> load(Collection<String> keys) {
+		var embeddings = new HashMap<String, float[]>();
+		List<String> keyList = new ArrayList<>(keys);
+		try {
+			for (int start = 0; start < keyList.size(); start += LOAD_CHUNK_SIZE) {
+				List<String> chunk = keyList.subList(start, Math.min(start + LOAD_CHUNK_SIZE, keyList.size()));
+				var query = provider.getDatabaseManager().getQueryFactory().createSelect(cacheDataSource);
+				query.result().add(query.getColumn(CACHE_KEY_COLUMN)).add(query.getColumn(EMBEDDING_COLUMN));
+				query.where().add(query.getColumn(CACHE_KEY_COLUMN).isin(chunk.toArray()));
+
+				var dataSet = provider.getDatabaseManager().getDataSetByQuery(query, chunk.size());
+				for (int row = 0; row < dataSet.getRowCount(); row++) {
+					Object[] values = dataSet.getRow(row);
+					embeddings.put((String) values[0], toFloatArray(values[1]));
+				}
+			}
+		} catch (ServoyException e) {
+			throw new RuntimeException(e);
+		}
+		return embeddings;
+	}
+
+	@Override
+	public void store(Map<String, float[]> embeddings) {
+		if (embeddings.isEmpty()) {
+			return;
+		}
+		try {
+			servoyEmbeddingStoreServer.addCachedEmbeddings(provider.getClientID(), new ArrayList<>(embeddings.keySet()),
+					new ArrayList<>(embeddings.values()));
+		} catch (ServoyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+}
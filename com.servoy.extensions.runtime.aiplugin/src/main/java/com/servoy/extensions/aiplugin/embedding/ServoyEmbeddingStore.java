@@ -2,46 +2,83 @@ package com.servoy.extensions.aiplugin.embedding;
 
 import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_COLUMN;
 import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_ID_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.FINGERPRINT_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.SCORE_COLUMN;
 import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.TEXT_COLUMN;
 import static com.servoy.j2db.util.DataSourceUtils.getDataSourceServerName;
+import static com.servoy.j2db.util.DataSourceUtils.getDataSourceTableName;
 import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotBlank;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotEmpty;
 import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
 import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
 import static java.lang.Float.parseFloat;
-import static java.util.Arrays.asList;
-import static java.util.stream.Collectors.toMap;
 
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
+import com.pgvector.PGhalfvec;
+import com.pgvector.PGvector;
 import com.servoy.extensions.aiplugin.AIProvider;
 import com.servoy.j2db.dataprocessing.IDataSet;
-import com.servoy.j2db.persistence.Column;
 import com.servoy.j2db.persistence.RepositoryException;
+import com.servoy.j2db.querybuilder.IQueryBuilderCondition;
 import com.servoy.j2db.querybuilder.impl.QBColumn;
 import com.servoy.j2db.querybuilder.impl.QBVectorColumnBase;
-import com.servoy.j2db.util.Pair;
+import com.servoy.j2db.util.Debug;
 import com.servoy.j2db.util.ServoyException;
 
-import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
 import dev.langchain4j.store.embedding.EmbeddingMatch;
 import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
 import dev.langchain4j.store.embedding.EmbeddingSearchResult;
 import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.comparison.IsEqualTo;
+import dev.langchain4j.store.embedding.filter.comparison.IsIn;
 
 public class ServoyEmbeddingStore implements EmbeddingStore<TextSegment> {
 
+	/**
+	 * Schema version per data source, changed when a store builder initializes the
+	 * table.
+	 */
+	private static final Map<String, AtomicInteger> schemaVersions = new ConcurrentHashMap<>();
+
 	private final AIProvider provider;
 	private final String dataSource;
 	private final ServoyEmbeddingStoreServer servoyEmbeddingStoreServer;
+	private final EmbeddingMetric metric;
+	private final boolean nativeSearch;
+	private volatile SearchResultDecoder decoder;
 
 	public ServoyEmbeddingStore(AIProvider provider, String dataSource,
 			ServoyEmbeddingStoreServer servoyEmbeddingStoreServer) {
+		this(provider, dataSource, servoyEmbeddingStoreServer, EmbeddingMetric.COSINE, false);
+	}
+
+	/**
+	 * @param metric    distance metric of the table, searches with another metric
+	 *                  than cosine must run directly on the database server, the
+	 *                  query builder score is cosine.
+	 * @param quantized the table has a binary quantized column, searched directly
+	 *                  on the database server when possible.
+	 */
+	public ServoyEmbeddingStore(AIProvider provider, String dataSource,
+			ServoyEmbeddingStoreServer servoyEmbeddingStoreServer, EmbeddingMetric metric, boolean quantized) {
 		this.provider = provider;
 		this.dataSource = dataSource;
 		this.servoyEmbeddingStoreServer = servoyEmbeddingStoreServer;
+		this.metric = metric;
+		this.nativeSearch = metric != EmbeddingMetric.COSINE || quantized;
 	}
 
 	@Override
@@ -87,55 +124,343 @@ public class ServoyEmbeddingStore implements EmbeddingStore<TextSegment> {
 		}
 	}
 
+	@Override
+	public void remove(String id) {
+		removeAll(List.of(ensureNotBlank(id, "id")));
+	}
+
+	@Override
+	public void removeAll(Collection<String> ids) {
+		ensureNotEmpty(ids, "ids");
+		try {
+			String transactionId = provider.getDatabaseManager().getTransactionID(getDataSourceServerName(dataSource));
+			servoyEmbeddingStoreServer.removeEmbeddings(provider.getClientID(), transactionId, new ArrayList<>(ids));
+		} catch (ServoyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	@Override
+	public void removeAll(Filter filter) {
+		removeMatching(ensureNotNull(filter, "filter"));
+	}
+
+	@Override
+	public void removeAll() {
+		removeMatching(null);
+	}
+
+	/**
+	 * Filter of a search or remove that runs directly on the database server.
+	 */
+	private record NativeFilter(Filter filter) {
+	}
+
+	/**
+	 * The filter for a search or remove directly on the database server. That
+	 * runs plain SQL, which Servoy does not add the table filters of this client
+	 * to, so these are added to the filter. This includes the filter on the
+	 * tenant column of security.setTenantValue.
+	 *
+	 * @param filter filter of the request, may be null.
+	 * @return the filter restricted to the table filters, null
+	 *         when a table filter cannot be translated and the search or remove
+	 *         has to use the query builder.
+	 */
+	private NativeFilter nativeFilter(Filter filter) throws RepositoryException {
+		List<Filter> tableFilters = toFilters(
+				provider.getDatabaseManager().getTableFilterParams(getDataSourceServerName(dataSource), null),
+				getDataSourceTableName(dataSource), decoder().metaDataColumnNameSet());
+		if (tableFilters == null) {
+			return null;
+		}
+		Filter nativeFilter = filter;
+		for (Filter tableFilter : tableFilters) {
+			nativeFilter = nativeFilter == null ? tableFilter : nativeFilter.and(tableFilter);
+		}
+		return new NativeFilter(nativeFilter);
+	}
+
+	/**
+	 * Translates the table filters on a table to metadata filters.
+	 *
+	 * @param filterParams table filters as returned by getTableFilterParams,
+	 *                     [tableName, dataProvider, operator, value, filterName]
+	 *                     per filter, a null table name applies to all tables.
+	 * @param columnNames  names of the meta data columns.
+	 * @return the filters, null when a table filter on the table is not an
+	 *         equality or in condition on a meta data column.
+	 */
+	static List<Filter> toFilters(Object[][] filterParams, String tableName, Set<String> columnNames) {
+		var filters = new ArrayList<Filter>();
+		for (Object[] filterParam : filterParams == null ? new Object[0][] : filterParams) {
+			if (filterParam.length > 0 && filterParam[0] != null
+					&& !tableName.equalsIgnoreCase(filterParam[0].toString())) {
+				continue;
+			}
+			Filter filter = toFilter(filterParam, columnNames);
+			if (filter == null) {
+				return null;
+			}
+			filters.add(filter);
+		}
+		return filters;
+	}
+
+	private static Filter toFilter(Object[] filterParam, Set<String> columnNames) {
+		if (filterParam.length < 4 || !(filterParam[1] instanceof String key) || !columnNames.contains(key)
+				|| !(filterParam[2] instanceof String operator) || filterParam[3] == null) {
+			return null;
+		}
+		Object value = filterParam[3];
+		return switch (operator.trim().toLowerCase()) {
+		case "=" -> value.getClass().isArray() || value instanceof Collection ? null : new IsEqualTo(key, value);
+		case "in" -> {
+			Collection<?> values = value instanceof Object[] array ? Arrays.asList(array)
+					: value instanceof Collection<?> collection ? collection : null;
+			yield values == null || values.isEmpty() ? null : new IsIn(key, values);
+		}
+		default -> null;
+		};
+	}
+
+	/**
+	 * Removes the embeddings matching the filter, all when the filter is null.
+	 * <p>
+	 * Outside of a transaction this is done on the server with batched deletes.
+	 * Inside a transaction, or when the filter or the table filters of the client
+	 * cannot be translated to SQL, the matching ids are selected here and removed
+	 * by id.
+	 */
+	private void removeMatching(Filter filter) {
+		try {
+			String transactionId = provider.getDatabaseManager().getTransactionID(getDataSourceServerName(dataSource));
+			NativeFilter nativeFilter = transactionId == null ? nativeFilter(filter) : null;
+			if (nativeFilter != null
+					&& servoyEmbeddingStoreServer.removeEmbeddings(provider.getClientID(), nativeFilter.filter())) {
+				return;
+			}
+
+			List<String> ids = selectIds(filter);
+			if (!ids.isEmpty()) {
+				servoyEmbeddingStoreServer.removeEmbeddings(provider.getClientID(), transactionId, ids);
+			}
+		} catch (ServoyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	private List<String> selectIds(Filter filter) throws ServoyException {
+		SearchResultDecoder resultDecoder = decoder();
+		var query = provider.getDatabaseManager().getQueryFactory().createSelect(dataSource);
+		query.result().add(query.getColumn(EMBEDDING_ID_COLUMN));
+
+		Filter javaFilter = null;
+		if (filter != null) {
+			var columnNames = resultDecoder.metaDataColumnNameSet();
+			IQueryBuilderCondition condition = QueryBuilderFilter.translate(query, filter, columnNames);
+			if (condition == null) {
+				condition = QueryBuilderFilter.translatePartially(query, filter, columnNames);
+				javaFilter = filter;
+				for (String columnName : resultDecoder.metaDataColumnNames()) {
+					query.result().add(query.getColumn(columnName));
+				}
+			}
+			if (condition != null) {
+				query.where().add(condition);
+			}
+		}
+
+		Filter rowFilter = javaFilter;
+		var ids = new ArrayList<String>();
+		provider.getDatabaseManager().loadDataSetsByQuery(query, 0, 10_000, (dataSet) -> {
+			var positions = resultDecoder.positions(dataSet);
+			for (int row = 0; row < dataSet.getRowCount(); row++) {
+				Object[] values = dataSet.getRow(row);
+				if (rowFilter == null || rowFilter.test(positions.embedded(values).metadata())) {
+					ids.add(String.valueOf(values[0]));
+				}
+			}
+			return true;
+		});
+		return ids;
+	}
+
 	@Override
 	public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+		return search(request, null, true);
+	}
+
+	/**
+	 * Searches with index settings for this search only. The search then runs
+	 * directly on the database server, when that is not supported (database or
+	 * filter) the normal search is used and the parameters are ignored.
+	 * <p>
+	 * The normal search scores by cosine on the full embeddings, so a binary
+	 * quantized table is then searched without its index. A table with another
+	 * metric cannot be searched that way, which fails with an
+	 * IllegalStateException instead of returning a different ranking.
+	 *
+	 * @param parameters        index settings, null for the normal search.
+	 * @param includeEmbeddings return the embeddings of the matches, when false
+	 *                          the embedding of the matches is null and the
+	 *                          vectors are not read from the database.
+	 */
+	EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request, VectorSearchParameters parameters,
+			boolean includeEmbeddings) {
 		try {
-			var metaDataColumnInfo = getMetaDataColumnInfo();
-			List<Column> metaDataColumns = metaDataColumnInfo.getLeft();
-			boolean hasText = metaDataColumnInfo.getRight();
+			SearchResultDecoder resultDecoder = decoder();
+			Filter requestFilter = request.filter();
+
+			// the query builder vector score is cosine on the full embeddings, other options are searched on the server
+			NativeFilter nativeFilter = parameters != null || nativeSearch ? nativeFilter(requestFilter) : null;
+			if (nativeFilter != null) {
+				IDataSet dataSet = servoyEmbeddingStoreServer.searchEmbeddings(request.queryEmbedding().vector(),
+						request.maxResults(), request.minScore(), nativeFilter.filter(),
+						parameters == null ? new VectorSearchParameters(0, 0) : parameters, includeEmbeddings);
+				if (dataSet != null) {
+					return toSearchResult(dataSet, resultDecoder, null);
+				}
+			}
+			if (metric != EmbeddingMetric.COSINE) {
+				throw new IllegalStateException("Search with the " + metric + " metric not supported for " + dataSource
+						+ ", it needs PostgreSQL and a filter on meta data columns (also for the table filters)");
+			}
+			if (parameters != null || nativeSearch) {
+				Debug.log("Native search not supported for " + dataSource + ", using the cosine search");
+			}
 
 			var query = provider.getDatabaseManager().getQueryFactory().createSelect(dataSource);
 			QBVectorColumnBase embeddingColumn = (QBVectorColumnBase) query.getColumn(EMBEDDING_COLUMN);
 			var vectorScore = embeddingColumn.vector_score(request.queryEmbedding().vector());
 
 			query.result().add(query.getColumn(EMBEDDING_ID_COLUMN));
-			query.result().add(embeddingColumn);
-			if (hasText) {
+			if (includeEmbeddings) {
+				query.result().add(embeddingColumn);
+			}
+			if (resultDecoder.hasText()) {
 				query.result().add(query.getColumn(TEXT_COLUMN));
 			}
-			query.result().add(vectorScore, "_sv_score");
-			for (Column column : metaDataColumns) {
-				query.result().add(query.getColumn(column.getName()));
+			query.result().add(vectorScore, SCORE_COLUMN);
+			for (String columnName : resultDecoder.metaDataColumnNames()) {
+				query.result().add(query.getColumn(columnName));
 			}
 			query.where().add(vectorScore.min_score(request.minScore()));
+			var filter = requestFilter;
+			if (filter != null) {
+				var columnNames = resultDecoder.metaDataColumnNameSet();
+				IQueryBuilderCondition condition = QueryBuilderFilter.translate(query, filter, columnNames);
+				if (condition != null) {
+					// filtered by the database, maxResults is applied after filtering
+					filter = null;
+				} else {
+					condition = QueryBuilderFilter.translatePartially(query, filter, columnNames);
+				}
+				if (condition != null) {
+					query.where().add(condition);
+				}
+			}
 			query.sort().add(((QBColumn) vectorScore).desc());
 
 			var dataSet = provider.getDatabaseManager().getDataSetByQuery(query, request.maxResults());
-			var filter = request.filter();
-			List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>();
+			return toSearchResult(dataSet, resultDecoder, filter);
+		} catch (ServoyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Hybrid search: the vector ranking and a full text ranking on the stored
+	 * text, fused with reciprocal rank fusion in one database statement. The
+	 * scores are fused scores, the minimum score of the request is not used.
+	 *
+	 * @param text query text for the full text ranking.
+	 * @return the result, or null when the store has no full text search or the
+	 *         database, filter or table filters of the client are not supported.
+	 */
+	EmbeddingSearchResult<TextSegment> hybridSearch(EmbeddingSearchRequest request, String text,
+			VectorSearchParameters parameters) {
+		try {
+			SearchResultDecoder resultDecoder = decoder();
+			NativeFilter nativeFilter = nativeFilter(request.filter());
+			if (nativeFilter == null) {
+				return null;
+			}
+			IDataSet dataSet = servoyEmbeddingStoreServer.hybridSearchEmbeddings(request.queryEmbedding().vector(),
+					text, request.maxResults(), nativeFilter.filter(),
+					parameters == null ? new VectorSearchParameters(0, 0) : parameters, false);
+			return dataSet == null ? null : toSearchResult(dataSet, resultDecoder, null);
+		} catch (ServoyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Searches the nearest embeddings for each of the query vectors in one
+	 * database round trip, without the embeddings of the matches.
+	 *
+	 * @param filter     filter on the meta data, may be null.
+	 * @param parameters index settings, may be null.
+	 * @return the matches per query vector, or null when this is not supported
+	 *         (database, filter or table filters of the client).
+	 */
+	List<List<EmbeddingMatch<TextSegment>>> searchAll(List<float[]> vectors, int maxResults, double minScore,
+			Filter filter, VectorSearchParameters parameters) {
+		try {
+			SearchResultDecoder resultDecoder = decoder();
+			NativeFilter nativeFilter = nativeFilter(filter);
+			if (nativeFilter == null) {
+				return null;
+			}
+			IDataSet dataSet = servoyEmbeddingStoreServer.searchAllEmbeddings(vectors, maxResults, minScore,
+					nativeFilter.filter(), parameters == null ? new VectorSearchParameters(0, 0) : parameters, false);
+			if (dataSet == null) {
+				return null;
+			}
+
+			var matches = new ArrayList<List<EmbeddingMatch<TextSegment>>>(vectors.size());
+			for (int i = 0; i < vectors.size(); i++) {
+				matches.add(new ArrayList<>(maxResults));
+			}
+			var positions = resultDecoder.positions(dataSet);
 			for (int row = 0; row < dataSet.getRowCount(); row++) {
-				var embedded = getEmbedded(metaDataColumns, hasText, dataSet, row);
-				if (filter == null || filter.test(embedded.metadata())) {
-					Double score = getValue(dataSet, row, "_sv_score");
-					String embeddingId = getValue(dataSet, row, EMBEDDING_ID_COLUMN);
-					Object embedding = getValue(dataSet, row, EMBEDDING_COLUMN);
-					matches.add(
-							new EmbeddingMatch<>(score, embeddingId, new Embedding(toFloatArray(embedding)), embedded));
-				}
+				Object[] values = dataSet.getRow(row);
+				matches.get(positions.queryIndex(values)).add(positions.match(values, positions.embedded(values)));
 			}
-			return new EmbeddingSearchResult<>(matches);
+			return matches;
 		} catch (ServoyException e) {
 			throw new RuntimeException(e);
 		}
 	}
 
-	private static float[] toFloatArray(Object value) {
+	private static EmbeddingSearchResult<TextSegment> toSearchResult(IDataSet dataSet,
+			SearchResultDecoder resultDecoder, Filter filter) {
+		var positions = resultDecoder.positions(dataSet);
+		List<EmbeddingMatch<TextSegment>> matches = new ArrayList<>(dataSet.getRowCount());
+		for (int row = 0; row < dataSet.getRowCount(); row++) {
+			Object[] values = dataSet.getRow(row);
+			var embedded = positions.embedded(values);
+			if (filter == null || filter.test(embedded.metadata())) {
+				matches.add(positions.match(values, embedded));
+			}
+		}
+		return new EmbeddingSearchResult<>(matches);
+	}
+
+	static float[] toFloatArray(Object value) {
 		if (value instanceof float[] floats) {
 			return floats;
 		}
 		if (value instanceof String string) {
 			return parseFloatArray(string);
 		}
+		if (value instanceof PGvector pgVector) {
+			return pgVector.toArray();
+		}
+		if (value instanceof PGhalfvec pgHalfvec) {
+			// halfvec column
+			return pgHalfvec.toArray();
+		}
 		throw new IllegalArgumentException(
 				"Unsupported embedding value type: " + (value == null ? "null" : value.getClass().getName()));
 	}
@@ -156,27 +481,111 @@ public class ServoyEmbeddingStore implements EmbeddingStore<TextSegment> {
 		return floats;
 	}
 
-	private static TextSegment getEmbedded(List<Column> metaDataColumns, boolean hasText, IDataSet dataSet, int row) {
-		String text = hasText ? getValue(dataSet, row, TEXT_COLUMN) : "text not stored";
-		var metaData = metaDataColumns.stream()
-				.map(column -> new Pair<>(column.getName(), getValue(dataSet, row, column.getName())))
-				.filter(pair -> pair.getRight() != null).collect(toMap(Pair::getLeft, Pair::getRight));
-		return TextSegment.from(text, Metadata.from(metaData));
+	/**
+	 * Marks the schema of the table of the data source as changed, the result
+	 * decoders of all stores on it are rebuilt on their next search.
+	 */
+	static void schemaChanged(String dataSource) {
+		schemaVersions.computeIfAbsent(dataSource, key -> new AtomicInteger()).incrementAndGet();
+	}
+
+	private static int schemaVersion(String dataSource) {
+		AtomicInteger version = schemaVersions.get(dataSource);
+		return version == null ? 0 : version.get();
 	}
 
-	private Pair<List<Column>, Boolean> getMetaDataColumnInfo() throws RepositoryException {
+	/**
+	 * The result decoder for the current table, rebuilt when the table instance
+	 * was replaced or the schema was changed.
+	 */
+	private SearchResultDecoder decoder() throws RepositoryException {
 		var table = ensureNotNull(provider.getDatabaseManager().getTable(dataSource),
 				"Cannot find table " + dataSource);
-		var metaDataColumns = table.getColumns().stream()
-				.filter(column -> !EMBEDDING_ID_COLUMN.equals(column.getName())
-						&& !EMBEDDING_COLUMN.equals(column.getName()) && !TEXT_COLUMN.equals(column.getName()))
-				.toList();
-		var hasText = table.getColumns().stream().anyMatch(column -> TEXT_COLUMN.equals(column.getName()));
-		return new Pair<>(metaDataColumns, hasText);
+		int schemaVersion = schemaVersion(dataSource);
+		SearchResultDecoder current = decoder;
+		if (current == null || !current.isFor(table, schemaVersion)) {
+			current = SearchResultDecoder.forTable(table, schemaVersion);
+			decoder = current;
+		}
+		return current;
 	}
 
-	private static <T> T getValue(IDataSet dataSet, int row, String columnName) {
-		int index = asList(dataSet.getColumnNames()).indexOf(columnName);
-		return (T) dataSet.getRow(row)[index];
+	/**
+	 * Builds the native vector index for the rows in the table.
+	 *
+	 * @param rebuild also rebuild an existing index.
+	 */
+	void buildIndex(boolean rebuild) {
+		try {
+			servoyEmbeddingStoreServer.buildEmbeddingIndex(rebuild);
+		} catch (ServoyException e) {
+			throw new RuntimeException(e);
+		}
+	}
+
+	/**
+	 * Whether the table has a fingerprint column for incremental embedding.
+	 */
+	boolean hasFingerprint() throws RepositoryException {
+		var table = ensureNotNull(provider.getDatabaseManager().getTable(dataSource),
+				"Cannot find table " + dataSource);
+		return table.getColumn(FINGERPRINT_COLUMN) != null;
+	}
+
+	/**
+	 * Names of the meta data columns that identify the source row.
+	 */
+	List<String> getSourceKeyNames() throws RepositoryException {
+		return decoder().metaDataColumnNames();
+	}
+
+	/**
+	 * Loads the stored fingerprints by source key, of the embeddings that were
+	 * added by embedAll with a fingerprint.
+	 *
+	 * @param sourceKeys filled per source key with the values of the source key
+	 *                   columns followed by the fingerprint, as used by
+	 *                   {@link #removeBySourceKeys(List)}.
+	 * @return fingerprint by source key.
+	 */
+	Map<SourceKey, String> loadFingerprints(Map<SourceKey, Object[]> sourceKeys) throws ServoyException {
+		List<String> sourceKeyNames = getSourceKeyNames();
+		var query = provider.getDatabaseManager().getQueryFactory().createSelect(dataSource);
+		for (String sourceKeyName : sourceKeyNames) {
+			query.result().add(query.getColumn(sourceKeyName));
+		}
+		query.result().add(query.getColumn(FINGERPRINT_COLUMN));
+		query.where().add(query.getColumn(FINGERPRINT_COLUMN).not().isNull());
+
+		var fingerprints = new HashMap<SourceKey, String>();
+		provider.getDatabaseManager().loadDataSetsByQuery(query, 0, 10_000, (dataSet) -> {
+			dataSet.getRows().forEach((row) -> {
+				Object[] keyValues = new Object[sourceKeyNames.size()];
+				System.arraycopy(row, 0, keyValues, 0, keyValues.length);
+				SourceKey sourceKey = SourceKey.of(keyValues);
+				sourceKeys.put(sourceKey, row.clone());
+				fingerprints.put(sourceKey, (String) row[keyValues.length]);
+			});
+			return true;
+		});
+		return fingerprints;
+	}
+
+	/**
+	 * Removes the embeddings that embedAll added for the source rows.
+	 *
+	 * @param sourceKeys values of the source key columns followed by the stored
+	 *                   fingerprint, one array per source row.
+	 */
+	void removeBySourceKeys(List<Object[]> sourceKeys) {
+		if (sourceKeys.isEmpty()) {
+			return;
+		}
+		try {
+			String transactionId = provider.getDatabaseManager().getTransactionID(getDataSourceServerName(dataSource));
+			servoyEmbeddingStoreServer.removeEmbeddingsBySourceKeys(provider.getClientID(), transactionId, sourceKeys);
+		} catch (ServoyException e) {
+			throw new RuntimeException(e);
+		}
 	}
 }
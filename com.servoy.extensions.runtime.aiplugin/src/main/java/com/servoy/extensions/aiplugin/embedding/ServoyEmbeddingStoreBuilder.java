@@ -4,12 +4,17 @@ import static com.servoy.base.persistence.IBaseColumn.PK_COLUMN;
 import static com.servoy.base.persistence.IBaseColumn.USER_ROWID_COLUMN;
 import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_COLUMN;
 import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_ID_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.FINGERPRINT_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.QUANTIZED_COLUMN;
 import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.TEXT_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.TEXT_SEARCH_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.cacheTableName;
 import static com.servoy.j2db.util.DataSourceUtils.createDBTableDataSource;
 import static com.servoy.j2db.util.DataSourceUtils.getDataSourceServerName;
 import static dev.langchain4j.internal.ValidationUtils.ensureNotBlank;
 import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
 import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+import static java.lang.Boolean.FALSE;
 import static java.lang.Boolean.TRUE;
 
 import java.util.ArrayList;
@@ -34,9 +39,21 @@ public class ServoyEmbeddingStoreBuilder implements IJavaScriptType {
 	 */
 	private final AIProvider provider;
 	private final DimensionAwareEmbeddingModel model;
+	private final ModelIdentity identity;
 
 	private boolean recreate = false;
 	private Boolean addText = null;
+	private boolean cacheEmbeddings = false;
+	private Boolean fingerprint = null;
+	private boolean bulkLoad = false;
+	private String indexType = EmbeddingIndexOptions.IVFFLAT;
+	private int hnswM = 0;
+	private int hnswEfConstruction = 0;
+	private EmbeddingMetric metric = EmbeddingMetric.COSINE;
+	private boolean normalize = false;
+	private boolean halfPrecision = false;
+	private int oversampling = 0;
+	private String textSearchConfig = null;
 	private String dataSource;
 	private String serverName;
 	private String tableName;
@@ -47,10 +64,13 @@ public class ServoyEmbeddingStoreBuilder implements IJavaScriptType {
 	 *
 	 * @param provider ai provider plugin.
 	 * @param model    embedding model.
+	 * @param identity configuration of the embedding model.
 	 */
-	public ServoyEmbeddingStoreBuilder(AIProvider provider, DimensionAwareEmbeddingModel model) {
+	public ServoyEmbeddingStoreBuilder(AIProvider provider, DimensionAwareEmbeddingModel model,
+			ModelIdentity identity) {
 		this.provider = provider;
 		this.model = model;
+		this.identity = identity;
 	}
 
 	/**
@@ -78,6 +98,174 @@ public class ServoyEmbeddingStoreBuilder implements IJavaScriptType {
 		return this;
 	}
 
+	/**
+	 * Sets the cacheEmbeddings option. When set, embeddings are cached by a hash of
+	 * the text and the model configuration (provider, model name, base url,
+	 * dimension and API key), both in memory and in a table named after the
+	 * embeddings table with suffix "_cache". Texts that were embedded before are
+	 * not sent to the embedding model again, also not after the store is
+	 * recreated.
+	 *
+	 * @param cacheEmbeddings cacheEmbeddings option.
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder cacheEmbeddings(boolean cacheEmbeddings) {
+		this.cacheEmbeddings = cacheEmbeddings;
+		return this;
+	}
+
+	/**
+	 * Sets the fingerprint option (store a hash of the source text per embedding).
+	 * This is needed for incremental embedAll, which only embeds source rows that
+	 * have changed since the previous run.
+	 *
+	 * @param fingerprint fingerprint option.
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder fingerprint(boolean fingerprint) {
+		this.fingerprint = fingerprint;
+		return this;
+	}
+
+	/**
+	 * Sets the bulkLoad option. When set, embeddings are written with a binary
+	 * COPY stream instead of row by row inserts, which is much faster for large
+	 * initial loads. Only used on PostgreSQL and outside of a transaction, other
+	 * databases use the normal path.
+	 *
+	 * @param bulkLoad bulkLoad option.
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder bulkLoad(boolean bulkLoad) {
+		this.bulkLoad = bulkLoad;
+		return this;
+	}
+
+	/**
+	 * Sets the type of the native vector index (PostgreSQL only): "ivfflat"
+	 * (default) or "hnsw". HNSW indexes take longer to build but give lower and
+	 * more stable search latency. Takes effect when the index is (re)built.
+	 *
+	 * @param indexType "ivfflat" or "hnsw".
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder indexType(String indexType) {
+		ensureTrue(EmbeddingIndexOptions.IVFFLAT.equals(indexType) || EmbeddingIndexOptions.HNSW.equals(indexType),
+				"indexType must be ivfflat or hnsw");
+		this.indexType = indexType;
+		return this;
+	}
+
+	/**
+	 * Sets the build parameters of a hnsw index, see
+	 * {@link #indexType(String)}. Use 0 for the database default.
+	 *
+	 * @param m              maximum number of connections per layer (default 16).
+	 * @param efConstruction size of the candidate list while building (default
+	 *                       64).
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder hnswParameters(int m, int efConstruction) {
+		this.hnswM = m;
+		this.hnswEfConstruction = efConstruction;
+		return this;
+	}
+
+	/**
+	 * Sets the distance metric (PostgreSQL only): "cosine" (default),
+	 * "innerProduct" or "l2". Inner product gives the same ranking as cosine for
+	 * unit-length vectors, which most embedding models return, at lower cost per
+	 * comparison; use {@link #normalize(boolean)} for models that do not. The
+	 * metric is used for the index and searches, so it must be the same every time
+	 * the store is opened. Searches with another metric than cosine run directly
+	 * on the database and fail on other databases, or with filters (including
+	 * table filters) on other than meta data columns.
+	 *
+	 * @param metric "cosine", "innerProduct" or "l2".
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder metric(String metric) {
+		this.metric = EmbeddingMetric.fromName(metric);
+		return this;
+	}
+
+	/**
+	 * Sets the normalize option. When set, embeddings and search queries are
+	 * scaled to unit length, which makes the inner product metric valid for any
+	 * model.
+	 *
+	 * @param normalize normalize option.
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder normalize(boolean normalize) {
+		this.normalize = normalize;
+		return this;
+	}
+
+	/**
+	 * Sets the halfPrecision option (PostgreSQL only). When set, a new embeddings
+	 * table stores the embeddings as 16-bit floats (pgvector halfvec), which halves
+	 * the size of the table and the index with hardly any loss in search quality.
+	 * The option must be the same every time the store is opened.
+	 *
+	 * @param halfPrecision halfPrecision option.
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder halfPrecision(boolean halfPrecision) {
+		this.halfPrecision = halfPrecision;
+		return this;
+	}
+
+	/**
+	 * Sets the binary quantization option (PostgreSQL only). When set, the
+	 * embeddings table gets a column with a 1 bit per dimension copy of each
+	 * embedding, which the database keeps up to date on every write, and the index
+	 * is built on that column. A search first takes maxResults * oversampling
+	 * candidates by hamming distance on the quantized column, then ranks those
+	 * exactly on the full embeddings. This makes searches on large tables much
+	 * cheaper; a higher oversampling gives better recall at a higher cost, 4 to 10
+	 * works well for most models. The column is added to an existing table the
+	 * first time the store is opened with this option.
+	 *
+	 * @param oversampling number of candidates per result, 0 to switch off.
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder binaryQuantization(int oversampling) {
+		ensureTrue(oversampling >= 0, "oversampling must not be negative");
+		this.oversampling = oversampling;
+		return this;
+	}
+
+	/**
+	 * Enables full text search on the stored text (PostgreSQL only), for
+	 * hybridSearch on the store. The embeddings table gets a tsvector column on
+	 * the text column, which the database keeps up to date on every write, with a
+	 * gin index. The text is stored, also when addText was not set. The column is
+	 * added to an existing table the first time the store is opened with this
+	 * option.
+	 *
+	 * @param textSearchConfig PostgreSQL text search configuration, for example
+	 *                         "english" or "simple" (no stemming, best for
+	 *                         product codes and names).
+	 * @return This builder instance.
+	 */
+	@JSFunction
+	public ServoyEmbeddingStoreBuilder fullTextSearch(String textSearchConfig) {
+		ensureTrue(textSearchConfig != null && textSearchConfig.matches("[A-Za-z_][A-Za-z0-9_]*"),
+				"textSearchConfig must be the name of a text search configuration");
+		this.textSearchConfig = textSearchConfig;
+		return this;
+	}
+
 	/**
 	 * Sets the dataSource to read data from.
 	 *
@@ -153,6 +341,10 @@ public class ServoyEmbeddingStoreBuilder implements IJavaScriptType {
 	public EmbeddingStore build() {
 		try {
 			deriveOptionsFromExistingTable();
+			if (textSearchConfig != null) {
+				ensureTrue(!FALSE.equals(addText), "fullTextSearch needs the text to be stored (addText)");
+				addText = TRUE;
+			}
 
 			String localServerName = ensureNotBlank(
 					serverName == null ? getDataSourceServerName(dataSource) : serverName,
@@ -167,9 +359,26 @@ public class ServoyEmbeddingStoreBuilder implements IJavaScriptType {
 			String remoteServerName = provider.getDatabaseManager().getSwitchedToServerName(localServerName);
 			ServoyEmbeddingStoreServer servoyEmbeddingStoreServer = provider.getAiPluginService()
 					.servoyEmbeddingStoreFactory().create(remoteServerName, metaDataKeys, tableName, recreate, true,
-							model.dimension(), TRUE.equals(addText));
-			return new EmbeddingStore(provider, new ServoyEmbeddingStore(provider,
-					createDBTableDataSource(localServerName, tableName), servoyEmbeddingStoreServer), model);
+							model.dimension(), new EmbeddingTableOptions(TRUE.equals(addText), cacheEmbeddings,
+									TRUE.equals(fingerprint), bulkLoad,
+									new EmbeddingIndexOptions(indexType, hnswM, hnswEfConstruction), metric,
+									normalize, halfPrecision, oversampling, textSearchConfig));
+			String embeddingsDataSource = createDBTableDataSource(localServerName, tableName);
+			// the table may have been recreated or got columns added or changed
+			ServoyEmbeddingStore.schemaChanged(embeddingsDataSource);
+
+			EmbeddingCache cache = null;
+			if (cacheEmbeddings) {
+				cache = new EmbeddingCache(provider.getAiPluginService().embeddingCache(),
+						new ServoyEmbeddingCacheTier(provider,
+								createDBTableDataSource(localServerName, cacheTableName(tableName)),
+								servoyEmbeddingStoreServer),
+						identity);
+			}
+			return new EmbeddingStore(provider,
+					new ServoyEmbeddingStore(provider, embeddingsDataSource, servoyEmbeddingStoreServer, metric,
+							oversampling > 0),
+					model, identity, cache);
 		} catch (Exception e) {
 			Debug.error(e);
 		}
@@ -183,7 +392,7 @@ public class ServoyEmbeddingStoreBuilder implements IJavaScriptType {
 	 * @throws RepositoryException
 	 */
 	private void deriveOptionsFromExistingTable() throws RepositoryException {
-		if (metaDataKeys != null && addText != null) {
+		if (metaDataKeys != null && addText != null && fingerprint != null) {
 			// all options we can derive have already been set
 			return;
 		}
@@ -197,17 +406,24 @@ public class ServoyEmbeddingStoreBuilder implements IJavaScriptType {
 			if (existingTable != null) {
 				List<Column> metaDataColumns = new ArrayList<>();
 				boolean hasText = false;
+				boolean hasFingerprint = false;
 				// Derive options from existing table
 				for (Column column : existingTable.getColumns()) {
 					switch (column.getName()) {
 					case EMBEDDING_ID_COLUMN:
 					case EMBEDDING_COLUMN:
+					case QUANTIZED_COLUMN:
+					case TEXT_SEARCH_COLUMN:
 						break;
 
 					case TEXT_COLUMN:
 						hasText = true;
 						break;
 
+					case FINGERPRINT_COLUMN:
+						hasFingerprint = true;
+						break;
+
 					default: // not a fixed column, must be a meta data column
 						metaDataColumns.add(column);
 					}
@@ -222,6 +438,10 @@ public class ServoyEmbeddingStoreBuilder implements IJavaScriptType {
 					// addText option was not set yet
 					addText = hasText;
 				}
+				if (fingerprint == null) {
+					// fingerprint option was not set yet
+					fingerprint = hasFingerprint;
+				}
 			}
 		}
 	}
@@ -14,8 +14,9 @@ public class ServoyEmbeddingStoreFactory {
 	}
 
 	public ServoyEmbeddingStoreServer create(String remoteServerName, List<MetaDataKey> metaDataKeys, String tableName,
-			boolean dropTableFirst, boolean createTable, int dimension, boolean addText) throws Exception {
+			boolean dropTableFirst, boolean createTable, int dimension, EmbeddingTableOptions options)
+			throws Exception {
 		return ServoyEmbeddingStoreServerImpl.createStore(serverAccess, remoteServerName, metaDataKeys, tableName,
-				dropTableFirst, createTable, dimension, addText);
+				dropTableFirst, createTable, dimension, options);
 	}
 }
@@ -2,16 +2,98 @@ package com.servoy.extensions.aiplugin.embedding;
 
 import java.util.List;
 
+import com.servoy.j2db.dataprocessing.IDataSet;
 import com.servoy.j2db.util.ServoyException;
 
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.filter.Filter;
 
 public interface ServoyEmbeddingStoreServer {
 	String EMBEDDING_ID_COLUMN = "embedding_id";
 	String EMBEDDING_COLUMN = "embedding";
 	String TEXT_COLUMN = "text";
+	String CACHE_KEY_COLUMN = "cache_key";
+	String FINGERPRINT_COLUMN = "fingerprint";
+	String QUANTIZED_COLUMN = "embedding_bq";
+	String TEXT_SEARCH_COLUMN = "text_tsv";
+	String SCORE_COLUMN = "_sv_score";
+	String QUERY_INDEX_COLUMN = "_sv_query";
+
+	static String cacheTableName(String tableName) {
+		return tableName + "_cache";
+	}
 
 	void addEmbeddings(String clientId, String transactionId, List<String> ids, List<Embedding> embeddings,
 			List<TextSegment> embedded) throws ServoyException;
+
+	/**
+	 * Removes the embeddings that embedAll added for source rows.
+	 *
+	 * @param sourceKeys values of the meta data columns followed by the
+	 *                   fingerprint, one array per source row.
+	 */
+	void removeEmbeddingsBySourceKeys(String clientId, String transactionId, List<Object[]> sourceKeys)
+			throws ServoyException;
+
+	void removeEmbeddings(String clientId, String transactionId, List<String> ids) throws ServoyException;
+
+	/**
+	 * Removes the embeddings matching the filter directly in the database, in
+	 * batches and outside of any transaction.
+	 *
+	 * @param filter filter on the meta data columns, null to remove all
+	 *               embeddings.
+	 * @return false when the filter or the database is not supported, nothing is
+	 *         removed then.
+	 */
+	boolean removeEmbeddings(String clientId, Filter filter) throws ServoyException;
+
+	/**
+	 * Builds the native vector index of the embeddings table, sized for the rows
+	 * in the table. Nothing is built while the table is empty.
+	 *
+	 * @param rebuild also rebuild an existing index, when false an existing index
+	 *                is kept.
+	 */
+	void buildEmbeddingIndex(boolean rebuild) throws ServoyException;
+
+	/**
+	 * Searches the nearest embeddings directly in the database, with index
+	 * settings for this search only. The result has the embedding id, embedding
+	 * (when included), text (when stored), meta data and score columns.
+	 *
+	 * @param filter            filter on the meta data columns, may be null.
+	 * @param includeEmbeddings return the embeddings of the results, as float[].
+	 * @return null when the filter or the database is not supported.
+	 */
+	IDataSet searchEmbeddings(float[] vector, int maxResults, double minScore, Filter filter,
+			VectorSearchParameters parameters, boolean includeEmbeddings) throws ServoyException;
+
+	/**
+	 * Same as
+	 * {@link #searchEmbeddings(float[], int, double, Filter, VectorSearchParameters, boolean)}
+	 * for many query vectors in one database round trip. The result starts with a
+	 * query index column, the index of the query vector of the row.
+	 *
+	 * @return null when the filter or the database is not supported.
+	 */
+	IDataSet searchAllEmbeddings(List<float[]> vectors, int maxResults, double minScore, Filter filter,
+			VectorSearchParameters parameters, boolean includeEmbeddings) throws ServoyException;
+
+	/**
+	 * Hybrid search: the vector ranking and the full text ranking of the stored
+	 * texts are fused with reciprocal rank fusion in the database. The columns are
+	 * the same as
+	 * {@link #searchEmbeddings(float[], int, double, Filter, VectorSearchParameters, boolean)},
+	 * the score is the fused score.
+	 *
+	 * @param text query text for the full text ranking.
+	 * @return null when the store has no full text search, or the filter or the
+	 *         database is not supported.
+	 */
+	IDataSet hybridSearchEmbeddings(float[] vector, String text, int maxResults, Filter filter,
+			VectorSearchParameters parameters, boolean includeEmbeddings) throws ServoyException;
+
+	void addCachedEmbeddings(String clientId, List<String> keys, List<float[]> embeddings) throws ServoyException;
 }
@@ -0,0 +1,65 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureNotBlank;
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Named in-memory embedding stores hosted by the server plugin, so clients that
+ * use the same store share one copy of it. The names are per solution. A store
+ * is kept while a client holds a reference and dropped when the last reference
+ * is released. All methods are thread safe.
+ */
+public class SharedEmbeddingStores {
+
+	private static final class Entry {
+		private final SharedVectorStore store;
+		private int references;
+
+		private Entry(SharedVectorStore store) {
+			this.store = store;
+		}
+	}
+
+	private final Map<String, Entry> stores = new HashMap<>();
+
+	/**
+	 * Returns the store of the solution with the name, created empty when no
+	 * client holds it. Every call must be paired with a
+	 * {@link #release(String, String)}.
+	 *
+	 * @param model     identifies the embedding model, see
+	 *                  {@link ModelIdentity#modelKey}; must be the same for all
+	 *                  clients of the store, like the dimension.
+	 * @param dimension dimension of the embeddings.
+	 */
+	public synchronized SharedVectorStore acquire(String solution, String name, String model, int dimension) {
+		ensureNotBlank(name, "name");
+		Entry entry = stores.computeIfAbsent(key(solution, name),
+				key -> new Entry(new SharedVectorStore(solution, name, model, dimension)));
+		ensureTrue(entry.store.model().equals(model) && entry.store.dimension() == dimension,
+				"Shared embedding store " + name + " has model " + entry.store.model() + " with dimension "
+						+ entry.store.dimension() + ", not " + model + " with dimension " + dimension);
+		entry.references++;
+		return entry.store;
+	}
+
+	public synchronized void release(String solution, String name) {
+		String key = key(solution, name);
+		Entry entry = stores.get(key);
+		if (entry != null && --entry.references <= 0) {
+			stores.remove(key);
+		}
+	}
+
+	public synchronized int references(String solution, String name) {
+		Entry entry = stores.get(key(solution, name));
+		return entry == null ? 0 : entry.references;
+	}
+
+	private static String key(String solution, String name) {
+		return solution + '\u0000' + name;
+	}
+}
@@ -0,0 +1,239 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static dev.langchain4j.internal.Utils.randomUUID;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotBlank;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotEmpty;
+import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.function.UnaryOperator;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+/**
+ * In-memory embedding store shared by the clients of the server, see
+ * {@link SharedEmbeddingStores}.
+ * <p>
+ * The embeddings are kept in segments, each an {@link InMemoryVectorStore}
+ * that is not changed once published. Searches read the current segments
+ * without locking and merge their results; searches that are running keep
+ * using the segments they started with. A change adds the batch as a new
+ * segment and copies only the segments it removes embeddings from. The newest
+ * segment is merged into the one before it while that one is not more than
+ * twice as large, so there are a logarithmic number of segments and adding n
+ * embeddings copies O(n log n) embeddings in total.
+ */
+public class SharedVectorStore implements EmbeddingStore<TextSegment>, SavableEmbeddingStore {
+
+	private final String solution;
+	private final String name;
+	private final String model;
+	private final int dimension;
+	// oldest and largest first, an id is in one segment only
+	private volatile List<InMemoryVectorStore> segments;
+
+	SharedVectorStore(String solution, String name, String model, int dimension) {
+		this.solution = solution;
+		this.name = name;
+		this.model = model;
+		this.dimension = dimension;
+		this.segments = List.of(new InMemoryVectorStore(dimension));
+	}
+
+	public String solution() {
+		return solution;
+	}
+
+	public String name() {
+		return name;
+	}
+
+	/**
+	 * Identifies the embedding model of the store, see
+	 * {@link ModelIdentity#modelKey}.
+	 */
+	public String model() {
+		return model;
+	}
+
+	public int dimension() {
+		return dimension;
+	}
+
+	public int size() {
+		int size = 0;
+		for (InMemoryVectorStore segment : segments) {
+			size += segment.size();
+		}
+		return size;
+	}
+
+	int segmentCount() {
+		return segments.size();
+	}
+
+	@Override
+	public EmbeddingSearchResult<TextSegment> search(EmbeddingSearchRequest request) {
+		List<InMemoryVectorStore> current = segments;
+		if (current.size() == 1) {
+			return current.get(0).searchUnlocked(request);
+		}
+		var matches = new ArrayList<EmbeddingMatch<TextSegment>>();
+		for (InMemoryVectorStore segment : current) {
+			matches.addAll(segment.searchUnlocked(request).matches());
+		}
+		matches.sort(Comparator.comparingDouble((EmbeddingMatch<TextSegment> match) -> match.score()).reversed());
+		return new EmbeddingSearchResult<>(
+				new ArrayList<>(matches.subList(0, Math.min(matches.size(), request.maxResults()))));
+	}
+
+	@Override
+	public String add(Embedding embedding) {
+		return addSingle(randomUUID(), embedding, null);
+	}
+
+	@Override
+	public void add(String id, Embedding embedding) {
+		addSingle(id, embedding, null);
+	}
+
+	@Override
+	public String add(Embedding embedding, TextSegment textSegment) {
+		return addSingle(randomUUID(), embedding, textSegment);
+	}
+
+	private String addSingle(String id, Embedding embedding, TextSegment textSegment) {
+		addAll(List.of(id), List.of(embedding), textSegment == null ? null : List.of(textSegment));
+		return id;
+	}
+
+	@Override
+	public List<String> addAll(List<Embedding> embeddings) {
+		List<String> ids = generateIds(embeddings.size());
+		addAll(ids, embeddings, null);
+		return ids;
+	}
+
+	@Override
+	public void addAll(List<String> ids, List<Embedding> embeddings, List<TextSegment> embedded) {
+		var batch = new InMemoryVectorStore(dimension);
+		batch.addAll(ids, embeddings, embedded);
+		update(current -> {
+			var changed = new ArrayList<>(without(current, ids));
+			changed.add(batch);
+			return merged(changed);
+		});
+	}
+
+	@Override
+	public void remove(String id) {
+		removeAll(List.of(ensureNotBlank(id, "id")));
+	}
+
+	@Override
+	public void removeAll(Collection<String> ids) {
+		ensureNotEmpty(ids, "ids");
+		var idList = new ArrayList<>(ids);
+		update(current -> without(current, idList));
+	}
+
+	@Override
+	public void removeAll(Filter filter) {
+		ensureNotNull(filter, "filter");
+		update(current -> {
+			var changed = new ArrayList<InMemoryVectorStore>(current.size());
+			for (InMemoryVectorStore segment : current) {
+				if (segment.matchesAny(filter)) {
+					segment = segment.copy();
+					segment.removeAll(filter);
+				}
+				changed.add(segment);
+			}
+			return changed;
+		});
+	}
+
+	@Override
+	public synchronized void removeAll() {
+		segments = List.of(new InMemoryVectorStore(dimension));
+	}
+
+	/**
+	 * Saves the segments merged into one file.
+	 */
+	@Override
+	public void save(Path path) throws IOException {
+		List<InMemoryVectorStore> current = segments;
+		InMemoryVectorStore all = current.get(0);
+		if (current.size() > 1) {
+			all = all.copy();
+			for (InMemoryVectorStore segment : current.subList(1, current.size())) {
+				all.addAll(segment);
+			}
+		}
+		all.save(path);
+	}
+
+	/**
+	 * Replaces the content with a file, see {@link InMemoryVectorStore#load(Path)}.
+	 */
+	@Override
+	public void load(Path path) throws IOException {
+		var loaded = new InMemoryVectorStore(dimension);
+		loaded.load(path);
+		synchronized (this) {
+			segments = List.of(loaded);
+		}
+	}
+
+	private synchronized void update(UnaryOperator<List<InMemoryVectorStore>> change) {
+		segments = List.copyOf(change.apply(segments));
+	}
+
+	/**
+	 * The segments without the ids, only segments with one of the ids are copied.
+	 */
+	private static List<InMemoryVectorStore> without(List<InMemoryVectorStore> current, List<String> ids) {
+		var changed = new ArrayList<InMemoryVectorStore>(current.size());
+		for (InMemoryVectorStore segment : current) {
+			List<String> contained = ids.stream().filter(segment::contains).toList();
+			if (!contained.isEmpty()) {
+				segment = segment.copy();
+				segment.removeAll(contained);
+			}
+			changed.add(segment);
+		}
+		return changed;
+	}
+
+	/**
+	 * Merges the newest segment into the one before it while that one is not
+	 * more than twice as large.
+	 */
+	private static List<InMemoryVectorStore> merged(List<InMemoryVectorStore> segments) {
+		var merged = new ArrayList<>(segments);
+		while (merged.size() > 1) {
+			InMemoryVectorStore newest = merged.get(merged.size() - 1);
+			InMemoryVectorStore previous = merged.get(merged.size() - 2);
+			if (previous.size() > 2 * newest.size()) {
+				break;
+			}
+			InMemoryVectorStore combined = previous.copy();
+			combined.addAll(newest);
+			merged.remove(merged.size() - 1);
+			merged.set(merged.size() - 1, combined);
+		}
+		return merged;
+	}
+}
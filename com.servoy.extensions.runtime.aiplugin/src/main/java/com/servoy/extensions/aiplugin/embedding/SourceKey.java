@@ -0,0 +1,34 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.math.BigDecimal;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Key of a source row, comparable between the primary key values read from the
+ * source table and the meta data values read from the embeddings table.
+ * <p>
+ * Numbers are compared by value, the column types of both tables may differ
+ * (integer and bigint, or numeric). Other values keep their type, so the number
+ * 1, the text "1" and a UUID with the same text are different keys.
+ */
+record SourceKey(List<Object> values) {
+
+	static SourceKey of(Object[] keyValues) {
+		var values = new ArrayList<Object>(keyValues.length);
+		for (Object value : keyValues) {
+			values.add(value instanceof Number number ? normalize(number) : value);
+		}
+		return new SourceKey(values);
+	}
+
+	private static Object normalize(Number number) {
+		if (number instanceof Double || number instanceof Float) {
+			double value = number.doubleValue();
+			if (Double.isNaN(value) || Double.isInfinite(value)) {
+				return Double.valueOf(value);
+			}
+		}
+		return new BigDecimal(number.toString()).stripTrailingZeros();
+	}
+}
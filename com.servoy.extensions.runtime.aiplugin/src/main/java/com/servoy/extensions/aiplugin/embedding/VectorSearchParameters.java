@@ -0,0 +1,13 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+/**
+ * Per-search settings of the native vector index, trading latency against
+ * recall.
+ *
+ * @param efSearch hnsw: size of the candidate list while searching, 0 for the
+ *                 database default.
+ * @param probes   ivfflat: number of lists to search, 0 for the database
+ *                 default.
+ */
+public record VectorSearchParameters(int efSearch, int probes) {
+}
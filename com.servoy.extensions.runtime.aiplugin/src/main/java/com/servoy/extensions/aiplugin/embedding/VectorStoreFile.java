@@ -0,0 +1,226 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static java.nio.file.StandardCopyOption.ATOMIC_MOVE;
+import static java.nio.file.StandardCopyOption.REPLACE_EXISTING;
+import static java.nio.file.StandardOpenOption.READ;
+
+import java.io.BufferedInputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.UUID;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.segment.TextSegment;
+
+/**
+ * Content of a file written by {@link InMemoryVectorStore#save(Path)}, with the
+ * vectors memory mapped and the ids, texts, metadata and graph read into
+ * memory.
+ *
+ * @param path    the file that was read, the pending file when it could not be
+ *                moved in place, see {@link #replace(Path, Path)}.
+ * @param vectors the vectors of all slots, mapped from the file.
+ * @param removed slots without an id.
+ * @param slots   slot per id.
+ * @param graph   the HNSW graph, null when the store had no graph or it was
+ *                not read.
+ */
+record VectorStoreFile(Path path, int dimension, int count, MappedVectors vectors, float[] inverseNorms, String[] ids,
+		TextSegment[] segments, BitSet removed, Map<String, Integer> slots, HnswGraph graph) {
+
+	static final int MAGIC = 0x53564553;
+	static final int VERSION = 1;
+	// magic, version, dimension, slot count, graph offset
+	static final int HEADER_SIZE = 24;
+
+	/**
+	 * Reads the file, see {@link #read(Path, HnswGraph.Similarity, long)}.
+	 */
+	static VectorStoreFile read(Path path, HnswGraph.Similarity similarity) throws IOException {
+		return read(path, similarity, MappedVectors.MAX_CHUNK_BYTES);
+	}
+
+	/**
+	 * Reads the file, the vectors are mapped in chunks and the sections after
+	 * them are read as a stream, so the file is not limited to the 2 GB of a
+	 * single mapping.
+	 *
+	 * @param similarity similarity of the graph, null to skip the graph.
+	 * @param chunkBytes largest number of bytes of vectors mapped in one chunk.
+	 */
+	static VectorStoreFile read(Path path, HnswGraph.Similarity similarity, long chunkBytes) throws IOException {
+		Path current = current(path);
+		try (FileChannel channel = FileChannel.open(current, READ)) {
+			var in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), HEADER_SIZE));
+			ensureTrue(in.readInt() == MAGIC && in.readInt() == VERSION, path + " is not an embedding store file");
+			int dimension = in.readInt();
+			int count = in.readInt();
+			long graphOffset = in.readLong();
+
+			long vectorBytes = (long) count * dimension * Float.BYTES;
+			MappedVectors vectors = MappedVectors.map(channel, HEADER_SIZE, dimension, count, chunkBytes);
+			channel.position(HEADER_SIZE + vectorBytes);
+			in = new DataInputStream(new BufferedInputStream(Channels.newInputStream(channel), 1 << 16));
+			var inverseNorms = new float[count];
+			for (int slot = 0; slot < count; slot++) {
+				inverseNorms[slot] = in.readFloat();
+			}
+			var ids = new String[count];
+			var segments = new TextSegment[count];
+			var removed = new BitSet(count);
+			var slots = new HashMap<String, Integer>(count * 2);
+			for (int slot = 0; slot < count; slot++) {
+				ids[slot] = readString(in);
+				if (ids[slot] == null) {
+					removed.set(slot);
+				} else {
+					segments[slot] = readSegment(in);
+					slots.put(ids[slot], Integer.valueOf(slot));
+				}
+			}
+			// the graph directly follows the segments
+			HnswGraph graph = graphOffset == 0 || similarity == null ? null : HnswGraph.read(in, similarity);
+			return new VectorStoreFile(current, dimension, count, vectors, inverseNorms, ids, segments, removed, slots,
+					graph);
+		}
+	}
+
+	/**
+	 * Moves a written file in place. A memory mapped file cannot be replaced on
+	 * Windows, the written file is then kept next to it as pending file (ending
+	 * with .new), which replaces it when it is read again.
+	 */
+	static void replace(Path written, Path path) throws IOException {
+		Path pending = pending(path);
+		try {
+			Files.move(written, path, REPLACE_EXISTING, ATOMIC_MOVE);
+		} catch (AtomicMoveNotSupportedException e) {
+			throw e;
+		} catch (FileSystemException e) {
+			Files.move(written, pending, REPLACE_EXISTING, ATOMIC_MOVE);
+			return;
+		}
+		try {
+			Files.deleteIfExists(pending);
+		} catch (FileSystemException e) {
+			// still mapped, older than the file so it is not read anymore
+		}
+	}
+
+	static Path pending(Path path) {
+		return path.resolveSibling(path.getFileName() + ".new");
+	}
+
+	/**
+	 * The file to read: a newer pending file is moved in place, or read itself
+	 * while the file is still mapped.
+	 */
+	private static Path current(Path path) throws IOException {
+		Path pending = pending(path);
+		if (!Files.exists(pending) || Files.exists(path)
+				&& Files.getLastModifiedTime(pending).compareTo(Files.getLastModifiedTime(path)) < 0) {
+			return path;
+		}
+		try {
+			Files.move(pending, path, REPLACE_EXISTING, ATOMIC_MOVE);
+			return path;
+		} catch (AtomicMoveNotSupportedException e) {
+			throw e;
+		} catch (FileSystemException e) {
+			return pending;
+		}
+	}
+
+	static void writeString(DataOutputStream out, String string) throws IOException {
+		if (string == null) {
+			out.writeInt(-1);
+			return;
+		}
+		byte[] bytes = string.getBytes(UTF_8);
+		out.writeInt(bytes.length);
+		out.write(bytes);
+	}
+
+	static String readString(DataInput in) throws IOException {
+		int length = in.readInt();
+		if (length < 0) {
+			return null;
+		}
+		var bytes = new byte[length];
+		in.readFully(bytes);
+		return new String(bytes, UTF_8);
+	}
+
+	/**
+	 * Writes the text and metadata, a null segment as a null text.
+	 */
+	static void writeSegment(DataOutputStream out, TextSegment segment) throws IOException {
+		if (segment == null) {
+			writeString(out, null);
+			return;
+		}
+		writeString(out, segment.text());
+		Map<String, Object> metadata = segment.metadata().toMap();
+		out.writeInt(metadata.size());
+		for (Map.Entry<String, Object> entry : metadata.entrySet()) {
+			writeString(out, entry.getKey());
+			Object value = entry.getValue();
+			if (value instanceof String string) {
+				out.writeByte(0);
+				writeString(out, string);
+			} else if (value instanceof UUID uuid) {
+				out.writeByte(1);
+				out.writeLong(uuid.getMostSignificantBits());
+				out.writeLong(uuid.getLeastSignificantBits());
+			} else if (value instanceof Integer integer) {
+				out.writeByte(2);
+				out.writeInt(integer.intValue());
+			} else if (value instanceof Long longValue) {
+				out.writeByte(3);
+				out.writeLong(longValue.longValue());
+			} else if (value instanceof Float floatValue) {
+				out.writeByte(4);
+				out.writeFloat(floatValue.floatValue());
+			} else if (value instanceof Double doubleValue) {
+				out.writeByte(5);
+				out.writeDouble(doubleValue.doubleValue());
+			} else {
+				throw new IOException("Unsupported metadata value type " + value.getClass().getName());
+			}
+		}
+	}
+
+	static TextSegment readSegment(DataInput in) throws IOException {
+		String text = readString(in);
+		if (text == null) {
+			return null;
+		}
+		int size = in.readInt();
+		var metadata = new HashMap<String, Object>(size * 2);
+		for (int i = 0; i < size; i++) {
+			String key = readString(in);
+			metadata.put(key, switch (in.readByte()) {
+			case 0 -> readString(in);
+			case 1 -> new UUID(in.readLong(), in.readLong());
+			case 2 -> Integer.valueOf(in.readInt());
+			case 3 -> Long.valueOf(in.readLong());
+			case 4 -> Float.valueOf(in.readFloat());
+			default -> Double.valueOf(in.readDouble());
+			});
+		}
+		return TextSegment.from(text, new Metadata(metadata));
+	}
+}
@@ -1,18 +1,58 @@
 package com.servoy.extensions.aiplugin.server;
 
+import static java.lang.Integer.parseInt;
+import static java.lang.Long.parseLong;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
 import com.servoy.extensions.aiplugin.AiPluginService;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingLruCache;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingRequestCoalescer;
 import com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreFactory;
+import com.servoy.extensions.aiplugin.embedding.SharedEmbeddingStores;
 import com.servoy.j2db.plugins.IServerAccess;
 
 public class AiPluginServiceImpl implements AiPluginService {
 	private final IServerAccess serverAccess;
+	private final EmbeddingLruCache<String, float[]> embeddingCache;
+	private final EmbeddingLruCache<String, float[]> queryEmbeddingCache;
+	private final EmbeddingRequestCoalescer queryEmbeddingCoalescer;
+	private final SharedEmbeddingStores sharedEmbeddingStores = new SharedEmbeddingStores();
 
 	public AiPluginServiceImpl(IServerAccess serverAccess) {
 		this.serverAccess = serverAccess;
+		this.embeddingCache = new EmbeddingLruCache<>(
+				parseInt(serverAccess.getSettings().getProperty("servoy.aiplugin.embedding_cache_size", "10000")), 0);
+		this.queryEmbeddingCache = new EmbeddingLruCache<>(
+				parseInt(serverAccess.getSettings().getProperty("servoy.aiplugin.query_cache_size", "1000")),
+				SECONDS.toMillis(
+						parseLong(serverAccess.getSettings().getProperty("servoy.aiplugin.query_cache_ttl", "3600"))));
+		this.queryEmbeddingCoalescer = new EmbeddingRequestCoalescer(
+				parseLong(serverAccess.getSettings().getProperty("servoy.aiplugin.search_batch_window", "5")),
+				parseInt(serverAccess.getSettings().getProperty("servoy.aiplugin.search_batch_size", "100")));
 	}
 
 	@Override
 	public ServoyEmbeddingStoreFactory servoyEmbeddingStoreFactory() {
 		return new ServoyEmbeddingStoreFactory(serverAccess);
 	}
+
+	@Override
+	public EmbeddingLruCache<String, float[]> embeddingCache() {
+		return embeddingCache;
+	}
+
+	@Override
+	public EmbeddingLruCache<String, float[]> queryEmbeddingCache() {
+		return queryEmbeddingCache;
+	}
+
+	@Override
+	public EmbeddingRequestCoalescer queryEmbeddingCoalescer() {
+		return queryEmbeddingCoalescer;
+	}
+
+	@Override
+	public SharedEmbeddingStores sharedEmbeddingStores() {
+		return sharedEmbeddingStores;
+	}
 }
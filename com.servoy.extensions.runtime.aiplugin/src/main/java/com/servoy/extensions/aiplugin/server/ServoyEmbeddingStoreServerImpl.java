@@ -1,6 +1,7 @@
 package com.servoy.extensions.aiplugin.server;
 
 import static com.servoy.base.persistence.IBaseColumn.NATIVE_COLUMN;
+import static com.servoy.base.persistence.IBaseColumn.TENANT_COLUMN;
 import static com.servoy.base.persistence.IBaseColumn.UUID_COLUMN;
 import static com.servoy.base.persistence.IBaseColumn.VECTOR_COLUMN;
 import static com.servoy.extensions.aiplugin.database.DatabaseHandler.DATABASE_HANDLER;
@@ -12,13 +13,24 @@ import static dev.langchain4j.internal.ValidationUtils.ensureNotNull;
 import static dev.langchain4j.internal.ValidationUtils.ensureTrue;
 import static java.lang.Integer.parseInt;
 
+import java.sql.Connection;
 import java.sql.SQLException;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Objects;
+import java.util.Set;
 
+import com.servoy.extensions.aiplugin.database.VectorColumn;
+import com.servoy.extensions.aiplugin.embedding.ContentHash;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingTableOptions;
 import com.servoy.extensions.aiplugin.embedding.MetaDataKey;
 import com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer;
+import com.servoy.extensions.aiplugin.embedding.VectorSearchParameters;
+import com.servoy.j2db.dataprocessing.BufferedDataSet;
+import com.servoy.j2db.dataprocessing.IDataSet;
 import com.servoy.j2db.persistence.Column;
 import com.servoy.j2db.persistence.DummyValidator;
 import com.servoy.j2db.persistence.IColumnTypes;
@@ -33,19 +45,23 @@ import com.servoy.j2db.util.ServoyException;
 import dev.langchain4j.data.document.Metadata;
 import dev.langchain4j.data.embedding.Embedding;
 import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.filter.Filter;
 
 public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServer {
+	private static final int DELETE_BATCH_SIZE = 1000;
+	private static final int DEFAULT_TENANT_INDEX_ROWS = 10000;
+
 	private final IServerAccess serverAccess;
 	private final TableModel tableModel;
 
-	private ServoyEmbeddingStoreServerImpl(IServerAccess serverAccess, TableModel tableModel) {
+	ServoyEmbeddingStoreServerImpl(IServerAccess serverAccess, TableModel tableModel) {
 		this.serverAccess = serverAccess;
 		this.tableModel = tableModel;
 	}
 
 	public static ServoyEmbeddingStoreServer createStore(IServerAccess serverAccess, String remoteServerName,
 			List<MetaDataKey> metaDataKeys, String tableName, boolean dropTableFirst, boolean createTable,
-			int dimension, boolean addText) throws Exception {
+			int dimension, EmbeddingTableOptions options) throws Exception {
 		ensureNotNull(remoteServerName, "remoteServerName");
 		ensureNotNull(metaDataKeys, "metaDataKeys");
 		ensureNotNull(tableName, "tableName");
@@ -54,13 +70,13 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 		}
 
 		var tableModel = initializeStore(serverAccess, remoteServerName, metaDataKeys, tableName, dropTableFirst,
-				createTable, dimension, addText);
+				createTable, dimension, options);
 		return new ServoyEmbeddingStoreServerImpl(serverAccess, tableModel);
 	}
 
 	private static TableModel initializeStore(IServerAccess serverAccess, String serverName,
 			List<MetaDataKey> metaDataKeys, String tableName, boolean dropTableFirst, boolean createTable,
-			int dimension, boolean addText) throws Exception {
+			int dimension, EmbeddingTableOptions options) throws Exception {
 		var server = (IServerInternal) ensureNotNull(serverAccess.getDBServer(serverName, true, true),
 				"Cannot find server %s", serverName);
 
@@ -75,15 +91,47 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 
 		boolean wasCreated = false;
 		if (table == null) {
-			table = createTable(tableName, serverAccess, server, metaDataKeys, dimension, addText);
+			table = createTable(tableName, server, metaDataKeys, dimension, options);
 			wasCreated = true;
 		}
 
-		return verifyTable(table, metaDataKeys, addText, wasCreated);
+		// the storage precision of the table is used, also when the option differs
+		try (Connection connection = server.getConnection()) {
+			var embeddingColumn = table.getColumn(EMBEDDING_COLUMN);
+			options = options.withHalfPrecision(DATABASE_HANDLER.isHalfPrecision(connection, table, embeddingColumn));
+			// generated by the database, also added to existing tables
+			if (options.oversampling() > 0 && !DATABASE_HANDLER.addQuantizedColumn(connection, table,
+					embeddingColumn, QUANTIZED_COLUMN, embeddingColumn.getColumnType().getLength())) {
+				Debug.log("Binary quantization not supported for table " + tableName
+						+ ", searching the full embeddings");
+				options = options.withOversampling(0);
+			}
+			if (options.textSearchConfig() != null) {
+				var textColumn = ensureNotNull(table.getColumn(TEXT_COLUMN),
+						"Full text search needs the text column in embeddings table %s", tableName);
+				if (!DATABASE_HANDLER.addTextSearchColumn(connection, table, textColumn, TEXT_SEARCH_COLUMN,
+						"_sv_embedding_text_" + tableName, options.textSearchConfig())) {
+					Debug.log("Full text search not supported for table " + tableName + ", hybrid search not available");
+					options = options.withTextSearchConfig(null);
+				}
+			}
+		}
+
+		String cacheTableName = null;
+		if (options.cacheEmbeddings()) {
+			cacheTableName = ServoyEmbeddingStoreServer.cacheTableName(tableName);
+			// the cache table is kept when the embeddings table is recreated
+			if (server.getTable(cacheTableName) == null) {
+				createCacheTable(cacheTableName, server, table.getColumn(EMBEDDING_COLUMN).getColumnType().getLength());
+			}
+		}
+
+		return verifyTable(table, metaDataKeys, options, wasCreated, cacheTableName);
 	}
 
-	private static ITable createTable(String tableName, IServerAccess serverAccess, IServerInternal server,
-			List<MetaDataKey> metaDataKeys, int dimension, boolean addText) throws RepositoryException, SQLException {
+	private static ITable createTable(String tableName, IServerInternal server,
+			List<MetaDataKey> metaDataKeys, int dimension, EmbeddingTableOptions options)
+			throws RepositoryException, SQLException {
 		var table = server.createNewTable(DummyValidator.INSTANCE, tableName);
 
 		// Embedding PK
@@ -107,22 +155,25 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 		embeddingColumn.setFlag(VECTOR_COLUMN, true);
 
 		// Text
-		if (addText) {
+		if (options.addText()) {
 			table.createNewColumn(DummyValidator.INSTANCE, TEXT_COLUMN, ColumnType.getColumnType(TEXT), true);
 		}
 
+		// Fingerprint of the source text
+		if (options.fingerprint()) {
+			table.createNewColumn(DummyValidator.INSTANCE, FINGERPRINT_COLUMN, ColumnType.getInstance(TEXT, 64, 0),
+					true);
+		}
+
 		// Actually create the table
 		server.syncTableObjWithDB(table, false, false);
 
 		// Index on metadata columns
 		server.createIndex(table, "_sv_embedding_meta_" + tableName, metaDataColumns.toArray(Column[]::new), false);
 
-		// Index on embedding columns
-		try {
-			int embeddingListSize = parseInt(
-					serverAccess.getSettings().getProperty("servoy.aiplugin.embedding_list_size", "500"));
-			if (!DATABASE_HANDLER.createEmbeddingIndex(server.getConnection(), table, "_sv_embedding_" + tableName,
-					embeddingColumn, embeddingListSize)) {
+		// Index on embedding columns, a native index is built after loading, see buildEmbeddingIndex
+		try (Connection connection = server.getConnection()) {
+			if (!DATABASE_HANDLER.supportsEmbeddingIndex(connection)) {
 				// no native support, try Servoy index
 				server.createIndex(table, "_sv_embedding_" + tableName, new Column[] { embeddingColumn }, false);
 			}
@@ -130,11 +181,58 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 			Debug.log("Failed to create index on embedding -- continuing without index", e);
 		}
 
+		// Half precision storage, changed on the empty table
+		if (options.halfPrecision()) {
+			boolean changed;
+			try (Connection connection = server.getConnection()) {
+				changed = DATABASE_HANDLER.useHalfPrecision(connection, table, embeddingColumn, dimension);
+			}
+			if (changed) {
+				return reloadTable(server, table);
+			}
+			Debug.log("Half precision embeddings not supported for table " + tableName + ", using full precision");
+		}
+
 		return table;
 	}
 
-	private static TableModel verifyTable(ITable table, List<MetaDataKey> metaDataKeys, boolean addText,
-			boolean wasCreated) {
+	/**
+	 * Reloads the columns of a table that was changed on the database, so the
+	 * Servoy column info matches the database again. The flags of the embedding
+	 * column are set again when the reload lost them.
+	 */
+	private static ITable reloadTable(IServerInternal server, ITable table) throws RepositoryException {
+		server.reloadTable(table);
+		var reloaded = ensureNotNull(server.getTable(table.getName()), "Cannot find embeddings table %s",
+				table.getName());
+		var embeddingColumn = reloaded.getColumn(EMBEDDING_COLUMN);
+		if (embeddingColumn != null && !embeddingColumn.hasFlag(VECTOR_COLUMN)) {
+			embeddingColumn.setFlag(NATIVE_COLUMN, true);
+			embeddingColumn.setFlag(VECTOR_COLUMN, true);
+			server.updateAllColumnInfo(reloaded);
+		}
+		return reloaded;
+	}
+
+	private static void createCacheTable(String tableName, IServerInternal server, int dimension)
+			throws RepositoryException, SQLException {
+		var table = server.createNewTable(DummyValidator.INSTANCE, tableName);
+
+		// Content hash PK
+		table.createNewColumn(DummyValidator.INSTANCE, CACHE_KEY_COLUMN, ColumnType.getInstance(TEXT, 64, 0), false,
+				true);
+
+		// Embedding
+		var embeddingColumn = table.createNewColumn(DummyValidator.INSTANCE, EMBEDDING_COLUMN,
+				ColumnType.getInstance(MEDIA, dimension, 0), false);
+		embeddingColumn.setFlag(NATIVE_COLUMN, true);
+		embeddingColumn.setFlag(VECTOR_COLUMN, true);
+
+		server.syncTableObjWithDB(table, false, false);
+	}
+
+	private static TableModel verifyTable(ITable table, List<MetaDataKey> metaDataKeys, EmbeddingTableOptions options,
+			boolean wasCreated, String cacheTableName) {
 		var columnTypes = new HashMap<String, ColumnType>();
 
 		var pkColumn = ensureNotNull(table.getColumn(EMBEDDING_ID_COLUMN),
@@ -157,7 +255,7 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 				"Table not usable as for embedding store: Embedding column not a vector: " + EMBEDDING_COLUMN);
 		columnTypes.put(EMBEDDING_COLUMN, embeddingColumn.getColumnType());
 
-		if (addText) {
+		if (options.addText()) {
 			var textColumn = ensureNotNull(table.getColumn(TEXT_COLUMN),
 					"Table not usable as for embedding store: Missing text column: %s", TEXT_COLUMN);
 			ensureTrue(textColumn.getDataProviderType() == TEXT,
@@ -165,13 +263,21 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 			columnTypes.put(TEXT_COLUMN, textColumn.getColumnType());
 		}
 
-		return new TableModel(table.getServerName(), table.getName(), columnTypes, metaDataKeys, wasCreated);
+		if (options.fingerprint()) {
+			var fingerprintColumn = ensureNotNull(table.getColumn(FINGERPRINT_COLUMN),
+					"Table not usable as for embedding store: Missing fingerprint column: %s", FINGERPRINT_COLUMN);
+			columnTypes.put(FINGERPRINT_COLUMN, fingerprintColumn.getColumnType());
+		}
+
+		return new TableModel(table.getServerName(), table.getName(), columnTypes, metaDataKeys, wasCreated,
+				cacheTableName, options);
 	}
 
 	@Override
 	public void addEmbeddings(String clientId, String transactionId, List<String> ids, List<Embedding> embeddings,
 			List<TextSegment> embedded) throws ServoyException {
 		boolean hasText = tableModel.columnTypes().containsKey(TEXT_COLUMN);
+		boolean hasFingerprint = tableModel.columnTypes().containsKey(FINGERPRINT_COLUMN);
 		var columnNames = new ArrayList<String>();
 		var metaDataColumnNames = new ArrayList<String>();
 		var columnTypes = new ArrayList<ColumnType>();
@@ -192,9 +298,15 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 			addColumn(TEXT_COLUMN, columnNames, columnTypes);
 		}
 
+		// Fingerprint column
+		if (hasFingerprint) {
+			addColumn(FINGERPRINT_COLUMN, columnNames, columnTypes);
+		}
+
 		// Rows
 		var rows = new ArrayList<Object[]>();
-		var oldSourceIds = new ArrayList<Object[]>();
+		// the chunks of one source row share its source values
+		var oldSourceIds = new LinkedHashMap<List<Object>, Object[]>();
 		for (int i = 0; i < ids.size(); i++) {
 			var id = ids.get(i);
 			var embedding = embeddings.get(i);
@@ -211,7 +323,7 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 			var row = new ArrayList<>();
 			var metaDataValues = new ArrayList<>();
 			row.add(id);
-			row.add(embedding.vector());
+			row.add(tableModel.options().normalize() ? normalize(embedding.vector()) : embedding.vector());
 			tableModel.metaDataKeys().forEach(metaDataKey -> {
 				Object metadataValue = getMetadataValue(metadata, metaDataKey.name());
 				metaDataValues.add(metadataValue);
@@ -222,21 +334,361 @@ public class ServoyEmbeddingStoreServerImpl implements ServoyEmbeddingStoreServe
 				row.add(textSegment == null ? null : textSegment.text());
 			}
 
+			if (hasFingerprint) {
+				row.add(metadata == null ? null : metadata.getString(FINGERPRINT_COLUMN));
+			}
+
 			rows.add(row.toArray());
-			oldSourceIds.add(metaDataValues.toArray());
+			// embeddings without source values don't replace anything
+			if (metaDataValues.stream().anyMatch(Objects::nonNull)) {
+				oldSourceIds.putIfAbsent(metaDataValues, metaDataValues.toArray());
+			}
+		}
+
+		if (transactionId == null && mergeRows(columnNames, rows, metaDataColumnNames)) {
+			return;
 		}
 
 		var dataSet = createBufferedDataSet(columnNames.toArray(String[]::new), columnTypes.toArray(ColumnType[]::new),
 				rows, false);
-		if (!tableModel.wasCreated()) {
-			var oldSourceIdsDataset = createBufferedDataSet(metaDataColumnNames.toArray(String[]::new),
-					metaDataColumnTypes.toArray(ColumnType[]::new), oldSourceIds, false);
-			serverAccess.deleteFromDataSet(clientId, tableModel.serverName(), tableModel.tableName(), transactionId,
-					oldSourceIdsDataset);
+		// also for a table created by this store, a source row that is embedded again replaces its embeddings
+		if (!oldSourceIds.isEmpty()) {
+			deleteMatching(clientId, transactionId, metaDataColumnNames, metaDataColumnTypes,
+					new ArrayList<>(oldSourceIds.values()));
 		}
 		serverAccess.insertDataSet(clientId, tableModel.serverName(), tableModel.tableName(), transactionId, dataSet);
 	}
 
+	/**
+	 * Replaces the embeddings of the source rows with one native merge, only
+	 * supported outside of a transaction.
+	 *
+	 * @return false when the database is not supported.
+	 */
+	private boolean mergeRows(List<String> columnNames, List<Object[]> rows, List<String> metaDataColumnNames)
+			throws ServoyException {
+		var server = getServer();
+		var table = getTable(server);
+		var columnSqlNames = columnNames.stream().map(name -> table.getColumn(name).getSQLName()).toList();
+		var keySqlNames = metaDataColumnNames.stream().map(name -> table.getColumn(name).getSQLName()).toList();
+		try (Connection connection = server.getConnection()) {
+			if (!DATABASE_HANDLER.mergeRows(connection, table, columnSqlNames, rows, keySqlNames,
+					tableModel.options().bulkLoad())) {
+				return false;
+			}
+		} catch (SQLException e) {
+			throw new RepositoryException(e);
+		}
+		// merged outside of the data broadcast, clients have to reload their data of the table
+		serverAccess.flushAllClientsCache(tableModel.serverName(), tableModel.tableName());
+		return true;
+	}
+
+	@Override
+	public void buildEmbeddingIndex(boolean rebuild) throws ServoyException {
+		var server = getServer();
+		var table = getTable(server);
+		String embeddingListSize = serverAccess.getSettings().getProperty("servoy.aiplugin.embedding_list_size");
+		String tenantIndexRows = serverAccess.getSettings().getProperty("servoy.aiplugin.tenant_index_rows");
+		int listSize = embeddingListSize == null ? 0 : parseInt(embeddingListSize);
+		try (Connection connection = server.getConnection()) {
+			String indexName = "_sv_embedding_" + tableModel.tableName();
+			var vectorColumn = vectorColumn(table);
+			if (!DATABASE_HANDLER.buildEmbeddingIndex(connection, table, indexName, vectorColumn,
+					tableModel.options().index(), listSize, null, rebuild)) {
+				return;
+			}
+
+			// a partial index per large tenant, searches of one tenant do not scan the
+			// neighbours of other tenants
+			var tenantColumn = tenantColumn(table);
+			if (tenantColumn != null) {
+				var tenantRows = DATABASE_HANDLER.countRowsByValue(connection, table, tenantColumn,
+						tenantIndexRows == null ? DEFAULT_TENANT_INDEX_ROWS : parseInt(tenantIndexRows));
+				for (Object tenant : tenantRows == null ? List.of() : tenantRows.keySet()) {
+					if (!SqlFilter.hasLiteral(tenant)) {
+						Debug.log("No tenant index on " + tableModel.tableName() + " for tenant value " + tenant);
+						continue;
+					}
+					String predicate = '"' + tenantColumn.getSQLName().replace("\"", "\"\"") + "\" = "
+							+ SqlFilter.literal(tenant);
+					DATABASE_HANDLER.buildEmbeddingIndex(connection, table, tenantIndexName(indexName, predicate),
+							vectorColumn, tableModel.options().index(), listSize, predicate, rebuild);
+				}
+			}
+		} catch (SQLException e) {
+			throw new RepositoryException(e);
+		}
+	}
+
+	/**
+	 * Name of the partial index of a tenant, a digest of the predicate so the name
+	 * stays the same between builds. The name is at most 59 characters, within the
+	 * identifier limit of 63 with the suffix of the temporary index of a rebuild.
+	 */
+	static String tenantIndexName(String indexName, String predicate) {
+		String digest = ContentHash.sha256(predicate).substring(0, 16);
+		return indexName.substring(0, Math.min(indexName.length(), 59 - digest.length() - 1)) + "_" + digest;
+	}
+
+	@Override
+	public IDataSet searchEmbeddings(float[] vector, int maxResults, double minScore, Filter filter,
+			VectorSearchParameters parameters, boolean includeEmbeddings) throws ServoyException {
+		float[] queryVector = queryVector(vector);
+		return search(filter, includeEmbeddings, false,
+				(connection, table, resultColumns, where, whereParameters) -> DATABASE_HANDLER.searchEmbeddings(
+						connection, table, vectorColumn(table), resultColumns, queryVector, minScore, maxResults, where,
+						whereParameters, parameters));
+	}
+
+	@Override
+	public IDataSet searchAllEmbeddings(List<float[]> vectors, int maxResults, double minScore, Filter filter,
+			VectorSearchParameters parameters, boolean includeEmbeddings) throws ServoyException {
+		var queryVectors = vectors.stream().map(this::queryVector).toList();
+		return search(filter, includeEmbeddings, true,
+				(connection, table, resultColumns, where, whereParameters) -> DATABASE_HANDLER.searchAllEmbeddings(
+						connection, table, vectorColumn(table), resultColumns, queryVectors, minScore, maxResults,
+						where, whereParameters, parameters));
+	}
+
+	@Override
+	public IDataSet hybridSearchEmbeddings(float[] vector, String text, int maxResults, Filter filter,
+			VectorSearchParameters parameters, boolean includeEmbeddings) throws ServoyException {
+		String textSearchConfig = tableModel.options().textSearchConfig();
+		if (textSearchConfig == null) {
+			return null;
+		}
+		float[] queryVector = queryVector(vector);
+		return search(filter, includeEmbeddings, false,
+				(connection, table, resultColumns, where, whereParameters) -> DATABASE_HANDLER.hybridSearchEmbeddings(
+						connection, table, vectorColumn(table), table.getColumn(EMBEDDING_ID_COLUMN).getSQLName(),
+						TEXT_SEARCH_COLUMN, textSearchConfig, resultColumns, queryVector, text, maxResults, where,
+						whereParameters, parameters));
+	}
+
+	private float[] queryVector(float[] vector) {
+		return tableModel.options().normalize() ? normalize(vector) : vector;
+	}
+
+	private interface NativeSearch {
+		List<Object[]> search(Connection connection, ITable table, List<String> resultColumns, String where,
+				List<Object> whereParameters) throws SQLException;
+	}
+
+	/**
+	 * Runs a native search with the result columns of the store and the filter
+	 * translated to SQL.
+	 *
+	 * @param batch the rows start with the query index.
+	 * @return null when the filter or the database is not supported.
+	 */
+	private IDataSet search(Filter filter, boolean includeEmbeddings, boolean batch, NativeSearch nativeSearch)
+			throws ServoyException {
+		var server = getServer();
+		var table = getTable(server);
+
+		SqlFilter sqlFilter = null;
+		if (filter != null) {
+			sqlFilter = translateFilter(filter, table);
+			if (sqlFilter == null) {
+				return null;
+			}
+		}
+
+		// same columns as the query builder search on the client
+		var columnNames = new ArrayList<String>();
+		columnNames.add(EMBEDDING_ID_COLUMN);
+		if (includeEmbeddings) {
+			columnNames.add(EMBEDDING_COLUMN);
+		}
+		if (tableModel.columnTypes().containsKey(TEXT_COLUMN)) {
+			columnNames.add(TEXT_COLUMN);
+		}
+		tableModel.metaDataKeys().forEach(metaDataKey -> columnNames.add(metaDataKey.name()));
+
+		List<Object[]> rows;
+		try (Connection connection = server.getConnection()) {
+			rows = nativeSearch.search(connection, table,
+					columnNames.stream().map(name -> table.getColumn(name).getSQLName()).toList(),
+					sqlFilter == null ? null : sqlFilter.where(),
+					sqlFilter == null ? List.of() : sqlFilter.parameters());
+		} catch (SQLException e) {
+			throw new RepositoryException(e);
+		}
+		if (rows == null) {
+			return null;
+		}
+
+		if (batch) {
+			columnNames.add(0, QUERY_INDEX_COLUMN);
+		}
+		int idIndex = batch ? 1 : 0;
+		rows.forEach(row -> row[idIndex] = row[idIndex] == null ? null : row[idIndex].toString());
+		columnNames.add(SCORE_COLUMN);
+		return new BufferedDataSet(columnNames.toArray(String[]::new), rows);
+	}
+
+	private VectorColumn vectorColumn(ITable table) {
+		var options = tableModel.options();
+		return new VectorColumn(table.getColumn(EMBEDDING_COLUMN).getSQLName(), options.metric(),
+				options.halfPrecision(), options.oversampling() > 0 ? QUANTIZED_COLUMN : null, options.oversampling());
+	}
+
+	/**
+	 * The meta data column flagged as tenant column, null when none.
+	 */
+	private Column tenantColumn(ITable table) {
+		return tableModel.metaDataKeys().stream().map(metaDataKey -> table.getColumn(metaDataKey.name()))
+				.filter(column -> column != null && column.hasFlag(TENANT_COLUMN)).findFirst().orElse(null);
+	}
+
+	private SqlFilter translateFilter(Filter filter, ITable table) {
+		var sqlColumnNames = new HashMap<String, String>();
+		var columnTypes = new HashMap<String, Integer>();
+		tableModel.metaDataKeys().forEach(metaDataKey -> {
+			sqlColumnNames.put(metaDataKey.name(), table.getColumn(metaDataKey.name()).getSQLName());
+			columnTypes.put(metaDataKey.name(),
+					Integer.valueOf(Column.mapToDefaultType(tableModel.columnTypes().get(metaDataKey.name()))));
+		});
+		// tenant equality as literal, to use the partial index of the tenant
+		var tenantColumn = tenantColumn(table);
+		return SqlFilter.translate(filter, sqlColumnNames, columnTypes,
+				tenantColumn == null ? Set.of() : Set.of(tenantColumn.getName()));
+	}
+
+	/**
+	 * Scales the vector to unit length, so inner product equals cosine similarity.
+	 */
+	static float[] normalize(float[] vector) {
+		double sum = 0;
+		for (float f : vector) {
+			sum += f * f;
+		}
+		if (sum == 0 || Math.abs(sum - 1) < 1e-6) {
+			return vector;
+		}
+		float scale = (float) (1 / Math.sqrt(sum));
+		float[] normalized = new float[vector.length];
+		for (int i = 0; i < vector.length; i++) {
+			normalized[i] = vector[i] * scale;
+		}
+		return normalized;
+	}
+
+	private IServerInternal getServer() throws RepositoryException {
+		return (IServerInternal) ensureNotNull(serverAccess.getDBServer(tableModel.serverName(), true, true),
+				"Cannot find server %s", tableModel.serverName());
+	}
+
+	private ITable getTable(IServerInternal server) throws RepositoryException {
+		return ensureNotNull(server.getTable(tableModel.tableName()), "Cannot find embeddings table %s",
+				tableModel.tableName());
+	}
+
+	@Override
+	public void removeEmbeddingsBySourceKeys(String clientId, String transactionId, List<Object[]> sourceKeys)
+			throws ServoyException {
+		var metaDataColumnNames = new ArrayList<String>();
+		var metaDataColumnTypes = new ArrayList<ColumnType>();
+		tableModel.metaDataKeys()
+				.forEach(metaDataKey -> addColumn(metaDataKey.name(), metaDataColumnNames, metaDataColumnTypes));
+		// only the embeddings added by embedAll, which have the fingerprint
+		if (tableModel.columnTypes().containsKey(FINGERPRINT_COLUMN)) {
+			addColumn(FINGERPRINT_COLUMN, metaDataColumnNames, metaDataColumnTypes);
+		}
+		var rows = sourceKeys.stream().map(sourceKey -> Arrays.copyOf(sourceKey, metaDataColumnNames.size()))
+				.toList();
+
+		for (int start = 0; start < rows.size(); start += DELETE_BATCH_SIZE) {
+			deleteMatching(clientId, transactionId, metaDataColumnNames, metaDataColumnTypes,
+					rows.subList(start, Math.min(start + DELETE_BATCH_SIZE, rows.size())));
+		}
+	}
+
+	@Override
+	public void removeEmbeddings(String clientId, String transactionId, List<String> ids) throws ServoyException {
+		var idColumnNames = List.of(EMBEDDING_ID_COLUMN);
+		var idColumnTypes = List.of(tableModel.columnTypes().get(EMBEDDING_ID_COLUMN));
+		for (int start = 0; start < ids.size(); start += DELETE_BATCH_SIZE) {
+			var rows = ids.subList(start, Math.min(start + DELETE_BATCH_SIZE, ids.size())).stream()
+					.map(id -> new Object[] { id }).toList();
+			deleteMatching(clientId, transactionId, idColumnNames, idColumnTypes, rows);
+		}
+	}
+
+	@Override
+	public boolean removeEmbeddings(String clientId, Filter filter) throws ServoyException {
+		var server = getServer();
+		var table = getTable(server);
+
+		SqlFilter sqlFilter = null;
+		if (filter != null) {
+			sqlFilter = translateFilter(filter, table);
+			if (sqlFilter == null) {
+				return false;
+			}
+		}
+
+		int deleted;
+		try (Connection connection = server.getConnection()) {
+			deleted = DATABASE_HANDLER.deleteRows(connection, table, sqlFilter == null ? null : sqlFilter.where(),
+					sqlFilter == null ? List.of() : sqlFilter.parameters(), DELETE_BATCH_SIZE);
+		} catch (SQLException e) {
+			throw new RepositoryException(e);
+		}
+		if (deleted > 0) {
+			// deleted outside of the data broadcast, clients have to reload their data of the table
+			serverAccess.flushAllClientsCache(tableModel.serverName(), tableModel.tableName());
+		}
+		return deleted >= 0;
+	}
+
+	private void deleteMatching(String clientId, String transactionId, List<String> columnNames,
+			List<ColumnType> columnTypes, List<Object[]> rows) throws ServoyException {
+		var dataSet = createBufferedDataSet(columnNames.toArray(String[]::new), columnTypes.toArray(ColumnType[]::new),
+				rows, false);
+		serverAccess.deleteFromDataSet(clientId, tableModel.serverName(), tableModel.tableName(), transactionId,
+				dataSet);
+	}
+
+	@Override
+	public void addCachedEmbeddings(String clientId, List<String> keys, List<float[]> embeddings)
+			throws ServoyException {
+		ensureNotNull(tableModel.cacheTableName(), "Embedding cache not enabled for table %s", tableModel.tableName());
+		ensureTrue(keys.size() == embeddings.size(), "keys and embeddings differ in size");
+		if (keys.isEmpty()) {
+			return;
+		}
+
+		// a key is the primary key of the cache table, the same text twice in a batch would fail the insert
+		var unique = new LinkedHashMap<String, float[]>();
+		for (int i = 0; i < keys.size(); i++) {
+			unique.putIfAbsent(keys.get(i), embeddings.get(i));
+		}
+		var rows = new ArrayList<Object[]>(unique.size());
+		unique.forEach((key, embedding) -> rows.add(new Object[] { key, embedding }));
+		try {
+			insertCachedEmbeddings(clientId, rows);
+		} catch (ServoyException e) {
+			// another client cached some of the same texts, insert the rows one by one and skip the duplicates
+			for (Object[] row : rows) {
+				try {
+					insertCachedEmbeddings(clientId, List.<Object[]> of(row));
+				} catch (ServoyException rowException) {
+					Debug.trace("Embedding cache entry " + row[0] + " not added: " + rowException.getMessage());
+				}
+			}
+		}
+	}
+
+	private void insertCachedEmbeddings(String clientId, List<Object[]> rows) throws ServoyException {
+		var dataSet = createBufferedDataSet(new String[] { CACHE_KEY_COLUMN, EMBEDDING_COLUMN },
+				new ColumnType[] { ColumnType.getInstance(TEXT, 64, 0), tableModel.columnTypes().get(EMBEDDING_COLUMN) },
+				rows, false);
+		// not part of the client transaction, the cache is valid regardless of the outcome
+		serverAccess.insertDataSet(clientId, tableModel.serverName(), tableModel.cacheTableName(), null, dataSet);
+	}
+
 	private void addColumn(String columnName, ArrayList<String> columnNames, ArrayList<ColumnType> columnTypes) {
 		columnNames.add(columnName);
 		columnTypes.add(tableModel.columnTypes().get(columnName));
@@ -0,0 +1,185 @@
+package com.servoy.extensions.aiplugin.server;
+
+import java.math.BigDecimal;
+import java.sql.Timestamp;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Date;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import com.servoy.extensions.aiplugin.embedding.FilterTranslator;
+import com.servoy.j2db.persistence.IColumnTypes;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+
+/**
+ * A langchain4j metadata filter translated into a SQL where clause with
+ * parameters, on the meta data columns of an embeddings table.
+ * <p>
+ * The same translation as the query builder conditions on the client, see
+ * {@link FilterTranslator}.
+ *
+ * @param where      the where clause, without the where keyword.
+ * @param parameters values for the parameter markers in the where clause.
+ */
+record SqlFilter(String where, List<Object> parameters) {
+
+	/**
+	 * Translates a filter.
+	 *
+	 * @param filter         filter to translate.
+	 * @param sqlColumnNames sql names of the meta data columns by column name.
+	 * @param columnTypes    default column type (see {@link IColumnTypes}) of the
+	 *                       meta data columns by column name.
+	 * @return the translated filter, or null when the filter uses keys that are
+	 *         not meta data columns, filter types or values that cannot be
+	 *         translated.
+	 */
+	static SqlFilter translate(Filter filter, Map<String, String> sqlColumnNames, Map<String, Integer> columnTypes) {
+		return translate(filter, sqlColumnNames, columnTypes, Set.of());
+	}
+
+	/**
+	 * Translates a filter, equality comparisons on the literal keys are written
+	 * with the value as literal instead of a parameter, so the planner can match
+	 * them with the predicate of a partial index.
+	 *
+	 * @param literalKeys keys of text, integer, number or uuid columns.
+	 */
+	static SqlFilter translate(Filter filter, Map<String, String> sqlColumnNames, Map<String, Integer> columnTypes,
+			Set<String> literalKeys) {
+		var parameters = new ArrayList<>();
+		String where = new Translator(sqlColumnNames, columnTypes, literalKeys, parameters).translate(filter);
+		return where == null ? null : new SqlFilter(where, parameters);
+	}
+
+	/**
+	 * Whether the converted filter value can be written as literal, timestamps
+	 * and non-finite numbers are passed as parameter.
+	 */
+	static boolean hasLiteral(Object value) {
+		if (value instanceof Double number) {
+			return Double.isFinite(number.doubleValue());
+		}
+		if (value instanceof Float number) {
+			return Float.isFinite(number.floatValue());
+		}
+		return value != null && !(value instanceof Timestamp);
+	}
+
+	/**
+	 * SQL literal of a converted filter value, see {@link #translate}. Strings are
+	 * written as E'' literal, so backslashes read the same regardless of
+	 * standard_conforming_strings.
+	 *
+	 * @throws IllegalArgumentException when the value has no literal, see
+	 *         {@link #hasLiteral}.
+	 */
+	static String literal(Object value) {
+		if (!hasLiteral(value)) {
+			throw new IllegalArgumentException("No literal for " + value);
+		}
+		if (value instanceof Number number) {
+			return new BigDecimal(number.toString()).stripTrailingZeros().toPlainString();
+		}
+		String string = "E'" + value.toString().replace("\\", "\\\\").replace("'", "''") + '\'';
+		return value instanceof UUID ? string + "::uuid" : string;
+	}
+
+	private static final class Translator extends FilterTranslator<String> {
+
+		private final Map<String, String> sqlColumnNames;
+		private final Map<String, Integer> columnTypes;
+		private final Set<String> literalKeys;
+		private final List<Object> parameters;
+
+		Translator(Map<String, String> sqlColumnNames, Map<String, Integer> columnTypes, Set<String> literalKeys,
+				List<Object> parameters) {
+			this.sqlColumnNames = sqlColumnNames;
+			this.columnTypes = columnTypes;
+			this.literalKeys = literalKeys;
+			this.parameters = parameters;
+		}
+
+		@Override
+		protected String and(String left, String right) {
+			return '(' + left + " AND " + right + ')';
+		}
+
+		@Override
+		protected String or(String left, String right) {
+			return '(' + left + " OR " + right + ')';
+		}
+
+		@Override
+		protected String comparison(String key, Operator operator, Object value, boolean negated) {
+			String column = sqlColumn(key);
+			Object parameter = column == null ? null : parameter(key, value);
+			if (parameter == null) {
+				return null;
+			}
+			if (operator == Operator.EQ && literalKeys.contains(key) && hasLiteral(parameter)) {
+				return predicate(column, column + " = " + literal(parameter), negated);
+			}
+			parameters.add(parameter);
+			return predicate(column, column + ' ' + operator.symbol() + " ?", negated);
+		}
+
+		@Override
+		protected String in(String key, Collection<?> values, boolean negated) {
+			String column = sqlColumn(key);
+			if (column == null) {
+				return null;
+			}
+			var sb = new StringBuilder(column).append(" IN (");
+			for (Object value : values) {
+				Object parameter = parameter(key, value);
+				if (parameter == null) {
+					return null;
+				}
+				parameters.add(parameter);
+				sb.append(sb.charAt(sb.length() - 1) == '(' ? "?" : ", ?");
+			}
+			return predicate(column, sb.append(')').toString(), negated);
+		}
+
+		private static String predicate(String column, String predicate, boolean negated) {
+			// a missing value matches the negated predicate
+			return negated ? "(" + column + " IS NULL OR NOT (" + predicate + "))" : predicate;
+		}
+
+		private String sqlColumn(String key) {
+			String sqlName = sqlColumnNames.get(key);
+			return sqlName == null ? null : '"' + sqlName.replace("\"", "\"\"") + '"';
+		}
+
+		/**
+		 * Converts the filter value to a jdbc parameter for the column type, null
+		 * when not supported.
+		 */
+		private Object parameter(String key, Object value) {
+			Integer columnType = columnTypes.get(key);
+			if (columnType == null || value == null) {
+				return null;
+			}
+			return switch (columnType.intValue()) {
+			case IColumnTypes.TEXT -> value.toString();
+			case IColumnTypes.INTEGER, IColumnTypes.NUMBER -> value instanceof Number ? value : null;
+			case IColumnTypes.DATETIME -> value instanceof Date date ? new Timestamp(date.getTime()) : null;
+			case IColumnTypes.MEDIA -> value instanceof UUID ? value : toUUID(value.toString());
+			default -> null;
+			};
+		}
+
+		private static UUID toUUID(String value) {
+			try {
+				return UUID.fromString(value);
+			} catch (IllegalArgumentException e) {
+				return null;
+			}
+		}
+	}
+}
@@ -0,0 +1,215 @@
+package com.servoy.extensions.aiplugin.database.postgres;
+
+import static java.nio.charset.StandardCharsets.UTF_8;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.ResultSet;
+import java.sql.ResultSetMetaData;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+import org.postgresql.PGConnection;
+import org.postgresql.copy.CopyIn;
+import org.postgresql.copy.CopyManager;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("PostgresCopyLoader")
+class PostgresCopyLoaderTest
+{
+	private static final List<String> COLUMNS = List.of("embedding_id", "embedding", "source_id", "text");
+
+	@Mock
+	private Connection connection;
+
+	@Mock
+	private Statement statement;
+
+	@Mock
+	private ResultSet resultSet;
+
+	@Mock
+	private ResultSetMetaData metaData;
+
+	@Mock
+	private PGConnection pgConnection;
+
+	@Mock
+	private CopyManager copyManager;
+
+	@Mock
+	private CopyIn copyIn;
+
+	private final ByteArrayOutputStream copied = new ByteArrayOutputStream();
+
+	@BeforeEach
+	void setUp() throws Exception
+	{
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.executeQuery(anyString())).thenReturn(resultSet);
+		when(resultSet.getMetaData()).thenReturn(metaData);
+		columnTypes("uuid", "vector", "int8", "text");
+		when(connection.unwrap(PGConnection.class)).thenReturn(pgConnection);
+		when(pgConnection.getCopyAPI()).thenReturn(copyManager);
+		when(copyManager.copyIn(anyString())).thenReturn(copyIn);
+		doAnswer(invocation -> {
+			copied.write((byte[])invocation.getArgument(0), invocation.getArgument(1), invocation.getArgument(2));
+			return null;
+		}).when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+	}
+
+	private void columnTypes(String... typeNames) throws SQLException
+	{
+		for (int i = 0; i < typeNames.length; i++)
+		{
+			when(metaData.getColumnTypeName(i + 1)).thenReturn(typeNames[i]);
+		}
+	}
+
+	/**
+	 * Reads the rows of the binary copy format, each field as its bytes.
+	 */
+	private List<List<byte[]>> copiedRows() throws Exception
+	{
+		var in = new DataInputStream(new ByteArrayInputStream(copied.toByteArray()));
+		byte[] signature = new byte[11];
+		in.readFully(signature);
+		assertArrayEquals(new byte[] { 'P', 'G', 'C', 'O', 'P', 'Y', '\n', (byte)0xff, '\r', '\n', 0 }, signature);
+		assertEquals(0, in.readInt());
+		assertEquals(0, in.readInt());
+
+		var rows = new ArrayList<List<byte[]>>();
+		for (short fields = in.readShort(); fields != -1; fields = in.readShort())
+		{
+			var row = new ArrayList<byte[]>();
+			for (int i = 0; i < fields; i++)
+			{
+				int length = in.readInt();
+				byte[] value = null;
+				if (length >= 0)
+				{
+					value = new byte[length];
+					in.readFully(value);
+				}
+				row.add(value);
+			}
+			rows.add(row);
+		}
+		assertEquals(-1, in.read());
+		return rows;
+	}
+
+	@Test
+	@DisplayName("writes the rows in the binary copy format")
+	void copiesRows() throws Exception
+	{
+		UUID id = UUID.randomUUID();
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] { id, new float[] { 0.5f, -1.25f }, Long.valueOf(42), "héllo" });
+		rows.add(new Object[] { id.toString(), new float[] { 3f, 0f }, null, null });
+
+		assertTrue(PostgresCopyLoader.copyRows(connection, "\"embeddings\"", COLUMNS, rows));
+
+		verify(copyManager).copyIn("COPY \"embeddings\" (\"embedding_id\", \"embedding\", \"source_id\", \"text\") FROM STDIN (FORMAT BINARY)");
+		verify(copyIn).endCopy();
+		List<List<byte[]>> copiedRows = copiedRows();
+		assertEquals(2, copiedRows.size());
+
+		List<byte[]> first = copiedRows.get(0);
+		ByteBuffer uuid = ByteBuffer.wrap(first.get(0));
+		assertEquals(id, new UUID(uuid.getLong(), uuid.getLong()));
+		assertArrayEquals(new float[] { 0.5f, -1.25f }, PostgresSearchHandler.fromSendFormat(first.get(1), false));
+		assertEquals(42, ByteBuffer.wrap(first.get(2)).getLong());
+		assertEquals("héllo", new String(first.get(3), UTF_8));
+
+		List<byte[]> second = copiedRows.get(1);
+		assertArrayEquals(first.get(0), second.get(0));
+		assertArrayEquals(new float[] { 3f, 0f }, PostgresSearchHandler.fromSendFormat(second.get(1), false));
+		assertNull(second.get(2));
+		assertNull(second.get(3));
+	}
+
+	@Test
+	@DisplayName("writes halfvec columns as 16-bit floats")
+	void copiesHalfvec() throws Exception
+	{
+		columnTypes("uuid", "halfvec", "int4", "varchar");
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] { UUID.randomUUID(), new float[] { 0.5f, -2f }, Integer.valueOf(7), "text" });
+
+		assertTrue(PostgresCopyLoader.copyRows(connection, "\"embeddings\"", COLUMNS, rows));
+
+		List<byte[]> row = copiedRows().get(0);
+		assertEquals(4 + 2 * 2, row.get(1).length);
+		assertArrayEquals(new float[] { 0.5f, -2f }, PostgresSearchHandler.fromSendFormat(row.get(1), true));
+		assertEquals(7, ByteBuffer.wrap(row.get(2)).getInt());
+	}
+
+	@Test
+	@DisplayName("copies nothing when a column type is not supported")
+	void unsupportedColumnType() throws Exception
+	{
+		columnTypes("uuid", "vector", "numeric", "text");
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] { UUID.randomUUID(), new float[] { 1f }, Integer.valueOf(1), "text" });
+
+		assertFalse(PostgresCopyLoader.copyRows(connection, "\"embeddings\"", COLUMNS, rows));
+
+		verifyNoInteractions(copyManager);
+	}
+
+	@Test
+	@DisplayName("copies nothing when a value does not fit the column type")
+	void unsupportedValue() throws Exception
+	{
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] { "not a uuid", new float[] { 1f }, Integer.valueOf(1), "text" });
+
+		assertFalse(PostgresCopyLoader.copyRows(connection, "\"embeddings\"", COLUMNS, rows));
+
+		verifyNoInteractions(copyManager);
+	}
+
+	@Test
+	@DisplayName("copies nothing when the connection is not a Postgres connection")
+	void notUnwrappable() throws Exception
+	{
+		when(connection.unwrap(PGConnection.class)).thenThrow(new SQLException("not a wrapper"));
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] { UUID.randomUUID(), new float[] { 1f }, Integer.valueOf(1), "text" });
+
+		assertFalse(PostgresCopyLoader.copyRows(connection, "\"embeddings\"", COLUMNS, rows));
+	}
+
+	@Test
+	@DisplayName("cancels the copy when writing fails")
+	void cancelsOnFailure() throws Exception
+	{
+		doThrow(new SQLException("connection lost")).when(copyIn).writeToCopy(any(byte[].class), anyInt(), anyInt());
+		when(copyIn.isActive()).thenReturn(true);
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] { UUID.randomUUID(), new float[] { 1f }, Integer.valueOf(1), "text" });
+
+		assertThrows(SQLException.class, () -> PostgresCopyLoader.copyRows(connection, "\"embeddings\"", COLUMNS, rows));
+
+		verify(copyIn).cancelCopy();
+	}
+}
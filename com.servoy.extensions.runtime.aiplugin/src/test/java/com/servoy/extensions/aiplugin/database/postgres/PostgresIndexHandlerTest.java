@@ -0,0 +1,344 @@
+package com.servoy.extensions.aiplugin.database.postgres;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.servoy.extensions.aiplugin.database.VectorColumn;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingIndexOptions;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingMetric;
+import com.servoy.j2db.persistence.Column;
+import com.servoy.j2db.persistence.ITable;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("PostgresIndexHandler")
+class PostgresIndexHandlerTest
+{
+	@Mock
+	private Connection connection;
+
+	@Mock
+	private Statement statement;
+
+	@Mock
+	private ResultSet count;
+
+	@Mock
+	private PreparedStatement regclass;
+
+	@Mock
+	private ResultSet regclassResult;
+
+	@Mock
+	private PreparedStatement indexes;
+
+	@Mock
+	private ResultSet indexesResult;
+
+	@Mock
+	private PreparedStatement buildState;
+
+	@Mock
+	private ResultSet buildStateResult;
+
+	@Mock
+	private ITable table;
+
+	private final VectorColumn vectorColumn = new VectorColumn("embedding", EmbeddingMetric.COSINE, false, null, 0);
+
+	private final EmbeddingIndexOptions indexOptions = new EmbeddingIndexOptions(EmbeddingIndexOptions.HNSW, 16, 0);
+
+	private final List<String> executed = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws Exception
+	{
+		when(table.getSQLName()).thenReturn("embeddings");
+		when(connection.getAutoCommit()).thenReturn(true);
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.executeQuery(anyString())).thenReturn(count);
+		when(count.next()).thenReturn(true);
+		when(count.getLong(1)).thenReturn(5000L);
+		when(statement.execute(anyString())).thenAnswer(invocation -> executed.add(invocation.getArgument(0)));
+		when(connection.prepareStatement("SELECT to_regclass(?)")).thenReturn(regclass);
+		when(regclass.executeQuery()).thenReturn(regclassResult);
+		when(regclassResult.next()).thenReturn(true);
+		when(connection.prepareStatement(startsWith("SELECT obj_description("))).thenReturn(indexes);
+		when(indexes.executeQuery()).thenReturn(indexesResult);
+		when(connection.prepareStatement(startsWith("SELECT i.indisvalid"))).thenReturn(buildState);
+		when(buildState.executeQuery()).thenReturn(buildStateResult);
+	}
+
+	private void indexExists(boolean exists) throws SQLException
+	{
+		when(regclassResult.getObject(1)).thenReturn(exists ? "embeddings_idx" : null);
+	}
+
+	/**
+	 * An index under the temporary name, left by an earlier build or being built by another client.
+	 */
+	private void temporaryIndex(boolean valid, boolean building) throws SQLException
+	{
+		when(buildStateResult.next()).thenReturn(true);
+		when(buildStateResult.getBoolean(1)).thenReturn(valid);
+		when(buildStateResult.getBoolean(2)).thenReturn(building);
+	}
+
+	@Test
+	@DisplayName("creates a missing index concurrently under the temporary name and renames it in")
+	void createsConcurrently() throws Exception
+	{
+		indexExists(false);
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, false));
+
+		assertEquals(3, executed.size());
+		assertTrue(executed.get(0).startsWith("CREATE INDEX CONCURRENTLY \"embeddings_idx_new\" ON \"embeddings\" USING hnsw (\"embedding\" vector_cosine_ops) WITH (m = 16)"),
+			executed.get(0));
+		assertEquals("DROP INDEX IF EXISTS \"embeddings_idx\"", executed.get(1));
+		assertEquals("ALTER INDEX \"embeddings_idx_new\" RENAME TO \"embeddings_idx\"", executed.get(2));
+	}
+
+	@Test
+	@DisplayName("keeps an existing index")
+	void keepsExisting() throws Exception
+	{
+		indexExists(true);
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, false));
+
+		assertEquals(List.of(), executed);
+	}
+
+	@Test
+	@DisplayName("rebuilds next to the existing index and swaps them in one transaction")
+	void rebuildsConcurrently() throws Exception
+	{
+		indexExists(true);
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0,
+			"\"tenant\" = 'a'", true));
+
+		assertEquals(4, executed.size());
+		assertTrue(executed.get(0).startsWith("CREATE INDEX CONCURRENTLY \"embeddings_idx_new\" ON \"embeddings\" USING hnsw"), executed.get(0));
+		assertTrue(executed.get(0).endsWith(" WHERE \"tenant\" = 'a'"), executed.get(0));
+		assertEquals("COMMENT ON INDEX \"embeddings_idx_new\" IS E'\"tenant\" = ''a'''", executed.get(1));
+		assertEquals("DROP INDEX IF EXISTS \"embeddings_idx\"", executed.get(2));
+		assertEquals("ALTER INDEX \"embeddings_idx_new\" RENAME TO \"embeddings_idx\"", executed.get(3));
+		InOrder inOrder = inOrder(connection);
+		inOrder.verify(connection).setAutoCommit(true);
+		inOrder.verify(connection).setAutoCommit(false);
+		inOrder.verify(connection).commit();
+		inOrder.verify(connection, times(2)).setAutoCommit(true);
+	}
+
+	@Test
+	@DisplayName("keeps an existing partial index with the same predicate")
+	void keepsSamePredicate() throws Exception
+	{
+		indexExists(true);
+		when(indexesResult.next()).thenReturn(true);
+		when(indexesResult.getString(1)).thenReturn("\"tenant\" = E'a'");
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0,
+			"\"tenant\" = E'a'", false));
+
+		assertEquals(List.of(), executed);
+		verify(indexes).setString(2, "embeddings");
+		verify(indexes).setString(3, "embeddings_idx");
+	}
+
+	@Test
+	@DisplayName("replaces an existing index with another predicate")
+	void replacesOtherPredicate() throws Exception
+	{
+		indexExists(true);
+		when(indexesResult.next()).thenReturn(true);
+		when(indexesResult.getString(1)).thenReturn("\"tenant\" = E'b'");
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0,
+			"\"tenant\" = E'a'", false));
+
+		assertEquals(4, executed.size());
+		assertTrue(executed.get(0).endsWith(" WHERE \"tenant\" = E'a'"), executed.get(0));
+		assertEquals("ALTER INDEX \"embeddings_idx_new\" RENAME TO \"embeddings_idx\"", executed.get(3));
+	}
+
+	@Test
+	@DisplayName("drops the invalid index of a failed build and keeps the existing index")
+	void dropsInvalidIndex() throws Exception
+	{
+		indexExists(true);
+		doThrow(new SQLException("could not create unique index")).when(statement).execute(startsWith("CREATE"));
+
+		assertThrows(SQLException.class,
+			() -> PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, true));
+
+		assertEquals(List.of("DROP INDEX CONCURRENTLY IF EXISTS \"embeddings_idx_new\""), executed);
+	}
+
+	@Test
+	@DisplayName("drops the invalid index left by an earlier failed build before building")
+	void dropsLeftoverInvalidIndex() throws Exception
+	{
+		indexExists(true);
+		temporaryIndex(false, false);
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, true));
+
+		assertEquals(4, executed.size());
+		assertEquals("DROP INDEX CONCURRENTLY IF EXISTS \"embeddings_idx_new\"", executed.get(0));
+		assertTrue(executed.get(1).startsWith("CREATE INDEX CONCURRENTLY \"embeddings_idx_new\""), executed.get(1));
+		verify(buildState).setString(1, "\"embeddings_idx_new\"");
+	}
+
+	@Test
+	@DisplayName("leaves an index that another client is building alone")
+	void leavesConcurrentBuild() throws Exception
+	{
+		indexExists(false);
+		temporaryIndex(false, true);
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, false));
+
+		assertEquals(List.of(), executed);
+	}
+
+	@Test
+	@DisplayName("leaves an index that another client started building first alone")
+	void leavesIndexCreatedConcurrently() throws Exception
+	{
+		indexExists(false);
+		doThrow(new SQLException("relation already exists", "42P07")).when(statement).execute(startsWith("CREATE"));
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, false));
+
+		assertEquals(List.of(), executed);
+	}
+
+	@Test
+	@DisplayName("renames in an index that another client finished building")
+	void renamesFinishedBuild() throws Exception
+	{
+		indexExists(false);
+		temporaryIndex(true, false);
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, false));
+
+		assertEquals(List.of("DROP INDEX IF EXISTS \"embeddings_idx\"", "ALTER INDEX \"embeddings_idx_new\" RENAME TO \"embeddings_idx\""), executed);
+	}
+
+	@Test
+	@DisplayName("keeps the index of another client that renamed its build in first")
+	void keepsIndexRenamedConcurrently() throws Exception
+	{
+		indexExists(false);
+		doThrow(new SQLException("relation does not exist", "42P01")).when(statement).execute(startsWith("ALTER INDEX"));
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, false));
+
+		verify(connection).rollback();
+		verify(connection, never()).commit();
+	}
+
+	@Test
+	@DisplayName("indexes the quantized column for the candidate search")
+	void indexesQuantizedColumn() throws Exception
+	{
+		indexExists(false);
+		var quantized = new VectorColumn("embedding", EmbeddingMetric.COSINE, false, "embedding_bq", 4);
+
+		assertTrue(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", quantized, indexOptions, 0, null, false));
+
+		assertTrue(executed.get(0).startsWith("CREATE INDEX CONCURRENTLY \"embeddings_idx_new\" ON \"embeddings\" USING hnsw (\"embedding_bq\" bit_hamming_ops)"),
+			executed.get(0));
+	}
+
+	@Test
+	@DisplayName("adds the quantized column as a generated column")
+	void addsQuantizedColumn() throws Exception
+	{
+		Column column = mock(Column.class);
+		when(column.getSQLName()).thenReturn("embedding");
+
+		PostgresIndexHandler.addQuantizedColumn(connection, table, column, "embedding_bq", 384);
+
+		assertEquals(List.of("ALTER TABLE \"embeddings\" ADD COLUMN IF NOT EXISTS \"embedding_bq\" bit(384)"
+			+ " GENERATED ALWAYS AS (binary_quantize(\"embedding\")::bit(384)) STORED"), executed);
+	}
+
+	@Test
+	@DisplayName("adds the full text column as a generated column with a gin index")
+	void addsTextSearchColumn() throws Exception
+	{
+		Column column = mock(Column.class);
+		when(column.getSQLName()).thenReturn("text");
+
+		PostgresIndexHandler.addTextSearchColumn(connection, table, column, "_sv_text", "_sv_embedding_text_embeddings", "dutch'");
+
+		assertEquals(List.of(
+			"ALTER TABLE \"embeddings\" ADD COLUMN IF NOT EXISTS \"_sv_text\" tsvector GENERATED ALWAYS AS (to_tsvector('dutch'''::regconfig,"
+				+ " coalesce(\"text\", ''))) STORED",
+			"CREATE INDEX IF NOT EXISTS \"_sv_embedding_text_embeddings\" ON \"embeddings\" USING gin (\"_sv_text\")"), executed);
+	}
+
+	@Test
+	@DisplayName("changes the embedding column to half precision, quoting its name")
+	void usesHalfPrecision() throws Exception
+	{
+		Column column = mock(Column.class);
+		when(column.getSQLName()).thenReturn("embed\"ding");
+
+		PostgresIndexHandler.useHalfPrecision(connection, table, column, 384);
+
+		assertEquals(List.of("ALTER TABLE \"embeddings\" ALTER COLUMN \"embed\"\"ding\" TYPE halfvec(384)"), executed);
+	}
+
+	@Test
+	@DisplayName("does not index an empty table")
+	void skipsEmptyTable() throws Exception
+	{
+		indexExists(false);
+		when(count.getLong(1)).thenReturn(0L);
+
+		assertFalse(PostgresIndexHandler.buildEmbeddingIndex(connection, table, "embeddings_idx", vectorColumn, indexOptions, 0, null, false));
+
+		assertEquals(List.of(), executed);
+	}
+
+	@Test
+	@DisplayName("keeps temporary index names within the identifier limit")
+	void temporaryName()
+	{
+		assertEquals("embeddings_idx_new", PostgresIndexHandler.temporaryName("embeddings_idx"));
+		assertEquals(63, PostgresIndexHandler.temporaryName("x".repeat(63)).length());
+	}
+
+	@Test
+	@DisplayName("derives the number of ivfflat lists from the number of rows")
+	void lists()
+	{
+		assertEquals(1, PostgresIndexHandler.listsFor(10));
+		assertEquals(1000, PostgresIndexHandler.listsFor(1_000_000));
+		assertEquals(2000, PostgresIndexHandler.listsFor(4_000_000));
+	}
+}
@@ -0,0 +1,122 @@
+package com.servoy.extensions.aiplugin.database.postgres;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.pgvector.PGvector;
+import com.servoy.j2db.persistence.ITable;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("PostgresMergeHandler")
+class PostgresMergeHandlerTest
+{
+	@Mock
+	private Connection connection;
+
+	@Mock
+	private Statement statement;
+
+	@Mock
+	private PreparedStatement insert;
+
+	@Mock
+	private ITable table;
+
+	private final List<String> executed = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws Exception
+	{
+		when(table.getSchema()).thenReturn("public");
+		when(table.getSQLName()).thenReturn("embeddings");
+		when(connection.getAutoCommit()).thenReturn(true);
+		when(connection.createStatement()).thenReturn(statement);
+		when(connection.prepareStatement(anyString())).thenAnswer(invocation -> {
+			executed.add(invocation.getArgument(0));
+			return insert;
+		});
+		when(statement.execute(anyString())).thenAnswer(invocation -> executed.add(invocation.getArgument(0)));
+		when(statement.executeUpdate(anyString())).thenAnswer(invocation -> {
+			executed.add(invocation.getArgument(0));
+			return Integer.valueOf(1);
+		});
+	}
+
+	private static List<Object[]> rows()
+	{
+		List<Object[]> rows = new ArrayList<>();
+		rows.add(new Object[] { "e1", new float[] { 1, 0 }, Integer.valueOf(7) });
+		rows.add(new Object[] { "e2", new float[] { 0, 1 }, Integer.valueOf(7) });
+		return rows;
+	}
+
+	@Test
+	@DisplayName("replaces the rows with the same keys through a staging table")
+	void mergesThroughStage() throws Exception
+	{
+		PostgresMergeHandler.mergeRows(connection, table, List.of("embedding_id", "embedding", "source_id"), rows(), List.of("source_id"), false);
+
+		assertEquals(List.of(
+			"CREATE TEMP TABLE _sv_embedding_stage (LIKE \"public\".\"embeddings\" INCLUDING DEFAULTS) ON COMMIT DROP",
+			"INSERT INTO _sv_embedding_stage (\"embedding_id\", \"embedding\", \"source_id\") VALUES (?, ?, ?)",
+			"DELETE FROM \"public\".\"embeddings\" t USING (SELECT DISTINCT \"source_id\" FROM _sv_embedding_stage) s WHERE t.\"source_id\" = s.\"source_id\"",
+			"INSERT INTO \"public\".\"embeddings\" (\"embedding_id\", \"embedding\", \"source_id\") SELECT \"embedding_id\", \"embedding\", \"source_id\" FROM _sv_embedding_stage"),
+			executed);
+		verify(insert).setObject(2, new PGvector(new float[] { 1, 0 }));
+		verify(insert, times(2)).addBatch();
+		InOrder inOrder = inOrder(connection);
+		inOrder.verify(connection).setAutoCommit(false);
+		inOrder.verify(connection).commit();
+		inOrder.verify(connection).setAutoCommit(true);
+	}
+
+	@Test
+	@DisplayName("inserts directly without key columns")
+	void insertsWithoutKeys() throws Exception
+	{
+		PostgresMergeHandler.mergeRows(connection, table, List.of("embedding_id", "embedding", "source_id"), rows(), List.of(), false);
+
+		assertEquals(List.of("INSERT INTO \"public\".\"embeddings\" (\"embedding_id\", \"embedding\", \"source_id\") VALUES (?, ?, ?)"), executed);
+		verify(connection).commit();
+	}
+
+	@Test
+	@DisplayName("rolls back when a statement fails")
+	void rollsBack() throws Exception
+	{
+		when(statement.executeUpdate(startsWith("DELETE"))).thenThrow(new SQLException("deadlock detected"));
+
+		assertThrows(SQLException.class, () -> PostgresMergeHandler.mergeRows(connection, table, List.of("embedding_id", "embedding", "source_id"), rows(),
+			List.of("source_id"), false));
+
+		verify(connection).rollback();
+		verify(connection, never()).commit();
+		verify(connection).setAutoCommit(true);
+	}
+
+	@Test
+	@DisplayName("quotes identifiers")
+	void quotes()
+	{
+		assertEquals("\"a\"\"b\"", PostgresMergeHandler.quote("a\"b"));
+	}
+}
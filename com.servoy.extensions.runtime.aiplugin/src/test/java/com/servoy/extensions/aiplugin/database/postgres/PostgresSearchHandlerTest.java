@@ -0,0 +1,258 @@
+package com.servoy.extensions.aiplugin.database.postgres;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.pgvector.PGhalfvec;
+import com.pgvector.PGvector;
+import com.servoy.extensions.aiplugin.database.VectorColumn;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingMetric;
+import com.servoy.j2db.persistence.ITable;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("PostgresSearchHandler")
+class PostgresSearchHandlerTest
+{
+	private static final float[] VECTOR = { 1, 0 };
+
+	@Mock
+	private Connection connection;
+
+	@Mock
+	private Statement statement;
+
+	@Mock
+	private PreparedStatement query;
+
+	@Mock
+	private ResultSet resultSet;
+
+	@Mock
+	private ITable table;
+
+	private final List<String> sql = new ArrayList<>();
+
+	private final List<String> executed = new ArrayList<>();
+
+	private final List<Object> parameters = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws Exception
+	{
+		when(table.getSQLName()).thenReturn("embeddings");
+		when(connection.getAutoCommit()).thenReturn(true);
+		when(connection.createStatement()).thenReturn(statement);
+		when(statement.execute(anyString())).thenAnswer(invocation -> executed.add(invocation.getArgument(0)));
+		when(connection.prepareStatement(anyString())).thenAnswer(invocation -> {
+			sql.add(invocation.getArgument(0));
+			return query;
+		});
+		doAnswer(invocation -> {
+			parameters.add(invocation.getArgument(1));
+			return null;
+		}).when(query).setObject(anyInt(), any());
+		when(query.executeQuery()).thenReturn(resultSet);
+	}
+
+	private static byte[] sendFormat(float... values)
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(4 + values.length * 4);
+		buffer.putShort((short)values.length).putShort((short)0);
+		for (float value : values)
+		{
+			buffer.putFloat(value);
+		}
+		return buffer.array();
+	}
+
+	@Test
+	@DisplayName("searches the nearest rows with the minimum score and the filter")
+	void searches() throws Exception
+	{
+		var vectorColumn = new VectorColumn("embedding", EmbeddingMetric.COSINE, false, null, 0);
+
+		PostgresSearchHandler.search(connection, table, vectorColumn, List.of("embedding_id", "tenant"), VECTOR, 0.5, 5, "\"tenant\" = ?",
+			List.of("a"), 0, 0);
+
+		assertEquals(List.of("SELECT \"embedding_id\", \"tenant\", (1 - (\"embedding\" <=> ?)) AS \"_sv_score\" FROM \"embeddings\""
+			+ " WHERE (1 - (\"embedding\" <=> ?)) >= ? AND \"tenant\" = ? ORDER BY \"embedding\" <=> ? LIMIT 5"), sql);
+		var vector = new PGvector(VECTOR);
+		assertEquals(List.of(vector, vector, Double.valueOf(0.5), "a", vector), parameters);
+		assertEquals(List.of(), executed);
+	}
+
+	@Test
+	@DisplayName("ranks the candidates of the quantized column on the full vectors")
+	void reranksQuantizedCandidates() throws Exception
+	{
+		var vectorColumn = new VectorColumn("embedding", EmbeddingMetric.INNER_PRODUCT, true, "embedding_bq", 3);
+
+		PostgresSearchHandler.search(connection, table, vectorColumn, List.of("embedding_id"), VECTOR, 0.5, 5, "\"tenant\" = ?", List.of("a"),
+			0, 0);
+
+		assertEquals(List.of("SELECT \"embedding_id\", (-(\"embedding\" <#> ?)) AS \"_sv_score\" FROM (SELECT \"embedding_id\", \"embedding\""
+			+ " FROM \"embeddings\" WHERE \"tenant\" = ? ORDER BY \"embedding_bq\" <~> binary_quantize(?) LIMIT 15) candidates"
+			+ " WHERE (-(\"embedding\" <#> ?)) >= ? ORDER BY \"embedding\" <#> ? LIMIT 5"), sql);
+		var vector = new PGhalfvec(VECTOR);
+		assertEquals(List.of(vector, "a", vector, vector, Double.valueOf(0.5), vector), parameters);
+	}
+
+	@Test
+	@DisplayName("searches many query vectors with a lateral join per batch of 100")
+	void searchesAllInBatches() throws Exception
+	{
+		var vectorColumn = new VectorColumn("embedding", EmbeddingMetric.COSINE, false, null, 0);
+		List<float[]> vectors = Collections.nCopies(101, VECTOR);
+		when(resultSet.next()).thenReturn(true, false, true, false);
+		when(resultSet.getObject(1)).thenReturn(Integer.valueOf(0), Integer.valueOf(100));
+		when(resultSet.getObject(2)).thenReturn("e1", "e2");
+		when(resultSet.getBytes(3)).thenReturn(sendFormat(1, 0));
+		when(resultSet.getObject(4)).thenReturn(Double.valueOf(0.9));
+
+		List<Object[]> rows = PostgresSearchHandler.searchAll(connection, table, vectorColumn, List.of("embedding_id", "embedding"), vectors, 0.5, 2,
+			null, List.of(), 0, 0);
+
+		String nearest = ") q(i, v) CROSS JOIN LATERAL (SELECT \"embedding_id\", vector_send(\"embedding\"), (1 - (\"embedding\" <=> q.v)) AS \"_sv_score\""
+			+ " FROM \"embeddings\" WHERE (1 - (\"embedding\" <=> q.v)) >= ? ORDER BY \"embedding\" <=> q.v LIMIT 2) r ORDER BY q.i, r.\"_sv_score\" DESC";
+		String values = IntStream.range(0, 100).mapToObj(i -> "(" + i + ", CAST(? AS vector))").collect(Collectors.joining(", "));
+		assertEquals(List.of("SELECT q.i, r.* FROM (VALUES " + values + nearest, "SELECT q.i, r.* FROM (VALUES (100, CAST(? AS vector))" + nearest), sql);
+		assertEquals(100 + 1 + 1 + 1, parameters.size());
+		assertEquals(Double.valueOf(0.5), parameters.get(100));
+		assertEquals(new PGvector(VECTOR), parameters.get(101));
+		assertEquals(Double.valueOf(0.5), parameters.get(102));
+		assertEquals(2, rows.size());
+		assertEquals(Integer.valueOf(100), rows.get(1)[0]);
+		assertEquals("e2", rows.get(1)[1]);
+		assertArrayEquals(new float[] { 1, 0 }, (float[])rows.get(1)[2]);
+		assertEquals(Double.valueOf(0.9), rows.get(1)[3]);
+	}
+
+	@Test
+	@DisplayName("fuses the vector and full text rankings")
+	void hybridSearch() throws Exception
+	{
+		var vectorColumn = new VectorColumn("embedding", EmbeddingMetric.COSINE, false, null, 0);
+
+		PostgresSearchHandler.hybridSearch(connection, table, vectorColumn, "embedding_id", "_sv_text", "english", List.of("embedding_id", "text"),
+			VECTOR, "red shoes", 5, "\"tenant\" = ?", List.of("a"), 0, 0);
+
+		assertEquals(List.of("WITH vector_ranked AS (SELECT v.\"embedding_id\" AS _sv_id, row_number() OVER (ORDER BY v.\"_sv_score\" DESC)"
+			+ " AS _sv_rank FROM (SELECT \"embedding_id\", (1 - (\"embedding\" <=> ?)) AS \"_sv_score\" FROM \"embeddings\""
+			+ " WHERE \"tenant\" = ? ORDER BY \"embedding\" <=> ? LIMIT 40) v)"
+			+ ", text_ranked AS (SELECT \"embedding_id\" AS _sv_id, row_number() OVER (ORDER BY ts_rank_cd(\"_sv_text\", _sv_tsquery) DESC)"
+			+ " AS _sv_rank FROM \"embeddings\", websearch_to_tsquery(CAST(? AS regconfig), ?) _sv_tsquery WHERE \"_sv_text\" @@ _sv_tsquery"
+			+ " AND \"tenant\" = ? ORDER BY ts_rank_cd(\"_sv_text\", _sv_tsquery) DESC LIMIT 40)"
+			+ ", fused AS (SELECT coalesce(v._sv_id, l._sv_id) AS _sv_id, coalesce(1.0 / (60 + v._sv_rank), 0)"
+			+ " + coalesce(1.0 / (60 + l._sv_rank), 0) AS _sv_fused FROM vector_ranked v FULL OUTER JOIN text_ranked l ON v._sv_id = l._sv_id)"
+			+ " SELECT \"embedding_id\", \"text\", f._sv_fused FROM \"embeddings\" t JOIN fused f ON t.\"embedding_id\" = f._sv_id"
+			+ " ORDER BY f._sv_fused DESC LIMIT 5"), sql);
+		var vector = new PGvector(VECTOR);
+		assertEquals(List.of(vector, "a", vector, "english", "red shoes", "a"), parameters);
+	}
+
+	@Test
+	@DisplayName("decodes the rows and sets the index settings for the search only")
+	void decodesRows() throws Exception
+	{
+		var vectorColumn = new VectorColumn("embedding", EmbeddingMetric.L2, false, null, 0);
+		when(resultSet.next()).thenReturn(true, false);
+		when(resultSet.getObject(1)).thenReturn("e1");
+		when(resultSet.getBytes(2)).thenReturn(sendFormat(0.5f, -1f));
+		when(resultSet.getObject(3)).thenReturn(new BigDecimal("2.5"));
+		when(resultSet.getObject(4)).thenReturn(Double.valueOf(0.75));
+
+		List<Object[]> rows = PostgresSearchHandler.search(connection, table, vectorColumn, List.of("embedding_id", "embedding", "price"), VECTOR,
+			0, 100, null, List.of(), 0, 10);
+
+		assertTrue(sql.get(0).startsWith("SELECT \"embedding_id\", vector_send(\"embedding\"), \"price\", (1 / (1 + (\"embedding\" <-> ?)))"),
+			sql.get(0));
+		assertEquals(List.of("SET LOCAL hnsw.ef_search = 100", "SET LOCAL ivfflat.probes = 10"), executed);
+		assertEquals(1, rows.size());
+		assertEquals("e1", rows.get(0)[0]);
+		assertArrayEquals(new float[] { 0.5f, -1f }, (float[])rows.get(0)[1]);
+		assertEquals(Double.valueOf(2.5), rows.get(0)[2]);
+		assertEquals(Double.valueOf(0.75), rows.get(0)[3]);
+		InOrder inOrder = inOrder(connection);
+		inOrder.verify(connection).setAutoCommit(false);
+		inOrder.verify(connection).commit();
+		inOrder.verify(connection).setAutoCommit(true);
+	}
+
+	@Test
+	@DisplayName("rolls back a failed search")
+	void rollsBack() throws Exception
+	{
+		var vectorColumn = new VectorColumn("embedding", EmbeddingMetric.COSINE, false, null, 0);
+		when(query.executeQuery()).thenThrow(new SQLException("canceling statement due to statement timeout"));
+
+		assertThrows(SQLException.class,
+			() -> PostgresSearchHandler.search(connection, table, vectorColumn, List.of("embedding_id"), VECTOR, 0, 5, null, List.of(), 0, 0));
+
+		verify(connection).rollback();
+		verify(connection, never()).commit();
+		verify(connection).setAutoCommit(true);
+	}
+
+	@Test
+	@DisplayName("decodes the vector send format")
+	void decodesVector()
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 3 * 4);
+		buffer.putShort((short)3).putShort((short)0).putFloat(0.5f).putFloat(-1.25f).putFloat(3f);
+
+		assertArrayEquals(new float[] { 0.5f, -1.25f, 3f }, PostgresSearchHandler.fromSendFormat(buffer.array(), false));
+	}
+
+	@Test
+	@DisplayName("decodes the halfvec send format")
+	void decodesHalfvec()
+	{
+		ByteBuffer buffer = ByteBuffer.allocate(4 + 2 * 2);
+		buffer.putShort((short)2).putShort((short)0).putShort(Float.floatToFloat16(0.5f)).putShort(Float.floatToFloat16(-2f));
+
+		assertArrayEquals(new float[] { 0.5f, -2f }, PostgresSearchHandler.fromSendFormat(buffer.array(), true));
+	}
+
+	@Test
+	@DisplayName("keeps null values")
+	void keepsNull()
+	{
+		assertNull(PostgresSearchHandler.fromSendFormat(null, false));
+	}
+
+	@Test
+	@DisplayName("uses the operator and operator class of the metric")
+	void metrics()
+	{
+		assertEquals("<=>", PostgresSearchHandler.operator(EmbeddingMetric.COSINE));
+		assertEquals("<#>", PostgresSearchHandler.operator(EmbeddingMetric.INNER_PRODUCT));
+		assertEquals("<->", PostgresSearchHandler.operator(EmbeddingMetric.L2));
+		assertEquals("vector_ip_ops", PostgresSearchHandler.operatorClass(EmbeddingMetric.INNER_PRODUCT, false));
+		assertEquals("halfvec_l2_ops", PostgresSearchHandler.operatorClass(EmbeddingMetric.L2, true));
+	}
+}
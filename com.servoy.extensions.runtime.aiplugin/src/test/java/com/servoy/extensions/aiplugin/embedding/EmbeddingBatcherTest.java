@@ -0,0 +1,203 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.exception.HttpException;
+import dev.langchain4j.exception.InvalidRequestException;
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EmbeddingBatcher")
+class EmbeddingBatcherTest
+{
+	@Mock
+	private DimensionAwareEmbeddingModel model;
+
+	private final List<Integer> requestSizes = new ArrayList<>();
+
+	@BeforeEach
+	void setUp()
+	{
+		requestSizes.clear();
+	}
+
+	private void answerWithMaxItems(int maxItems)
+	{
+		when(model.embedAll(anyList())).thenAnswer(invocation -> {
+			List<TextSegment> segments = invocation.getArgument(0);
+			if (segments.size() > maxItems)
+			{
+				throw new InvalidRequestException("too many inputs");
+			}
+			requestSizes.add(segments.size());
+			return Response.from(segments.stream().map(segment -> Embedding.from(new float[] { Float.parseFloat(segment.text().trim()) })).toList());
+		});
+	}
+
+	private static List<TextSegment> segments(int count, int padding)
+	{
+		List<TextSegment> segments = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+		{
+			segments.add(TextSegment.from(i + " ".repeat(padding)));
+		}
+		return segments;
+	}
+
+	@Test
+	@DisplayName("returns embeddings in segment order")
+	void keepsOrder()
+	{
+		answerWithMaxItems(1000);
+		EmbeddingBatcher batcher = new EmbeddingBatcher(model, new EmbeddingBatcher.Limits(10, 100_000), 60_000);
+
+		List<Embedding> embeddings = batcher.embedAll(segments(35, 0));
+
+		assertEquals(35, embeddings.size());
+		for (int i = 0; i < embeddings.size(); i++)
+		{
+			assertEquals(i, embeddings.get(i).vector()[0]);
+		}
+	}
+
+	@Test
+	@DisplayName("packs requests by item count")
+	void packsByItems()
+	{
+		answerWithMaxItems(1000);
+		EmbeddingBatcher batcher = new EmbeddingBatcher(model, new EmbeddingBatcher.Limits(10, 100_000), 0);
+
+		batcher.embedAll(segments(25, 0));
+
+		assertTrue(requestSizes.stream().allMatch(size -> size <= 10));
+		assertEquals(25, requestSizes.stream().mapToInt(Integer::intValue).sum());
+	}
+
+	@Test
+	@DisplayName("packs requests by estimated tokens")
+	void packsByTokens()
+	{
+		answerWithMaxItems(1000);
+		// every segment is about 100 tokens, so only 3 fit in 350 tokens
+		EmbeddingBatcher batcher = new EmbeddingBatcher(model, new EmbeddingBatcher.Limits(50, 350), 60_000);
+
+		batcher.embedAll(segments(9, 400));
+
+		assertEquals(List.of(3, 3, 3), requestSizes);
+	}
+
+	@Test
+	@DisplayName("splits a request that is rejected as too large and remembers the smaller size")
+	void splitsRejectedRequests()
+	{
+		answerWithMaxItems(4);
+		EmbeddingBatcher batcher = new EmbeddingBatcher(model, new EmbeddingBatcher.Limits(16, 100_000), 60_000);
+
+		List<Embedding> embeddings = batcher.embedAll(segments(16, 0));
+
+		assertEquals(16, embeddings.size());
+		assertTrue(requestSizes.stream().allMatch(size -> size <= 4));
+		assertTrue(batcher.batchSize() < 16);
+	}
+
+	@Test
+	@DisplayName("does not retry errors that are not caused by the request size")
+	void rethrowsOtherErrors()
+	{
+		when(model.embedAll(anyList())).thenThrow(new IllegalStateException("provider down"));
+		EmbeddingBatcher batcher = new EmbeddingBatcher(model, new EmbeddingBatcher.Limits(16, 100_000), 60_000);
+
+		assertThrows(IllegalStateException.class, () -> batcher.embedAll(segments(16, 0)));
+		verify(model, times(1)).embedAll(anyList());
+	}
+
+	@Test
+	@DisplayName("grows the batch size while requests are fast")
+	void growsWhenFast()
+	{
+		answerWithMaxItems(1000);
+		EmbeddingBatcher batcher = new EmbeddingBatcher(model, new EmbeddingBatcher.Limits(500, 1_000_000), 60_000);
+		int initial = batcher.batchSize();
+
+		batcher.embedAll(segments(1000, 0));
+
+		assertTrue(batcher.batchSize() > initial);
+		assertTrue(batcher.batchSize() <= 500);
+	}
+
+	@Test
+	@DisplayName("does not split or shrink on bad requests that are not about the size")
+	void rethrowsOtherBadRequests()
+	{
+		when(model.embedAll(anyList())).thenThrow(new InvalidRequestException("Input violates the content policy"));
+		EmbeddingBatcher batcher = new EmbeddingBatcher(model, new EmbeddingBatcher.Limits(16, 100_000), 60_000);
+		int initial = batcher.batchSize();
+
+		assertThrows(InvalidRequestException.class, () -> batcher.embedAll(segments(16, 0)));
+		verify(model, times(1)).embedAll(anyList());
+		assertEquals(initial, batcher.batchSize());
+	}
+
+	@Test
+	@DisplayName("recognizes size and token limit errors only")
+	void sizeErrors()
+	{
+		assertTrue(EmbeddingBatcher.isBatchTooLarge(new HttpException(413, "Payload Too Large")));
+		assertTrue(EmbeddingBatcher.isBatchTooLarge(new HttpException(400, "'$.input' is invalid: maximum 2048 inputs")));
+		assertTrue(EmbeddingBatcher.isBatchTooLarge(new RuntimeException(new InvalidRequestException("at most 100 requests can be in one batch"))));
+		assertTrue(EmbeddingBatcher.isBatchTooLarge(new InvalidRequestException("This request exceeds the token limit")));
+		assertFalse(EmbeddingBatcher.isBatchTooLarge(new HttpException(400, "Incorrect API key provided")));
+		assertFalse(EmbeddingBatcher.isBatchTooLarge(new HttpException(401, "too many failed logins")));
+		assertFalse(EmbeddingBatcher.isBatchTooLarge(new InvalidRequestException("Input violates the content policy")));
+		assertFalse(EmbeddingBatcher.isBatchTooLarge(new IllegalStateException("too many")));
+	}
+
+	@Test
+	@DisplayName("shrinks the batch size on slow requests and grows it again when they are fast")
+	void shrinksAndRecovers()
+	{
+		AtomicBoolean slow = new AtomicBoolean(true);
+		when(model.embedAll(anyList())).thenAnswer(invocation -> {
+			List<TextSegment> segments = invocation.getArgument(0);
+			if (slow.get())
+			{
+				Thread.sleep(60);
+			}
+			return Response.from(segments.stream().map(segment -> Embedding.from(new float[] { 0 })).toList());
+		});
+		EmbeddingBatcher batcher = new EmbeddingBatcher(model, new EmbeddingBatcher.Limits(64, 100_000), 40);
+		int initial = batcher.batchSize();
+
+		batcher.embedAll(segments(200, 0));
+		int shrunk = batcher.batchSize();
+		assertTrue(shrunk < initial);
+
+		slow.set(false);
+		batcher.embedAll(segments(500, 0));
+		assertTrue(batcher.batchSize() > shrunk);
+		assertTrue(batcher.batchSize() <= 64);
+	}
+
+	@Test
+	@DisplayName("uses provider specific limits")
+	void providerLimits()
+	{
+		assertEquals(EmbeddingBatcher.DEFAULT_LIMITS, EmbeddingBatcher.limitsFor(model));
+	}
+}
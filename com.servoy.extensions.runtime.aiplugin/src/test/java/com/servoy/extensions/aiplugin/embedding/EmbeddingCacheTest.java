@@ -0,0 +1,135 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EmbeddingCache")
+class EmbeddingCacheTest
+{
+	@Mock
+	private DimensionAwareEmbeddingModel model;
+
+	private final List<String> embeddedTexts = new ArrayList<>();
+	private final Map<String, float[]> persistent = new HashMap<>();
+
+	private final EmbeddingCache.Tier persistentTier = new EmbeddingCache.Tier()
+	{
+		@Override
+		public Map<String, float[]> load(Collection<String> keys)
+		{
+			Map<String, float[]> result = new HashMap<>();
+			keys.stream().filter(persistent::containsKey).forEach(key -> result.put(key, persistent.get(key)));
+			return result;
+		}
+
+		@Override
+		public void store(Map<String, float[]> embeddings)
+		{
+			persistent.putAll(embeddings);
+		}
+	};
+
+	@BeforeEach
+	void setUp()
+	{
+		lenient().when(model.modelName()).thenReturn("test-model");
+		lenient().when(model.dimension()).thenReturn(1);
+	}
+
+	private List<Embedding> embed(List<TextSegment> segments)
+	{
+		return segments.stream().map(segment -> {
+			embeddedTexts.add(segment.text());
+			return Embedding.from(new float[] { segment.text().length() });
+		}).toList();
+	}
+
+	private static List<TextSegment> segments(String... texts)
+	{
+		return Arrays.stream(texts).map(TextSegment::from).toList();
+	}
+
+	@Test
+	@DisplayName("embeds only texts that are not cached, in order")
+	void embedsOnlyMisses()
+	{
+		EmbeddingCache cache = new EmbeddingCache(new EmbeddingLruCache<>(100, 0), null, ModelIdentity.of(model));
+
+		cache.embedAll(segments("a", "bb"), this::embed);
+		List<Embedding> embeddings = cache.embedAll(segments("bb", "ccc", "a", "ccc"), this::embed);
+
+		assertEquals(List.of("a", "bb", "ccc"), embeddedTexts);
+		assertArrayEquals(new float[] { 2, 3, 1, 3 },
+			new float[] { embeddings.get(0).vector()[0], embeddings.get(1).vector()[0], embeddings.get(2).vector()[0], embeddings.get(3).vector()[0] });
+	}
+
+	@Test
+	@DisplayName("uses the persistent tier when the memory tier misses")
+	void usesPersistentTier()
+	{
+		new EmbeddingCache(new EmbeddingLruCache<>(100, 0), persistentTier, ModelIdentity.of(model)).embedAll(segments("a", "bb"), this::embed);
+		embeddedTexts.clear();
+
+		// new memory tier, as after a restart
+		EmbeddingCache cache = new EmbeddingCache(new EmbeddingLruCache<>(100, 0), persistentTier, ModelIdentity.of(model));
+		cache.embedAll(segments("a", "bb", "ccc"), this::embed);
+
+		assertEquals(List.of("ccc"), embeddedTexts);
+		assertEquals(3, persistent.size());
+	}
+
+	@Test
+	@DisplayName("keys depend on the model")
+	void keysDependOnModel()
+	{
+		EmbeddingCache cache = new EmbeddingCache(new EmbeddingLruCache<>(100, 0), null, ModelIdentity.of(model));
+		String key = cache.key("text");
+
+		EmbeddingCache otherBaseUrl = new EmbeddingCache(new EmbeddingLruCache<>(100, 0), null, ModelIdentity.of(model, "https://other", null));
+		EmbeddingCache otherApiKey = new EmbeddingCache(new EmbeddingLruCache<>(100, 0), null, ModelIdentity.of(model, null, "key"));
+		when(model.dimension()).thenReturn(2);
+		EmbeddingCache otherDimension = new EmbeddingCache(new EmbeddingLruCache<>(100, 0), null, ModelIdentity.of(model));
+
+		assertEquals(64, key.length());
+		assertEquals(key, cache.key("text"));
+		assertNotEquals(key, otherBaseUrl.key("text"));
+		assertNotEquals(key, otherApiKey.key("text"));
+		assertNotEquals(key, otherDimension.key("text"));
+	}
+
+	@Test
+	@DisplayName("memory tier evicts least recently used entries")
+	void evictsLeastRecentlyUsed()
+	{
+		EmbeddingLruCache<String, String> lru = new EmbeddingLruCache<>(2, 0);
+		lru.put("a", "1");
+		lru.put("b", "2");
+		lru.get("a");
+		lru.put("c", "3");
+
+		assertNull(lru.get("b"));
+		assertEquals("1", lru.get("a"));
+		assertEquals(1, lru.evictions());
+		assertEquals(1, lru.misses());
+		assertEquals(2, lru.hits());
+	}
+}
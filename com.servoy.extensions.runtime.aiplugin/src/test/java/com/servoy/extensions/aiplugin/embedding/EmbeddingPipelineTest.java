@@ -0,0 +1,82 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EmbeddingPipeline")
+class EmbeddingPipelineTest
+{
+	@Mock
+	private DimensionAwareEmbeddingModel model;
+
+	@Mock
+	private EmbeddingStore<TextSegment> store;
+
+	@SuppressWarnings("unchecked")
+	@Test
+	@DisplayName("embeds and stores every submitted segment")
+	void storesAllSegments() throws Exception
+	{
+		when(model.embedAll(anyList())).thenAnswer(invocation -> {
+			List<TextSegment> segments = invocation.getArgument(0);
+			return Response.from(segments.stream().map(segment -> Embedding.from(new float[] { segment.text().length() })).toList());
+		});
+		List<TextSegment> stored = new ArrayList<>();
+		when(store.addAll(anyList(), anyList())).thenAnswer(invocation -> {
+			stored.addAll(invocation.getArgument(1));
+			return List.of();
+		});
+
+		try (EmbeddingPipeline pipeline = new EmbeddingPipeline(new EmbeddingBatcher(model)::embedAll, store, 3))
+		{
+			for (int chunk = 0; chunk < 20; chunk++)
+			{
+				List<TextSegment> segments = new ArrayList<>();
+				for (int i = 0; i < 50; i++)
+				{
+					segments.add(TextSegment.from("text " + chunk + "-" + i));
+				}
+				assertTrue(pipeline.submit(segments));
+			}
+			pipeline.finish();
+		}
+
+		assertEquals(1000, stored.size());
+		verify(model, times(20)).embedAll(anyList());
+	}
+
+	@Test
+	@DisplayName("stops accepting chunks and rethrows when the model fails")
+	void rethrowsModelFailure()
+	{
+		when(model.embedAll(anyList())).thenThrow(new IllegalStateException("provider down"));
+
+		EmbeddingPipeline pipeline = new EmbeddingPipeline(new EmbeddingBatcher(model)::embedAll, store, 2);
+		boolean accepted = true;
+		for (int chunk = 0; chunk < 100 && accepted; chunk++)
+		{
+			accepted = pipeline.submit(List.of(TextSegment.from("text " + chunk)));
+		}
+
+		IllegalStateException thrown = assertThrows(IllegalStateException.class, pipeline::finish);
+		assertEquals("provider down", thrown.getMessage());
+		verifyNoInteractions(store);
+	}
+}
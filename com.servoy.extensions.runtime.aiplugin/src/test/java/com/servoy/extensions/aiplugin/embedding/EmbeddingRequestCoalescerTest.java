@@ -0,0 +1,151 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+
+@DisplayName("EmbeddingRequestCoalescer")
+class EmbeddingRequestCoalescerTest
+{
+	private final List<List<String>> calls = new CopyOnWriteArrayList<>();
+
+	/**
+	 * Model with the given name, embeds a text as its length plus the offset.
+	 */
+	private DimensionAwareEmbeddingModel model(String modelName, float offset)
+	{
+		DimensionAwareEmbeddingModel model = mock(DimensionAwareEmbeddingModel.class);
+		lenient().when(model.modelName()).thenReturn(modelName);
+		lenient().when(model.dimension()).thenReturn(1);
+		when(model.embedAll(anyList())).thenAnswer(invocation -> {
+			List<TextSegment> segments = invocation.getArgument(0);
+			calls.add(segments.stream().map(TextSegment::text).toList());
+			return Response.from(segments.stream().map(segment -> Embedding.from(new float[] { segment.text().length() + offset })).toList());
+		});
+		return model;
+	}
+
+	private static CompletableFuture<float[]> embed(EmbeddingRequestCoalescer coalescer, DimensionAwareEmbeddingModel model, String text)
+	{
+		return coalescer.embed(ModelIdentity.of(model), model, text);
+	}
+
+	private static float get(CompletableFuture<float[]> future) throws Exception
+	{
+		return future.get(5, TimeUnit.SECONDS)[0];
+	}
+
+	@Test
+	@DisplayName("combines requests within the window into one call")
+	void coalesces() throws Exception
+	{
+		var coalescer = new EmbeddingRequestCoalescer(200, 100);
+		DimensionAwareEmbeddingModel model = model("model", 0);
+
+		CompletableFuture<float[]> a = embed(coalescer, model, "a");
+		CompletableFuture<float[]> bb = embed(coalescer, model, "bb");
+		CompletableFuture<float[]> ccc = embed(coalescer, model, "ccc");
+
+		assertEquals(1, get(a));
+		assertEquals(2, get(bb));
+		assertEquals(3, get(ccc));
+		assertEquals(List.of(List.of("a", "bb", "ccc")), calls);
+	}
+
+	@Test
+	@DisplayName("embeds a text requested by several callers once and completes all of them")
+	void sharesIdenticalTexts() throws Exception
+	{
+		var coalescer = new EmbeddingRequestCoalescer(200, 100);
+		DimensionAwareEmbeddingModel model = model("model", 0);
+
+		CompletableFuture<float[]> first = embed(coalescer, model, "same");
+		CompletableFuture<float[]> second = embed(coalescer, model, "same");
+
+		assertEquals(4, get(first));
+		assertEquals(4, get(second));
+		assertEquals(List.of(List.of("same")), calls);
+	}
+
+	@Test
+	@DisplayName("does not mix models that only share their name")
+	void separatesConfigurations() throws Exception
+	{
+		var coalescer = new EmbeddingRequestCoalescer(200, 100);
+		DimensionAwareEmbeddingModel first = model("model", 0);
+		DimensionAwareEmbeddingModel second = model("model", 10);
+		DimensionAwareEmbeddingModel third = model("model", 20);
+
+		CompletableFuture<float[]> fromFirst = coalescer.embed(ModelIdentity.of(first, "https://first", "key"), first, "a");
+		CompletableFuture<float[]> fromSecond = coalescer.embed(ModelIdentity.of(second, "https://second", "key"), second, "a");
+		CompletableFuture<float[]> fromThird = coalescer.embed(ModelIdentity.of(third, "https://first", "other key"), third, "a");
+
+		assertEquals(1, get(fromFirst));
+		assertEquals(11, get(fromSecond));
+		assertEquals(21, get(fromThird));
+		assertEquals(3, calls.size());
+	}
+
+	@Test
+	@DisplayName("combines separately built models with the same configuration into one call")
+	void sharesConfigurations() throws Exception
+	{
+		var coalescer = new EmbeddingRequestCoalescer(200, 100);
+		DimensionAwareEmbeddingModel first = model("model", 0);
+		DimensionAwareEmbeddingModel second = model("model", 0);
+
+		CompletableFuture<float[]> fromFirst = coalescer.embed(ModelIdentity.of(first, "https://first", "key"), first, "a");
+		CompletableFuture<float[]> fromSecond = coalescer.embed(ModelIdentity.of(second, "https://first", "key"), second, "bb");
+
+		assertEquals(1, get(fromFirst));
+		assertEquals(2, get(fromSecond));
+		assertEquals(List.of(List.of("a", "bb")), calls);
+	}
+
+	@Test
+	@DisplayName("sends a full batch without waiting for the window")
+	void sendsFullBatch() throws Exception
+	{
+		var coalescer = new EmbeddingRequestCoalescer(60_000, 2);
+		DimensionAwareEmbeddingModel model = model("model", 0);
+
+		CompletableFuture<float[]> a = embed(coalescer, model, "a");
+		CompletableFuture<float[]> bb = embed(coalescer, model, "bb");
+
+		assertEquals(1, get(a));
+		assertEquals(2, get(bb));
+	}
+
+	@Test
+	@DisplayName("fails all requests of a batch when the model call fails")
+	void spreadsFailure()
+	{
+		var coalescer = new EmbeddingRequestCoalescer(200, 100);
+		DimensionAwareEmbeddingModel model = mock(DimensionAwareEmbeddingModel.class);
+		var failure = new IllegalStateException("quota exceeded");
+		when(model.embedAll(anyList())).thenThrow(failure);
+
+		List<CompletableFuture<float[]>> futures = List.of(embed(coalescer, model, "a"), embed(coalescer, model, "b"), embed(coalescer, model, "a"));
+
+		for (CompletableFuture<float[]> future : futures)
+		{
+			ExecutionException e = assertThrows(ExecutionException.class, () -> future.get(5, TimeUnit.SECONDS));
+			assertSame(failure, e.getCause());
+		}
+		verify(model, times(1)).embedAll(anyList());
+	}
+}
@@ -0,0 +1,211 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.servoy.extensions.aiplugin.AIProvider;
+import com.servoy.extensions.aiplugin.AiPluginService;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.DimensionAwareEmbeddingModel;
+import dev.langchain4j.model.output.Response;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingSearchResult;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("EmbeddingStore")
+class EmbeddingStoreTest
+{
+	@Mock
+	private AIProvider provider;
+
+	@Mock
+	private AiPluginService service;
+
+	@Mock
+	private DimensionAwareEmbeddingModel model;
+
+	private final EmbeddingLruCache<String, float[]> queryCache = new EmbeddingLruCache<>(100, 0);
+
+	private final List<String> embeddedTexts = new ArrayList<>();
+
+	@BeforeEach
+	void setUp() throws Exception
+	{
+		when(provider.getAiPluginService()).thenReturn(service);
+		when(service.queryEmbeddingCache()).thenReturn(queryCache);
+		stubModel(model, "test-model");
+	}
+
+	private void stubModel(DimensionAwareEmbeddingModel embeddingModel, String modelName)
+	{
+		lenient().when(embeddingModel.modelName()).thenReturn(modelName);
+		lenient().when(embeddingModel.dimension()).thenReturn(2);
+		lenient().when(embeddingModel.embed(anyString())).thenAnswer(invocation -> {
+			embeddedTexts.add(invocation.getArgument(0));
+			return Response.from(Embedding.from(new float[] { 1, 0 }));
+		});
+		lenient().when(embeddingModel.embedAll(anyList())).thenAnswer(invocation -> {
+			List<TextSegment> segments = invocation.getArgument(0);
+			segments.forEach(segment -> embeddedTexts.add(segment.text()));
+			return Response.from(segments.stream().map(segment -> Embedding.from(new float[] { 0, 1 })).toList());
+		});
+	}
+
+	private EmbeddingStore store(DimensionAwareEmbeddingModel embeddingModel)
+	{
+		return new EmbeddingStore(provider, new InMemoryEmbeddingStore<>(), embeddingModel, ModelIdentity.of(embeddingModel));
+	}
+
+	@Test
+	@DisplayName("embeds a query once, also when it differs only in white space")
+	void cachesNormalizedQueries()
+	{
+		EmbeddingStore store = store(model);
+
+		store.search("red  shoes", 3);
+		store.search(" red\tshoes\n", 3);
+
+		assertEquals(List.of("red shoes"), embeddedTexts);
+		assertEquals(1, queryCache.hits());
+		assertEquals(1, queryCache.size());
+	}
+
+	@Test
+	@DisplayName("normalizes compatibility characters before caching")
+	void normalizesUnicode()
+	{
+		EmbeddingStore store = store(model);
+
+		store.search("ﬁle", 3);
+		store.search("file", 3);
+
+		assertEquals(List.of("file"), embeddedTexts);
+	}
+
+	@Test
+	@DisplayName("keeps the query embeddings of different models apart")
+	void separatesModels()
+	{
+		DimensionAwareEmbeddingModel other = mock(DimensionAwareEmbeddingModel.class);
+		stubModel(other, "other-model");
+
+		store(model).search("red shoes", 3);
+		store(other).search("red shoes", 3);
+
+		assertEquals(List.of("red shoes", "red shoes"), embeddedTexts);
+		assertEquals(2, queryCache.size());
+	}
+
+	@Test
+	@DisplayName("keeps the query embeddings of endpoints that serve a model under the same name apart")
+	void separatesEndpoints()
+	{
+		new EmbeddingStore(provider, new InMemoryEmbeddingStore<>(), model, ModelIdentity.of(model, "https://first", "key")).search("red shoes", 3);
+		new EmbeddingStore(provider, new InMemoryEmbeddingStore<>(), model, ModelIdentity.of(model, "https://second", "key")).search("red shoes", 3);
+		new EmbeddingStore(provider, new InMemoryEmbeddingStore<>(), model, ModelIdentity.of(model, "https://second", "key")).search("red shoes", 3);
+
+		assertEquals(List.of("red shoes", "red shoes"), embeddedTexts);
+		assertEquals(2, queryCache.size());
+	}
+
+	@Test
+	@DisplayName("searchAll embeds only the queries that are not cached, once each")
+	void searchAllUsesCache()
+	{
+		EmbeddingStore store = store(model);
+		store.search("first", 3);
+
+		SearchResult[][] results = store.searchAll(new String[] { "first", "second", "second " }, 3);
+
+		assertEquals(3, results.length);
+		assertEquals(List.of("first", "second"), embeddedTexts);
+		assertEquals(2, queryCache.size());
+	}
+
+	private static EmbeddingSearchResult<TextSegment> result(String text)
+	{
+		return new EmbeddingSearchResult<>(List.of(new EmbeddingMatch<>(Double.valueOf(0.9), "id", null, TextSegment.from(text))));
+	}
+
+	@Test
+	@DisplayName("searchAll runs the searches of other stores in parallel, at most parallelism at a time")
+	void searchAllInParallel()
+	{
+		DimensionAwareEmbeddingModel lengthModel = mock(DimensionAwareEmbeddingModel.class);
+		when(lengthModel.embedAll(anyList())).thenAnswer(invocation -> {
+			List<TextSegment> segments = invocation.getArgument(0);
+			return Response.from(segments.stream().map(segment -> Embedding.from(new float[] { segment.text().length(), 0 })).toList());
+		});
+		@SuppressWarnings("unchecked")
+		dev.langchain4j.store.embedding.EmbeddingStore<TextSegment> other = mock(dev.langchain4j.store.embedding.EmbeddingStore.class);
+		var threads = new CopyOnWriteArrayList<Thread>();
+		var running = new AtomicInteger();
+		var maxRunning = new AtomicInteger();
+		when(other.search(any())).thenAnswer(invocation -> {
+			threads.add(Thread.currentThread());
+			maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+			Thread.sleep(50);
+			running.decrementAndGet();
+			EmbeddingSearchRequest request = invocation.getArgument(0);
+			return result("result " + (int) request.queryEmbedding().vector()[0]);
+		});
+
+		SearchResult[][] results = new EmbeddingStore(provider, other, lengthModel, ModelIdentity.of(lengthModel)).parallelism(2)
+			.searchAll(new String[] { "a", "bb", "ccc", "dddd" }, 3);
+
+		assertEquals(4, threads.size());
+		assertFalse(threads.contains(Thread.currentThread()));
+		assertEquals(2, maxRunning.get());
+		assertEquals("result 1", results[0][0].getText());
+		assertEquals("result 2", results[1][0].getText());
+		assertEquals("result 3", results[2][0].getText());
+		assertEquals("result 4", results[3][0].getText());
+	}
+
+	@Test
+	@DisplayName("searchAll searches Servoy stores in one batch")
+	void searchAllInBatch()
+	{
+		ServoyEmbeddingStore servoyStore = mock(ServoyEmbeddingStore.class);
+		when(servoyStore.searchAll(anyList(), eq(3), eq(0d), isNull(), isNull()))
+			.thenReturn(List.of(result("first match").matches(), List.of()));
+
+		SearchResult[][] results = new EmbeddingStore(provider, servoyStore, model, ModelIdentity.of(model)).searchAll(new String[] { "first", "second" }, 3);
+
+		assertEquals("first match", results[0][0].getText());
+		assertEquals(0, results[1].length);
+		verify(servoyStore, never()).search(any(), any(), anyBoolean());
+	}
+
+	@Test
+	@DisplayName("searchAll searches Servoy stores one by one when the batch search is not supported")
+	void searchAllFallsBack()
+	{
+		ServoyEmbeddingStore servoyStore = mock(ServoyEmbeddingStore.class);
+		when(servoyStore.searchAll(anyList(), eq(3), eq(0d), isNull(), isNull())).thenReturn(null);
+		when(servoyStore.search(any(), isNull(), eq(false))).thenReturn(result("match"));
+
+		SearchResult[][] results = new EmbeddingStore(provider, servoyStore, model, ModelIdentity.of(model)).searchAll(new String[] { "first", "second" }, 3);
+
+		assertEquals(2, results.length);
+		assertEquals("match", results[1][0].getText());
+		verify(servoyStore, times(2)).search(any(), isNull(), eq(false));
+	}
+}
@@ -0,0 +1,189 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static com.servoy.extensions.aiplugin.embedding.VectorStoreTestSupport.*;
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.inmemory.InMemoryEmbeddingStore;
+
+@DisplayName("InMemoryVectorStore")
+class InMemoryVectorStoreTest
+{
+	private static final int DIMENSION = 24;
+
+	@Test
+	@DisplayName("finds the same matches and scores as the langchain4j in-memory store")
+	void matchesInMemoryEmbeddingStore()
+	{
+		int count = 20_000;
+		List<Embedding> embeddings = randomEmbeddings(count, DIMENSION, 1);
+		List<TextSegment> segments = segments(count);
+		InMemoryVectorStore store = new InMemoryVectorStore(DIMENSION);
+		InMemoryEmbeddingStore<TextSegment> expected = new InMemoryEmbeddingStore<>();
+		store.addAll(ids(count), embeddings, segments);
+		expected.addAll(ids(count), embeddings, segments);
+
+		for (Embedding query : randomEmbeddings(5, DIMENSION, 2))
+		{
+			EmbeddingSearchRequest request = EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(10).build();
+			List<EmbeddingMatch<TextSegment>> actualMatches = store.search(request).matches();
+			List<EmbeddingMatch<TextSegment>> expectedMatches = expected.search(request).matches();
+			assertEquals(expectedMatches.stream().map(EmbeddingMatch::embeddingId).toList(), actualMatches.stream().map(EmbeddingMatch::embeddingId).toList());
+			for (int i = 0; i < expectedMatches.size(); i++)
+			{
+				assertEquals(expectedMatches.get(i).score(), actualMatches.get(i).score(), 1e-5);
+				assertEquals(expectedMatches.get(i).embedded(), actualMatches.get(i).embedded());
+			}
+		}
+	}
+
+	@Test
+	@DisplayName("applies the filter and the minimum score")
+	void filtersAndMinScore()
+	{
+		int count = 1000;
+		InMemoryVectorStore store = new InMemoryVectorStore(DIMENSION);
+		store.addAll(ids(count), randomEmbeddings(count, DIMENSION, 3), segments(count));
+		Embedding query = randomEmbeddings(1, DIMENSION, 4).get(0);
+
+		List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(50)
+			.filter(metadataKey("group").isEqualTo(1)).minScore(0.6).build()).matches();
+
+		assertFalse(matches.isEmpty());
+		assertTrue(matches.stream().allMatch(match -> match.embedded().metadata().getInteger("group").intValue() == 1));
+		assertTrue(matches.stream().allMatch(match -> match.score().doubleValue() >= 0.6));
+		assertEquals(matches, matches.stream().sorted(Comparator.comparing(EmbeddingMatch<TextSegment>::score).reversed()).toList());
+	}
+
+	@Test
+	@DisplayName("replaces embeddings with the same id and removes by id and filter")
+	void replacesAndRemoves()
+	{
+		InMemoryVectorStore store = new InMemoryVectorStore(DIMENSION);
+		List<Embedding> embeddings = randomEmbeddings(3, DIMENSION, 5);
+		store.addAll(ids(3), embeddings, segments(3));
+		store.add("id1", embeddings.get(0));
+		assertEquals(3, store.size());
+		assertEquals(List.of("id0", "id1"), search(store, embeddings.get(0), 2, null).stream().sorted().toList());
+
+		store.remove("id0");
+		store.removeAll(metadataKey("group").isEqualTo(2));
+		assertEquals(1, store.size());
+		assertEquals(List.of("id1"), search(store, embeddings.get(2), 10, null));
+	}
+
+	@Test
+	@DisplayName("saves and loads the embeddings, segments and graph")
+	void savesAndLoads(@TempDir Path directory) throws IOException
+	{
+		int count = 3000;
+		List<Embedding> embeddings = randomEmbeddings(count, DIMENSION, 8);
+		InMemoryVectorStore store = new InMemoryVectorStore(DIMENSION, 1000);
+		store.addAll(ids(count), embeddings, segments(count));
+		TextSegment segment = TextSegment.from("uuid", new Metadata().put("key", UUID.randomUUID()).put("size", 12L));
+		store.add("uuid", embeddings.get(0), segment);
+		store.removeAll(List.of("id5", "id6"));
+		Path file = directory.resolve("store.bin");
+		store.save(file);
+
+		InMemoryVectorStore loaded = new InMemoryVectorStore(DIMENSION, 1000);
+		loaded.load(file);
+		assertEquals(store.size(), loaded.size());
+		for (Embedding query : randomEmbeddings(5, DIMENSION, 9))
+		{
+			EmbeddingSearchRequest request = EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(10).build();
+			assertEquals(store.search(request).matches(), loaded.search(request).matches());
+		}
+		assertEquals(segment, loaded.search(EmbeddingSearchRequest.builder().queryEmbedding(embeddings.get(0)).maxResults(1)
+			.filter(metadataKey("size").isEqualTo(12L)).build()).matches().get(0).embedded());
+		assertFalse(search(loaded, embeddings.get(5), 10, null).contains("id5"));
+
+		// added after loading, the mapped slots are compacted to the heap when most are removed
+		loaded.add("new", embeddings.get(5));
+		loaded.removeAll(ids(count).subList(0, 2000));
+		assertEquals(List.of("new"), search(loaded, embeddings.get(5), 1, null));
+		assertEquals(List.of("id2999"), search(loaded, embeddings.get(2999), 1, null));
+	}
+
+	@Test
+	@DisplayName("maps the vectors of a file in chunks")
+	void mapsChunks(@TempDir Path directory) throws IOException
+	{
+		int count = 1000;
+		List<Embedding> embeddings = randomEmbeddings(count, DIMENSION, 10);
+		InMemoryVectorStore store = new InMemoryVectorStore(DIMENSION);
+		store.addAll(ids(count), embeddings, segments(count));
+		Path file = directory.resolve("store.bin");
+		store.save(file);
+
+		// 10 vectors per chunk
+		VectorStoreFile read = VectorStoreFile.read(file, null, 10L * DIMENSION * Float.BYTES + 5);
+		float[] vector = new float[DIMENSION];
+		for (int slot : new int[] { 0, 9, 10, 555, count - 1 })
+		{
+			read.vectors().get(slot, vector, 0);
+			assertArrayEquals(embeddings.get(slot).vector(), vector);
+		}
+		assertEquals(segments(count).get(count - 1), read.segments()[count - 1]);
+	}
+
+	@Test
+	@DisplayName("loads a newer file that could not replace the mapped file")
+	void loadsPendingFile(@TempDir Path directory) throws IOException
+	{
+		List<Embedding> embeddings = randomEmbeddings(2, DIMENSION, 11);
+		Path file = directory.resolve("store.bin");
+		InMemoryVectorStore store = new InMemoryVectorStore(DIMENSION);
+		store.add("old", embeddings.get(0));
+		store.save(file);
+		store.removeAll();
+		store.add("new", embeddings.get(1));
+		store.save(VectorStoreFile.pending(file));
+
+		InMemoryVectorStore loaded = new InMemoryVectorStore(DIMENSION);
+		loaded.load(file);
+		assertEquals(List.of("new"), search(loaded, embeddings.get(0), 2, null));
+		assertFalse(Files.exists(VectorStoreFile.pending(file)));
+	}
+
+	@Test
+	@DisplayName("finds most nearest neighbours with the graph")
+	void graphRecall()
+	{
+		int count = 5000;
+		List<Embedding> embeddings = randomEmbeddings(count, DIMENSION, 6);
+		InMemoryVectorStore exact = new InMemoryVectorStore(DIMENSION, Integer.MAX_VALUE);
+		InMemoryVectorStore approximate = new InMemoryVectorStore(DIMENSION, 1000);
+		exact.addAll(ids(count), embeddings, segments(count));
+		approximate.addAll(ids(count), embeddings, segments(count));
+		approximate.removeAll(List.of("id0", "id1", "id2"));
+		exact.removeAll(List.of("id0", "id1", "id2"));
+
+		int found = 0;
+		List<Embedding> queries = randomEmbeddings(20, DIMENSION, 7);
+		for (Embedding query : queries)
+		{
+			Set<String> expected = new HashSet<>(search(exact, query, 10, null));
+			found += (int)search(approximate, query, 10, null).stream().filter(expected::contains).count();
+		}
+		assertTrue(found >= queries.size() * 10 * 0.9, "recall " + found);
+	}
+}
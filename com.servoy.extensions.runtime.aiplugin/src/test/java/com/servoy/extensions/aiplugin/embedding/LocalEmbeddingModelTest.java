@@ -0,0 +1,84 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.model.embedding.onnx.allminilml6v2.AllMiniLmL6V2EmbeddingModel;
+import dev.langchain4j.store.embedding.CosineSimilarity;
+
+@DisplayName("Local embedding model")
+class LocalEmbeddingModelTest
+{
+	private static double similarity(float[] a, float[] b)
+	{
+		return CosineSimilarity.between(Embedding.from(a), Embedding.from(b));
+	}
+
+	@Test
+	@DisplayName("embeds in process with the bundled model")
+	void embedsInProcess()
+	{
+		EmbeddingModel model = LocalEmbeddingModelDelegate.build(2, null);
+		try
+		{
+			assertEquals(384, model.getDimension());
+
+			float[] cat = model.embedding("The cat sleeps on the mat");
+			assertEquals(384, cat.length);
+			assertTrue(similarity(cat, model.embedding("A cat is lying on a rug")) > similarity(cat, model.embedding("Stock markets fell sharply today")));
+		}
+		finally
+		{
+			LocalEmbeddingModelDelegate.release(2);
+		}
+	}
+
+	@Test
+	@DisplayName("embeds a batch in parallel with the same results as one by one")
+	void parallelBatch()
+	{
+		EmbeddingModel model = LocalEmbeddingModelDelegate.build(4, null);
+		AllMiniLmL6V2EmbeddingModel local = LocalEmbeddingModelDelegate.acquire(4);
+		try
+		{
+			assertEquals(EmbeddingBatcher.LOCAL_LIMITS, EmbeddingBatcher.limitsFor(local));
+			List<String> texts = List.of("first text", "second text", "third text", "fourth text", "fifth text");
+			List<Embedding> batch = new EmbeddingBatcher(local).embedAll(texts.stream().map(TextSegment::from).toList());
+
+			assertEquals(texts.size(), batch.size());
+			for (int i = 0; i < texts.size(); i++)
+			{
+				assertArrayEquals(model.embedding(texts.get(i)), batch.get(i).vector(), 1e-5f);
+			}
+		}
+		finally
+		{
+			LocalEmbeddingModelDelegate.release(4);
+			LocalEmbeddingModelDelegate.release(4);
+		}
+	}
+
+	@Test
+	@DisplayName("shares the model per thread count until the last client releases it")
+	void releasesModel()
+	{
+		AllMiniLmL6V2EmbeddingModel first = LocalEmbeddingModelDelegate.acquire(3);
+		assertSame(first, LocalEmbeddingModelDelegate.acquire(3));
+		assertEquals(2, LocalEmbeddingModelDelegate.references(3));
+
+		LocalEmbeddingModelDelegate.release(3);
+		assertEquals(1, LocalEmbeddingModelDelegate.references(3));
+		LocalEmbeddingModelDelegate.release(3);
+		assertEquals(0, LocalEmbeddingModelDelegate.references(3));
+
+		AllMiniLmL6V2EmbeddingModel reloaded = LocalEmbeddingModelDelegate.acquire(3);
+		LocalEmbeddingModelDelegate.release(3);
+		assertNotSame(first, reloaded);
+	}
+}
@@ -0,0 +1,89 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static com.servoy.extensions.aiplugin.embedding.VectorStoreTestSupport.*;
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+
+@DisplayName("QuantizedVectorStore")
+class QuantizedVectorStoreTest
+{
+	private static final int DIMENSION = 24;
+	private static final int COUNT = 5000;
+
+	private static InMemoryVectorStore saved(Path file) throws IOException
+	{
+		InMemoryVectorStore store = new InMemoryVectorStore(DIMENSION);
+		store.addAll(ids(COUNT), randomEmbeddings(COUNT, DIMENSION, 1), segments(COUNT));
+		store.save(file);
+		return store;
+	}
+
+	@Test
+	@DisplayName("finds the nearest neighbours with 16 times smaller codes and rerank")
+	void recallWithRerank(@TempDir Path directory) throws IOException
+	{
+		Path file = directory.resolve("store.bin");
+		InMemoryVectorStore exact = saved(file);
+		QuantizedVectorStore quantized = QuantizedVectorStore.open(file, DIMENSION / 4, true);
+		assertEquals(COUNT, quantized.size());
+
+		int found = 0;
+		List<Embedding> queries = randomEmbeddings(20, DIMENSION, 2);
+		for (Embedding query : queries)
+		{
+			Set<String> expected = new HashSet<>(search(exact, query, 10, null));
+			found += (int)search(quantized, query, 10, null).stream().filter(expected::contains).count();
+		}
+		assertTrue(found >= queries.size() * 10 * 0.95, "recall " + found);
+
+		EmbeddingSearchRequest request = EmbeddingSearchRequest.builder().queryEmbedding(queries.get(0)).maxResults(1).build();
+		EmbeddingMatch<TextSegment> expectedMatch = exact.search(request).matches().get(0);
+		EmbeddingMatch<TextSegment> match = quantized.search(request).matches().get(0);
+		assertEquals(expectedMatch.embeddingId(), match.embeddingId());
+		assertEquals(expectedMatch.score(), match.score(), 1e-5);
+		assertEquals(expectedMatch.embedded(), match.embedded());
+	}
+
+	@Test
+	@DisplayName("reuses the cached codes and supports filters, adds and removes")
+	void cachedCodesAndChanges(@TempDir Path directory) throws IOException
+	{
+		Path file = directory.resolve("store.bin");
+		saved(file);
+		QuantizedVectorStore.open(file, DIMENSION / 8, false);
+		Path codes = directory.resolve("store.bin.pq");
+		assertTrue(Files.exists(codes));
+		long modified = Files.getLastModifiedTime(codes).toMillis();
+
+		QuantizedVectorStore store = QuantizedVectorStore.open(file, DIMENSION / 8, true);
+		assertEquals(modified, Files.getLastModifiedTime(codes).toMillis());
+		Embedding query = randomEmbeddings(1, DIMENSION, 3).get(0);
+		List<EmbeddingMatch<TextSegment>> matches = store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(20)
+			.filter(metadataKey("group").isEqualTo(1)).build()).matches();
+		assertEquals(20, matches.size());
+		assertTrue(matches.stream().allMatch(match -> match.embedded().metadata().getInteger("group").intValue() == 1));
+
+		store.add("new", query);
+		assertEquals("new", search(store, query, 1, null).get(0));
+		store.removeAll(List.of("new", "id0"));
+		store.removeAll(metadataKey("group").isEqualTo(2));
+		assertEquals(COUNT - COUNT / 3 - 1, store.size());
+		assertFalse(search(store, query, 100, null).contains("new"));
+	}
+}
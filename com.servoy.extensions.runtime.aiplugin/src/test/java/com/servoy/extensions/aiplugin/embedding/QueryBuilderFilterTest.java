@@ -0,0 +1,162 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.stream.Collectors;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.servoy.j2db.querybuilder.IQueryBuilder;
+import com.servoy.j2db.querybuilder.IQueryBuilderColumn;
+import com.servoy.j2db.querybuilder.IQueryBuilderCondition;
+import com.servoy.j2db.querybuilder.IQueryBuilderLogicalCondition;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+import dev.langchain4j.store.embedding.filter.logical.Not;
+
+@DisplayName("QueryBuilderFilter")
+class QueryBuilderFilterTest
+{
+	private static final Set<String> COLUMNS = Set.of("category", "price");
+
+	private final IQueryBuilder query = mock(IQueryBuilder.class);
+
+	// text of the conditions created on the mocked query
+	private final Map<Object, String> conditions = new IdentityHashMap<>();
+	private final Map<Object, List<Object>> logicalParts = new IdentityHashMap<>();
+
+	@BeforeEach
+	void setUp()
+	{
+		when(query.getColumn(anyString())).thenAnswer(invocation -> column(invocation.getArgument(0), ""));
+		when(query.and()).thenAnswer(invocation -> logical(" and "));
+		when(query.or()).thenAnswer(invocation -> logical(" or "));
+	}
+
+	private IQueryBuilderColumn column(String name, String prefix)
+	{
+		IQueryBuilderColumn column = mock(IQueryBuilderColumn.class);
+		when(column.not()).thenAnswer(invocation -> column(name, "not "));
+		when(column.eq(any())).thenAnswer(invocation -> condition(prefix + name + " = " + invocation.getArgument(0)));
+		when(column.gt(any())).thenAnswer(invocation -> condition(prefix + name + " > " + invocation.getArgument(0)));
+		when(column.ge(any())).thenAnswer(invocation -> condition(prefix + name + " >= " + invocation.getArgument(0)));
+		when(column.lt(any())).thenAnswer(invocation -> condition(prefix + name + " < " + invocation.getArgument(0)));
+		when(column.le(any())).thenAnswer(invocation -> condition(prefix + name + " <= " + invocation.getArgument(0)));
+		when(column.isin(any(Object[].class)))
+			.thenAnswer(invocation -> condition(prefix + name + " in " + Arrays.toString((Object[])invocation.getArgument(0))));
+		when(column.isNull()).thenAnswer(invocation -> condition(prefix + name + " is null"));
+		return column;
+	}
+
+	private IQueryBuilderCondition condition(String text)
+	{
+		IQueryBuilderCondition condition = mock(IQueryBuilderCondition.class);
+		conditions.put(condition, text);
+		return condition;
+	}
+
+	private IQueryBuilderLogicalCondition logical(String operator)
+	{
+		IQueryBuilderLogicalCondition logical = mock(IQueryBuilderLogicalCondition.class);
+		conditions.put(logical, operator);
+		logicalParts.put(logical, new ArrayList<>());
+		when(logical.add(any(IQueryBuilderCondition.class))).thenAnswer(invocation -> {
+			logicalParts.get(logical).add(invocation.getArgument(0));
+			return logical;
+		});
+		return logical;
+	}
+
+	private String text(Object condition)
+	{
+		if (condition == null)
+		{
+			return null;
+		}
+		List<Object> parts = logicalParts.get(condition);
+		if (parts == null)
+		{
+			return conditions.get(condition);
+		}
+		return parts.stream().map(this::text).collect(Collectors.joining(conditions.get(condition), "(", ")"));
+	}
+
+	private String translate(Filter filter)
+	{
+		return text(QueryBuilderFilter.translate(query, filter, COLUMNS));
+	}
+
+	@Test
+	@DisplayName("translates comparisons")
+	void comparisons()
+	{
+		assertEquals("category = books", translate(metadataKey("category").isEqualTo("books")));
+		assertEquals("price > 10", translate(metadataKey("price").isGreaterThan(10)));
+		assertEquals("price >= 10", translate(metadataKey("price").isGreaterThanOrEqualTo(10)));
+		assertEquals("price < 10", translate(metadataKey("price").isLessThan(10)));
+		assertEquals("price <= 10", translate(metadataKey("price").isLessThanOrEqualTo(10)));
+		assertEquals("category in [books]", translate(metadataKey("category").isIn("books")));
+	}
+
+	@Test
+	@DisplayName("lets negated comparisons match missing values")
+	void negations()
+	{
+		assertEquals("(not category = books or category is null)", translate(metadataKey("category").isNotEqualTo("books")));
+		assertEquals("(not category in [books] or category is null)", translate(metadataKey("category").isNotIn("books")));
+		assertEquals("(not price > 10 or price is null)", translate(new Not(metadataKey("price").isGreaterThan(10))));
+		assertEquals("category = books", translate(new Not(metadataKey("category").isNotEqualTo("books"))));
+	}
+
+	@Test
+	@DisplayName("translates and, or and pushes not down to the comparisons")
+	void logical()
+	{
+		Filter books = metadataKey("category").isEqualTo("books");
+		Filter cheap = metadataKey("price").isLessThan(10);
+
+		assertEquals("(category = books and price < 10)", translate(books.and(cheap)));
+		assertEquals("(category = books or price < 10)", translate(books.or(cheap)));
+		assertEquals("((not category = books or category is null) or (not price < 10 or price is null))",
+			translate(new Not(books.and(cheap))));
+		assertEquals("((not category = books or category is null) and (not price < 10 or price is null))",
+			translate(new Not(books.or(cheap))));
+	}
+
+	@Test
+	@DisplayName("does not translate filters on keys that are not meta data columns")
+	void unknownKeys()
+	{
+		Filter books = metadataKey("category").isEqualTo("books");
+		Filter author = metadataKey("author").isEqualTo("me");
+
+		assertNull(translate(author));
+		assertNull(translate(books.and(author)));
+		assertNull(translate(books.or(author)));
+	}
+
+	@Test
+	@DisplayName("translates the known parts of a top-level and")
+	void partialTranslation()
+	{
+		Filter books = metadataKey("category").isEqualTo("books");
+		Filter cheap = metadataKey("price").isLessThan(10);
+		Filter author = metadataKey("author").isEqualTo("me");
+
+		assertEquals("category = books", text(QueryBuilderFilter.translatePartially(query, books.and(author), COLUMNS)));
+		assertEquals("(category = books and price < 10)",
+			text(QueryBuilderFilter.translatePartially(query, books.and(author.and(cheap)), COLUMNS)));
+		assertNull(QueryBuilderFilter.translatePartially(query, books.or(author), COLUMNS));
+	}
+}
@@ -0,0 +1,80 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.servoy.j2db.persistence.Column;
+import com.servoy.j2db.persistence.IColumnTypes;
+import com.servoy.j2db.persistence.ITable;
+import com.servoy.j2db.query.ColumnType;
+
+@DisplayName("SearchResultDecoder")
+class SearchResultDecoderTest
+{
+	private static final ColumnType TEXT = ColumnType.getInstance(IColumnTypes.TEXT, 100, 0);
+
+	private static final ColumnType INTEGER = ColumnType.getInstance(IColumnTypes.INTEGER, 0, 0);
+
+	private static final ColumnType MEDIA = ColumnType.getInstance(IColumnTypes.MEDIA, 3, 0);
+
+	private static ITable table(Object... namesAndTypes)
+	{
+		var columns = new ArrayList<Column>();
+		for (int i = 0; i < namesAndTypes.length; i += 2)
+		{
+			Column column = mock(Column.class);
+			when(column.getName()).thenReturn((String)namesAndTypes[i]);
+			when(column.getColumnType()).thenReturn((ColumnType)namesAndTypes[i + 1]);
+			columns.add(column);
+		}
+		ITable table = mock(ITable.class);
+		when(table.getColumns()).thenReturn(columns);
+		return table;
+	}
+
+	@Test
+	@DisplayName("reads the meta data and text columns of the table")
+	void readsColumns()
+	{
+		var decoder = SearchResultDecoder.forTable(table("embedding_id", TEXT, "embedding", MEDIA, "text", TEXT, "tenant", TEXT, "page", INTEGER), 0);
+
+		assertEquals(List.of("tenant", "page"), decoder.metaDataColumnNames());
+		assertTrue(decoder.hasText());
+	}
+
+	@Test
+	@DisplayName("matches the same table and schema version without reading the columns again")
+	void matchesSameTable()
+	{
+		ITable table = table("embedding_id", TEXT, "embedding", MEDIA, "tenant", TEXT);
+		var decoder = SearchResultDecoder.forTable(table, 3);
+
+		assertTrue(decoder.isFor(table, 3));
+		verify(table, times(1)).getColumns();
+	}
+
+	@Test
+	@DisplayName("does not match a reloaded or recreated table instance")
+	void otherTableInstance()
+	{
+		var decoder = SearchResultDecoder.forTable(table("embedding_id", TEXT, "embedding", MEDIA, "tenant", TEXT), 0);
+
+		assertFalse(decoder.isFor(table("embedding_id", TEXT, "embedding", MEDIA, "tenant", TEXT), 0));
+	}
+
+	@Test
+	@DisplayName("does not match after the schema of the table was changed")
+	void changedSchema()
+	{
+		ITable table = table("embedding_id", TEXT, "embedding", MEDIA, "tenant", TEXT);
+		var decoder = SearchResultDecoder.forTable(table, 0);
+
+		assertFalse(decoder.isFor(table, 1));
+	}
+}
@@ -0,0 +1,181 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.util.List;
+import java.util.Set;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+import org.mockito.junit.jupiter.MockitoSettings;
+import org.mockito.quality.Strictness;
+
+import com.servoy.extensions.aiplugin.AIProvider;
+import com.servoy.j2db.dataprocessing.IDatabaseManager;
+import com.servoy.j2db.persistence.Column;
+import com.servoy.j2db.persistence.ITable;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+@ExtendWith(MockitoExtension.class)
+@MockitoSettings(strictness = Strictness.LENIENT)
+@DisplayName("ServoyEmbeddingStore")
+class ServoyEmbeddingStoreTest
+{
+	private static final Set<String> COLUMNS = Set.of("tenant", "category");
+
+	@Mock
+	private AIProvider provider;
+
+	@Mock
+	private IDatabaseManager databaseManager;
+
+	@Mock
+	private ITable table;
+
+	@Mock
+	private ServoyEmbeddingStoreServer server;
+
+	@BeforeEach
+	void setUp()
+	{
+		when(provider.getDatabaseManager()).thenReturn(databaseManager);
+		when(databaseManager.getTable("db:/example/embeddings")).thenReturn(table);
+		List<Column> columns = List.of(column("embedding_id"), column("embedding"), column("tenant"), column("category"));
+		when(table.getColumns()).thenReturn(columns);
+	}
+
+	private static Column column(String name)
+	{
+		Column column = mock(Column.class);
+		when(column.getName()).thenReturn(name);
+		return column;
+	}
+
+	private ServoyEmbeddingStore store()
+	{
+		return new ServoyEmbeddingStore(provider, "db:/example/embeddings", server, EmbeddingMetric.COSINE, true);
+	}
+
+	private void tableFilters(Object[]... filterParams)
+	{
+		when(databaseManager.getTableFilterParams("example", null)).thenReturn(filterParams);
+	}
+
+	private static Metadata metadata(String tenant, String category)
+	{
+		return new Metadata().put("tenant", tenant).put("category", category);
+	}
+
+	@Test
+	@DisplayName("adds the tenant filter of the client to native searches")
+	void addsTenantFilter() throws Exception
+	{
+		tableFilters(new Object[] { "embeddings", "tenant", "=", "a", "_svy_tenant_id_table_filter" });
+		var filter = ArgumentCaptor.forClass(Filter.class);
+
+		store().searchAll(List.of(new float[] { 1, 0 }), 3, 0, metadataKey("category").isEqualTo("books"), null);
+
+		verify(server).searchAllEmbeddings(any(), eq(3), eq(0d), filter.capture(), any(), eq(false));
+		assertTrue(filter.getValue().test(metadata("a", "books")));
+		assertFalse(filter.getValue().test(metadata("b", "books")));
+		assertFalse(filter.getValue().test(metadata("a", "music")));
+	}
+
+	@Test
+	@DisplayName("uses the query builder when a table filter cannot be translated")
+	void skipsNativeSearch()
+	{
+		tableFilters(new Object[] { "embeddings", "category", "like", "b%", "mine" });
+
+		assertNull(store().searchAll(List.of(new float[] { 1, 0 }), 3, 0, null, null));
+
+		verifyNoInteractions(server);
+	}
+
+	@Test
+	@DisplayName("fails a search with another metric when the database has no native search")
+	void failsOtherMetric() throws Exception
+	{
+		var store = new ServoyEmbeddingStore(provider, "db:/example/embeddings", server, EmbeddingMetric.L2, false);
+		var request = EmbeddingSearchRequest.builder().queryEmbedding(Embedding.from(new float[] { 1, 0 })).maxResults(3).build();
+
+		assertThrows(IllegalStateException.class, () -> store.search(request));
+
+		verify(server).searchEmbeddings(any(), eq(3), eq(0d), isNull(), any(), eq(true));
+	}
+
+	@Test
+	@DisplayName("fails a search with another metric when a table filter cannot be translated")
+	void failsOtherMetricWithTableFilter()
+	{
+		tableFilters(new Object[] { "embeddings", "category", "like", "b%", "mine" });
+		var store = new ServoyEmbeddingStore(provider, "db:/example/embeddings", server, EmbeddingMetric.INNER_PRODUCT, false);
+		var request = EmbeddingSearchRequest.builder().queryEmbedding(Embedding.from(new float[] { 1, 0 })).maxResults(3).build();
+
+		assertThrows(IllegalStateException.class, () -> store.search(request));
+
+		verifyNoInteractions(server);
+	}
+
+	@Test
+	@DisplayName("removes natively with the tenant and the table filters of the client")
+	void removesWithTableFilters() throws Exception
+	{
+		tableFilters(new Object[] { "embeddings", "tenant", "=", "a", "_svy_tenant_id_table_filter" },
+			new Object[] { null, "category", "in", List.of("books", "music"), "shared" });
+		when(server.removeEmbeddings(any(), any(Filter.class))).thenReturn(true);
+		var filter = ArgumentCaptor.forClass(Filter.class);
+
+		new ServoyEmbeddingStore(provider, "db:/example/embeddings", server, EmbeddingMetric.COSINE, false).removeAll();
+
+		verify(server).removeEmbeddings(any(), filter.capture());
+		assertTrue(filter.getValue().test(metadata("a", "music")));
+		assertFalse(filter.getValue().test(metadata("b", "music")));
+		assertFalse(filter.getValue().test(metadata("a", "film")));
+	}
+
+	@Test
+	@DisplayName("translates equality and in filters on the table")
+	void translatesTableFilters()
+	{
+		List<Filter> filters = ServoyEmbeddingStore.toFilters(
+			new Object[][] { { "EMBEDDINGS", "tenant", "=", "a", "tenant" }, { null, "category", "in", new Object[] { "books", "music" }, "all" } },
+			"embeddings", COLUMNS);
+
+		assertEquals(2, filters.size());
+		assertTrue(filters.get(0).test(metadata("a", "x")));
+		assertFalse(filters.get(0).test(metadata("b", "x")));
+		assertTrue(filters.get(1).test(metadata("a", "music")));
+		assertFalse(filters.get(1).test(metadata("a", "film")));
+	}
+
+	@Test
+	@DisplayName("ignores table filters on other tables")
+	void ignoresOtherTables()
+	{
+		assertEquals(List.of(), ServoyEmbeddingStore.toFilters(new Object[][] { { "orders", "status", "like", "open%", "open" } }, "embeddings", COLUMNS));
+		assertEquals(List.of(), ServoyEmbeddingStore.toFilters(null, "embeddings", COLUMNS));
+	}
+
+	@Test
+	@DisplayName("does not translate other table filters on the table")
+	void rejectsOtherFilters()
+	{
+		assertNull(ServoyEmbeddingStore.toFilters(new Object[][] { { "embeddings", "category", "!=", "books", "f" } }, "embeddings", COLUMNS));
+		assertNull(ServoyEmbeddingStore.toFilters(new Object[][] { { "embeddings", "owner", "=", "me", "f" } }, "embeddings", COLUMNS));
+		assertNull(ServoyEmbeddingStore.toFilters(new Object[][] { { "embeddings", "category", "=", null, "f" } }, "embeddings", COLUMNS));
+		assertNull(ServoyEmbeddingStore.toFilters(new Object[][] { { "embeddings", "category", "in", new Object[0], "f" } }, "embeddings", COLUMNS));
+	}
+}
@@ -0,0 +1,101 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+
+@DisplayName("SharedEmbeddingStores")
+class SharedEmbeddingStoresTest
+{
+	private static final String MODEL = "example/model";
+
+	private final SharedEmbeddingStores stores = new SharedEmbeddingStores();
+
+	private static List<String> search(SharedVectorStore store, float... vector)
+	{
+		return store.search(EmbeddingSearchRequest.builder().queryEmbedding(Embedding.from(vector)).maxResults(10).build()).matches().stream()
+			.map(EmbeddingMatch::embeddingId).toList();
+	}
+
+	@Test
+	@DisplayName("shares one store per name until the last reference is released")
+	void referenceCounting()
+	{
+		SharedVectorStore first = stores.acquire("crm", "help", MODEL, 2);
+		first.add("a", Embedding.from(new float[] { 1, 0 }));
+		SharedVectorStore second = stores.acquire("crm", "help", MODEL, 2);
+		assertSame(first, second);
+		assertEquals(List.of("a"), search(second, 1, 0));
+		assertEquals(2, stores.references("crm", "help"));
+
+		stores.release("crm", "help");
+		assertSame(first, stores.acquire("crm", "help", MODEL, 2));
+		stores.release("crm", "help");
+		stores.release("crm", "help");
+		assertEquals(0, stores.references("crm", "help"));
+		assertEquals(0, stores.acquire("crm", "help", MODEL, 2).size());
+	}
+
+	@Test
+	@DisplayName("rejects a store with another model or dimension")
+	void dimensionMismatch()
+	{
+		stores.acquire("crm", "help", MODEL, 2);
+		assertThrows(IllegalArgumentException.class, () -> stores.acquire("crm", "help", MODEL, 3));
+		assertThrows(IllegalArgumentException.class, () -> stores.acquire("crm", "help", "other/model", 2));
+		assertEquals(1, stores.references("crm", "help"));
+	}
+
+	@Test
+	@DisplayName("applies changes to a copy, earlier results are not affected")
+	void copyOnWrite()
+	{
+		SharedVectorStore store = stores.acquire("crm", "faq", MODEL, 2);
+		store.addAll(List.of("a", "b"), List.of(Embedding.from(new float[] { 1, 0 }), Embedding.from(new float[] { 0, 1 })),
+			List.of(TextSegment.from("a"), TextSegment.from("b")));
+		List<EmbeddingMatch<TextSegment>> before = store.search(EmbeddingSearchRequest.builder().queryEmbedding(Embedding.from(new float[] { 1, 0 })).build())
+			.matches();
+
+		store.remove("a");
+		store.add("c", Embedding.from(new float[] { 1, 1 }));
+
+		assertEquals(List.of("a", "b"), before.stream().map(EmbeddingMatch::embeddingId).toList());
+		assertEquals(List.of("c", "b"), search(store, 1, 0));
+	}
+
+	@Test
+	@DisplayName("keeps the stores of solutions apart")
+	void perSolution()
+	{
+		stores.acquire("crm", "help", MODEL, 2).add("a", Embedding.from(new float[] { 1, 0 }));
+
+		assertEquals(0, stores.acquire("hr", "help", MODEL, 2).size());
+		assertEquals(1, stores.references("crm", "help"));
+	}
+
+	@Test
+	@DisplayName("merges the batches of many changes into few segments")
+	void mergesSegments()
+	{
+		SharedVectorStore store = stores.acquire("crm", "faq", MODEL, 2);
+		for (int i = 0; i < 1000; i++)
+		{
+			store.add("id" + i, Embedding.from(new float[] { 1, i }));
+		}
+		store.add("id0", Embedding.from(new float[] { -1, 0 }));
+		store.removeAll(List.of("id1", "id500"));
+
+		assertEquals(998, store.size());
+		assertTrue(store.segmentCount() <= 11, "segments: " + store.segmentCount());
+		assertEquals("id0", search(store, -1, 0).get(0));
+		assertEquals(List.of("id2", "id3"), search(store, 1, 2.5f).subList(0, 2).stream().sorted().toList());
+	}
+}
@@ -0,0 +1,51 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.math.BigDecimal;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+@DisplayName("SourceKey")
+class SourceKeyTest
+{
+	@Test
+	@DisplayName("compares numbers of different types by value")
+	void numbersByValue()
+	{
+		assertEquals(SourceKey.of(new Object[] { Integer.valueOf(1) }), SourceKey.of(new Object[] { Long.valueOf(1) }));
+		assertEquals(SourceKey.of(new Object[] { Double.valueOf(1) }), SourceKey.of(new Object[] { new BigDecimal("1.00") }));
+		assertNotEquals(SourceKey.of(new Object[] { Double.valueOf(1.5) }), SourceKey.of(new Object[] { Long.valueOf(1) }));
+	}
+
+	@Test
+	@DisplayName("keeps values of other types apart")
+	void typedValues()
+	{
+		var uuid = UUID.randomUUID();
+		assertNotEquals(SourceKey.of(new Object[] { Integer.valueOf(1) }), SourceKey.of(new Object[] { "1" }));
+		assertNotEquals(SourceKey.of(new Object[] { uuid }), SourceKey.of(new Object[] { uuid.toString() }));
+		assertEquals(SourceKey.of(new Object[] { uuid }), SourceKey.of(new Object[] { UUID.fromString(uuid.toString()) }));
+	}
+
+	@Test
+	@DisplayName("compares composite keys on all values in order")
+	void compositeKeys()
+	{
+		assertEquals(SourceKey.of(new Object[] { "a", Integer.valueOf(2) }), SourceKey.of(new Object[] { "a", Long.valueOf(2) }));
+		assertNotEquals(SourceKey.of(new Object[] { "a", "b" }), SourceKey.of(new Object[] { "b", "a" }));
+		assertNotEquals(SourceKey.of(new Object[] { "a|b", "c" }), SourceKey.of(new Object[] { "a", "b|c" }));
+		assertEquals(SourceKey.of(new Object[] { null, "a" }), SourceKey.of(new Object[] { null, "a" }));
+	}
+
+	@Test
+	@DisplayName("accepts non-finite numbers")
+	void nonFinite()
+	{
+		assertEquals(SourceKey.of(new Object[] { Double.valueOf(Double.NaN) }), SourceKey.of(new Object[] { Float.valueOf(Float.NaN) }));
+		assertNotEquals(SourceKey.of(new Object[] { Double.valueOf(Double.POSITIVE_INFINITY) }),
+			SourceKey.of(new Object[] { Double.valueOf(Double.NEGATIVE_INFINITY) }));
+	}
+}
@@ -0,0 +1,62 @@
+package com.servoy.extensions.aiplugin.embedding;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import java.util.stream.IntStream;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.EmbeddingMatch;
+import dev.langchain4j.store.embedding.EmbeddingSearchRequest;
+import dev.langchain4j.store.embedding.EmbeddingStore;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+/**
+ * Test data and searches shared by the vector store tests.
+ */
+final class VectorStoreTestSupport
+{
+	private VectorStoreTestSupport()
+	{
+	}
+
+	static List<Embedding> randomEmbeddings(int count, int dimension, long seed)
+	{
+		Random random = new Random(seed);
+		List<Embedding> embeddings = new ArrayList<>();
+		for (int i = 0; i < count; i++)
+		{
+			float[] vector = new float[dimension];
+			for (int d = 0; d < dimension; d++)
+			{
+				vector[d] = (float)random.nextGaussian();
+			}
+			embeddings.add(Embedding.from(vector));
+		}
+		return embeddings;
+	}
+
+	/**
+	 * Segments "text i" with meta data group i % 3.
+	 */
+	static List<TextSegment> segments(int count)
+	{
+		return IntStream.range(0, count).mapToObj(i -> TextSegment.from("text " + i, new Metadata().put("group", i % 3))).toList();
+	}
+
+	static List<String> ids(int count)
+	{
+		return IntStream.range(0, count).mapToObj(i -> "id" + i).toList();
+	}
+
+	/**
+	 * Ids of the matches of a search.
+	 */
+	static List<String> search(EmbeddingStore<TextSegment> store, Embedding query, int maxResults, Filter filter)
+	{
+		return store.search(EmbeddingSearchRequest.builder().queryEmbedding(query).maxResults(maxResults).filter(filter).build()).matches().stream()
+			.map(EmbeddingMatch::embeddingId).toList();
+	}
+}
@@ -0,0 +1,269 @@
+package com.servoy.extensions.aiplugin.server;
+
+import static com.servoy.base.persistence.IBaseColumn.VECTOR_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.EMBEDDING_ID_COLUMN;
+import static com.servoy.extensions.aiplugin.embedding.ServoyEmbeddingStoreServer.FINGERPRINT_COLUMN;
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.extension.ExtendWith;
+import org.mockito.ArgumentCaptor;
+import org.mockito.InOrder;
+import org.mockito.Mock;
+import org.mockito.junit.jupiter.MockitoExtension;
+
+import com.servoy.extensions.aiplugin.embedding.EmbeddingMetric;
+import com.servoy.extensions.aiplugin.embedding.EmbeddingTableOptions;
+import com.servoy.extensions.aiplugin.embedding.MetaDataKey;
+import com.servoy.j2db.dataprocessing.IDataSet;
+import com.servoy.j2db.persistence.Column;
+import com.servoy.j2db.persistence.IColumnTypes;
+import com.servoy.j2db.persistence.IServerInternal;
+import com.servoy.j2db.persistence.ITable;
+import com.servoy.j2db.persistence.RepositoryException;
+import com.servoy.j2db.plugins.IServerAccess;
+import com.servoy.j2db.query.ColumnType;
+
+import dev.langchain4j.data.document.Metadata;
+import dev.langchain4j.data.embedding.Embedding;
+import dev.langchain4j.data.segment.TextSegment;
+import dev.langchain4j.store.embedding.filter.Filter;
+
+@ExtendWith(MockitoExtension.class)
+@DisplayName("ServoyEmbeddingStoreServerImpl")
+class ServoyEmbeddingStoreServerImplTest
+{
+	@Mock
+	private IServerAccess serverAccess;
+
+	private final List<List<Object>> insertedKeys = new ArrayList<>();
+
+	private ServoyEmbeddingStoreServerImpl store()
+	{
+		var options = new EmbeddingTableOptions(false, true, false, false, null, null, false, false, 0, null);
+		var tableModel = new TableModel("example", "embeddings", Map.of(EMBEDDING_COLUMN, ColumnType.getInstance(IColumnTypes.MEDIA, 3, 0)),
+			List.of(), false, "embeddings_cache", options);
+		return new ServoyEmbeddingStoreServerImpl(serverAccess, tableModel);
+	}
+
+	private ServoyEmbeddingStoreServerImpl sourceStore()
+	{
+		var options = new EmbeddingTableOptions(false, true, false, false, null, null, false, false, 0, null);
+		var idType = ColumnType.getInstance(IColumnTypes.INTEGER, 0, 0);
+		var tableModel = new TableModel("example", "embeddings",
+			Map.of(EMBEDDING_ID_COLUMN, ColumnType.getInstance(IColumnTypes.TEXT, 36, 0), EMBEDDING_COLUMN, ColumnType.getInstance(IColumnTypes.MEDIA, 3, 0),
+				"id", idType, FINGERPRINT_COLUMN, ColumnType.getInstance(IColumnTypes.TEXT, 64, 0)),
+			List.of(new MetaDataKey("id", idType, 0, true)), true, null, options);
+		return new ServoyEmbeddingStoreServerImpl(serverAccess, tableModel);
+	}
+
+	private static List<List<Object>> rows(IDataSet dataSet)
+	{
+		var rows = new ArrayList<List<Object>>();
+		for (int row = 0; row < dataSet.getRowCount(); row++)
+		{
+			rows.add(Arrays.asList(dataSet.getRow(row)));
+		}
+		return rows;
+	}
+
+	private Object recordInsert(IDataSet dataSet)
+	{
+		var keys = new ArrayList<Object>();
+		for (int row = 0; row < dataSet.getRowCount(); row++)
+		{
+			keys.add(dataSet.getRow(row)[0]);
+		}
+		insertedKeys.add(keys);
+		return null;
+	}
+
+	@Test
+	@DisplayName("adds a text that occurs twice in a batch once")
+	void deduplicatesBatch() throws Exception
+	{
+		doAnswer(invocation -> recordInsert(invocation.getArgument(4))).when(serverAccess).insertDataSet(any(), any(), any(), any(), any());
+
+		store().addCachedEmbeddings("client", List.of("a", "b", "a"), List.of(new float[] { 1, 0, 0 }, new float[] { 0, 1, 0 }, new float[] { 1, 0, 0 }));
+
+		assertEquals(List.of(List.of("a", "b")), insertedKeys);
+	}
+
+	@Test
+	@DisplayName("skips the entries another client already cached")
+	void skipsDuplicateKeys() throws Exception
+	{
+		doThrow(new RepositoryException("duplicate key value violates unique constraint"))
+			.doAnswer(invocation -> recordInsert(invocation.getArgument(4)))
+			.doThrow(new RepositoryException("duplicate key value violates unique constraint"))
+			.doAnswer(invocation -> recordInsert(invocation.getArgument(4)))
+			.when(serverAccess).insertDataSet(eq("client"), eq("example"), eq("embeddings_cache"), isNull(), any());
+
+		store().addCachedEmbeddings("client", List.of("a", "b", "c"), List.of(new float[] { 1, 0, 0 }, new float[] { 0, 1, 0 }, new float[] { 0, 0, 1 }));
+
+		assertEquals(List.of(List.of("a"), List.of("c")), insertedKeys);
+	}
+
+	@Test
+	@DisplayName("removes only the embeddings with the fingerprint of the source row")
+	void removesFoundsetRowsOnly() throws Exception
+	{
+		var dataSet = ArgumentCaptor.forClass(IDataSet.class);
+
+		sourceStore().removeEmbeddingsBySourceKeys("client", "tx", List.<Object[]> of(new Object[] { Long.valueOf(1), "fp1" }, new Object[] { Long.valueOf(2), "fp2" }));
+
+		verify(serverAccess).deleteFromDataSet(eq("client"), eq("example"), eq("embeddings"), eq("tx"), dataSet.capture());
+		assertArrayEquals(new String[] { "id", FINGERPRINT_COLUMN }, dataSet.getValue().getColumnNames());
+		assertEquals(List.of(List.of(Long.valueOf(1), "fp1"), List.of(Long.valueOf(2), "fp2")), rows(dataSet.getValue()));
+	}
+
+	@Test
+	@DisplayName("replaces the embeddings of a source row, also in a table it created")
+	void replacesSourceRows() throws Exception
+	{
+		var deleted = ArgumentCaptor.forClass(IDataSet.class);
+		var inserted = ArgumentCaptor.forClass(IDataSet.class);
+		var first = TextSegment.from("first", new Metadata().put("id", 1L).put(FINGERPRINT_COLUMN, "fp1"));
+		var second = TextSegment.from("second", new Metadata().put("id", 1L).put(FINGERPRINT_COLUMN, "fp1"));
+		var unrelated = TextSegment.from("unrelated");
+
+		sourceStore().addEmbeddings("client", "tx", List.of("e1", "e2", "e3"),
+			List.of(Embedding.from(new float[] { 1, 0, 0 }), Embedding.from(new float[] { 0, 1, 0 }), Embedding.from(new float[] { 0, 0, 1 })),
+			List.of(first, second, unrelated));
+
+		InOrder inOrder = inOrder(serverAccess);
+		inOrder.verify(serverAccess).deleteFromDataSet(eq("client"), eq("example"), eq("embeddings"), eq("tx"), deleted.capture());
+		inOrder.verify(serverAccess).insertDataSet(eq("client"), eq("example"), eq("embeddings"), eq("tx"), inserted.capture());
+		assertArrayEquals(new String[] { "id" }, deleted.getValue().getColumnNames());
+		assertEquals(List.of(List.of(Long.valueOf(1))), rows(deleted.getValue()));
+		assertEquals(3, inserted.getValue().getRowCount());
+	}
+
+	@Test
+	@DisplayName("tells the clients to reload the table after deleting with native sql")
+	void flushesAfterNativeDelete() throws Exception
+	{
+		IServerInternal server = mock(IServerInternal.class);
+		ITable table = mock(ITable.class);
+		Connection connection = mock(Connection.class, RETURNS_DEEP_STUBS);
+		PreparedStatement statement = mock(PreparedStatement.class);
+		when(serverAccess.getDBServer("example", true, true)).thenReturn(server);
+		when(server.getTable("embeddings")).thenReturn(table);
+		when(server.getConnection()).thenReturn(connection);
+		when(connection.getMetaData().getDatabaseProductName()).thenReturn("PostgreSQL");
+		when(connection.prepareStatement(anyString())).thenReturn(statement);
+		when(statement.executeUpdate()).thenReturn(2);
+
+		assertTrue(store().removeEmbeddings("client", (Filter)null));
+
+		verify(serverAccess).flushAllClientsCache("example", "embeddings");
+	}
+
+	@Test
+	@DisplayName("tells the clients to reload the table after a native merge")
+	void flushesAfterNativeMerge() throws Exception
+	{
+		IServerInternal server = mock(IServerInternal.class);
+		ITable table = mock(ITable.class);
+		Connection connection = mock(Connection.class, RETURNS_DEEP_STUBS);
+		when(serverAccess.getDBServer("example", true, true)).thenReturn(server);
+		when(server.getTable("embeddings")).thenReturn(table);
+		when(server.getConnection()).thenReturn(connection);
+		when(table.getColumn(anyString())).thenAnswer(invocation -> {
+			Column column = mock(Column.class);
+			when(column.getSQLName()).thenReturn(invocation.getArgument(0));
+			return column;
+		});
+		when(connection.getMetaData().getDatabaseProductName()).thenReturn("PostgreSQL");
+		var segment = TextSegment.from("text", new Metadata().put("id", 1L).put(FINGERPRINT_COLUMN, "fp1"));
+
+		sourceStore().addEmbeddings("client", null, List.of("e1"), List.of(Embedding.from(new float[] { 1, 0, 0 })), List.of(segment));
+
+		verify(serverAccess).flushAllClientsCache("example", "embeddings");
+		verify(serverAccess, never()).insertDataSet(any(), any(), any(), any(), any());
+	}
+
+	@Test
+	@DisplayName("normalizes vectors to unit length")
+	void normalizes()
+	{
+		assertArrayEquals(new float[] { 0.6f, 0.8f }, ServoyEmbeddingStoreServerImpl.normalize(new float[] { 3, 4 }), 1e-6f);
+		float[] unit = { 1, 0 };
+		assertSame(unit, ServoyEmbeddingStoreServerImpl.normalize(unit));
+		float[] zero = { 0, 0 };
+		assertSame(zero, ServoyEmbeddingStoreServerImpl.normalize(zero));
+	}
+
+	@Test
+	@DisplayName("names tenant indexes by a digest of the predicate within the identifier limit")
+	void tenantIndexName()
+	{
+		String name = ServoyEmbeddingStoreServerImpl.tenantIndexName("_sv_embedding_embeddings", "\"tenant\" = E'a'");
+
+		assertEquals(name, ServoyEmbeddingStoreServerImpl.tenantIndexName("_sv_embedding_embeddings", "\"tenant\" = E'a'"));
+		assertNotEquals(name, ServoyEmbeddingStoreServerImpl.tenantIndexName("_sv_embedding_embeddings", "\"tenant\" = E'b'"));
+		assertTrue(name.startsWith("_sv_embedding_embeddings_"), name);
+		assertEquals(59, ServoyEmbeddingStoreServerImpl.tenantIndexName("_sv_embedding_" + "x".repeat(60), "\"tenant\" = 1").length());
+	}
+
+	@Test
+	@DisplayName("reloads the column info after changing a new table to half precision")
+	void reloadsHalfPrecisionTable() throws Exception
+	{
+		IServerInternal server = mock(IServerInternal.class);
+		ITable created = mock(ITable.class, RETURNS_DEEP_STUBS);
+		Column createdEmbedding = mock(Column.class);
+		ITable reloaded = mock(ITable.class);
+		Column reloadedId = mock(Column.class);
+		Column reloadedEmbedding = mock(Column.class);
+		Connection connection = mock(Connection.class, RETURNS_DEEP_STUBS);
+		Statement statement = mock(Statement.class);
+		PreparedStatement columnType = mock(PreparedStatement.class);
+		ResultSet columnTypeResult = mock(ResultSet.class);
+		when(serverAccess.getDBServer("example", true, true)).thenReturn(server);
+		when(server.getTable("embeddings")).thenReturn(null, reloaded);
+		when(server.createNewTable(any(), eq("embeddings"))).thenReturn(created);
+		when(created.createNewColumn(any(), eq(EMBEDDING_COLUMN), any(), eq(false))).thenReturn(createdEmbedding);
+		when(created.getSQLName()).thenReturn("embeddings");
+		when(created.getName()).thenReturn("embeddings");
+		when(createdEmbedding.getSQLName()).thenReturn("embedding");
+		when(server.getConnection()).thenReturn(connection);
+		when(connection.getMetaData().getDatabaseProductName()).thenReturn("PostgreSQL");
+		when(connection.createStatement()).thenReturn(statement);
+		when(connection.prepareStatement(anyString())).thenReturn(columnType);
+		when(columnType.executeQuery()).thenReturn(columnTypeResult);
+		when(columnTypeResult.next()).thenReturn(true);
+		when(columnTypeResult.getString(1)).thenReturn("halfvec");
+		when(reloaded.getColumn(EMBEDDING_ID_COLUMN)).thenReturn(reloadedId);
+		when(reloaded.getColumn(EMBEDDING_COLUMN)).thenReturn(reloadedEmbedding);
+		when(reloaded.getServerName()).thenReturn("example");
+		when(reloaded.getName()).thenReturn("embeddings");
+		when(reloadedId.isDatabasePK()).thenReturn(true);
+		when(reloadedId.hasFlag(anyInt())).thenReturn(true);
+		when(reloadedEmbedding.hasFlag(VECTOR_COLUMN)).thenReturn(false, true);
+		when(reloadedEmbedding.getSQLName()).thenReturn("embedding");
+		var options = new EmbeddingTableOptions(false, false, false, false, null, EmbeddingMetric.COSINE, false, true, 0, null);
+
+		ServoyEmbeddingStoreServerImpl.createStore(serverAccess, "example", List.of(), "embeddings", false, true, 3, options);
+
+		InOrder inOrder = inOrder(server, statement, reloadedEmbedding);
+		inOrder.verify(server).syncTableObjWithDB(created, false, false);
+		inOrder.verify(statement).execute("ALTER TABLE \"embeddings\" ALTER COLUMN \"embedding\" TYPE halfvec(3)");
+		inOrder.verify(server).reloadTable(created);
+		inOrder.verify(reloadedEmbedding).setFlag(VECTOR_COLUMN, true);
+		inOrder.verify(server).updateAllColumnInfo(reloaded);
+	}
+}
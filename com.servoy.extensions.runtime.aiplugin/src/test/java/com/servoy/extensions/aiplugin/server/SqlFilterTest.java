@@ -0,0 +1,99 @@
+package com.servoy.extensions.aiplugin.server;
+
+import static dev.langchain4j.store.embedding.filter.MetadataFilterBuilder.metadataKey;
+import static org.junit.jupiter.api.Assertions.*;
+
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.UUID;
+
+import org.junit.jupiter.api.DisplayName;
+import org.junit.jupiter.api.Test;
+
+import com.servoy.j2db.persistence.IColumnTypes;
+
+import dev.langchain4j.store.embedding.filter.Filter;
+
+@DisplayName("SqlFilter")
+class SqlFilterTest
+{
+	private static final Map<String, String> SQL_NAMES = Map.of("tenant", "tenant", "doc_id", "doc_id", "page", "page");
+	private static final Map<String, Integer> TYPES = Map.of("tenant", Integer.valueOf(IColumnTypes.TEXT), "doc_id",
+		Integer.valueOf(IColumnTypes.MEDIA), "page", Integer.valueOf(IColumnTypes.INTEGER));
+
+	private static SqlFilter translate(Filter filter)
+	{
+		return SqlFilter.translate(filter, SQL_NAMES, TYPES);
+	}
+
+	@Test
+	@DisplayName("translates comparisons combined with and/or")
+	void translatesLogical()
+	{
+		SqlFilter sqlFilter = translate(metadataKey("tenant").isEqualTo("acme").and(metadataKey("page").isGreaterThan(2).or(metadataKey("page").isIn(List.of(0, 1)))));
+
+		assertEquals("(\"tenant\" = ? AND (\"page\" > ? OR \"page\" IN (?, ?)))", sqlFilter.where());
+		assertEquals(List.of("acme", 2, 0, 1), sqlFilter.parameters());
+	}
+
+	@Test
+	@DisplayName("negations match missing values")
+	void negationsMatchNull()
+	{
+		SqlFilter sqlFilter = translate(Filter.not(metadataKey("tenant").isEqualTo("acme").and(metadataKey("page").isNotEqualTo(1))));
+
+		assertEquals("((\"tenant\" IS NULL OR NOT (\"tenant\" = ?)) OR \"page\" = ?)", sqlFilter.where());
+	}
+
+	@Test
+	@DisplayName("converts uuid strings for uuid columns")
+	void convertsUuids()
+	{
+		UUID uuid = UUID.randomUUID();
+
+		assertEquals(List.of(uuid), translate(metadataKey("doc_id").isEqualTo(uuid.toString())).parameters());
+		assertNull(translate(metadataKey("doc_id").isEqualTo("not a uuid")));
+	}
+
+	@Test
+	@DisplayName("writes equality on literal keys as literal")
+	void literalKeys()
+	{
+		SqlFilter sqlFilter = SqlFilter.translate(metadataKey("tenant").isEqualTo("o'neil").and(metadataKey("page").isEqualTo(2.0)), SQL_NAMES, TYPES,
+			Set.of("tenant", "page"));
+
+		assertEquals("(\"tenant\" = E'o''neil' AND \"page\" = 2)", sqlFilter.where());
+		assertTrue(sqlFilter.parameters().isEmpty());
+	}
+
+	@Test
+	@DisplayName("escapes backslashes and quotes in literals")
+	void escapesLiterals()
+	{
+		UUID uuid = UUID.randomUUID();
+
+		assertEquals("E'a\\\\'' OR ''1'' = ''1'", SqlFilter.literal("a\\' OR '1' = '1"));
+		assertEquals("E'" + uuid + "'::uuid", SqlFilter.literal(uuid));
+		assertEquals("2.5", SqlFilter.literal(Double.valueOf(2.50)));
+	}
+
+	@Test
+	@DisplayName("passes values without literal as parameter")
+	void nonFiniteParameters()
+	{
+		SqlFilter sqlFilter = SqlFilter.translate(metadataKey("page").isEqualTo(Double.NaN), SQL_NAMES, TYPES, Set.of("page"));
+
+		assertFalse(SqlFilter.hasLiteral(Double.valueOf(Double.POSITIVE_INFINITY)));
+		assertThrows(IllegalArgumentException.class, () -> SqlFilter.literal(Double.valueOf(Double.NaN)));
+		assertNotNull(sqlFilter);
+		assertEquals("\"page\" = ?", sqlFilter.where());
+	}
+
+	@Test
+	@DisplayName("does not translate unknown keys")
+	void unknownKeys()
+	{
+		assertNull(translate(metadataKey("tenant").isEqualTo("acme").and(metadataKey("author").isEqualTo("me"))));
+	}
+}